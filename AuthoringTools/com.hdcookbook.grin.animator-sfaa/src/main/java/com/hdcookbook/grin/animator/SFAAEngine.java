@@ -329,6 +329,7 @@ public class SFAAEngine extends AnimationEngine {
                 if (Debug.LEVEL > 0) {
                     skippedFrames++;
                 }
+                countUnshownFrame(false);
                 if (skipModel) {
                     // do nothing
                 } else {
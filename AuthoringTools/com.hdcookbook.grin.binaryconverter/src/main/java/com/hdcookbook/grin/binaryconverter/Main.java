@@ -81,6 +81,8 @@ public class Main {
     private static int offsetX = 0;     // X offset in pixels
     private static int offsetY = 0;     // Y offset in pixels
     private static boolean headless = true;
+    private static int threads = 1;     // Threads for making mosaics
+    private static boolean rawMosaics = false;
    
    /**
     * A driver method for the Main.convert(String, String).
@@ -162,6 +164,17 @@ public class Main {
                     usage();
                 } 
                 offsetY = argToInt(args[index]);
+            } else if ("-threads".equals(args[index])) {
+                index++;
+                if (index == args.length) {
+                    usage();
+                } 
+                threads = argToInt(args[index]);
+                if (threads < 0) {
+                    usage();
+                }
+            } else if ("-raw_mosaics".equals(args[index])) {
+                rawMosaics = true;
             } else if ("-avoid_optimization".equals(args[index])) {
                 optimize = false;
             } else if ("-optimize".equals(args[index])) {
@@ -320,6 +333,8 @@ public class Main {
             if (optimize) {
                 GrinCompiler compiler = new GrinCompiler();
                 compiler.setHeadless(headless);
+                compiler.setThreads(threads);
+                compiler.setRawImages(rawMosaics);
                 compiler.optimizeShows(shows, outputDir);
             }
             for (int i = 0; i < showFiles.length; i++) {
@@ -349,6 +364,10 @@ public class Main {
                     f = new File(outputDir, baseName + ".grinview.java");
                     files.add(f);
                     out.writeCommandClass(shows[i], false, f);
+
+                    f = new File(outputDir, baseName + ".factory.java");
+                    files.add(f);
+                    out.writeExtensionFactoryClass(shows[i], f);
                 }
             }
         } catch (IOException e) { 
@@ -385,6 +404,8 @@ public class Main {
         System.out.println("\t\t-optimize");
         System.out.println("\t\t-scaleX <double> -scaleY <double>");
         System.out.println("\t\t-offsetX <int> -offsetY <int>");
+        System.out.println("\t\t-threads <int>");
+        System.out.println("\t\t-raw_mosaics");
         System.out.println("");
         System.out.println("\t-assets and -asset_dir may be repeated to form a search path.");
         System.out.println("\t-avoid_otimization prevents the conversion process from using " +
@@ -392,6 +413,10 @@ public class Main {
         System.out.println("\t-optimize undoes an -avoid_optimization earlier on the command line.");
         System.out.println("\t-debug includes debugging information to the generated binary file.");
         System.out.println("\t-show_mosaic  creates a GUI to show mosaic building");
+        System.out.println("\t-threads sets the number of threads used to make mosaics; "
+                + "0 means one per processor.  The default is 1.");
+        System.out.println("\t-raw_mosaics writes mosaics as GRIN raw images, which load without "
+                + "being decoded, instead of PNG images.");
 
         System.exit(0);
    }
@@ -67,4 +67,6 @@ public class CharImageInfo {
                          // Can be negative - think of a cursive, italic f
                          // that goes below the baseline and to the left.
     int width;
+    int mosaicIndex;     // Order in which chars were placed in the mosaic,
+                         // or -1 if the info file doesn't say
 }
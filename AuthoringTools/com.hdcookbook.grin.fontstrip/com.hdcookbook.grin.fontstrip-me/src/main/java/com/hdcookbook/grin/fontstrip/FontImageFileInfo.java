@@ -53,15 +53,14 @@
  */
 
 package com.hdcookbook.grin.fontstrip;
-
 import com.hdcookbook.grin.util.AssetFinder;
-import com.hdcookbook.grin.util.ManagedImage;
+import com.hdcookbook.grin.util.Debug;
 import java.awt.Rectangle;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.Hashtable;
 
 public class FontImageFileInfo {
     static  String[]  fileNames = null;
@@ -71,14 +70,45 @@ public class FontImageFileInfo {
     // Version number for the font image info file.
     // The value should match the version number in 
     // com.hdcookbook.grin.fontstrip.FontImageMosaic class.
-    private final static int VERSION_NUMBER = 2;
+    private final static int VERSION_NUMBER = 4;
+
+    // Version 2 files have no kerning table, and don't give the order
+    // of the characters in the mosaic, so runs of characters aren't
+    // drawn together.  We still read them.
+    private final static int OLDEST_VERSION_NUMBER = 2;
+
+    // The most glyph runs we keep for one font.  When the cache fills
+    // up, we just start over.
+    private final static int MAX_GLYPH_RUNS = 64;
+
+    // Stand-in for characters that aren't in the font strip
+    final static CharImageInfo EMPTY_CHAR = new CharImageInfo();
+    static {
+        EMPTY_CHAR.charRect = new Rectangle(0, 0, 0, 0);
+        EMPTY_CHAR.mosaicIndex = -1;
+    }
     
     int maxLeading;
     int maxAscent;
     int maxDescent;
         // maxAscent and maxDescent are based on the bound rects of
         // the characters during font construction.
-    HashMap charMap;
+
+    char[] chars;
+    CharImageInfo[] charInfos;
+        // Sorted by character, so a character can be found
+        // without allocating a Character
+
+    int[] kernPairs;
+        // (first << 16) | second, sorted
+    int[] kernValues;
+
+    boolean packed;
+        // True if consecutive characters in the mosaic are placed as they
+        // would be drawn, so that a run of them can be drawn with one
+        // call.  See GlyphRun.
+
+    private Hashtable glyphRuns = new Hashtable();
     
     public static void initFontImageFileInfo(String infoFile) 
             throws IOException {
@@ -92,7 +122,7 @@ public class FontImageFileInfo {
         DataInputStream dis = new DataInputStream(
                 new BufferedInputStream(u.openStream()));
         int version = dis.readInt();
-        if (version != VERSION_NUMBER) {
+        if (version != OLDEST_VERSION_NUMBER && version != VERSION_NUMBER) {
             throw new IOException("FontStrip image info file version mismatch, expects " 
                     + VERSION_NUMBER + ", got " + version);
         }
@@ -106,8 +136,9 @@ public class FontImageFileInfo {
             info.maxLeading = dis.readInt();
             info.maxAscent = dis.readInt();
             info.maxDescent = dis.readInt();
-            info.charMap = new HashMap();
             int count = dis.readInt();
+            info.chars = new char[count];
+            info.charInfos = new CharImageInfo[count];
             for (int j = 0; j < count; j++) {
                 CharImageInfo charImage = new CharImageInfo();
                 charImage.ch = dis.readChar();
@@ -119,8 +150,42 @@ public class FontImageFileInfo {
                 charImage.ascent = dis.readInt();
                 charImage.xOffset = dis.readInt();
                 charImage.width = dis.readInt();
+                if (version == VERSION_NUMBER) {
+                    charImage.mosaicIndex = dis.readInt();
+                } else {
+                    charImage.mosaicIndex = -1;
+                }
 
-                info.charMap.put(new Character(charImage.ch), charImage);
+                // Insertion sort; the info file is only read once.
+                int k = j;
+                while (k > 0 && info.chars[k - 1] > charImage.ch) {
+                    info.chars[k] = info.chars[k - 1];
+                    info.charInfos[k] = info.charInfos[k - 1];
+                    k--;
+                }
+                info.chars[k] = charImage.ch;
+                info.charInfos[k] = charImage;
+            }
+            info.packed = version == VERSION_NUMBER;
+            if (version == VERSION_NUMBER) {
+                count = dis.readInt();
+                info.kernPairs = new int[count];
+                info.kernValues = new int[count];
+                for (int j = 0; j < count; j++) {
+                    int pair = (dis.readChar() << 16) | dis.readChar();
+                    int value = dis.readInt();
+                    int k = j;
+                    while (k > 0 && info.kernPairs[k - 1] > pair) {
+                        info.kernPairs[k] = info.kernPairs[k - 1];
+                        info.kernValues[k] = info.kernValues[k - 1];
+                        k--;
+                    }
+                    info.kernPairs[k] = pair;
+                    info.kernValues[k] = value;
+                }
+            } else {
+                info.kernPairs = new int[0];
+                info.kernValues = new int[0];
             }
             fileInfos[i] = info;
         }
@@ -134,4 +199,66 @@ public class FontImageFileInfo {
         }
         return null;
     }
+
+    //
+    // Get the info for ch, or null if it's not in this font strip
+    //
+    CharImageInfo getCharInfo(char ch) {
+        int lo = 0;
+        int hi = chars.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char c = chars[mid];
+            if (c < ch) {
+                lo = mid + 1;
+            } else if (c > ch) {
+                hi = mid - 1;
+            } else {
+                return charInfos[mid];
+            }
+        }
+        return null;
+    }
+
+    //
+    // Get the adjustment to the advance of first when it's followed
+    // by second.  This is usually zero or negative.
+    //
+    int getKerning(char first, char second) {
+        int pair = (first << 16) | second;
+        int lo = 0;
+        int hi = kernPairs.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int p = kernPairs[mid];
+            if (p < pair) {
+                lo = mid + 1;
+            } else if (p > pair) {
+                hi = mid - 1;
+            } else {
+                return kernValues[mid];
+            }
+        }
+        return 0;
+    }
+
+    //
+    // Get the baked form of string.  Runs are shared by all features that
+    // use this font, so a string that was shown before (like the
+    // previous value of a counter) doesn't need to be baked again.
+    //
+    GlyphRun getGlyphRun(String string, int hspace) {
+        GlyphRun run = (GlyphRun) glyphRuns.get(string);
+        if (run == null || run.hspace != hspace) {
+            run = new GlyphRun(this, string, hspace);
+            if (glyphRuns.size() >= MAX_GLYPH_RUNS) {
+                if (Debug.LEVEL > 1) {
+                    Debug.println("FontStrip glyph run cache full, clearing.");
+                }
+                glyphRuns.clear();
+            }
+            glyphRuns.put(string, run);
+        }
+        return run;
+    }
 }
@@ -69,7 +69,6 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
-import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.HashMap;
 
@@ -132,7 +131,7 @@ public class FontStripText extends Feature implements Node, SetupClient {
     protected int xArg;
     protected int yArg;
     protected String[] strings;
-    private CharImageInfo[][] bakedStrings = null;
+    private GlyphRun[] bakedStrings = null;
     protected String fontImageFileName;
     private FontImageFileInfo fontInfo;
     
@@ -173,7 +172,10 @@ public class FontStripText extends Feature implements Node, SetupClient {
         result.xArg = xArg;
         result.yArg = yArg;
         result.strings = strings;
-        result.bakedStrings = bakedStrings;
+        result.bakedStrings = new GlyphRun[bakedStrings.length];
+        System.arraycopy(bakedStrings, 0, result.bakedStrings, 0,
+                         bakedStrings.length);
+            // A copy, since bakeStrings() can reuse the array
         result.fontImageFileName = fontImageFileName;
         result.fontInfo = fontInfo;
         result.hspace = hspace;
@@ -241,9 +243,11 @@ public class FontStripText extends Feature implements Node, SetupClient {
     private void bakeStrings() {
         changed = true;
         
-        bakedStrings = new CharImageInfo[strings.length][];
+        if (bakedStrings == null || bakedStrings.length != strings.length) {
+            bakedStrings = new GlyphRun[strings.length];
+        }
         for (int i = 0; i < strings.length; i++) {
-            bakedStrings[i] = bakeString(strings[i]);
+            bakedStrings[i] = fontInfo.getGlyphRun(strings[i], hspace);
         }
 
         // We know the character size without loading the actual font image,
@@ -252,12 +256,7 @@ public class FontStripText extends Feature implements Node, SetupClient {
         int width = 0;
         if (a == MIDDLE || a == RIGHT) {
             for (int i = 0; i < strings.length; i++) {
-                CharImageInfo[] string = bakedStrings[i];
-                int w = 0;
-                for (int j=0; j < string.length; j++) {
-                    CharImageInfo charInfo = string[j];
-                    w += charInfo.width + hspace;
-                }
+                int w = bakedStrings[i].advance;
                 if (w > width) {
                     width = w;
                 }
@@ -296,31 +295,22 @@ public class FontStripText extends Feature implements Node, SetupClient {
         int drawMaxX = alignedX;        // One pixel to right of pixel drawn
         int drawMaxY = alignedY;        // One pixel below pixel drawn
 
-        int thisY = alignedY;
+        int thisY = alignedY + fontInfo.maxAscent;     // baseline
         for (int i = 0; i < strings.length; i++) {
-            CharImageInfo[] string = bakedStrings[i];
-            int thisX = alignedX;
-            for (int j=0; j < string.length; j++) {
-                CharImageInfo charInfo = string[j];
-                if (charInfo.charRect.height != 0) {
-                    int y = thisY + fontInfo.maxAscent - charInfo.ascent;
-                    if (y < drawY) {
-                        drawY = y;
-                    }
-                    int x = thisX + charInfo.xOffset;
-                    if (x < drawX) {    // xOffset can be negative
-                        drawX = x;
-                    }
-                    y += charInfo.charRect.height;
-                    if (y > drawMaxY) {
-                        drawMaxY = y;
-                    }
-                    x += charInfo.charRect.width;
-                    if (x > drawMaxX) {
-                        drawMaxX = x;
-                    }
+            GlyphRun run = bakedStrings[i];
+            if (run.hasPixels) {
+                if (alignedX + run.minX < drawX) {  // xOffset can be negative
+                    drawX = alignedX + run.minX;
+                }
+                if (thisY + run.minY < drawY) {
+                    drawY = thisY + run.minY;
+                }
+                if (alignedX + run.maxX > drawMaxX) {
+                    drawMaxX = alignedX + run.maxX;
+                }
+                if (thisY + run.maxY > drawMaxY) {
+                    drawMaxY = thisY + run.maxY;
                 }
-                thisX += charInfo.width + hspace;
             }
             thisY += getLineHeight();
         }
@@ -432,7 +422,7 @@ public class FontStripText extends Feature implements Node, SetupClient {
             gr.setComposite(AlphaComposite.SrcOver);        
         }
         for (int i = 0; i < bakedStrings.length; i++) {
-            drawString(gr, bakedStrings[i], alignedX, y2);
+            bakedStrings[i].draw(gr, fontImage, alignedX, y2, show.component);
             y2 += getLineHeight();
         }
         if (!keepAlpha) {
@@ -463,46 +453,6 @@ public class FontStripText extends Feature implements Node, SetupClient {
     }
 
 
-    // Get the character info for the given string
-    private CharImageInfo[] bakeString(String string) {
-        CharImageInfo[] infos = new CharImageInfo[string.length()];
-        
-        for (int i = 0; i < string.length(); i++) {
-            Character ch = new Character(string.charAt(i));
-            CharImageInfo charInfo = (CharImageInfo) fontInfo.charMap.get(ch);
-            if (charInfo == null) {
-               if (Debug.LEVEL > 0) {
-		   Debug.println("No charInfo found for " + ch + " in " 
-			   + fontImageFileName);
-               }
-               charInfo = new CharImageInfo();
-               charInfo.ascent = 0;
-               charInfo.xOffset = 0;
-               charInfo.width = 0;
-               charInfo.charRect = new Rectangle(0,0,0,0);       
-               fontInfo.charMap.put(ch, charInfo);
-           }
-           infos[i] = charInfo;
-        }
-        return infos;
-    }
-
-   
-    //
-    // Draw string with starting at x with baseline at y
-    //
-    private void drawString(Graphics2D g2, CharImageInfo[] string, int x, int y)
-    {
-        for (int i = 0; i < string.length; i++) {
-            CharImageInfo charInfo = string[i];
-            fontImage.drawClipped(g2,
-                    x + charInfo.xOffset, y - charInfo.ascent,
-                    charInfo.charRect,
-                    show.component);            
-            x += charInfo.width + hspace;
-        }        
-    }
-    
     /**
      * Get the text that's being displayed.
      **/
@@ -526,24 +476,14 @@ public class FontStripText extends Feature implements Node, SetupClient {
      * The actual bounding
      * box might be a bit larger, if the character's bounding box extends
      * to the left or to the right of the character starting position plus
-     * its width.
+     * its width.  Kerning between characters is included, if the
+     * font strip has a kerning table.
      **/
     public int getStringWidth(String string) {
-        int width = 0;
-        int len = string.length();
-        if (len > 0) {
-            for (int i = 0; i < len; i++) {
-                Character ch = new Character(string.charAt(i));
-                CharImageInfo charInfo 
-                    = (CharImageInfo) fontInfo.charMap.get(ch);
-                if (charInfo != null) {
-                    width += charInfo.width;
-                }
-                width += hspace;
-            }
-            width -= hspace;
+        if (string.length() == 0) {
+            return 0;
         }
-        return width;
+        return fontInfo.getGlyphRun(string, hspace).advance - hspace;
     }
 
 
@@ -0,0 +1,184 @@
+/*  
+ * Copyright (c) 2008, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.fontstrip;
+import com.hdcookbook.grin.util.Debug;
+import com.hdcookbook.grin.util.ManagedImage;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * The baked form of a string in one font strip:  where each character
+ * is drawn, with kerning applied, and which characters can be drawn 
+ * together.  When the image of a character directly follows the image of 
+ * the character before it in the mosaic, with the same spacing they have
+ * on the screen, they're drawn with one call, using the area of the mosaic
+ * that covers both.
+ * <p>
+ * A GlyphRun doesn't change once it's made, so it's shared by every
+ * FontStripText that shows the same string in the same font.
+ */
+class GlyphRun {
+
+    String string;
+    int hspace;
+
+    int advance;        // Distance from the start of the string to where
+                        // the next character would go, including hspace
+                        // after the last character
+    boolean hasPixels;  // False if nothing is drawn, e.g. for " "
+    int minX;           // Bounds of the pixels drawn, relative to the
+    int minY;           // start of the string and the baseline.  maxX and
+    int maxX;           // maxY are one pixel past what's drawn.
+    int maxY;
+
+    int numBatches;     // Number of drawClipped() calls
+    private Rectangle[] batchRects;     // Area of the mosaic
+    private int[] batchX;               // Where it's drawn, relative
+    private int[] batchY;               // to start and baseline.  While
+                                        // baking, the offset to the mosaic.
+
+    GlyphRun(FontImageFileInfo font, String string, int hspace) {
+        this.string = string;
+        this.hspace = hspace;
+        int len = string.length();
+        batchRects = new Rectangle[len];
+        batchX = new int[len];
+        batchY = new int[len];
+        int offX = 0;   // Screen position minus mosaic position
+        int offY = 0;   // for the current batch
+        CharImageInfo last = null;      // Last character drawn
+        int pen = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = string.charAt(i);
+            CharImageInfo info = font.getCharInfo(ch);
+            if (info == null) {
+                if (Debug.LEVEL > 0) {
+                    Debug.println("No charInfo found for " + ch);
+                }
+                info = FontImageFileInfo.EMPTY_CHAR;
+            }
+            Rectangle r = info.charRect;
+            if (r.width > 0 && r.height > 0) {
+                int x = pen + info.xOffset;
+                int y = -info.ascent;
+                if (!hasPixels) {
+                    hasPixels = true;
+                    minX = x;
+                    minY = y;
+                    maxX = x + r.width;
+                    maxY = y + r.height;
+                } else {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x + r.width);
+                    maxY = Math.max(maxY, y + r.height);
+                }
+                // In a packed mosaic, a character placed right after
+                // the last one with the same screen-to-mosaic offset is 
+                // in the same row, and the space between them is 
+                // transparent.  Other characters might sit between ones 
+                // that aren't placed one after the other.
+                if (last != null && font.packed
+                    && info.mosaicIndex == last.mosaicIndex + 1
+                    && x - r.x == offX && y - r.y == offY) 
+                {
+                    Rectangle b = batchRects[numBatches - 1];
+                    if (b == last.charRect) {
+                        b = new Rectangle(b);   // Don't change the font's
+                        batchRects[numBatches - 1] = b;
+                    }
+                    b.add(r);
+                } else {
+                    offX = x - r.x;
+                    offY = y - r.y;
+                    batchRects[numBatches] = r;
+                    batchX[numBatches] = offX;
+                    batchY[numBatches] = offY;
+                    numBatches++;
+                }
+                last = info;
+            } else {
+                last = null;    // Its gap isn't in the mosaic
+            }
+            pen += info.width + hspace;
+            if (i + 1 < len) {
+                pen += font.getKerning(ch, string.charAt(i + 1));
+            }
+        }
+        advance = pen;
+        for (int i = 0; i < numBatches; i++) {
+            batchX[i] += batchRects[i].x;
+            batchY[i] += batchRects[i].y;
+        }
+    }
+
+    //
+    // Draw this run with its start at x and its baseline at y
+    //
+    void draw(Graphics2D g, ManagedImage image, int x, int y, Component comp) {
+        for (int i = 0; i < numBatches; i++) {
+            image.drawClipped(g, x + batchX[i], y + batchY[i], batchRects[i],
+                              comp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    public String toString() {
+        return "GlyphRun(\"" + string + "\", " + numBatches + " batches)";
+    }
+}
@@ -0,0 +1,147 @@
+package com.hdcookbook.grin.fontstrip;
+
+import com.hdcookbook.grin.util.AssetFinder;
+import com.hdcookbook.grin.util.ImageManager;
+import com.hdcookbook.grin.util.ManagedImage;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.imageio.ImageIO;
+
+/**
+ * This file has a stand-alone test that checks that drawing a GlyphRun
+ * gives the same pixels as drawing each of its characters by itself.  It
+ * makes a monospaced font strip of the digits, laid out the way the
+ * font strip tool lays out a row, with each digit in its own color,
+ * followed by a space that has no pixels.  Failure is indicated by a
+ * RuntimeException.
+ **/
+
+public class GlyphRunTest {
+
+    private final static int ADVANCE = 10;
+    private final static int WIDTH = 100;
+    private final static int HEIGHT = 20;
+
+    private Component component = new Component() { };
+    private FontImageFileInfo font;
+    private ManagedImage mosaic;
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    public GlyphRunTest() throws Exception {
+        String chars = "0123456789 ";
+        font = new FontImageFileInfo();
+        font.packed = true;
+        font.chars = new char[chars.length()];
+        font.charInfos = new CharImageInfo[chars.length()];
+        font.kernPairs = new int[0];
+        font.kernValues = new int[0];
+        BufferedImage im = new BufferedImage(ADVANCE * chars.length(), 12,
+                                             BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = im.createGraphics();
+        for (int i = 0; i < chars.length(); i++) {
+            CharImageInfo info = new CharImageInfo();
+            info.ch = chars.charAt(i);
+            if (info.ch == ' ') {
+                info.charRect = new Rectangle(ADVANCE * i, 0, 0, 0);
+            } else {
+                info.charRect = new Rectangle(ADVANCE * i + 1, 0, 8, 12);
+                g.setColor(new Color(25 * i, 255 - 25 * i, 128));
+                g.fill(info.charRect);
+            }
+            info.ascent = 10;
+            info.xOffset = 1;
+            info.width = ADVANCE;
+            info.mosaicIndex = i;
+            // Sorted by character, like FontImageFileInfo keeps them
+            int k = i;
+            while (k > 0 && font.chars[k - 1] > info.ch) {
+                font.chars[k] = font.chars[k - 1];
+                font.charInfos[k] = font.charInfos[k - 1];
+                k--;
+            }
+            font.chars[k] = info.ch;
+            font.charInfos[k] = info;
+        }
+        g.dispose();
+
+        File dir = File.createTempFile("glyphs", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File f = new File(dir, "digits.png");
+        ImageIO.write(im, "png", f);
+        f.deleteOnExit();
+        AssetFinder.setSearchPath(null, new File[] { dir });
+        mosaic = ImageManager.getImage("digits.png");
+        mosaic.prepare();
+        mosaic.load(component);
+        check(mosaic.isLoaded(), "Mosaic not loaded");
+    }
+
+    //
+    // Check that drawing the run for s gives the same pixels as drawing
+    // each character by itself, and return the run.
+    //
+    private GlyphRun checkRun(String s, int hspace) {
+        GlyphRun run = new GlyphRun(font, s, hspace);
+        BufferedImage expected = new BufferedImage(WIDTH, HEIGHT,
+                                                  BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        int pen = 2;
+        for (int i = 0; i < s.length(); i++) {
+            CharImageInfo info = font.getCharInfo(s.charAt(i));
+            Rectangle r = info.charRect;
+            if (r.width > 0) {
+                mosaic.drawClipped(g, pen + info.xOffset, 15 - info.ascent, r,
+                                   component);
+            }
+            pen += info.width + hspace;
+        }
+        g.dispose();
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT,
+                                                 BufferedImage.TYPE_INT_ARGB);
+        g = actual.createGraphics();
+        run.draw(g, mosaic, 2, 15, component);
+        g.dispose();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                check(expected.getRGB(x, y) == actual.getRGB(x, y),
+                      run + " with hspace " + hspace + " differs at "
+                      + x + ", " + y);
+            }
+        }
+        check(run.advance == pen - 2,
+              run + " has advance " + run.advance + ", not " + (pen - 2));
+        return run;
+    }
+
+    public void testRuns() {
+        GlyphRun run = checkRun("123", 0);
+        check(run.numBatches == 1, run + " isn't drawn with one call");
+        run = checkRun("1239", 0);
+        check(run.numBatches == 2, run + " isn't drawn with two calls");
+        checkRun("321", 0);
+        checkRun("123", 3);
+    }
+
+    public void testGaps() {
+        // The 2 is between the 1 and the 3 in the mosaic, with the
+        // same spacing as the space in the string.
+        GlyphRun run = checkRun("1 3", 0);
+        check(run.numBatches == 2, run + " isn't drawn with two calls");
+        run = checkRun("13", ADVANCE);
+        check(run.numBatches == 2, run + " isn't drawn with two calls");
+        checkRun("9 ", 0);
+        checkRun(" 1  ", 0);
+    }
+}
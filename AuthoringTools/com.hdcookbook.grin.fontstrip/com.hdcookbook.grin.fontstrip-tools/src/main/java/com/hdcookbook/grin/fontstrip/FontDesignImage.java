@@ -60,6 +60,7 @@ import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.font.FontRenderContext;
+import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
 import java.awt.image.BufferedImage;
 import java.io.BufferedOutputStream;
@@ -68,6 +69,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
@@ -166,6 +168,39 @@ public class FontDesignImage {
         out.close();
     }
     
+    /**
+     * Measures how far the font's kerning moves each pair of characters
+     * in this file together or apart.  Pairs that the font doesn't
+     * kern are left out.
+     *
+     * @param scaleX    The horizontal scale of the final image
+     * @return a map from (first << 16) | second to the adjustment in pixels
+     */
+    public HashMap<Integer, Integer> getKerningPairs(double scaleX) {
+        HashMap<Integer, Integer> result = new HashMap<Integer, Integer>();
+        Map<TextAttribute, Object> attributes 
+                = new HashMap<TextAttribute, Object>();
+        attributes.put(TextAttribute.KERNING, TextAttribute.KERNING_ON);
+        Font font = charInfo.getFont().deriveFont(attributes);
+        FontRenderContext frc = charInfo.frc;
+        float[] advances = new float[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            advances[i] = new TextLayout("" + chars[i], font, frc).getAdvance();
+        }
+        for (int i = 0; i < chars.length; i++) {
+            for (int j = 0; j < chars.length; j++) {
+                TextLayout pair 
+                    = new TextLayout("" + chars[i] + chars[j], font, frc);
+                float diff = pair.getAdvance() - advances[i] - advances[j];
+                int kern = (int) Math.round(scaleX * diff);
+                if (kern != 0) {
+                    result.put((chars[i] << 16) | chars[j], kern);
+                }
+            }
+        }
+        return result;
+    }
+    
     private void drawCharacters() {
         
         Graphics2D g2 = image.createGraphics();
@@ -70,6 +70,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
@@ -82,6 +84,11 @@ import javax.imageio.stream.ImageInputStream;
  * The image file generated by this class is meant to be loaded onto a disc 
  * and used at xlet runtime together with "fontstrp.inf", which is an 
  * information file that describes all the font mosaics.
+ * <p>
+ * Each row of the mosaic holds characters from one FontDesignImage, in 
+ * order, placed on a common baseline and spaced the way they'd be drawn
+ * in a string.  That lets the runtime draw a run of consecutive
+ * characters, like "123", with one drawImage() call.
  */
 public class FontImageMosaic {
     
@@ -90,7 +97,7 @@ public class FontImageMosaic {
     // Version number to be recorded the font image info file.
     // The value should match the version number in 
     // com.hdcookbook.grin.fontstrip.FontImageFileInfo class.
-    final static int VERSION_NUMBER = 2;
+    final static int VERSION_NUMBER = 4;
     
     BufferedImage image;
     int currPixelsX = 0;
@@ -99,6 +106,8 @@ public class FontImageMosaic {
     int maxPixelsY = 0;
     int maxWidthInColumn = 0;
     int maxHeightInRow = 0;
+    int penX = 0;       // where the next char would be drawn in this row
+    int numPlaced = 0;  // number of chars placed in the mosaic
 
     double scaleX;
     double scaleY;
@@ -109,6 +118,8 @@ public class FontImageMosaic {
     Color BACKGROUND_COLOR = new Color(0,0,0,0); // BG for the final image
     
     HashMap charInfo = new HashMap();
+    boolean kerning = false;
+    TreeMap<Integer, Integer> kerningPairs = new TreeMap<Integer, Integer>();
     int     maxLeading   = 0;    
     int     maxBoundAscent = 0;
     int     maxBoundDescent = 0;
@@ -133,6 +144,18 @@ public class FontImageMosaic {
                               fontDesignImage.guidelineColor,
                               fontDesignImage.pixRectColor} );
         gatherFontImage(fontDesignImage);
+        if (kerning) {
+            kerningPairs.putAll(fontDesignImage.getKerningPairs(scaleX));
+        }
+    }
+
+    /**
+     * Sets whether or not a kerning table is measured from the fonts and
+     * written to the info file.  Without one, characters are spaced by 
+     * their advance alone.
+     */
+    public void setKerning(boolean kerning) {
+        this.kerning = kerning;
     }
 
     public void setOutputFile(File outputFile) {
@@ -186,6 +209,7 @@ public class FontImageMosaic {
            dout.writeInt(info.ascent);
            dout.writeInt(info.xOffset);
            dout.writeInt(info.width);
+           dout.writeInt(info.mosaicIndex);
            count++;
        }
        dout.flush();
@@ -194,6 +218,14 @@ public class FontImageMosaic {
        byte[] output = baos.toByteArray();
        infoOut.writeInt(count);
        infoOut.write(output);
+
+       infoOut.writeInt(kerningPairs.size());
+       for (Map.Entry<Integer, Integer> e : kerningPairs.entrySet()) {
+           int pair = e.getKey();
+           infoOut.writeChar(pair >>> 16);
+           infoOut.writeChar(pair & 0xffff);
+           infoOut.writeInt(e.getValue());
+       }
     }
 
     /**
@@ -337,6 +369,11 @@ public class FontImageMosaic {
     {
         Graphics2D g2 = GraphicsEnvironment.getLocalGraphicsEnvironment().createGraphics(image);
         char[] chars = file.chars;
+        BufferedImage[] charImages = new BufferedImage[chars.length];
+        Rectangle[] subImageRects = new Rectangle[chars.length];
+        ImageMosaicCharInfo[] infos = new ImageMosaicCharInfo[chars.length];
+        int rowAscent = 1;      // At least 1, so each row's baseline is
+        int rowDescent = 0;     // below the one before it
         
         for (int i = 0; i < chars.length; i++) {
             char ch = chars[i];
@@ -355,8 +392,8 @@ public class FontImageMosaic {
             BufferedImage charImage         = readImage(regionToScan);
             // Filter out uncessesary region.
             Rectangle     subImageRect      = filterPixelRegion(charImage);
-            // Write out the refined char image to the BufferedImage.
-            Rectangle     imageRectInMosaic = writeSubImage(g2, charImage, subImageRect); 
+            charImages[i] = charImage;
+            subImageRects[i] = subImageRect;
             
             // Now let's figure out the font metrics info in relations to the 
             // char image that got written out.
@@ -370,14 +407,20 @@ public class FontImageMosaic {
             }
             int width = boundRect.width;
 
-            // Write out the char position in the final font image mosaic,
-            // and the asent/boundRect info for this char.
+            // Record the ascent/boundRect info for this char.  The
+            // position in the mosaic is filled in below.
             ImageMosaicCharInfo info = new ImageMosaicCharInfo(ch);
-            info.imageInMosaic = imageRectInMosaic;
             info.ascent = (int) Math.round(scaleY * ascent);
             info.width = (int) Math.round(scaleX * width);
             info.xOffset = (int) Math.round(xOffset);
             charInfo.put(ch, info);
+            infos[i] = info;
+
+            int height = (int) Math.round(subImageRect.height * scaleY);
+            if (height > 0) {
+                rowAscent = Math.max(rowAscent, info.ascent);
+                rowDescent = Math.max(rowDescent, height - info.ascent);
+            }
             
             // Character's bounding rect and ascent info can be used
             // to calculate the char's ascent, descent and advance.
@@ -392,6 +435,19 @@ public class FontImageMosaic {
             maxBoundAscent = Math.max(maxBoundAscent, boundAscent);
             maxBoundDescent = Math.max(maxBoundDescent, boundDescent);
         }
+
+        // Now that the row height is known, write out the refined char 
+        // images on a common baseline.  Each FontDesignImage starts a 
+        // new row, so that rows never share a baseline.
+        if (currPixelsX > 0) {
+            nextRow();
+        }
+        for (int i = 0; i < chars.length; i++) {
+            infos[i].imageInMosaic = writeSubImage(g2, charImages[i], 
+                                                   subImageRects[i], infos[i],
+                                                   rowAscent, rowDescent);
+        }
+        g2.dispose();
     }
     
     private BufferedImage getCurrentImage() {
@@ -404,24 +460,35 @@ public class FontImageMosaic {
         return image.getSubimage(0,0,width,height);
     }
 
+    private void nextRow() {
+        if (maxWidthInColumn < currPixelsX) {
+            maxWidthInColumn = currPixelsX;
+        }
+        currPixelsX = 0;
+        currPixelsY += maxHeightInRow;
+        maxHeightInRow = 0;
+        penX = 0;
+    }
+
     private Rectangle writeSubImage(Graphics2D g2, BufferedImage charImage, 
-                                    Rectangle subImageRect) 
+                                    Rectangle subImageRect,
+                                    ImageMosaicCharInfo info,
+                                    int rowAscent, int rowDescent)
                throws IOException 
     {
         int width = (int) Math.round(subImageRect.width * scaleX);
         int height = (int) Math.round(subImageRect.height * scaleY);
-        if (currPixelsX + width >= maxPixelsX) { 
-            // calculating the location of the char image in the mosaic.
-            if (maxWidthInColumn < currPixelsX) {
-                maxWidthInColumn = currPixelsX;
-            }
-            currPixelsX = 0;
-            currPixelsY += maxHeightInRow;
-            maxHeightInRow = 0;
+
+        // Put the char where it would be drawn after the previous one,
+        // unless that would overlap the previous image.
+        int x = Math.max(currPixelsX, penX + info.xOffset);
+        if (x + width >= maxPixelsX) { 
+            nextRow();
+            x = Math.max(0, info.xOffset);
         }
+        int y = currPixelsY + rowAscent - info.ascent;
         
-        Rectangle drawRegion 
-            = new Rectangle(currPixelsX, currPixelsY, width, height);
+        Rectangle drawRegion = new Rectangle(x, y, width, height);
         
         if (!drawRegion.isEmpty()) {
             g2.drawImage(charImage, drawRegion.x, drawRegion.y,
@@ -432,10 +499,12 @@ public class FontImageMosaic {
                     subImageRect.height + subImageRect.y, null);
         }
    
-        if (maxHeightInRow < height) {
-            maxHeightInRow = height;
+        if (maxHeightInRow < rowAscent + rowDescent) {
+            maxHeightInRow = rowAscent + rowDescent;
         }
-        currPixelsX += width;
+        currPixelsX = x + width;
+        penX = x - info.xOffset + info.width;
+        info.mosaicIndex = numPlaced++;
         
         return drawRegion;
     }
@@ -451,6 +520,7 @@ public class FontImageMosaic {
         int ascent;     // True ascent of this character in image
         int xOffset;    // Offset of where the font image should be drawn
         int width;
+        int mosaicIndex; // Order in which it was placed in the mosaic
 
         public ImageMosaicCharInfo(char ch) {
             this.ch = ch;
@@ -100,6 +100,7 @@ public class FontStripImageGenerator {
     InputData data;
     private double scaleX;
     private double scaleY;
+    private boolean kerning = false;
     
     public FontStripImageGenerator(String configFileName, 
                                    double scaleX, double scaleY, 
@@ -136,6 +137,13 @@ public class FontStripImageGenerator {
         
     }
     
+    /**
+     * Sets whether or not a kerning table is written to the info file.
+     */
+    public void setKerning(boolean kerning) {
+        this.kerning = kerning;
+    }
+    
     public void generateImages(boolean designOnly) 
        throws IOException {
         
@@ -196,6 +204,7 @@ public class FontStripImageGenerator {
                     imageMosaic = new FontImageMosaic(
                                         FontImageMosaic.DEFAULT_WIDTH, 3000, 
                                         scaleX, scaleY);
+                    imageMosaic.setKerning(kerning);
                     imageMosaicMap.put(imageName, imageMosaic);
                 }
                 FontDesignImage fontDesignImage = images[i];
@@ -76,6 +76,7 @@ public class Main {
         String configFile = null;
         String outputDir  = null;
         boolean designOnly = false;
+        boolean kerning = false;
         
         while (index < args.length) {
             if ("-asset_dir".equals(args[index])) {
@@ -111,6 +112,8 @@ public class Main {
                 configFile = args[index];
             } else if ("-design_only".equals(args[index])) {
                 designOnly = true;
+            } else if ("-kerning".equals(args[index])) {
+                kerning = true;
             } else {
                 usage();
             }
@@ -141,6 +144,7 @@ public class Main {
         FontStripImageGenerator generator 
                 = new FontStripImageGenerator(configFile, scaleX, scaleY,
                                               assetDirs, outputDir);
+        generator.setKerning(kerning);
         
         try {
             generator.generateImages(designOnly);
@@ -178,11 +182,14 @@ public class Main {
         System.out.println("\t\t-config <a configuration file name>");
         System.out.println("\t\t-out <output_dir>");     
         System.out.println("\t\t-design_only");   
+        System.out.println("\t\t-kerning");   
         System.out.println("\t\t-scaleX <double> -scaleY <double>");   
         System.out.println("");
         System.out.println("\t-asset_dir may be repeated to form a search path.");
         System.out.println("\tWith -design_only argument, the tool will only generate" +
                 "intermediate font images for editing and not the final fontstrip images for runtime.");
+        System.out.println("\tWith -kerning argument, the tool measures the font's kerning" +
+                " between each pair of characters and records it in the information file.");
         
         System.exit(1);
    }
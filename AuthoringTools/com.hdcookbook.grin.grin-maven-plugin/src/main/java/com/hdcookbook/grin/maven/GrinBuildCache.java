@@ -0,0 +1,161 @@
+package com.hdcookbook.grin.maven;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import com.hdcookbook.grin.mosaic.MosaicCache;
+
+/**
+ * records what went into the outputs of the last GRIN compilation, so that outputs which are up to date can be skipped
+ * <p/>
+ * Each step of the compilation (parsing and writing one show, or making the mosaics) is recorded under a name, with
+ * the assets it read (as found by the AssetFinder), a digest of their contents and the files it wrote. A step is up to
+ * date when the configuration is unchanged, none of its assets changed and all of its files still exist.
+ *
+ * @author olli
+ */
+class GrinBuildCache {
+
+    private static final String CONFIGURATION = "configuration";
+
+    private final File file;
+
+    private final Properties previous = new Properties();
+
+    private final Properties current = new Properties();
+
+    private boolean configurationChanged = true;
+
+    GrinBuildCache(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+            try {
+                previous.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * sets a digest of everything besides assets which affects the outputs, e.g. the mojo's parameters and the version
+     * of the compiler, all steps are out of date if it differs from the last build's
+     */
+    void setConfiguration(String configuration) {
+        configurationChanged = !configuration.equals(previous.getProperty(CONFIGURATION));
+        current.setProperty(CONFIGURATION, configuration);
+    }
+
+    boolean isConfigurationChanged() {
+        return configurationChanged;
+    }
+
+    /**
+     * checks the given step against the assets and outputs recorded in the last build
+     */
+    boolean isUpToDate(String step) throws IOException {
+        return isUpToDate(step, split(previous.getProperty(step + ".assets")));
+    }
+
+    /**
+     * checks whether the given step would be up to date, if it read the given assets
+     */
+    boolean isUpToDate(String step, Collection<String> assets) throws IOException {
+        String key = previous.getProperty(step + ".key");
+        if (configurationChanged || key == null) {
+            return false;
+        }
+        for (String output : split(previous.getProperty(step + ".outputs"))) {
+            if (!new File(output).exists()) {
+                return false;
+            }
+        }
+        return key.equals(digest(assets));
+    }
+
+    /**
+     * keeps the last build's record of a step which was up to date
+     */
+    void keep(String step) {
+        copy(step + ".key");
+        copy(step + ".assets");
+        copy(step + ".outputs");
+    }
+
+    /**
+     * records a step which was (re-)done in this build
+     */
+    void record(String step, Collection<String> assets, Collection<File> outputs) throws IOException {
+        current.setProperty(step + ".key", digest(assets));
+        current.setProperty(step + ".assets", join(assets));
+        List<String> paths = new ArrayList<String>();
+        for (File output : outputs) {
+            paths.add(output.getAbsolutePath());
+        }
+        current.setProperty(step + ".outputs", join(paths));
+    }
+
+    void save() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            current.store(outputStream, "GRIN compiler build cache");
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void copy(String key) {
+        String value = previous.getProperty(key);
+        if (value != null) {
+            current.setProperty(key, value);
+        }
+    }
+
+    private static String digest(Collection<String> assets) throws IOException {
+        MessageDigest messageDigest = MosaicCache.newDigest();
+        for (String asset : assets) {
+            messageDigest.update(asset.getBytes("UTF-8"));
+            messageDigest.update((byte) 0);
+            messageDigest.update(MosaicCache.digest(asset).getBytes("UTF-8"));
+            messageDigest.update((byte) 0);
+        }
+        return MosaicCache.toHex(messageDigest.digest());
+    }
+
+    private static String join(Collection<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<String>();
+        if (value != null && value.length() > 0) {
+            for (String s : value.split("\n")) {
+                values.add(s);
+            }
+        }
+        return values;
+    }
+
+}
@@ -5,13 +5,20 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.hdcookbook.grin.SEShow;
 import com.hdcookbook.grin.io.ShowBuilder;
 import com.hdcookbook.grin.io.binary.GrinBinaryWriter;
 import com.hdcookbook.grin.io.text.ExtensionParser;
 import com.hdcookbook.grin.io.text.ShowParser;
+import com.hdcookbook.grin.mosaic.MosaicCache;
 import com.hdcookbook.grin.mosaic.MosaicMaker;
 import com.hdcookbook.grin.util.AssetFinder;
 import org.apache.maven.model.Resource;
@@ -107,6 +114,20 @@ public class GrinCompilerMojo extends AbstractMojo {
      */
     private Boolean optimize;
 
+    /**
+     * write mosaics as GRIN raw images, which load without being decoded, instead of PNG images
+     *
+     * @parameter default-value="false"
+     */
+    private Boolean rawMosaics;
+
+    /**
+     * number of threads used to make mosaics, 0 for one per available processor
+     *
+     * @parameter default-value="1"
+     */
+    private int threads;
+
     /**
      * @parameter default-value="100.0"
      */
@@ -127,6 +148,25 @@ public class GrinCompilerMojo extends AbstractMojo {
      */
     private int offsetY;
 
+    /**
+     * skip shows and mosaics whose assets, parameters and compiler didn't change since the last build
+     *
+     * @parameter default-value="true"
+     */
+    private Boolean incremental;
+
+    /**
+     * the directory where this mojo keeps what it needs to know for incremental builds
+     *
+     * @parameter default-value="${project.build.directory}/grin-cache"
+     */
+    private File cacheDirectory;
+
+    /**
+     * the assets read through the AssetFinder by the current step of the compilation, or null
+     */
+    private Set<String> assetsRead;
+
     public GrinCompilerMojo() {
     }
 
@@ -171,6 +211,18 @@ public class GrinCompilerMojo extends AbstractMojo {
             protected Font getFontHelper(String fontName, int style, int size) {
                 return new Font(fontName, style, size);
             }
+
+            /**
+             * records the asset for incremental builds and lets the AssetFinder search for it
+             *
+             * @see com.hdcookbook.grin.util.AssetFinder#tryURLHelper(String)
+             */
+            protected URL tryURLHelper(String path) {
+                if (assetsRead != null) {
+                    assetsRead.add(path);
+                }
+                return null;
+            }
         });
 
         if (assetDirectories == null) {
@@ -189,14 +241,28 @@ public class GrinCompilerMojo extends AbstractMojo {
 
         AssetFinder.setSearchPath(assets, directories);
 
-        SEShow[] shows = new SEShow[showFiles.length];
+        GrinBuildCache buildCache = null;
         try {
+            if (incremental) {
+                buildCache = new GrinBuildCache(new File(cacheDirectory, "grin-build.properties"));
+                buildCache.setConfiguration(getConfigurationDigest());
+                if (isUpToDate(buildCache)) {
+                    getLog().info("GRIN shows are up to date");
+                    return;
+                }
+            }
+
+            SEShow[] shows = new SEShow[showFiles.length];
+            List<Set<String>> showAssets = new ArrayList<Set<String>>();
             for (int i = 0; i < showFiles.length; i++) {
+                assetsRead = new LinkedHashSet<String>();
                 ShowBuilder builder = new ShowBuilder();
                 builder.setExtensionParser(extensionParser);
                 SEShow show = ShowParser.parseShow(showFiles[i], null, builder);
                 shows[i] = show;
+                showAssets.add(assetsRead);
             }
+            assetsRead = null;
 
             if (scaleX != 100.0 || scaleY != 100.0 || offsetX != 0 || offsetY != 0) {
                 scaleX = scaleX * 10;
@@ -207,13 +273,38 @@ public class GrinCompilerMojo extends AbstractMojo {
             }
 
             if (optimize) {
+                // The mosaics depend on the images of all shows, and MosaicCache takes care of the mosaics that didn't
+                // change, so they're always made when any show changed.
+                assetsRead = new LinkedHashSet<String>();
+                for (Set<String> s : showAssets) {
+                    assetsRead.addAll(s);
+                }
+                MosaicCache mosaicCache = null;
+                if (buildCache != null) {
+                    mosaicCache = new MosaicCache(new File(cacheDirectory, "mosaics.properties"));
+                }
                 MosaicMaker mosaicMaker = new MosaicMaker(shows, outputDirectory, !showMosaic);
+                mosaicMaker.setThreads(threads);
+                mosaicMaker.setRawImages(rawMosaics);
+                mosaicMaker.setCache(mosaicCache);
                 mosaicMaker.init();
                 mosaicMaker.makeMosaics();
                 mosaicMaker.destroy();
+                if (buildCache != null) {
+                    mosaicCache.save();
+                    buildCache.record("mosaics", assetsRead, mosaicMaker.getOutputFiles());
+                }
+                assetsRead = null;
             }
 
             for (int i = 0; i < showFiles.length; i++) {
+                String step = "show." + showFiles[i];
+                if (buildCache != null && buildCache.isUpToDate(step, showAssets.get(i))) {
+                    getLog().info("show '" + showFiles[i] + "' is up to date");
+                    buildCache.keep(step);
+                    continue;
+                }
+                List<File> outputs = new ArrayList<File>();
                 if (!shows[i].getNoShowFile()) {
                     String baseName = showFiles[i];
                     if (baseName.indexOf('.') != -1) {
@@ -228,16 +319,83 @@ public class GrinCompilerMojo extends AbstractMojo {
                     GrinBinaryWriter grinBinaryWriter = new GrinBinaryWriter(shows[i], debug);
                     grinBinaryWriter.writeShow(outputStream);
                     outputStream.close();
+                    outputs.add(file);
 
-                    writeCommandClass(grinBinaryWriter, shows[i]);
+                    File commandClass = writeCommandClass(grinBinaryWriter, shows[i]);
+                    if (commandClass != null) {
+                        outputs.add(commandClass);
+                    }
+                    File factoryClass = writeExtensionFactoryClass(grinBinaryWriter, shows[i]);
+                    if (factoryClass != null) {
+                        outputs.add(factoryClass);
+                    }
+                }
+                if (buildCache != null) {
+                    buildCache.record(step, showAssets.get(i), outputs);
                 }
             }
+
+            if (buildCache != null) {
+                buildCache.save();
+            }
         } catch (Exception e) {
             throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            assetsRead = null;
+        }
+    }
+
+    /**
+     * checks whether all shows and mosaics are up to date
+     */
+    protected boolean isUpToDate(GrinBuildCache buildCache) throws IOException {
+        if (buildCache.isConfigurationChanged()) {
+            return false;
+        }
+        for (String showFile : showFiles) {
+            if (!buildCache.isUpToDate("show." + showFile)) {
+                return false;
+            }
         }
+        return !optimize || buildCache.isUpToDate("mosaics");
     }
 
-    protected void writeCommandClass(GrinBinaryWriter grinBinaryWriter, SEShow show) throws IOException {
+    /**
+     * makes a digest of the parameters and of the classes which affect the outputs, other than assets
+     */
+    protected String getConfigurationDigest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(outputDirectory.getAbsolutePath()).append('\n');
+        sb.append(Arrays.toString(showFiles)).append('\n');
+        sb.append(Arrays.toString(assets)).append('\n');
+        sb.append(Arrays.toString(assetDirectories)).append('\n');
+        sb.append(forXlet).append(' ').append(debug).append(' ').append(optimize).append(' ').append(rawMosaics).append('\n');
+        sb.append(scaleX).append(' ').append(scaleY).append(' ').append(offsetX).append(' ').append(offsetY).append('\n');
+        appendVersion(sb, ShowParser.class);
+        if (extensionParser != null) {
+            appendVersion(sb, extensionParser.getClass());
+        }
+        return MosaicCache.toHex(MosaicCache.newDigest().digest(sb.toString().getBytes("UTF-8")));
+    }
+
+    /**
+     * appends the name of a class and the size and date of the jar file or directory it was loaded from
+     */
+    private void appendVersion(StringBuilder sb, Class<?> clazz) {
+        sb.append(clazz.getName());
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            URL location = codeSource.getLocation();
+            sb.append(' ').append(location);
+            if ("file".equals(location.getProtocol())) {
+                File file = new File(location.getPath());
+                sb.append(' ').append(file.length()).append(' ').append(file.lastModified());
+            }
+        }
+        sb.append('\n');
+    }
+
+    protected File writeCommandClass(GrinBinaryWriter grinBinaryWriter, SEShow show) throws IOException {
         String className = show.getShowCommands().getClassName();
         if (className != null) {
             // e.g. com.hdcookbook.bookmenu.menu.commands.MenuShowCommands
@@ -248,7 +406,25 @@ public class GrinCompilerMojo extends AbstractMojo {
             }
             getLog().info("writing file '" + file.getName() + "' to '" + file.getParent() + "'");
             grinBinaryWriter.writeCommandClass(show, forXlet, file);
+            return file;
+        }
+        return null;
+    }
+
+    protected File writeExtensionFactoryClass(GrinBinaryWriter grinBinaryWriter, SEShow show) throws IOException {
+        // e.g. com.hdcookbook.bookmenu.menu.commands.MenuShowCommandsFactory, next to the show commands class,
+        // or the class named by the show's extension_factory setting
+        String className = show.getExtensionFactoryName();
+        if (className == null) {
+            return null;
+        }
+        File file = new File(outputDirectory.getAbsolutePath().concat("/").concat(className.replace('.', '/')).concat(".java"));
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
         }
+        getLog().info("writing file '" + file.getName() + "' to '" + file.getParent() + "'");
+        grinBinaryWriter.writeExtensionFactoryClass(show, file);
+        return file;
     }
 
     protected void logConfiguration() {
@@ -263,10 +439,14 @@ public class GrinCompilerMojo extends AbstractMojo {
         getLog().info(" debug: " + debug);
         getLog().info(" show mosaic: " + showMosaic);
         getLog().info(" optimize: " + optimize);
+        getLog().info(" threads: " + threads);
+        getLog().info(" raw mosaics: " + rawMosaics);
         getLog().info(" scale x: " + scaleX);
         getLog().info(" scale x: " + scaleY);
         getLog().info(" offset x: " + offsetX);
         getLog().info(" offset y: " + offsetY);
+        getLog().info(" incremental: " + incremental);
+        getLog().info(" cache directory: " + cacheDirectory);
     }
 
 }
@@ -95,6 +95,7 @@ import com.hdcookbook.grin.commands.Command;
 import com.hdcookbook.grin.input.RCKeyEvent;
 import com.hdcookbook.grin.io.ShowBuilder;
 import com.hdcookbook.grin.io.binary.GrinBinaryReader;
+import com.hdcookbook.grin.io.binary.MappedGrinBinaryReader;
 import com.hdcookbook.grin.io.text.ShowParser;
 import com.hdcookbook.grin.util.AssetFinder;
 
@@ -299,10 +300,21 @@ public class GenericMain extends Frame implements AnimationContext {
                 p.parse();
                 rdr.close();
             } else {
-                bis = new BufferedInputStream(source.openStream());
-                GrinBinaryReader reader = new GrinBinaryReader(bis);
+                GrinBinaryReader reader;
+                File file = null;
+                if ("file".equals(source.getProtocol())) {
+                    file = new File(source.getPath());
+                }
+                if (file != null && file.exists()) {
+                    reader = new MappedGrinBinaryReader(file);
+                } else {
+                    bis = new BufferedInputStream(source.openStream());
+                    reader = new GrinBinaryReader(bis);
+                }
                 reader.readShow(show);
-                bis.close();
+                if (bis != null) {
+                    bis.close();
+                }
             }   
         } catch (IOException ex) {
             ex.printStackTrace();
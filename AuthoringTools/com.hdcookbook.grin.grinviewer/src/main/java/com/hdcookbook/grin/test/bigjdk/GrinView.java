@@ -60,8 +60,13 @@ import com.hdcookbook.grin.Segment;
 import com.hdcookbook.grin.io.builders.BackgroundSpec;
 import com.hdcookbook.grin.io.ShowBuilder;
 import com.hdcookbook.grin.Feature;
+import com.hdcookbook.grin.animator.FrameMetrics;
 import com.hdcookbook.grin.features.Assembly;
 import com.hdcookbook.grin.util.AssetFinder;
+import com.hdcookbook.grin.util.ImageManager;
+import com.hdcookbook.grin.util.Profile;
+import com.hdcookbook.grin.util.SEProfile;
+import com.hdcookbook.grin.util.SetupManager;
 
 import com.hdcookbook.grin.io.text.ExtensionParser;
 import java.io.BufferedInputStream;
@@ -75,6 +80,7 @@ import java.util.Iterator;
 import java.util.IdentityHashMap;
 
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * This is like GenericMain, and also includes a GUI to browse the
@@ -87,6 +93,9 @@ public class GrinView extends GenericMain {
 
     private IdentityHashMap lineNumberMap = new IdentityHashMap();
     private GrinViewScreen screen;
+    private FrameMetrics lastMetrics = new FrameMetrics();
+    private FrameMetrics currMetrics = new FrameMetrics();
+    private FrameMetrics intervalMetrics = new FrameMetrics();
             
      // Possible screen sizes supported.
     static final DeviceConfig VGA = new DeviceConfig(640, 480);
@@ -134,9 +143,29 @@ public class GrinView extends GenericMain {
                         exitGrinview();
                     }
                 });
+                Timer t = new Timer(1000, new java.awt.event.ActionListener() {
+                    public void actionPerformed(java.awt.event.ActionEvent e) {
+                        updateMetrics();
+                    }
+                });
+                t.start();
             }
         });
     }
+
+    //
+    // Show the animation engine's frame metrics for the last second.
+    // This is called on the AWT event thread, once a second.
+    //
+    private void updateMetrics() {
+        if (getAnimationEngine() == null) {
+            return;
+        }
+        getAnimationEngine().getFrameMetrics(currMetrics);
+        intervalMetrics.setDifference(currMetrics, lastMetrics);
+        lastMetrics.copyFrom(currMetrics);
+        screen.setMetricsText("Last second:  " + intervalMetrics);
+    }
     
     private String[] readShowFile(String showName, boolean isBinary) 
                 throws IOException 
@@ -413,6 +442,8 @@ public class GrinView extends GenericMain {
         System.out.println("                -grinxlet <a fully qualified classname>");
         System.out.println("                -binary");
         System.out.println("                -stdin_commands");
+        System.out.println("                -setup_workers <number>");
+        System.out.println("                -image_cache <megabytes>");
         System.out.println("");
         System.out.println("            -assets and -asset_dir may be repeated to form a search path.");
         System.out.println("            -screensize keyword can be fullhd, pal, ntsc, 720p, vga, or 960x540.");
@@ -427,6 +458,10 @@ public class GrinView extends GenericMain {
         System.out.println("            -binary tells GrinView to read a binary .grin file.");
         System.out.println("            -director tells GrinView to instantiate the given class as Direcor.");
         System.out.println("            -grinxlet tells GrinView to instantiate the given class instead of the default GrinXlet class.");
+        System.out.println("            -setup_workers sets the number of threads that load images.  The default");
+        System.out.println("                           is 1, like on a player.");
+        System.out.println("            -image_cache keeps images that are no longer needed loaded, up to");
+        System.out.println("                         the given size.  The default is 0.");
         System.out.println();
         System.exit(1);
     }
@@ -563,6 +598,30 @@ public class GrinView extends GenericMain {
             } else if ("-noui".equals(args[argsUsed])) {
                 noUI = true;
                 argsUsed++;
+            } else if ("-setup_workers".equals(args[argsUsed])) {
+                argsUsed++;
+                int workers = 0;
+                try {
+                    workers = Integer.parseInt(args[argsUsed]);
+                } catch (NumberFormatException ex) {
+                }
+                if (workers < 1) {
+                    usage();
+                }
+                SetupManager.setMaxWorkers(workers);
+                argsUsed++;
+            } else if ("-image_cache".equals(args[argsUsed])) {
+                argsUsed++;
+                int megabytes = -1;
+                try {
+                    megabytes = Integer.parseInt(args[argsUsed]);
+                } catch (NumberFormatException ex) {
+                }
+                if (megabytes < 0) {
+                    usage();
+                }
+                ImageManager.setCacheBudget(megabytes * 1024L * 1024L);
+                argsUsed++;
             } else {
                 break;
             }
@@ -594,6 +653,8 @@ public class GrinView extends GenericMain {
                 System.exit(1);
             }
         });
+        Profile.setHelper(new SEProfile());
+            // A nanosecond clock, for the frame metrics
         AssetFinder.setSearchPath(assetPath, assetDirs);
         if (imageMap != null) {
             AssetFinder.setImageMap(imageMap);
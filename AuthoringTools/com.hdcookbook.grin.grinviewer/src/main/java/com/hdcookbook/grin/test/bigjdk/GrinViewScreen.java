@@ -107,6 +107,7 @@ public class GrinViewScreen extends javax.swing.JFrame {
     private JSplitPane jSplitPane1;
     private JLabel nameLabel;
     private JLabel resultLabel;
+    private JLabel metricsLabel;
     private JTextArea showText;
     private JTree showTree;
     private JSlider fontSlider;
@@ -140,6 +141,7 @@ public class GrinViewScreen extends javax.swing.JFrame {
         fpsLabel = new JLabel();
         fpsText = new JTextField();
         resultLabel = new JLabel();
+        metricsLabel = new JLabel();
         fontSlider = new JSlider(1, 128, 12);
         registersButton = new JButton();
         keyUpCB = new JCheckBox();
@@ -268,6 +270,7 @@ public class GrinViewScreen extends javax.swing.JFrame {
         m.add(snapshotButton);
         m.add(frameButton);
         m.add(resultLabel);
+        m.add(metricsLabel);
         m.add(fontSlider);
         m.add(registersButton);
         m.add(keyUpCB);
@@ -301,7 +304,9 @@ public class GrinViewScreen extends javax.swing.JFrame {
         layout.putConstraint(w, nextDrawButton, 20, w, debugDrawCB);
         layout.putConstraint(n, nextDrawButton, 0, s, debugDrawCB);
         layout.putConstraint(n, frameButton, 20, s, commandText);
-        layout.putConstraint(s, m, 10, s, frameButton);
+        layout.putConstraint(w, metricsLabel, 10, w, m);
+        layout.putConstraint(n, metricsLabel, 5, s, frameButton);
+        layout.putConstraint(s, m, 10, s, metricsLabel);
         layout.putConstraint(w, commandLabel, 10, w, m);
         layout.putConstraint(s, commandLabel, -3, s, commandText);
         layout.putConstraint(w, commandText, 5, e, commandLabel);
@@ -468,6 +473,10 @@ public class GrinViewScreen extends javax.swing.JFrame {
         fpsText.setText(s);
     }
 
+    public void setMetricsText(String s) {
+        metricsLabel.setText(s);
+    }
+
     void forceNextDrawButtonVisible(boolean visible) {
         visible = visible || debugDraw;
         nextDrawButton.setVisible(visible);
@@ -206,6 +206,8 @@ public class ShowNode implements TreeNode {
         expanded = true;
         if (contents instanceof Segment) {
             Segment seg = (Segment) contents;
+            seg.getShow().loadNode(seg);
+                // In case the show was read lazily
             leaf = false;
             ShowNode[] newChildren = new ShowNode[5];
             newChildren[0] = makeNode("active", seg.getActiveFeatures());
@@ -82,6 +82,7 @@ import com.hdcookbook.grin.features.SEMenuAssembly;
 import com.hdcookbook.grin.features.SEScalingModel;
 import com.hdcookbook.grin.features.SESetTarget;
 import com.hdcookbook.grin.features.SESrcOver;
+import com.hdcookbook.grin.features.SECachedLayer;
 import com.hdcookbook.grin.features.SEText;
 import com.hdcookbook.grin.features.SETimer;
 import com.hdcookbook.grin.features.SETranslator;
@@ -554,6 +555,13 @@ public class ShowXMLWriter extends AbstractSEShowVisitor {
         setModifierProperties(sot, srcOver);
     }
 
+    @Override
+    public void visitCachedLayer(SECachedLayer cachedLayer) {
+        // The schema has no element for a cached layer yet, so it's
+        // written like an extension modifier.
+        visitUserDefinedFeature(cachedLayer);
+    }
+
     @Override
     public void visitText(SEText text) {
         TextType tt = new TextType();
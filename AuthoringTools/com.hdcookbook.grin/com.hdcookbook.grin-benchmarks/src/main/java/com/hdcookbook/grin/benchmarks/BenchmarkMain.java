@@ -0,0 +1,168 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.benchmarks;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Runs the GRIN benchmarks.  This takes the usual JMH command line,
+ * and after the JMH report it prints the time and allocations per
+ * frame for each phase of the frame loop, as recorded by FramePhases.
+ *
+ * @see FramePhases
+ **/
+public class BenchmarkMain {
+
+    private final static String[] PHASES = {
+        "nextFrame", "addDisplayAreas", "paint"
+    };
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() 
+            || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+            || cmd.shouldListResultFormats()) 
+        {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Collection<RunResult> results = new Runner(cmd).run();
+        printPhases(results, System.out);
+    }
+
+    /**
+     * Print the per-frame phase numbers for the given results.  Results
+     * without FramePhases counters are skipped.
+     **/
+    public static void printPhases(Collection<RunResult> results, 
+                                   PrintStream out) 
+    {
+        out.println();
+        out.println("Per-frame phases (ns/frame, bytes allocated/frame):");
+        out.println();
+        for (int i = 0; i < PHASES.length; i++) {
+            out.print(pad(PHASES[i] + " ns", 18));
+        }
+        for (int i = 0; i < PHASES.length; i++) {
+            out.print(pad(PHASES[i] + " B", 18));
+        }
+        out.print(pad("targets", 10));
+        out.println("Benchmark");
+        for (Iterator<RunResult> it = results.iterator(); it.hasNext(); ) {
+            RunResult rr = it.next();
+            Map<String, Result> secondary 
+                    = rr.getAggregatedResult().getSecondaryResults();
+            Result frames = secondary.get("frames");
+            if (frames == null || frames.getScore() <= 0.0) {
+                continue;
+            }
+            double n = frames.getScore();
+            for (int i = 0; i < PHASES.length; i++) {
+                out.print(pad(perFrame(secondary, PHASES[i] + "Ns", n), 18));
+            }
+            for (int i = 0; i < PHASES.length; i++) {
+                out.print(pad(perFrame(secondary, PHASES[i] + "Bytes", n), 18));
+            }
+            out.print(pad(perFrame(secondary, "drawTargets", n), 10));
+            out.println(describe(rr.getParams()));
+        }
+    }
+
+    private static String describe(BenchmarkParams params) {
+        String name = params.getBenchmark();
+        StringBuffer sb = new StringBuffer();
+        sb.append(name.substring(name.lastIndexOf('.', 
+                                                  name.lastIndexOf('.') - 1) 
+                                 + 1));
+        for (Iterator<String> it = params.getParamsKeys().iterator(); 
+             it.hasNext(); ) 
+        {
+            String key = it.next();
+            sb.append(' ');
+            sb.append(key);
+            sb.append('=');
+            sb.append(params.getParam(key));
+        }
+        return sb.toString();
+    }
+
+    private static String perFrame(Map<String, Result> secondary, 
+                                   String counter, double frames) 
+    {
+        Result r = secondary.get(counter);
+        if (r == null) {
+            return "-";
+        }
+        return String.format("%.1f", r.getScore() / frames);
+    }
+
+    private static String pad(String s, int width) {
+        StringBuffer sb = new StringBuffer(s);
+        do {
+            sb.append(' ');
+        } while (sb.length() < width);
+        return sb.toString();
+    }
+}
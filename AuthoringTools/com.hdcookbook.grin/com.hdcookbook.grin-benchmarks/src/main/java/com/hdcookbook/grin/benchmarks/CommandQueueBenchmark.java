@@ -0,0 +1,230 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+
+package com.hdcookbook.grin.benchmarks;
+
+import com.hdcookbook.grin.util.CommandQueue;
+import com.hdcookbook.grin.util.Queue;
+import com.hdcookbook.grin.util.SECommandQueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Benchmarks of the queue that holds a show's pending commands, comparing
+ * the old com.hdcookbook.grin.util.Queue with the synchronized
+ * CommandQueue used on PBP and the lock-free SECommandQueue.  In the
+ * mpsc group, three threads add commands while one takes them, like
+ * input and media callbacks feeding the animation thread.  Each adding 
+ * thread waits once it has 16 entries outstanding, so the queues never
+ * overflow.  In the single group, one thread adds a command and takes
+ * it back out, like a show queueing its own end commands.  Run it with something like:
+ * <pre>
+ *     java -jar target/grin-benchmarks.jar CommandQueueBenchmark
+ *     java -jar target/grin-benchmarks.jar CommandQueueBenchmark -p queue=Queue
+ * </pre>
+ *
+ * @see com.hdcookbook.grin.Show#runCommand(com.hdcookbook.grin.commands.Command)
+ **/
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1)
+public class CommandQueueBenchmark {
+
+    private final static int PRODUCERS = 3;
+    private final static int MAX_OUTSTANDING = 16;
+    private final static int PAD = 16;  // Keeps counters on separate lines
+
+    /**
+     * The queue implementation:  Queue, CommandQueue or SECommandQueue
+     **/
+    @Param({ "Queue", "CommandQueue", "SECommandQueue" })
+    public String queue;
+
+    private Adapter adapter;
+    private AtomicLongArray taken = new AtomicLongArray(PRODUCERS * PAD);
+    private Token token = new Token(0);
+
+    //
+    // What's added.  The consumer uses it to count what it's taken from
+    // each producer.
+    //
+    private static class Token {
+        final int producer;
+
+        Token(int producer) {
+            this.producer = producer;
+        }
+    }
+
+    private static abstract class Adapter {
+        abstract void add(Object el);
+        abstract boolean isEmpty();
+        abstract Object remove();
+    }
+
+    /**
+     * The state of one of the threads that adds commands
+     **/
+    @State(Scope.Thread)
+    public static class Producer {
+
+        Token token;
+        long added = 0;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            token = new Token(params.getSubgroupThreadIndex());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("Queue".equals(queue)) {
+            final Queue q = new Queue(64);
+            adapter = new Adapter() {
+                void add(Object el) { q.add(el); }
+                boolean isEmpty() { return q.isEmpty(); }
+                Object remove() { return q.remove(); }
+            };
+        } else {
+            final CommandQueue q;
+            if ("CommandQueue".equals(queue)) {
+                q = new CommandQueue(64);
+            } else if ("SECommandQueue".equals(queue)) {
+                q = new SECommandQueue(64);
+            } else {
+                throw new IllegalArgumentException(queue);
+            }
+            adapter = new Adapter() {
+                void add(Object el) { q.add(el); }
+                boolean isEmpty() { return q.isEmpty(); }
+                Object remove() { return q.remove(); }
+            };
+        }
+    }
+
+    /**
+     * Add a command, from one of three threads
+     **/
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(PRODUCERS)
+    public void add(Producer p, Control control) {
+        int slot = p.token.producer * PAD;
+        while (p.added - taken.get(slot) >= MAX_OUTSTANDING) {
+            if (control.stopMeasurement) {
+                return;
+            }
+            Thread.yield();
+        }
+        adapter.add(p.token);
+        p.added++;
+    }
+
+    /**
+     * Take a command, from the one consuming thread
+     **/
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public Object remove(Control control) {
+        while (adapter.isEmpty()) {
+            if (control.stopMeasurement) {
+                return null;
+            }
+            Thread.yield();
+        }
+        Token t = (Token) adapter.remove();
+        int slot = t.producer * PAD;
+        taken.set(slot, taken.get(slot) + 1);
+        return t;
+    }
+
+    /**
+     * Add a command and take it back out, on one thread
+     **/
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public Object addRemove() {
+        adapter.add(token);
+        if (adapter.isEmpty()) {
+            throw new IllegalStateException();
+        }
+        return adapter.remove();
+    }
+}
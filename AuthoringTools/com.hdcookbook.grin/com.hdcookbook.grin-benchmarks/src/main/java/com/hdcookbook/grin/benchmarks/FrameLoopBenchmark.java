@@ -0,0 +1,182 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.benchmarks;
+
+import com.hdcookbook.grin.animator.AnimationClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the GRIN animation frame loop, run headlessly against
+ * a SyntheticShow painted into a BufferedImage.  The score is the
+ * time for a whole frame; FramePhases adds the time and allocation
+ * per frame of each phase as secondary results.  Run it with
+ * something like:
+ * <pre>
+ *     java -jar target/grin-benchmarks.jar FrameLoopBenchmark
+ *     java -jar target/grin-benchmarks.jar FrameLoopBenchmark -p groups=50
+ *     java -jar target/grin-benchmarks.jar FrameLoopBenchmark -p timers=500
+ *     java -jar target/grin-benchmarks.jar FrameLoopBenchmark -prof gc
+ * </pre>
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+public class FrameLoopBenchmark {
+
+    /**
+     * Number of groups of boxes in the show
+     **/
+    @Param({ "10" })
+    public int groups;
+
+    /**
+     * Number of image sequences in the show
+     **/
+    @Param({ "4" })
+    public int imageSequences;
+
+    /**
+     * Number of translator models in the show
+     **/
+    @Param({ "10" })
+    public int models;
+
+    /**
+     * Number of timers in the show
+     **/
+    @Param({ "0" })
+    public int timers;
+
+    /**
+     * Draw target collapse algorithm, AnimationEngine.COLLAPSE_PAIRWISE (0) 
+     * or AnimationEngine.COLLAPSE_SWEEP (1)
+     **/
+    @Param({ "0", "1" })
+    public int collapseAlgorithm;
+
+    private File imageDir;
+    private SyntheticShow show;
+    private HeadlessEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        imageDir = File.createTempFile("grin_bench", "");
+        if (!imageDir.delete() || !imageDir.mkdir()) {
+            throw new IOException("Can't create " + imageDir);
+        }
+        show = new SyntheticShow(groups, imageSequences, models, timers,
+                                 imageDir);
+        engine = new HeadlessEngine(SyntheticShow.WIDTH, SyntheticShow.HEIGHT);
+        engine.setDrawTargetCollapseAlgorithm(collapseAlgorithm);
+        engine.initAndStart(new AnimationClient[] { show.getShow() });
+        show.start();
+        long timeout = System.currentTimeMillis() + 60000;
+        while (!show.isRunning()) {
+            if (System.currentTimeMillis() > timeout) {
+                throw new IllegalStateException("Show never finished setup");
+            }
+            engine.frame(null);
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        show.getShow().destroy();
+            // The engine's animation thread was never started, so
+            // there's nothing to destroy there.
+        deleteAll(imageDir);
+    }
+
+    private static void deleteAll(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                deleteAll(files[i]);
+            }
+        }
+        f.delete();
+    }
+
+    /**
+     * One whole frame:  Show.nextFrame(), Show.addDisplayAreas(), and
+     * erasing and painting the damaged areas.
+     **/
+    @Benchmark
+    public void frame(FramePhases phases) throws InterruptedException {
+        engine.frame(phases);
+    }
+}
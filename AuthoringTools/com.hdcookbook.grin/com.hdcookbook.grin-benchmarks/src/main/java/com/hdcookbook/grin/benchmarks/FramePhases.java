@@ -0,0 +1,136 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-phase counters for a frame of animation.  HeadlessEngine
+ * accumulates the time and the bytes allocated in each phase into
+ * an instance of this class, and JMH reports the totals for each
+ * iteration as secondary results next to the score of the benchmark.
+ * BenchmarkMain divides them by the number of frames to give
+ * per-frame numbers.
+ * <p>
+ * The phases are:
+ * <pre>
+ *    nextFrame         Show.nextFrame(), that is, the model update
+ *    addDisplayAreas   Show.addDisplayAreas(RenderContext), plus 
+ *                      collapsing the draw targets and working out
+ *                      what needs to be erased
+ *    paint             Erasing, and Show.paintFrame(Graphics2D) for
+ *                      each draw target
+ * </pre>
+ * The number of draw targets left after collapsing is counted too.
+ *
+ * @see BenchmarkMain
+ **/
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class FramePhases {
+
+    public long frames;
+    public long nextFrameNs;
+    public long addDisplayAreasNs;
+    public long paintNs;
+    public long nextFrameBytes;
+    public long addDisplayAreasBytes;
+    public long paintBytes;
+    public long drawTargets;
+
+    private long lastTime;
+    private long lastBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        frames = 0;
+        nextFrameNs = 0;
+        addDisplayAreasNs = 0;
+        paintNs = 0;
+        nextFrameBytes = 0;
+        addDisplayAreasBytes = 0;
+        paintBytes = 0;
+        drawTargets = 0;
+    }
+
+    void mark(long time, long bytes) {
+        lastTime = time;
+        lastBytes = bytes;
+    }
+
+    void endNextFrame(long time, long bytes) {
+        nextFrameNs += time - lastTime;
+        nextFrameBytes += bytes - lastBytes;
+        mark(time, bytes);
+    }
+
+    void endAddDisplayAreas(long time, long bytes, int numTargets) {
+        addDisplayAreasNs += time - lastTime;
+        addDisplayAreasBytes += bytes - lastBytes;
+        drawTargets += numTargets;
+        mark(time, bytes);
+    }
+
+    void endPaint(long time, long bytes) {
+        paintNs += time - lastTime;
+        paintBytes += bytes - lastBytes;
+        mark(time, bytes);
+    }
+}
@@ -0,0 +1,229 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.benchmarks;
+
+import com.hdcookbook.grin.animator.AnimationClient;
+import com.hdcookbook.grin.animator.AnimationEngine;
+
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+/**
+ * An animation engine that paints into a BufferedImage, and that is
+ * driven one frame at a time by the caller rather than by its own
+ * animation thread.  It goes through the same AnimationEngine code
+ * as DirectDrawEngine does, so it measures the real damage calculation
+ * and paint code.  The time and the bytes allocated in each phase of
+ * a frame are accumulated into a FramePhases instance.
+ **/
+public class HeadlessEngine extends AnimationEngine {
+
+    private final int width;
+    private final int height;
+    private final BufferedImage buffer;
+    private final Graphics2D bufferG;
+    private final Component component = new Component() { };
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final long threadID;
+
+    private FramePhases phases;
+    private boolean damageDone;     // Set when damage calculation is done
+
+    /**
+     * Create a new headless engine with a buffer of the given size.
+     **/
+    public HeadlessEngine(int width, int height) {
+        this.width = width;
+        this.height = height;
+        buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        bufferG = buffer.createGraphics();
+        bufferG.setComposite(AlphaComposite.Src);
+        component.setBounds(0, 0, width, height);
+        threadBean = (com.sun.management.ThreadMXBean)
+                        ManagementFactory.getThreadMXBean();
+        threadID = Thread.currentThread().getId();
+    }
+
+    /**
+     * Set up this engine to run the given clients, and initialize them.
+     * This must be called from the thread that will call frame().
+     **/
+    public void initAndStart(AnimationClient[] clients) 
+            throws InterruptedException 
+    {
+        initClients(clients);
+        for (int i = 0; i < clients.length; i++) {
+            clients[i].initialize(component);
+        }
+    }
+
+    /**
+     * Run one frame of animation:  advance the model, then calculate
+     * the damaged area, and erase and paint it into the buffer.
+     *
+     * @param phases    Where to accumulate times and allocations, or null
+     **/
+    public void frame(FramePhases phases) throws InterruptedException {
+        this.phases = phases;
+        damageDone = false;
+        if (phases == null) {
+            advanceModel();
+            showFrame();
+            return;
+        }
+        phases.mark(now(), allocated());
+        advanceModel();
+        phases.endNextFrame(now(), allocated());
+        showFrame();
+        // showFrame() calls finishedFrame(), which records the rest
+        phases.frames++;
+        this.phases = null;
+    }
+
+    /**
+     * Get the buffer that we paint into
+     **/
+    public BufferedImage getBuffer() {
+        return buffer;
+    }
+
+    private long now() {
+        return System.nanoTime();
+    }
+
+    private long allocated() {
+        return threadBean.getThreadAllocatedBytes(threadID);
+    }
+
+    private void markDamageDone() {
+        if (!damageDone) {
+            damageDone = true;
+            if (phases != null) {
+                phases.endAddDisplayAreas(now(), allocated(), 
+                                          getNumDrawTargets());
+            }
+        }
+    }
+
+    /**
+     * Does nothing; a headless engine doesn't go in a container.
+     **/
+    public void initContainer(Container container, Rectangle bounds) {
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Component getComponent() {
+        return component;
+    }
+
+    /**
+     * Does nothing; a headless engine is always driven by frame().
+     **/
+    public void start() {
+    }
+
+    /**
+     * Does nothing; a headless engine is always driven by frame().
+     **/
+    public void pause() {
+    }
+
+    protected void clearArea(int x, int y, int width, int height) {
+        markDamageDone();
+        bufferG.setColor(transparent);
+        bufferG.fillRect(x, y, width, height);
+    }
+
+    protected boolean needsFullRedrawInAnimationLoop() {
+        return false;
+    }
+
+    protected void callPaintTargets() throws InterruptedException {
+        markDamageDone();
+        paintTargets(bufferG);
+        bufferG.setComposite(AlphaComposite.Src);
+    }
+
+    protected void finishedFrame() {
+        markDamageDone();
+        if (phases != null) {
+            phases.endPaint(now(), allocated());
+        }
+    }
+
+    protected void terminatingEraseScreen() {
+        bufferG.dispose();
+    }
+
+    /**
+     * Not used; a headless engine is driven by frame().
+     **/
+    protected void runAnimationLoop() throws InterruptedException {
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,324 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.benchmarks;
+
+import com.hdcookbook.grin.Director;
+import com.hdcookbook.grin.SEShow;
+import com.hdcookbook.grin.Segment;
+import com.hdcookbook.grin.io.ShowBuilder;
+import com.hdcookbook.grin.io.text.ShowParser;
+import com.hdcookbook.grin.util.AssetFinder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import javax.imageio.ImageIO;
+
+/**
+ * Builds a synthetic GRIN show for benchmarking.  The show has a number
+ * of groups of boxes, a number of repeating image sequences, and a number
+ * of interpolated models that each move a box around, and a number of
+ * repeating timers that do nothing when they fire.  The images used
+ * by the image sequences are generated into a scratch directory, which is
+ * put on the AssetFinder search path.
+ * <p>
+ * The image sequences and the moving boxes change every frame.  Each of
+ * them has its own draw target, and they're spread over the screen in
+ * pairs that partly overlap, so that each frame gives the engine's draw
+ * target collapse algorithm many areas to work on:  some that overlap,
+ * some that are close together, and some that are far apart.
+ * <p>
+ * The show has two segments.  S_setup sets up every feature, and
+ * when that's done it activates S_run, which has every feature active.
+ * 
+ * @see HeadlessEngine
+ **/
+public class SyntheticShow {
+
+    /**
+     * Width of the area the show is laid out in
+     **/
+    public final static int WIDTH = 1920;
+
+    /**
+     * Height of the area the show is laid out in
+     **/
+    public final static int HEIGHT = 1080;
+
+    private final static int BOXES_PER_GROUP = 4;
+    private final static int FRAMES_PER_SEQUENCE = 8;
+    private final static int IMAGE_SIZE = 96;
+
+    private SEShow show;
+    private Segment runSegment;
+    private boolean running = false;
+
+    /**
+     * Create a new synthetic show.  The show is parsed, but not
+     * initialized.
+     *
+     * @param groups            Number of groups of boxes
+     * @param imageSequences    Number of image sequences
+     * @param models            Number of translator models
+     * @param timers            Number of timers
+     * @param imageDir          Scratch directory for generated images
+     **/
+    public SyntheticShow(int groups, int imageSequences, int models,
+                         int timers, File imageDir)
+            throws IOException
+    {
+        writeImages(imageSequences, imageDir);
+        AssetFinder.setSearchPath(null, new File[] { imageDir });
+        Director director = new Director() {
+            public void notifySegmentActivated(Segment newSegment,
+                                               Segment oldSegment)
+            {
+                if (newSegment == runSegment) {
+                    running = true;
+                }
+            }
+        };
+        show = new SEShow(director);
+        String source = makeShowText(groups, imageSequences, models, timers);
+        ShowParser p = new ShowParser(new StringReader(source), 
+                                      "synthetic_show.txt", show,
+                                      new ShowBuilder());
+        p.parse();
+        runSegment = show.getSegment("S_run");
+    }
+
+    /**
+     * Get the show
+     **/
+    public SEShow getShow() {
+        return show;
+    }
+
+    /**
+     * Start the show.  This must be called after the show has been
+     * initialized.
+     **/
+    public void start() {
+        show.activateSegment(show.getSegment("S_setup"));
+    }
+
+    /**
+     * Has the show finished setting up, and moved on to the segment where
+     * all of the features are active?
+     **/
+    public boolean isRunning() {
+        synchronized(show) {
+            return running;
+        }
+    }
+
+    private static void writeImages(int imageSequences, File dir) 
+            throws IOException 
+    {
+        for (int i = 0; i < imageSequences; i++) {
+            File seqDir = new File(dir, "seq_" + i);
+            if (!seqDir.isDirectory() && !seqDir.mkdirs()) {
+                throw new IOException("Can't create " + seqDir);
+            }
+            for (int f = 0; f < FRAMES_PER_SEQUENCE; f++) {
+                BufferedImage im = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE,
+                                                BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = im.createGraphics();
+                int shade = (255 * f) / FRAMES_PER_SEQUENCE;
+                g.setColor(new Color(shade, 255 - shade, (i * 37) & 0xff, 200));
+                g.fillOval(f * 4, f * 4, IMAGE_SIZE - f * 8, IMAGE_SIZE - f * 8);
+                g.dispose();
+                ImageIO.write(im, "png", new File(seqDir, "frame_" + f + ".png"));
+            }
+        }
+    }
+
+    private static String makeShowText(int groups, int imageSequences, 
+                                       int models, int timers) 
+    {
+        StringBuffer sb = new StringBuffer();
+        StringBuffer all = new StringBuffer();
+        int animated = imageSequences + models;
+        sb.append("show\n\n");
+        sb.append("setting draw_targets { T:Default");
+        for (int i = 0; i < animated; i++) {
+            sb.append(" T:" + i);
+        }
+        sb.append(" } ;\n\n");
+        sb.append("exports\n");
+        sb.append("    segments { S_setup S_run }\n");
+        sb.append("    features { }\n");
+        sb.append("    handlers { }\n");
+        sb.append(";\n\n");
+
+        int cell = 0;
+        int anim = 0;
+        for (int i = 0; i < groups; i++) {
+            StringBuffer parts = new StringBuffer();
+            for (int j = 0; j < BOXES_PER_GROUP; j++) {
+                String name = "F_box_" + i + "_" + j;
+                appendBox(sb, name, cellPosition(cell++), 
+                          (i * 50 + j * 60) & 0xff);
+                parts.append(' ').append(name);
+            }
+            sb.append("feature group F_group_" + i + " {" + parts + " } ;\n");
+            all.append(" F_group_" + i);
+        }
+        for (int i = 0; i < imageSequences; i++) {
+            int[] xy = animatedPosition(anim);
+            sb.append("feature image_sequence F_seq_" + i + " " 
+                      + xy[0] + " " + xy[1] + " \"seq_" + i + "/frame_\" {");
+            for (int f = 0; f < FRAMES_PER_SEQUENCE; f++) {
+                sb.append(" " + f);
+            }
+            sb.append(" } \".png\" repeat ;\n");
+            appendSetTarget(sb, all, "F_seq_" + i, anim++);
+        }
+        for (int i = 0; i < models; i++) {
+            String box = "F_moving_box_" + i;
+            appendBox(sb, box, animatedPosition(anim), (i * 90) & 0xff);
+            int period = 24 + (i % 5) * 12;
+            sb.append("feature translation F_model_" + i + " {\n");
+            sb.append("    0 0 0 linear-relative\n");
+            sb.append("    " + (period / 2) + " 40 " + (i % 7) * 5
+                      + " linear-relative\n");
+            sb.append("    " + period + " 0 0 linear-relative\n");
+            sb.append("} repeat 0 ;\n");
+            sb.append("feature translator F_translator_" + i + " F_model_" 
+                      + i + " { " + box + " } ;\n");
+            sb.append("feature group F_moving_" + i + " { F_model_" + i 
+                      + " F_translator_" + i + " } ;\n");
+            appendSetTarget(sb, all, "F_moving_" + i, anim++);
+        }
+        for (int i = 0; i < timers; i++) {
+            sb.append("feature timer F_timer_" + i + " " + (48 + i % 97)
+                      + " repeat { } ;\n");
+            all.append(" F_timer_" + i);
+        }
+
+        sb.append("\nsegment S_setup\n");
+        sb.append("    setup {" + all + " }\n");
+        sb.append("    next { activate_segment S_run ; }\n");
+        sb.append(";\n");
+        sb.append("segment S_run\n");
+        sb.append("    active {" + all + " }\n");
+        sb.append(";\n");
+        sb.append("end_show\n");
+        return sb.toString();
+    }
+
+    private static void appendBox(StringBuffer sb, String name, int[] xy,
+                                  int shade) 
+    {
+        int x2 = xy[0] + IMAGE_SIZE - 1;
+        int y2 = xy[1] + IMAGE_SIZE - 1;
+        sb.append("feature box " + name + " ( " + xy[0] + " " + xy[1] + " "
+                  + x2 + " " + y2 + " ) fill { " + shade + " 128 " 
+                  + (255 - shade) + " 255 } ;\n");
+    }
+
+    //
+    // Put feature in draw target T:<target>
+    //
+    private static void appendSetTarget(StringBuffer sb, StringBuffer all,
+                                        String feature, int target) 
+    {
+        String name = "F_target_" + target;
+        sb.append("feature set_target " + name + " " + feature + " T:" 
+                  + target + " ;\n");
+        all.append(" " + name);
+    }
+
+    //
+    // Lay the features out on a grid, so that the damage areas are
+    // spread over the screen the way they would be in a menu.
+    //
+    private static int[] cellPosition(int cell) {
+        int cellSize = IMAGE_SIZE + 24;
+        int perRow = (WIDTH - 100) / cellSize;
+        int x = 50 + (cell % perRow) * cellSize;
+        int y = 50 + ((cell / perRow) * cellSize) % (HEIGHT - 100 - cellSize);
+        return new int[] { x, y };
+    }
+
+    //
+    // Lay out the features that change every frame.  They go in pairs,
+    // with the second one of each pair overlapping the first.  The pairs
+    // go on a 4x4 grid over the screen, each one a row down from the one
+    // to its left, so that pairs are rarely close enough to each other
+    // for the collapse algorithm to combine them.  Once the grid is full,
+    // the pairs wrap around, offset so that they're close to the earlier
+    // ones.
+    //
+    private static int[] animatedPosition(int feature) {
+        int pair = feature / 2;
+        int cellWidth = (WIDTH - 100) / 4;
+        int cellHeight = (HEIGHT - 100) / 4;
+        int column = pair % 4;
+        int row = (column + (pair / 4) * 2 + pair / 8) % 4;
+        int pass = pair / 16;
+        int x = 50 + column * cellWidth + (pass % 4) * 35;
+        int y = 50 + row * cellHeight + (pass % 4) * 30;
+        if (feature % 2 == 1) {
+            x += IMAGE_SIZE * 2 / 3;
+            y += IMAGE_SIZE / 3;
+        }
+        return new int[] { x, y };
+    }
+}
@@ -0,0 +1,222 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+
+package com.hdcookbook.grin.benchmarks;
+
+import com.hdcookbook.grin.Director;
+import com.hdcookbook.grin.SEShow;
+import com.hdcookbook.grin.Segment;
+import com.hdcookbook.grin.animator.AnimationClient;
+import com.hdcookbook.grin.io.ShowBuilder;
+import com.hdcookbook.grin.io.text.ShowParser;
+import com.hdcookbook.grin.util.AssetFinder;
+
+import java.awt.Component;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of painting text, with and without pre-rendering, on
+ * scrolling credits.  The show is a column of text features that a
+ * translator moves up the screen, so every line is repainted in
+ * every frame.  The color of the text cycles, like a fade would.
+ * Run it with something like:
+ * <pre>
+ *     java -jar target/grin-benchmarks.jar TextBenchmark
+ *     java -jar target/grin-benchmarks.jar TextBenchmark -p lines=100
+ * </pre>
+ *
+ * @see com.hdcookbook.grin.features.Text
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+public class TextBenchmark {
+
+    private final static int WIDTH = 1920;
+    private final static int HEIGHT = 1080;
+    private final static int LINE_HEIGHT = 40;
+
+    /**
+     * Number of lines of credits
+     **/
+    @Param({ "40" })
+    public int lines;
+
+    /**
+     * Whether the text features are pre-rendered
+     **/
+    @Param({ "false", "true" })
+    public boolean preRender;
+
+    private SEShow show;
+    private Segment runSegment;
+    private boolean running = false;
+    private HeadlessEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+            // A headless component has no GraphicsConfiguration to make
+            // the buffers that text is pre-rendered in.
+        AssetFinder.setHelper(new AssetFinder() {
+            protected Image createCompatibleImageBufferHelper(Component c,
+                                                    int width, int height)
+            {
+                return new BufferedImage(width, height, 
+                                         BufferedImage.TYPE_INT_ARGB);
+            }
+        });
+        Director director = new Director() {
+            public void notifySegmentActivated(Segment newSegment,
+                                               Segment oldSegment)
+            {
+                if (newSegment == runSegment) {
+                    running = true;
+                }
+            }
+        };
+        show = new SEShow(director);
+        ShowParser p = new ShowParser(new StringReader(makeShowText()),
+                                      "credits_show.txt", show,
+                                      new ShowBuilder());
+        p.parse();
+        runSegment = show.getSegment("S_run");
+        engine = new HeadlessEngine(WIDTH, HEIGHT);
+        engine.initAndStart(new AnimationClient[] { show });
+        show.activateSegment(show.getSegment("S_setup"));
+        long timeout = System.currentTimeMillis() + 60000;
+        for (;;) {
+            synchronized(show) {
+                if (running) {
+                    break;
+                }
+            }
+            if (System.currentTimeMillis() > timeout) {
+                throw new IllegalStateException("Show never finished setup");
+            }
+            engine.frame(null);
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        show.destroy();
+        AssetFinder.setHelper(null);
+    }
+
+    private String makeShowText() {
+        StringBuffer sb = new StringBuffer();
+        StringBuffer parts = new StringBuffer();
+        sb.append("show\n\n");
+        for (int i = 0; i < lines; i++) {
+            String name = "F_line_" + i;
+            sb.append("feature text " + name + " middle " + (WIDTH / 2) + " "
+                      + (HEIGHT + i * LINE_HEIGHT) + " \"Credit line " + i 
+                      + " ........ Somebody Withalongname\"\n");
+            sb.append("    SansSerif plain 28 { { 255 255 255 255 } + + + +"
+                      + " { 255 255 160 255 } + + + + } loop_count infinite");
+            sb.append(preRender ? " pre_render ;\n" : " ;\n");
+            parts.append(' ').append(name);
+        }
+        int distance = HEIGHT + lines * LINE_HEIGHT;
+        sb.append("feature group F_credits {" + parts + " } ;\n");
+        sb.append("feature translation F_scroll {\n");
+        sb.append("    0 0 0 linear-relative\n");
+        sb.append("    " + (distance / 4) + " 0 " + (-distance) 
+                  + " linear-relative\n");
+        sb.append("} repeat 0 ;\n");
+        sb.append("feature translator F_translator F_scroll { F_credits } ;\n");
+        sb.append("feature group F_all { F_scroll F_translator } ;\n");
+        sb.append("\nsegment S_setup\n");
+        sb.append("    setup { F_all }\n");
+        sb.append("    next { activate_segment S_run ; }\n");
+        sb.append(";\n");
+        sb.append("segment S_run\n");
+        sb.append("    active { F_all }\n");
+        sb.append(";\n");
+        sb.append("end_show\n");
+        return sb.toString();
+    }
+
+    /**
+     * One whole frame of scrolling credits
+     **/
+    @Benchmark
+    public void frame(FramePhases phases) throws InterruptedException {
+        engine.frame(phases);
+    }
+}
@@ -247,6 +247,11 @@ public abstract class Feature {
         setupCount--;
         if (setupCount == 0) {
             setSetupMode(false);
+            if (this instanceof SetupClient) {
+                show.setupManager.cancelSetup((SetupClient) this);
+                    // If the setup work hasn't started yet, there's no
+                    // need for the setup thread to look at us.
+            }
         }
     }
 
@@ -63,6 +63,7 @@ import com.hdcookbook.grin.input.RCHandler;
 import com.hdcookbook.grin.input.RCKeyEvent;
 import com.hdcookbook.grin.io.binary.GrinDataInputStream;
 import com.hdcookbook.grin.util.Debug;
+import com.hdcookbook.grin.util.SetupManager;
 
 import java.awt.Graphics2D;
 import java.io.IOException;
@@ -239,6 +240,8 @@ public class Segment implements Node {
          * to reflect this Segment's active feature array.
          **/
         show.showTopGroup.resetVisiblePartsNoAssert(null);
+        int oldPriority = show.setupManager.setCurrentPriority(
+                                        SetupManager.PRIORITY_VISIBLE);
         for (int i = 0; i < activeFeatures.length; i++) {
             int needed = activeFeatures[i].setup();
             outstandingSetups += needed;
@@ -256,6 +259,7 @@ public class Segment implements Node {
                 featureWasActivated[i] = true;
             }
         }
+        show.setupManager.setCurrentPriority(SetupManager.PRIORITY_NEXT);
         for (int i = 0; i < settingUpFeatures.length; i++) {
             outstandingSetups += settingUpFeatures[i].setup();
                 // Our count of outstanding setups might be low, if some
@@ -263,6 +267,7 @@ public class Segment implements Node {
                 // segment, but it will never be high.  If it's low, the
                 // result will be some wasted CPU time, but correct behavior.
         }
+        show.setupManager.setCurrentPriority(oldPriority);
         if (lastSegment != null) {
             lastSegment.deactivate();
         }
@@ -0,0 +1,372 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin;
+
+import com.hdcookbook.grin.commands.ActivateSegmentCommand;
+import com.hdcookbook.grin.commands.Command;
+import com.hdcookbook.grin.features.FixedImage;
+import com.hdcookbook.grin.features.ImageSequence;
+import com.hdcookbook.grin.input.RCHandler;
+import com.hdcookbook.grin.util.ManagedImage;
+import com.hdcookbook.grin.util.SetupClient;
+import com.hdcookbook.grin.util.SetupManager;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+
+/**
+ * A prefetcher that sets up the features of segments that might be
+ * activated soon, so that their images are already loaded when the
+ * user gets there.  When a segment is activated, the prefetcher
+ * follows the segments that can be activated from it, up to a
+ * given depth.  The segments a segment can lead to are found from
+ * the ActivateSegmentCommand instances in its on-entry and next
+ * commands, and in the commands of its remote control handlers.
+ * <p>
+ * The features of these segments are set up at
+ * SetupManager.PRIORITY_PREFETCH, so this work never delays the setup
+ * of the features of the current segment.  Features that are no longer
+ * near the current segment are unsetup, which cancels their setup if it
+ * hasn't started yet.
+ * <p>
+ * The images the current segment and the prefetched segments need are
+ * limited by the prefetcher's budget.  Before a segment is prefetched,
+ * the bytes of the images its features use are estimated, at four bytes
+ * per pixel.  An image's size comes from the ManagedImage if it's known,
+ * e.g. from its mosaic placement, or otherwise from the placement of the
+ * feature that shows it, so it's known before the image is loaded.  An
+ * image that's used more than once is only counted once.  The first
+ * segment that would take the total over the budget, and all the segments
+ * after it, aren't prefetched.
+ * <p>
+ * A prefetcher is given to a show with Show.setSegmentPrefetcher().
+ * It works well with the image cache set by ImageManager.setCacheBudget(),
+ * which keeps recently shown images loaded.
+ *
+ * @see Show#setSegmentPrefetcher(SegmentPrefetcher)
+ * @see com.hdcookbook.grin.util.ImageManager#setCacheBudget(long)
+ **/
+public class SegmentPrefetcher {
+
+    private Show show;
+    private int depth;
+    private long budget;
+
+    private Hashtable successors = new Hashtable();
+        // Maps Segment to Segment[].  The graph of a show doesn't change,
+        // so we only look at a segment's commands once.
+    private ArrayList prefetched = new ArrayList();
+        // The features we've called setup() on, in order
+    private int numPrefetchedSegments = 0;
+    private long chargedBytes = 0;
+
+    private HashSet charged = new HashSet();
+        // The images counted in chargedBytes
+    private Rectangle placement = new Rectangle();
+
+    /**
+     * Create a new prefetcher.
+     *
+     * @param depth     How many segment activations ahead of the current
+     *                  segment to prefetch.  1 prefetches the segments
+     *                  that can be activated directly from the current
+     *                  segment.
+     * @param budget    The number of bytes of images, at four bytes per
+     *                  pixel, that the current segment and the prefetched
+     *                  segments may use.
+     **/
+    public SegmentPrefetcher(int depth, long budget) {
+        this.depth = depth;
+        this.budget = budget;
+    }
+
+    //
+    // Called by Show.setSegmentPrefetcher(), with the show lock held.
+    //
+    void setShow(Show show) {
+        this.show = show;
+    }
+
+    /**
+     * Get the segments that can be activated directly from the given
+     * segment.  A segment that pops the segment stack isn't included,
+     * because its target isn't known until it runs.  Call this with the
+     * show lock held.
+     **/
+    public Segment[] getSuccessors(Segment segment) {
+        Segment[] result = (Segment[]) successors.get(segment);
+        if (result == null) {
+            show.loadNode(segment);
+            ArrayList list = new ArrayList();
+            addTargets(segment.getOnEntryCommands(), list);
+            addTargets(segment.getNextCommands(), list);
+            RCHandler[] handlers = segment.getRCHandlers();
+            if (handlers != null) {
+                for (int i = 0; i < handlers.length; i++) {
+                    Command[][] lists = handlers[i].getCommandLists();
+                    for (int j = 0; j < lists.length; j++) {
+                        addTargets(lists[j], list);
+                    }
+                }
+            }
+            result = new Segment[list.size()];
+            list.toArray(result);
+            successors.put(segment, result);
+        }
+        return result;
+    }
+
+    private void addTargets(Command[] commands, ArrayList list) {
+        if (commands == null) {
+            return;
+        }
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i] instanceof ActivateSegmentCommand) {
+                Segment s = ((ActivateSegmentCommand) commands[i]).getSegment();
+                if (s != null && !list.contains(s)) {
+                    list.add(s);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of segments whose features were set up when the
+     * current segment was activated.  Call this with the show lock held.
+     **/
+    public int getNumPrefetchedSegments() {
+        return numPrefetchedSegments;
+    }
+
+    /**
+     * Get the estimated number of bytes of the images used by the current
+     * segment and the prefetched segments, at four bytes per pixel.  Call 
+     * this with the show lock held.
+     **/
+    public long getChargedBytes() {
+        return chargedBytes;
+    }
+
+    //
+    // Called by Show when a segment has been activated, with the show
+    // lock held.
+    //
+    void segmentActivated(Segment current) {
+        SetupManager manager = show.setupManager;
+
+        // Features of the current segment might have been scheduled
+        // by us at prefetch priority.  Segment.activate() doesn't schedule
+        // them again, so we make them as urgent as they now are.
+        promote(manager, current.getActiveFeatures(),
+                SetupManager.PRIORITY_VISIBLE);
+        promote(manager, current.getSetupFeatures(),
+                SetupManager.PRIORITY_NEXT);
+
+        // Find the segments near this one, breadth-first
+        ArrayList near = new ArrayList();
+        near.add(current);
+        int start = 0;
+        for (int level = 0; level < depth; level++) {
+            int end = near.size();
+            for (int i = start; i < end; i++) {
+                Segment[] next = getSuccessors((Segment) near.get(i));
+                for (int j = 0; j < next.length; j++) {
+                    if (!near.contains(next[j])) {
+                        near.add(next[j]);
+                    }
+                }
+            }
+            start = end;
+        }
+
+        // Set up the new features before we unsetup the old ones, so that
+        // features that are in both aren't unloaded.
+        // The current segment's images are charged first.  We charge
+        // a segment before its features are set up, because the images
+        // are loaded asynchronously.
+        ArrayList old = prefetched;
+        prefetched = new ArrayList();
+        numPrefetchedSegments = 0;
+        charged.clear();
+        chargedBytes = charge(current, Long.MAX_VALUE);
+        int oldPriority = manager.setCurrentPriority(
+                                SetupManager.PRIORITY_PREFETCH);
+        for (int i = 1; i < near.size(); i++) {
+            Segment s = (Segment) near.get(i);
+            long bytes = charge(s, budget - chargedBytes);
+            if (bytes < 0) {
+                break;
+            }
+            chargedBytes += bytes;
+            setup(s.getActiveFeatures());
+            setup(s.getSetupFeatures());
+            numPrefetchedSegments++;
+        }
+        manager.setCurrentPriority(oldPriority);
+        charged.clear();
+        for (int i = 0; i < old.size(); i++) {
+            ((Feature) old.get(i)).unsetup();
+        }
+    }
+
+    //
+    // Estimate the bytes of the images used by segment s that haven't
+    // been charged yet.  If they fit in the given number of bytes, 
+    // they're charged, and the estimate is returned.  If not, nothing
+    // is charged, and -1 is returned.
+    //
+    private long charge(Segment s, long available) {
+        HashSet features = new HashSet();
+        addSubgraphs(s.getActiveFeatures(), features);
+        addSubgraphs(s.getSetupFeatures(), features);
+        HashSet images = new HashSet();
+        long bytes = 0;
+        for (Iterator it = features.iterator(); it.hasNext(); ) {
+            Object f = it.next();
+            if (f instanceof FixedImage) {
+                FixedImage fi = (FixedImage) f;
+                fi.getPlacement(placement);
+                bytes += charge(fi.getImage(), images);
+            } else if (f instanceof ImageSequence) {
+                ImageSequence seq = (ImageSequence) f;
+                ManagedImage[] seqImages = seq.getImages();
+                for (int i = 0; i < seqImages.length; i++) {
+                    if (seqImages[i] != null) {
+                        seq.getPlacement(i, placement);
+                        bytes += charge(seqImages[i], images);
+                    }
+                }
+            }
+        }
+        if (bytes > available) {
+            return -1;
+        }
+        charged.addAll(images);
+        return bytes;
+    }
+
+    //
+    // Estimate the bytes of one image, if it hasn't been charged yet.
+    // The image is added to images.  If the image doesn't know its size 
+    // yet, the size of placement is used.
+    //
+    private long charge(ManagedImage im, HashSet images) {
+        if (im == null || charged.contains(im) || images.contains(im)) {
+            return 0;
+        }
+        images.add(im);
+        long w = im.getWidth();
+        long h = im.getHeight();
+        if (w <= 0 || h <= 0) {
+            w = placement.width;
+            h = placement.height;
+        }
+        return w * h * 4;
+    }
+
+    private void addSubgraphs(Feature[] features, HashSet set) {
+        if (features == null) {
+            return;
+        }
+        for (int i = 0; i < features.length; i++) {
+            features[i].addSubgraph(set);
+        }
+    }
+
+    private void setup(Feature[] features) {
+        if (features == null) {
+            return;
+        }
+        for (int i = 0; i < features.length; i++) {
+            features[i].setup();
+            prefetched.add(features[i]);
+        }
+    }
+
+    //
+    // The features that are scheduled for setup are usually below a
+    // segment's features, e.g. the images in a group or an assembly, so
+    // we promote every feature in their subgraphs.
+    //
+    private void promote(SetupManager manager, Feature[] features,
+                         int priority)
+    {
+        HashSet set = new HashSet();
+        addSubgraphs(features, set);
+        for (Iterator it = set.iterator(); it.hasNext(); ) {
+            Feature f = (Feature) it.next();
+            if (f instanceof SetupClient && f.needsMoreSetup()) {
+                manager.scheduleSetup((SetupClient) f, priority);
+            }
+        }
+    }
+
+    //
+    // Called by Show when the show is destroyed, or when this prefetcher
+    // is replaced, with the show lock held.
+    //
+    void destroy() {
+        for (int i = 0; i < prefetched.size(); i++) {
+            ((Feature) prefetched.get(i)).unsetup();
+        }
+        prefetched.clear();
+        numPrefetchedSegments = 0;
+        chargedBytes = 0;
+    }
+}
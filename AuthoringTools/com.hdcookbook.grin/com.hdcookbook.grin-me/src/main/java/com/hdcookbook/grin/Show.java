@@ -61,13 +61,15 @@ import com.hdcookbook.grin.commands.ActivateSegmentCommand;
 import com.hdcookbook.grin.commands.Command;
 import com.hdcookbook.grin.features.Group;
 import com.hdcookbook.grin.features.SetTarget;
+import com.hdcookbook.grin.features.TimingWheel;
+import com.hdcookbook.grin.io.binary.LazyLoader;
 import com.hdcookbook.grin.util.AssetFinder;
+import com.hdcookbook.grin.util.CommandQueue;
 import com.hdcookbook.grin.util.ImageManager;
 import com.hdcookbook.grin.util.ManagedImage;
 import com.hdcookbook.grin.util.SetupManager;
 import com.hdcookbook.grin.util.SetupClient;
 import com.hdcookbook.grin.util.Debug;
-import com.hdcookbook.grin.util.Queue;
 import com.hdcookbook.grin.input.RCHandler;
 import com.hdcookbook.grin.input.RCKeyEvent;
 
@@ -117,6 +119,13 @@ public class Show implements AnimationClient {
      **/
     public ShowInitializer initializer = new ShowInitializer();
 
+    /**
+     * The timing wheel our InterpolatedModel features sleep on when they
+     * have nothing to do.  This is for internal use only, and is public 
+     * so that GRIN features in other packages can access it efficiently.
+     **/
+    public TimingWheel modelWheel = new TimingWheel();
+
     protected Segment[] segments;
     protected Feature[] features;
     protected RCHandler[] rcHandlers;
@@ -162,8 +171,13 @@ public class Show implements AnimationClient {
 
     private boolean initialized = false;
     private boolean destroyed = false;
+    private LazyLoader lazyLoader = null;   // null unless read lazily
+    private SegmentPrefetcher prefetcher = null;
 
-    private Queue pendingCommands = new Queue(32);
+    private CommandQueue pendingCommands = makeCommandQueue();
+    private Object currentSegmentLock = new Object();
+        // Held when currentSegment changes, so RC key processing can look
+        // at it without taking out the show lock.
     private boolean deferringPendingCommands = false;
     private int numTargets = 1;   // number of RenderContext targets needed 
                                   // by this show
@@ -276,6 +290,58 @@ public class Show implements AnimationClient {
         font = new Font[fontName.length];
     }
 
+    /** 
+     * Used to build the show, when it is read by a reader that loads
+     * its nodes on demand.  Clients of the GRIN framework should not
+     * call this method directly.
+     *
+     * @see #loadNode(Object)
+     **/
+    public void setLazyLoader(LazyLoader lazyLoader) {
+        this.lazyLoader = lazyLoader;
+    }
+
+    /**
+     * Make sure that the given segment, feature, RC handler or command
+     * of this show has been read, along with the features, RC handlers
+     * and commands it refers to.  This only does something if the show
+     * was read by a JavaSE tool that reads nodes on demand; the show
+     * does this itself before it uses a node, but tools that walk
+     * the scene graph of a show need to call it before they look into
+     * a node.  If the show has been initialized, the nodes that are read
+     * are initialized, too.
+     *
+     * @see com.hdcookbook.grin.io.binary.LazyLoader
+     **/
+    public void loadNode(Object node) {
+        if (lazyLoader != null && node != null && !lazyLoader.isLoaded(node)) {
+            synchronized(this) {
+                lazyLoader.load(node, initialized);
+            }
+        }
+    }
+
+    /**
+     * Set a prefetcher that sets up the features of the segments that
+     * might be activated after the current one.  By default, a show
+     * has no prefetcher.  If a prefetcher is set, it starts working
+     * the next time a segment is activated.
+     *
+     * @param prefetcher    The prefetcher, or null to stop prefetching.
+     *
+     * @see SegmentPrefetcher
+     **/
+    public synchronized void setSegmentPrefetcher(SegmentPrefetcher prefetcher)
+    {
+        if (this.prefetcher != null) {
+            this.prefetcher.destroy();
+        }
+        this.prefetcher = prefetcher;
+        if (prefetcher != null) {
+            prefetcher.setShow(this);
+        }
+    }
+
     /**
      * Sets the scale and offset values for a show. 
      **/
@@ -318,6 +384,8 @@ public class Show implements AnimationClient {
         if (Debug.ASSERT && initialized) {
             Debug.assertFail("Initizlize called twice");
         }
+        loadNode(showTop);
+        loadNode(showTopGroup);
         initialized = true;
         this.component = component;
         if (stickyImages != null) {
@@ -340,10 +408,14 @@ public class Show implements AnimationClient {
         }
         setupManager.start();
         for (int i = 0; i < segments.length; i++) {
-            segments[i].initialize();
+            if (lazyLoader == null || lazyLoader.isLoaded(segments[i])) {
+                segments[i].initialize();
+            }
         }
         for (int i = 0; i < features.length; i++) {
-            features[i].initialize();
+            if (lazyLoader == null || lazyLoader.isLoaded(features[i])) {
+                features[i].initialize();
+            }
         }
         
         showTop.initialize();
@@ -367,11 +439,16 @@ public class Show implements AnimationClient {
             currentSegment.deactivate();
             currentSegment = null;
         }
+        if (prefetcher != null) {
+            prefetcher.destroy();
+        }
         showTop.deactivate();
         showTop = null;
                  
         for (int i = 0; i < features.length; i++) {
-            features[i].destroy();
+            if (lazyLoader == null || lazyLoader.isLoaded(features[i])) {
+                features[i].destroy();
+            }
         }       
         if (stickyImages != null) {
             for (int i = 0; i < stickyImages.length; i++) {
@@ -424,6 +501,7 @@ public class Show implements AnimationClient {
         for (int i = 0; i < features.length; i++) {
             Feature f = features[i];
             if (f instanceof SetTarget) {
+                loadNode(f);
                 ((SetTarget) f).mapDrawTarget(targetMap);
             }
         }
@@ -435,7 +513,9 @@ public class Show implements AnimationClient {
      * @return feature, or null if not found
      **/
     public Feature getFeature(String name) {
-        return (Feature) publicFeatures.get(name);
+        Feature f = (Feature) publicFeatures.get(name);
+        loadNode(f);
+        return f;
     }
 
     /**
@@ -447,7 +527,9 @@ public class Show implements AnimationClient {
      * @return the Command, or null
      **/
     public Command getNamedCommand(String name) {
-        return (Command) publicNamedCommands.get(name);
+        Command c = (Command) publicNamedCommands.get(name);
+        loadNode(c);
+        return c;
     }
    
     /**
@@ -456,7 +538,9 @@ public class Show implements AnimationClient {
      * @return rc handler, or null if not found
      **/
     public RCHandler getRCHandler(String name) {
-        return (RCHandler) publicRCHandlers.get(name);
+        RCHandler h = (RCHandler) publicRCHandlers.get(name);
+        loadNode(h);
+        return h;
     }
     
     /**
@@ -629,11 +713,43 @@ public class Show implements AnimationClient {
         if (cmds == null || cmds.length == 0) {
             return;
         }
-        synchronized(pendingCommands) {
-            for (int i = 0; i < cmds.length; i++) {
-                pendingCommands.add(cmds[i]);
-            }
-        }
+        pendingCommands.addAll(cmds);
+    }
+
+    /**
+     * Create the queue that holds commands and input events until the
+     * animation thread gets to them.  The SE version of a show overrides
+     * this to use a queue that doesn't take out locks.  This is called
+     * while the show is being constructed.
+     **/
+    protected CommandQueue makeCommandQueue() {
+        return new CommandQueue(64);
+    }
+
+    /**
+     * Set what to do with remote control and mouse events when the
+     * animation thread falls behind.  By default, they're queued
+     * like any other command.  A key event that's dropped still counts as
+     * handled by this show; see handleKeyPressed(int).
+     *
+     * @param policy    CommandQueue.KEEP_EVENTS, 
+     *                  CommandQueue.DROP_EVENTS_WHEN_FULL or
+     *                  CommandQueue.MERGE_REPEATED_EVENTS
+     *
+     * @see #getEventsDropped()
+     **/
+    public void setEventPolicy(int policy) {
+        pendingCommands.setEventPolicy(policy);
+    }
+
+    /**
+     * Get the number of remote control and mouse events that have been
+     * dropped or merged, according to the event policy.
+     *
+     * @see #setEventPolicy(int)
+     **/
+    public int getEventsDropped() {
+        return pendingCommands.getEventsDropped();
     }
 
     /**
@@ -662,6 +778,7 @@ public class Show implements AnimationClient {
      **/
     public synchronized void nextFrame() throws InterruptedException {
         if (currentSegment != null) {
+            modelWheel.advance();
             showTop.nextFrameForActiveFeatures();
             currentSegment.nextFrameForRCHandlers();
         }
@@ -707,12 +824,16 @@ public class Show implements AnimationClient {
     public synchronized void doActivateSegment(Segment newS) {
         // We know the lock is being held, and a command is being executed
         Segment old = currentSegment;
-        synchronized(pendingCommands) {
+        loadNode(newS);
+        synchronized(currentSegmentLock) {
             currentSegment = newS;
                 // Needed for RC key processing, since we don't want to
                 // take out the show lock when receiving an RC event.
         }
         currentSegment.activate(old);
+        if (prefetcher != null) {
+            prefetcher.segmentActivated(newS);
+        }
         director.notifySegmentActivated(newS, old);
     }
 
@@ -734,6 +855,18 @@ public class Show implements AnimationClient {
     public synchronized Segment getCurrentSegment() {
         return currentSegment;
     }
+
+    /**
+     * Get the number of InterpolatedModel features (including timers)
+     * that were stepped in the most recent frame.  Models that are asleep
+     * until their next keyframe aren't counted.  This is intended for
+     * debugging and performance tuning.
+     *
+     * @see com.hdcookbook.grin.features.TimingWheel
+     **/
+    public synchronized int getModelsEvaluated() {
+        return modelWheel.getModelsEvaluated();
+    }
     
 
     /**
@@ -783,24 +916,33 @@ public class Show implements AnimationClient {
      * always be harmless, but if you wish to capture all key presses in your
      * show, you can populate the needed segments with a key_pressed
      * rc_handler with an empty body that captures all keys.
+     * <p>
+     * If the show's event policy drops the key press because the animation
+     * thread has fallen behind, true is still returned.  The key press
+     * was meant for this show, so an xlet that offers keys to several shows
+     * shouldn't give it to another one.
      *
-     * @return true     If the key press is enqueued, and thus is expected to
-     *                  be used.
+     * @return true     If the key press is of interest to the current
+     *                  segment, and thus is enqueued or deliberately dropped.
+     *
+     * @see #setEventPolicy(int)
      **/
     public boolean handleKeyPressed(int vkCode) {
-        synchronized(pendingCommands) {
+        RCKeyEvent re;
+        synchronized(currentSegmentLock) {
             if (currentSegment == null) {
                 return false;
             }
-            RCKeyEvent re = RCKeyEvent.getKeyByEventCode(vkCode);
+            re = RCKeyEvent.getKeyByEventCode(vkCode);
             if (re == null) {
                 return false;
             }
             if ((currentSegment.rcPressedInterest & re.getBitMask()) == 0) {
                 return false;
             }
-            pendingCommands.add(re);
         }
+        // Consumed even if the event policy drops it
+        pendingCommands.addEvent(re);
         return true;
     }
 
@@ -826,24 +968,31 @@ public class Show implements AnimationClient {
      * always be harmless, but if you wish to capture all key releases in your
      * show, you can populate the needed segments with a key_released 
      * rc_handler with an empty body that captures all keys.
+     * <p>
+     * As with handleKeyPressed(), true is still returned if the show's
+     * event policy drops the key release.
      *
-     * @return true     If the key release is enqueued, and thus is expected to
-     *                  be used.
+     * @return true     If the key release is of interest to the current
+     *                  segment, and thus is enqueued or deliberately dropped.
+     *
+     * @see #setEventPolicy(int)
      **/
     public boolean handleKeyReleased(int vkCode) {
-        synchronized(pendingCommands) {
+        RCKeyEvent re;
+        synchronized(currentSegmentLock) {
             if (currentSegment == null) {
                 return false;
             }
-            RCKeyEvent re = RCKeyEvent.getKeyByEventCode(vkCode);
+            re = RCKeyEvent.getKeyByEventCode(vkCode);
             if (re == null) {
                 return false;
             }
             if ((currentSegment.rcReleasedInterest & re.getBitMask()) == 0) {
                 return false;
             }
-            pendingCommands.add(re.getKeyReleased());
         }
+        // Consumed even if the event policy drops it
+        pendingCommands.addEvent(re.getKeyReleased());
         return true;
     }
 
@@ -865,18 +1014,22 @@ public class Show implements AnimationClient {
      * see the protected RCKeyEvent constructor for details.
      * <p>
      * A key typed event is queued and true is returned only if the current
-     * segment uses that key typed event.
+     * segment uses that key typed event.  As with handleKeyPressed(), true
+     * is still returned if the show's event policy drops the event.
+     *
+     * @return true     If the key typed is of interest to the current
+     *                  segment, and thus is enqueued or deliberately dropped.
      *
-     * @return true     If the key typed is enqueued, and thus is expected to
-     *                  be used.
+     * @see #setEventPolicy(int)
      **/
     public boolean handleKeyTyped(RCKeyEvent typed) {
-        synchronized(pendingCommands) {
+        synchronized(currentSegmentLock) {
             if ((currentSegment.keyTypedInterest & typed.getBitMask()) == 0) {
                 return false;
             }
-            pendingCommands.add(typed);
         }
+        // Consumed even if the event policy drops it
+        pendingCommands.addEvent(typed);
         return true;
     }
 
@@ -893,12 +1046,10 @@ public class Show implements AnimationClient {
      **/
     public void handleKeyTypedToDirector(char key) {
 	if (director.wantsKeyTyped()) {
-	    synchronized(pendingCommands) {
-		GrinXHelper h = new GrinXHelper(this);
-		h.setCommandNumber(GrinXHelper.HANDLE_KEY_TYPED_FOR_DIRECTOR);
-		h.setCommandObject(new Character(key));
-		pendingCommands.add(h);
-	    }
+	    GrinXHelper h = new GrinXHelper(this);
+	    h.setCommandNumber(GrinXHelper.HANDLE_KEY_TYPED_FOR_DIRECTOR);
+	    h.setCommandObject(new Character(key));
+	    pendingCommands.addEvent(h);
 	}
     }
 
@@ -967,7 +1118,7 @@ public class Show implements AnimationClient {
 	    event.setCommandNumber(GrinXHelper.MOUSE_MOVE_DIRECTOR_ONLY);
 	}
 	event.setCommandObject(new Point(x, y));
-	pendingCommands.add(event);
+	pendingCommands.addEvent(event);
 	return wants;
     }
 
@@ -1027,7 +1178,7 @@ public class Show implements AnimationClient {
 	    event.setCommandNumber(GrinXHelper.MOUSE_PRESS_DIRECTOR_ONLY);
 	}
 	event.setCommandObject(new Point(x, y));
-	pendingCommands.add(event);
+	pendingCommands.addEvent(event);
 	return wants;
     }
 
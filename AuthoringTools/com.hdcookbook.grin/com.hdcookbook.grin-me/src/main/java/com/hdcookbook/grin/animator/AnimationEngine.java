@@ -79,6 +79,26 @@ public abstract class AnimationEngine implements Runnable {
      **/
     public final static Color transparent = new Color(0, 0, 0, 0);
 
+    /**
+     * Constant for setDrawTargetCollapseAlgorithm(int) that selects the
+     * original algorithm for collapsing draw targets, which compares
+     * every pair of targets.  This is the default.
+     *
+     * @see #setDrawTargetCollapseAlgorithm(int)
+     **/
+    public final static int COLLAPSE_PAIRWISE = 0;
+
+    /**
+     * Constant for setDrawTargetCollapseAlgorithm(int) that selects
+     * an algorithm for collapsing draw targets that sorts them by
+     * position, and only compares targets that are close enough
+     * together to be worth combining.  This is O(n log n) on the
+     * number of targets in the common case.
+     *
+     * @see #setDrawTargetCollapseAlgorithm(int)
+     **/
+    public final static int COLLAPSE_SWEEP = 1;
+
     /** 
      * The list of erase and drawing areas that were updated in 
      * the current frame of animation, and records of what happened
@@ -108,6 +128,8 @@ public abstract class AnimationEngine implements Runnable {
 
     private AnimationContext context;   // see initialize(), start(), run()
     private Rectangle lastClip = new Rectangle(); // see paintFrame
+    private FramePool framePool = new FramePool();  // see getAllocations
+    private FrameMetrics metrics = new FrameMetrics(); // see getFrameMetrics
 
     private boolean needsFullPaint = true;      // First frame painted fully
     protected int modelTimeSkipped = 0;
@@ -117,6 +139,7 @@ public abstract class AnimationEngine implements Runnable {
     private byte[] profileDraw;         // Time spent drawing to buffer
 
     private int drawTargetCollapseThreshold = Integer.MIN_VALUE;
+    private int drawTargetCollapseAlgorithm = COLLAPSE_PAIRWISE;
     protected boolean targetsCanOverlap = false;
 
 
@@ -140,10 +163,11 @@ public abstract class AnimationEngine implements Runnable {
      * AnimationContext.animationInitialize() completes.  It's fine
      * to call it before starting the animation thread, too.
      * <p>
-     * Note that the algorithm used to collapse render area targets
+     * Note that the default algorithm used to collapse render area targets
      * is cubic with the number of targets, so this number should be
      * kept low.  Between one and three would be reasonable, and five
-     * is perhaps a workable maximum.
+     * is perhaps a workable maximum.  Clients that need more targets than
+     * this should consider COLLAPSE_SWEEP.
      *
      * @param clients           The animation clients we'll support
      *
@@ -172,11 +196,16 @@ public abstract class AnimationEngine implements Runnable {
             }
             clients[i].mapDrawTargets(targets);
         }
-        renderContext = new RenderContextBase(targets.size());
+        if (renderContext == null) {
+            renderContext = new RenderContextBase(framePool, targets.size());
+        } else {
+            renderContext.setNumTargets(targets.size());
+        }
         if (drawTargetCollapseThreshold != Integer.MIN_VALUE) {  
             // If it's been set
             renderContext.setCollapseThreshold(drawTargetCollapseThreshold);
         }
+        renderContext.setCollapseAlgorithm(drawTargetCollapseAlgorithm);
         renderContext.setTargetsCanOverlap(targetsCanOverlap);
     }
 
@@ -191,6 +220,14 @@ public abstract class AnimationEngine implements Runnable {
      * This value may be set to 0, or even a negative number.  This might be
      * valuable to disable the collapse optimization, for clients that want a 
      * predictable and consistent render time.
+     * <p>
+     * The threshold can be thought of as the cost of painting a
+     * draw target, measured in pixels:  two targets are combined when
+     * painting their union costs no more than painting the two separately
+     * plus this overhead.  Both collapse algorithms use the same cost
+     * model.
+     *
+     * @see #setDrawTargetCollapseAlgorithm(int)
      **/
     public synchronized void setDrawTargetCollapseThreshold(int t) {
         if (t == Integer.MIN_VALUE) {
@@ -202,6 +239,34 @@ public abstract class AnimationEngine implements Runnable {
         }
     }
 
+    /**
+     * Sets the algorithm used to collapse draw targets into the set
+     * of areas that are erased and painted each frame.  This is
+     * selectable so that the frame times of different algorithms can be
+     * compared on a given player and show; the profile timer for
+     * damage calculation measures the time spent here.
+     * <p>
+     * This method must only be called during the model update.
+     * <p>
+     * The default value is COLLAPSE_PAIRWISE.
+     *
+     * @param algorithm  COLLAPSE_PAIRWISE or COLLAPSE_SWEEP
+     *
+     * @throws IllegalArgumentException if algorithm isn't a known value
+     *
+     * @see #COLLAPSE_PAIRWISE
+     * @see #COLLAPSE_SWEEP
+     **/
+    public synchronized void setDrawTargetCollapseAlgorithm(int algorithm) {
+        if (algorithm != COLLAPSE_PAIRWISE && algorithm != COLLAPSE_SWEEP) {
+            throw new IllegalArgumentException();
+        }
+        drawTargetCollapseAlgorithm = algorithm;
+        if (renderContext != null) {
+            renderContext.setCollapseAlgorithm(algorithm);
+        }
+    }
+
     /**
      * Sets whether or not overlapping draw targets are allowed.  By default
      * they are not, that is, any draw targets that overlap will be combined
@@ -718,7 +783,7 @@ public abstract class AnimationEngine implements Runnable {
 
         //
         // Finally, set the clients data member, and set up the draw targets
-        // This also creates a new renderContext.
+        // This re-uses the renderContext, and its Rectangle instances.
         //
         renderContext.resetLastFrameList();
         doInitClients(localNew);
@@ -753,11 +818,52 @@ public abstract class AnimationEngine implements Runnable {
     }
     
     protected final void advanceModel() throws InterruptedException {
+        long start = Profile.nanoTime();
         synchronized(repaintLock) {
             for (int i = 0; i < clients.length; i++)  {
                 clients[i].nextFrame();
             }
         } 
+        long end = Profile.nanoTime();
+        synchronized(metrics) {
+            metrics.modelNanos += end - start;
+        }
+    }
+
+    /**
+     * Count a frame whose model was advanced, but that wasn't shown.
+     * runAnimationLoop() should call this for each such frame, so that
+     * the frame metrics are right.
+     *
+     * @param requested true if the frame was skipped on request, false if
+     *                  it was dropped because animation fell behind.
+     *
+     * @see #getFrameMetrics(FrameMetrics)
+     **/
+    protected final void countUnshownFrame(boolean requested) {
+        synchronized(metrics) {
+            if (requested) {
+                metrics.framesSkipped++;
+            } else {
+                metrics.framesDropped++;
+            }
+        }
+    }
+
+    /**
+     * Get a snapshot of this engine's frame metrics.  The engine keeps
+     * these whether or not profiling is enabled, and this method doesn't
+     * allocate, so it can be polled as often as desired, e.g. to log frame
+     * pacing in a production xlet.  This may be called from any thread.
+     *
+     * @param result    The instance to fill in
+     *
+     * @see FrameMetrics
+     **/
+    public void getFrameMetrics(FrameMetrics result) {
+        synchronized(metrics) {
+            result.copyFrom(metrics);
+        }
     }
 
     /**
@@ -767,6 +873,7 @@ public abstract class AnimationEngine implements Runnable {
      * @see #callPaintTargets()
      **/
     protected final void showFrame() throws InterruptedException {
+        long startTime = Profile.nanoTime();
         for (int i = 0; i < clients.length; i++) {
             clients[i].setCaughtUp();
         }
@@ -815,6 +922,16 @@ public abstract class AnimationEngine implements Runnable {
         if (Debug.PROFILE && Debug.PROFILE_ANIMATION) {
             Profile.stopTimer(tok);
         }
+        long areasTime = Profile.nanoTime();
+        int pixels = 0;
+        int targets = 0;
+        for (int i = 0; i < renderContext.numDrawTargets; i++) {
+            Rectangle a = renderContext.drawTargets[i];
+            if (!RenderContextBase.isEmpty(a)) {
+                pixels += a.width * a.height;
+                targets++;
+            }
+        }
         if (!targetsCanOverlap) {
             if (Debug.PROFILE && Debug.PROFILE_ANIMATION) {
                 tok = Profile.startTimer(profileErase, Profile.TID_ANIMATION);
@@ -829,6 +946,7 @@ public abstract class AnimationEngine implements Runnable {
                 Profile.stopTimer(tok);
             }
         }
+        long paintTime;
         try {
             int tok2;
             if (Debug.PROFILE && Debug.PROFILE_ANIMATION) {
@@ -845,8 +963,37 @@ public abstract class AnimationEngine implements Runnable {
                 } catch (Throwable ignored) {
                 }
             }
+            paintTime = Profile.nanoTime();
             finishedFrame();
         }
+        long endTime = Profile.nanoTime();
+        synchronized(metrics) {
+            metrics.framesPainted++;
+            metrics.displayAreasNanos += areasTime - startTime;
+            metrics.paintNanos += paintTime - areasTime;
+            metrics.finishedFrameNanos += endTime - paintTime;
+            metrics.pixelsPainted += pixels;
+            metrics.drawTargets += targets;
+            metrics.lastPixelsPainted = pixels;
+            metrics.lastDrawTargets = targets;
+        }
+    }
+
+    /**
+     * Get the number of Rectangles and arrays this engine's pool has 
+     * allocated for tracking drawing, over the lifetime of the engine.
+     * The pool only grows when the animation clients are reset with more
+     * render area targets than it holds, so this can be used to check
+     * that resetting the clients re-uses the pooled objects.
+     * <p>
+     * This is not a measure of what a frame allocates, since the pool
+     * never grows within a frame.  It doesn't count objects allocated
+     * by animation clients, or by the platform's graphics implementation.
+     *
+     * @see #resetAnimationClients(AnimationClient[])
+     **/
+    public int getAllocations() {
+        return framePool.getAllocations();
     }
 
     /**
@@ -872,6 +1019,9 @@ public abstract class AnimationEngine implements Runnable {
             throws InterruptedException 
     {
         g.setComposite(AlphaComposite.Src);
+        if (renderContext.numDrawTargets == 0) {
+            return;     // Nothing changed, so leave the clip alone
+        }
         lastClip.width = 0;
         g.getClipBounds(lastClip);
         for (int i = 0; i < renderContext.numDrawTargets; i++) {
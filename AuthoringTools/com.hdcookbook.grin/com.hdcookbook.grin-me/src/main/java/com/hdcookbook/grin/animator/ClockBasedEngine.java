@@ -396,6 +396,8 @@ public abstract class ClockBasedEngine extends AnimationEngine {
                 if (Debug.LEVEL > 0) {
                     skippedFrames++;
                 }
+                countUnshownFrame(currTime >= Long.MAX_VALUE - 1L);
+                    // An artificial currTime means skipFrames() asked for it
                 continue;
             } 
 
@@ -417,6 +419,7 @@ public abstract class ClockBasedEngine extends AnimationEngine {
                 if (Debug.LEVEL > 0) {
                     skippedFrames++;
                 }
+                countUnshownFrame(false);
                 continue;
             }
 
@@ -378,6 +378,27 @@ public class DrawRecord {
         lastHeight = height;
     }
 
+    //
+    // Called from LayerRenderContext, which collects the DrawRecord
+    // instances of a cached layer instead of drawing them.  Such a
+    // record never reaches a RenderContextBase, so we keep track of
+    // the last frame here.  Our area is added to bounds, and we return
+    // true if what we draw differs from what was drawn in the last frame.
+    //
+    boolean collectForLayer(Rectangle bounds) {
+        boolean result = lastWidth == Integer.MIN_VALUE || changed
+                         || x != lastX || y != lastY
+                         || width != lastWidth || height != lastHeight;
+        addToRect(bounds, x, y, width, height);
+        lastX = x;
+        lastY = y;
+        lastWidth = width;
+        lastHeight = height;
+        changed = false;
+        opaque = true;
+        return result;
+    }
+
     //
     // Called from RenderContextBase when this DrawRecord was used in the
     // last frame of animation, but isn't used in this frame.
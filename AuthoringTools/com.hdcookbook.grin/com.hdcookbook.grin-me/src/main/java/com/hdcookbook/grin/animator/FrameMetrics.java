@@ -0,0 +1,211 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.animator;
+
+/**
+ * A snapshot of an animation engine's frame counters.  An engine keeps
+ * these all the time, not just when profiling, so that a production
+ * xlet can watch its frame pacing.  Get a snapshot with
+ * AnimationEngine.getFrameMetrics(FrameMetrics).  Filling in an
+ * instance the caller owns means that polling the counters doesn't
+ * allocate anything.
+ * <p>
+ * The counters are totals over the life of the engine, so rates over an
+ * interval can be found by subtracting one snapshot from a later one.
+ * Times are in nanoseconds, taken from Profile.nanoTime().  Unless the
+ * xlet binds a finer clock with Profile.setHelper(), that's
+ * System.currentTimeMillis() * 1000000, since PBP has nothing better.
+ * On a player, each phase of a frame then adds either 0 or a whole number
+ * of milliseconds to its time.  A phase that takes a fraction of a
+ * millisecond adds 0 to most frames and 1 ms to a few, so the times only
+ * become meaningful when they're averaged over many frames.
+ *
+ * @see AnimationEngine#getFrameMetrics(FrameMetrics)
+ * @see com.hdcookbook.grin.util.Profile#nanoTime()
+ * @see com.hdcookbook.grin.util.Profile#setHelper(com.hdcookbook.grin.util.Profile)
+ **/
+public class FrameMetrics {
+
+    /**
+     * The number of frames painted
+     **/
+    public int framesPainted;
+
+    /**
+     * The number of frames whose model was updated, but which weren't
+     * painted because animation had fallen behind.
+     **/
+    public int framesDropped;
+
+    /**
+     * The number of frames whose model was updated, but which weren't
+     * painted because they were skipped on request, e.g. with
+     * ClockBasedEngine.skipFrames(int).
+     *
+     * @see ClockBasedEngine#skipFrames(int)
+     **/
+    public int framesSkipped;
+
+    /**
+     * Time spent in the clients' nextFrame() methods
+     *
+     * @see AnimationClient#nextFrame()
+     **/
+    public long modelNanos;
+
+    /**
+     * Time spent in the clients' addDisplayAreas() methods, plus the
+     * time to work out the draw targets from them.
+     *
+     * @see AnimationClient#addDisplayAreas(RenderContext)
+     **/
+    public long displayAreasNanos;
+
+    /**
+     * Time spent erasing and painting
+     **/
+    public long paintNanos;
+
+    /**
+     * Time spent in the engine's finishedFrame(), e.g. copying to the
+     * framebuffer.
+     **/
+    public long finishedFrameNanos;
+
+    /**
+     * The number of pixels in the draw targets that were painted, 
+     * over all frames.
+     **/
+    public long pixelsPainted;
+
+    /**
+     * The number of non-empty draw targets painted, over all frames.
+     **/
+    public long drawTargets;
+
+    /**
+     * The number of pixels in the draw targets of the last frame painted
+     **/
+    public int lastPixelsPainted;
+
+    /**
+     * The number of non-empty draw targets in the last frame painted
+     **/
+    public int lastDrawTargets;
+
+    public FrameMetrics() {
+    }
+
+    /**
+     * Set this snapshot to the values in other.
+     **/
+    public void copyFrom(FrameMetrics other) {
+        framesPainted = other.framesPainted;
+        framesDropped = other.framesDropped;
+        framesSkipped = other.framesSkipped;
+        modelNanos = other.modelNanos;
+        displayAreasNanos = other.displayAreasNanos;
+        paintNanos = other.paintNanos;
+        finishedFrameNanos = other.finishedFrameNanos;
+        pixelsPainted = other.pixelsPainted;
+        drawTargets = other.drawTargets;
+        lastPixelsPainted = other.lastPixelsPainted;
+        lastDrawTargets = other.lastDrawTargets;
+    }
+
+    /**
+     * Set this to the difference between two snapshots, that is, the
+     * counts for the interval between them.  The last frame values are
+     * taken from later.
+     **/
+    public void setDifference(FrameMetrics later, FrameMetrics earlier) {
+        framesPainted = later.framesPainted - earlier.framesPainted;
+        framesDropped = later.framesDropped - earlier.framesDropped;
+        framesSkipped = later.framesSkipped - earlier.framesSkipped;
+        modelNanos = later.modelNanos - earlier.modelNanos;
+        displayAreasNanos = later.displayAreasNanos - earlier.displayAreasNanos;
+        paintNanos = later.paintNanos - earlier.paintNanos;
+        finishedFrameNanos = later.finishedFrameNanos 
+                             - earlier.finishedFrameNanos;
+        pixelsPainted = later.pixelsPainted - earlier.pixelsPainted;
+        drawTargets = later.drawTargets - earlier.drawTargets;
+        lastPixelsPainted = later.lastPixelsPainted;
+        lastDrawTargets = later.lastDrawTargets;
+    }
+
+    /**
+     * Give a one-line summary, with times averaged per frame painted.
+     * This allocates, so it's meant for logging, not for use in the
+     * animation loop.
+     **/
+    public String toString() {
+        int n = Math.max(framesPainted, 1);
+        return framesPainted + " painted, " + framesDropped + " dropped, "
+               + framesSkipped + " skipped; per frame:  model "
+               + toMs(modelNanos / n) + ", display areas " 
+               + toMs(displayAreasNanos / n) + ", paint "
+               + toMs(paintNanos / n) + ", finish "
+               + toMs(finishedFrameNanos / n) + ", "
+               + (pixelsPainted / n) + " pixels in "
+               + (drawTargets / n) + " targets";
+    }
+
+    private static String toMs(long ns) {
+        long us = ns / 1000;
+        String frac = "" + (us % 1000 + 1000);
+        return (us / 1000) + "." + frac.substring(1) + " ms";
+    }
+}
@@ -0,0 +1,139 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.animator;
+
+import java.awt.Rectangle;
+
+/**
+ * A pool of the Rectangle instances used by the animation framework
+ * to track drawing.  There's one of these per AnimationEngine, and
+ * it's only used from the animation thread, so it isn't synchronized.
+ * <p>
+ * Rectangles are only created the first time they're needed.  After
+ * that, objects that are released to the pool are handed out again.
+ * The pool keeps a count of every object it had to allocate, which 
+ * shows whether a reset re-used the pooled objects.
+ * <p>
+ * A steady-state frame doesn't use the pool:  the DrawRecords belong to
+ * the features, and a frame re-uses the Rectangles the render context
+ * already holds.  The pool is for resetAnimationClients(), which an xlet
+ * calls while the animation is running, e.g. when GrinXlet changes the
+ * clients it shows.  That used to build a new RenderContextBase, with
+ * two Rectangles per render area target and the arrays that hold them,
+ * on the animation thread.  On a player, that garbage can cost a frame
+ * at the moment the new clients start animating.  With the pool, a reset
+ * to the same number of targets allocates nothing, and a reset to a
+ * different number only allocates the two arrays.
+ **/
+final class FramePool {
+
+    private Rectangle[] rectangles = new Rectangle[8];
+    private int numRectangles = 0;
+        // The free list, kept as a stack.  Elements in
+        // [0..numRectangles-1] are available for re-use.
+
+    private int allocations = 0;
+        // See getAllocations()
+
+    FramePool() {
+    }
+
+    //
+    // Get a Rectangle from the pool.  The Rectangle is empty.
+    //
+    Rectangle getRectangle() {
+        if (numRectangles == 0) {
+            allocations++;
+            return new Rectangle();
+        }
+        numRectangles--;
+        Rectangle r = rectangles[numRectangles];
+        rectangles[numRectangles] = null;
+        return r;
+    }
+
+    //
+    // Give a Rectangle back to the pool.  The caller must not
+    // use r after calling this.
+    //
+    void release(Rectangle r) {
+        if (numRectangles >= rectangles.length) {
+            Rectangle[] a = new Rectangle[rectangles.length * 2];
+            System.arraycopy(rectangles, 0, a, 0, numRectangles);
+            rectangles = a;
+            allocations++;
+        }
+        RenderContextBase.setEmpty(r);
+        rectangles[numRectangles++] = r;
+    }
+
+    //
+    // Record an allocation made on behalf of the pool's users, such as
+    // an array that holds pooled objects.
+    //
+    void noteAllocation() {
+        allocations++;
+    }
+
+    //
+    // Get the number of objects that have been allocated by this pool
+    // in its lifetime.  This only changes when the number of render
+    // area targets grows.
+    //
+    int getAllocations() {
+        return allocations;
+    }
+}
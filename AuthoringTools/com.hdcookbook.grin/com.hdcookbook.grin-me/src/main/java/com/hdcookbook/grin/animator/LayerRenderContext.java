@@ -0,0 +1,177 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+
+package com.hdcookbook.grin.animator;
+
+import java.awt.Rectangle;
+
+/**
+ * A RenderContext that collects the drawing done by part of a scene
+ * graph, instead of sending it to the screen.  This is used by a
+ * feature that draws its children into an offscreen buffer, like
+ * <code>com.hdcookbook.grin.features.CachedLayer</code>.  Each frame,
+ * the feature calls startFrame(), passes this context to its children's
+ * addDisplayAreas(), and then calls finishFrame() to find out if
+ * anything its children draw has changed since the last frame.
+ * <p>
+ * A DrawRecord that's been given to a LayerRenderContext must not be
+ * given to any other RenderContext.  Calls to setTarget() are ignored;
+ * all of the collected drawing goes to the target of the feature that
+ * owns this context.
+ *
+ * @see com.hdcookbook.grin.features.CachedLayer
+ **/
+
+public class LayerRenderContext extends RenderContext {
+
+    private DrawRecord[] records = new DrawRecord[8];
+    private int numRecords = 0;
+    private int lastNumRecords = 0;
+    private boolean changed;
+    private Rectangle bounds = new Rectangle();
+
+    /**
+     * Create a new, empty LayerRenderContext
+     **/
+    public LayerRenderContext() {
+    }
+
+    /**
+     * Start collecting the drawing for a new frame of animation.
+     **/
+    public void startFrame() {
+        numRecords = 0;
+        changed = false;
+        bounds.setBounds(0, 0, 0, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    public void addArea(DrawRecord r) {
+        if (numRecords >= records.length) {
+            DrawRecord[] a = new DrawRecord[records.length * 2];
+            System.arraycopy(records, 0, a, 0, records.length);
+            records = a;
+        }
+        if (records[numRecords] != r) {
+            // A different set of records than last time means something
+            // was added, removed, or re-ordered.
+            changed = true;
+            records[numRecords] = r;
+        }
+        numRecords++;
+        if (r.collectForLayer(bounds)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This does nothing.  The layer is drawn to the screen as one
+     * image, so a guarantee made by one of its children doesn't help.
+     **/
+    public void guaranteeAreaFilled(DrawRecord r) {
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This does nothing, and returns 0.
+     **/
+    public int setTarget(int newTarget) {
+        return 0;
+    }
+
+    /**
+     * Finish collecting the drawing for a frame of animation.
+     *
+     * @return  true if the collected drawing differs from that of the
+     *          last frame, or if this is the first frame since
+     *          this context was created or reset.
+     **/
+    public boolean finishFrame() {
+        if (numRecords != lastNumRecords) {
+            changed = true;
+        }
+        for (int i = numRecords; i < lastNumRecords; i++) {
+            records[i] = null;
+        }
+        lastNumRecords = numRecords;
+        return changed;
+    }
+
+    /**
+     * Forget the last frame, e.g. because the feature owning this context
+     * was deactivated.  The next frame will be reported as changed.
+     **/
+    public void reset() {
+        for (int i = 0; i < lastNumRecords; i++) {
+            records[i] = null;
+        }
+        lastNumRecords = 0;
+    }
+
+    /**
+     * Get the bounding rectangle of everything collected in the current
+     * frame.  The caller must not modify it.  If nothing was drawn,
+     * its width and height are zero.
+     **/
+    public Rectangle getBounds() {
+        return bounds;
+    }
+}
@@ -65,6 +65,7 @@ import java.awt.Rectangle;
  **/
 class RenderContextBase extends RenderContext {
 
+    private final static Rectangle[] EMPTY_RECTANGLE_ARRAY = new Rectangle[0];
 
     private int currTarget; 
         // The render area target for erasing and drawing
@@ -79,7 +80,7 @@ class RenderContextBase extends RenderContext {
     Rectangle[] eraseTargets;
         // Targets for erasing
 
-    private Rectangle collapsed = new Rectangle(); 
+    private Rectangle collapsed; 
         // see collapseTargets(Rectangle[])
 
     private DrawRecord thisFrameList = null;
@@ -108,7 +109,30 @@ class RenderContextBase extends RenderContext {
 
     private boolean targetsCanOverlap;
 
-    RenderContextBase(int numTargets) {
+    private int collapseAlgorithm = AnimationEngine.COLLAPSE_PAIRWISE;
+        // See setCollapseAlgorithm
+
+    private FramePool pool;
+
+    RenderContextBase(FramePool pool, int numTargets) {
+        this.pool = pool;
+        this.collapsed = pool.getRectangle();
+        this.drawTargets = EMPTY_RECTANGLE_ARRAY;
+        this.eraseTargets = EMPTY_RECTANGLE_ARRAY;
+        setNumTargets(numTargets);
+        lastFrameList.prev = lastFrameList;
+        lastFrameList.next = lastFrameList;
+    }
+
+    //
+    // Set the number of render area targets.  This is called when the
+    // render context is created, and again when the set of animation
+    // clients is reset.  The Rectangle instances come from our pool, so
+    // re-using a render context for a new set of clients creates no
+    // garbage; new arrays are only allocated when the number of targets
+    // changes.
+    //
+    void setNumTargets(int numTargets) {
         this.currTarget = 0;
         if (numTargets < 1) {
             numTargets = 1;
@@ -116,16 +140,23 @@ class RenderContextBase extends RenderContext {
             // setFullPaint(), so make sure there's at least one drawTarget,
             // e.g. to handle the case where there are no animation clients.
         }
+        if (numTargets == drawTargets.length) {
+            return;
+        }
+        for (int i = 0; i < drawTargets.length; i++) {
+            pool.release(drawTargets[i]);
+            pool.release(eraseTargets[i]);
+        }
         this.drawTargets = newRectArray(numTargets);
         this.eraseTargets = newRectArray(numTargets);
-        lastFrameList.prev = lastFrameList;
-        lastFrameList.next = lastFrameList;
+        numDrawTargets = 0;
     }
 
     private Rectangle[] newRectArray(int n) {
         Rectangle[] r = new Rectangle[n];
+        pool.noteAllocation();
         for (int i = 0; i < n; i++) {
-            r[i] = new Rectangle();
+            r[i] = pool.getRectangle();
         }
         return r;
     }
@@ -146,6 +177,16 @@ class RenderContextBase extends RenderContext {
         this.collapseThreshold = collapseThreshold;
     }
 
+    //
+    // Sets the algorithm used to collapse draw targets.  This is one of
+    // AnimationEngine.COLLAPSE_PAIRWISE or AnimationEngine.COLLAPSE_SWEEP.
+    // Both use the same cost model, so they can be compared against
+    // each other frame for frame.
+    //
+    void setCollapseAlgorithm(int collapseAlgorithm) {
+        this.collapseAlgorithm = collapseAlgorithm;
+    }
+
     void setTargetsCanOverlap(boolean v) {
         targetsCanOverlap = v;
     }
@@ -333,7 +374,129 @@ class RenderContextBase extends RenderContext {
     void collapseTargets() {
 
                 // First, we try to optimally collapse the targets.
-        numDrawTargets = collapseTargets(drawTargets);
+        if (collapseAlgorithm == AnimationEngine.COLLAPSE_SWEEP) {
+            numDrawTargets = collapseTargetsSweep(drawTargets);
+        } else {
+            numDrawTargets = collapseTargets(drawTargets);
+        }
+    }
+
+    //
+    // Work out if two draw targets should be combined into one.  The
+    // cost model is simple:  painting costs one unit per pixel, and
+    // each separate draw target costs collapseThreshold units of
+    // overhead (setting the clip, and calling paintFrame() on every
+    // client).  We combine when painting the union is no more expensive
+    // than painting the two separately.  On return, the union of the two
+    // is left in collapsed.
+    //
+    private boolean shouldCombine(Rectangle a, Rectangle b) {
+        collapsed.setBounds(a);
+        collapsed.add(b);
+            // If there's a seperate erase step,
+            // we conservatively combine intersecting draw rects
+            // here, since it's not OK to draw an area twice
+            // in SrcOver mode.
+            //
+            // This could be a bit more efficient, in the
+            // case where the intersection is compeletely
+            // contained within one of the rectangles and
+            // all on one side of the other.  In this case,
+            // instead of collapsing, the other rectangle
+            // could be made smaller.
+        if (!targetsCanOverlap && a.intersects(b)) {
+            return true;
+        }
+        int ac = collapsed.width * collapsed.height;
+        int separate = a.width * a.height + b.width * b.height;
+        return ac <= separate + collapseThreshold;
+    }
+
+    //
+    // Collapse the draw areas into an optimal set, using a sort and
+    // sweep over the x axis.  The targets are sorted by their left
+    // edge, and each target is only compared against the targets that
+    // start close enough to its right edge that combining the two could
+    // pass the cost test in shouldCombine().  When a target lies dx pixels
+    // to the right of another of height h, their union is at least
+    // dx*h pixels bigger than the two of them, so the sweep can stop once
+    // that exceeds collapseThreshold.
+    //
+    // For n targets this is O(n log n) per pass, and combining targets
+    // only ever makes them bigger, so it typically settles down after one
+    // or two passes.  It returns the same kind of result as
+    // collapseTargets(Rectangle[]), though not necessarily the identical
+    // set of rectangles, since the merge order is different.
+    //
+    private int collapseTargetsSweep(Rectangle[] targets) {
+        int n = purgeEmpty(targets, targets.length);
+        boolean changed = true;
+        while (changed && n > 1) {
+            changed = false;
+            sortByX(targets, n);
+            for (int i = 0; i < n - 1; i++) {
+                Rectangle a = targets[i];
+                int j = i + 1;
+                while (j < n) {
+                    Rectangle b = targets[j];
+                    int dx = b.x - (a.x + a.width);
+                    if (dx > 0 && dx * a.height > collapseThreshold) {
+                        break;  // No later target can be combined with a
+                    }
+                    if (shouldCombine(a, b)) {
+                        a.setBounds(collapsed);
+                            // a.x is <= b.x, so a keeps its place in the
+                            // sort order.
+                        for (int k = j + 1; k < n; k++) {
+                            targets[k - 1] = targets[k];
+                        }
+                        targets[n - 1] = b;
+                        setEmpty(b);
+                        n--;
+                        changed = true;
+                        j = i + 1;      // a grew, so look again
+                    } else {
+                        j++;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    //
+    // Sort targets[0..n-1] by their x coordinate.  This is a heap sort,
+    // so that it's O(n log n) and doesn't allocate anything.
+    //
+    private static void sortByX(Rectangle[] targets, int n) {
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(targets, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            Rectangle tmp = targets[0];
+            targets[0] = targets[end];
+            targets[end] = tmp;
+            siftDown(targets, 0, end);
+        }
+    }
+
+    private static void siftDown(Rectangle[] targets, int root, int n) {
+        for (;;) {
+            int child = 2 * root + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && targets[child + 1].x > targets[child].x) {
+                child++;
+            }
+            if (targets[root].x >= targets[child].x) {
+                return;
+            }
+            Rectangle tmp = targets[root];
+            targets[root] = targets[child];
+            targets[child] = tmp;
+            root = child;
+        }
     }
 
     //
@@ -371,28 +534,7 @@ class RenderContextBase extends RenderContext {
         for (;;) {
             for (int i = 0; i < n; i++) {
                 for (int j = i+1; j <= n; j++) {
-                    collapsed.setBounds(targets[i]);
-                    collapsed.add(targets[j]);
-                        // If there's a seperate erase step,
-                        // we conservatively combine intersecting draw rects
-                        // here, since it's not OK to draw an area twice
-                        // in SrcOver mode.
-                        //
-                        // This could be a bit more efficient, in the
-                        // case where the intersection is compeletely
-                        // contained within one of the rectangles and
-                        // all on one side of the other.  In this case,
-                        // instead of collapsing, the other rectangle
-                        // could be made smaller.
-                    boolean combine = !targetsCanOverlap
-                                      && targets[i].intersects(targets[j]);
-                    if (!combine) {
-                        int ac = collapsed.width * collapsed.height;
-                        int a = targets[i].width * targets[i].height
-                               + targets[j].width * targets[j].height;
-
-                        combine = ac <= a + collapseThreshold;
-                    }
+                    boolean combine = shouldCombine(targets[i], targets[j]);
                     if (combine) {
                         // combine them
                         targets[i].setBounds(collapsed);
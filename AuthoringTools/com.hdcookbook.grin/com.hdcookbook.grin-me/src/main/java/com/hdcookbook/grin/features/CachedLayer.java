@@ -0,0 +1,233 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+
+package com.hdcookbook.grin.features;
+
+import com.hdcookbook.grin.Node;
+import com.hdcookbook.grin.Show;
+import com.hdcookbook.grin.Feature;
+import com.hdcookbook.grin.animator.DrawRecord;
+import com.hdcookbook.grin.animator.LayerRenderContext;
+import com.hdcookbook.grin.animator.RenderContext;
+import com.hdcookbook.grin.util.AssetFinder;
+
+import com.hdcookbook.grin.io.binary.GrinDataInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Draws its child into an offscreen buffer, and then paints the buffer
+ * in each frame, instead of painting the child.  The buffer is only
+ * re-drawn when something the child draws changes, that is, when one
+ * of the child's DrawRecord instances is changed, moves, appears or
+ * disappears.  This is useful for a big subtree that doesn't change
+ * much, like a background made up of many images and text items.
+ * <p>
+ * The layer is drawn to the screen as one semi-transparent area that
+ * covers the bounding rectangle of its children, in SrcOver mode.  This
+ * gives the same result as drawing the children directly, except where
+ * a semi-transparent pixel of the layer is drawn over another feature;
+ * there, the layer blends rather than replacing.  Set_target
+ * features within the layer have no effect.
+ * <p>
+ * The buffer is obtained from AssetFinder.createCompatibleImageBuffer(),
+ * so, like the animation engine's own buffer, it should support
+ * transparency.  It's released when the layer is deactivated.
+ *
+ * @see com.hdcookbook.grin.util.AssetFinder#createCompatibleImageBuffer(java.awt.Component, int, int)
+ **/
+public class CachedLayer extends Modifier implements Node {
+
+    private LayerRenderContext layerContext = new LayerRenderContext();
+    private DrawRecord drawRecord = new DrawRecord();
+    private static Color transparent = new Color(0, 0, 0, 0);
+
+        // The area of the layer in the current frame
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+
+    private Image buffer = null;
+    private int bufferWidth;
+    private int bufferHeight;
+    private boolean bufferValid = false;
+    private int numRenders = 0;
+
+    public CachedLayer(Show show) {
+        super(show);
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    protected Feature createClone(HashMap clones) {
+        if (!isSetup() || activated) {
+            throw new IllegalStateException();
+        }
+        CachedLayer result = new CachedLayer(show);
+        result.part = part.makeNewClone(clones);
+        return result;
+            // initializeClone() not needed
+    }
+
+    /**
+     * Get the number of times this layer has drawn its child into
+     * its buffer.  This can be used to check that a layer is actually
+     * saving work; if it goes up every frame, the layer is probably
+     * around something that's animating.
+     **/
+    public int getNumRenders() {
+        return numRenders;
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    protected void setActivateMode(boolean mode) {
+        super.setActivateMode(mode);
+        if (!mode) {
+            layerContext.reset();
+            bufferValid = false;
+            if (buffer != null) {
+                AssetFinder.destroyImageBuffer(buffer);
+                buffer = null;
+                bufferWidth = 0;
+                bufferHeight = 0;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    public void addDisplayAreas(RenderContext context) {
+        layerContext.startFrame();
+        part.addDisplayAreas(layerContext);
+        if (layerContext.finishFrame()) {
+            bufferValid = false;
+        }
+        Rectangle b = layerContext.getBounds();
+        x = b.x;
+        y = b.y;
+        width = b.width;
+        height = b.height;
+        drawRecord.setArea(x, y, width, height);
+        drawRecord.setSemiTransparent();
+        if (!bufferValid) {
+            drawRecord.setChanged();
+        }
+        context.addArea(drawRecord);
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    public void paintFrame(Graphics2D gr) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (!bufferValid) {
+            renderBuffer();
+        }
+        Composite old = gr.getComposite();
+        gr.setComposite(AlphaComposite.SrcOver);
+        gr.drawImage(buffer, x, y, x + width, y + height,
+                     0, 0, width, height, null);
+        gr.setComposite(old);
+    }
+
+    //
+    // Draw our child into the buffer, growing it if needed.
+    //
+    private void renderBuffer() {
+        if (buffer == null || bufferWidth < width || bufferHeight < height) {
+            if (buffer != null) {
+                AssetFinder.destroyImageBuffer(buffer);
+            }
+            if (bufferWidth < width) {
+                bufferWidth = width;
+            }
+            if (bufferHeight < height) {
+                bufferHeight = height;
+            }
+            buffer = AssetFinder.createCompatibleImageBuffer(
+                                show.component, bufferWidth, bufferHeight);
+        }
+        Graphics2D g = AssetFinder.createGraphicsFromImageBuffer(buffer);
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(transparent);
+        g.fillRect(0, 0, width, height);
+        g.translate(-x, -y);
+        part.paintFrame(g);
+        g.dispose();
+        bufferValid = true;
+        numRenders++;
+    }
+
+    public void readInstanceData(GrinDataInputStream in, int length) 
+            throws IOException {  
+                
+        in.readSuperClassData(this);
+        // nothing to do...
+    }
+}
@@ -175,6 +175,17 @@ public class FixedImage extends Feature implements Node, SetupClient {
         return placement;
     }
 
+    /**
+     * Copy the placement of this image into result, without making
+     * a copy of the placement that can be changed.  The width and height
+     * are known before the image is loaded.
+     *
+     * @see #getMutablePlacement()
+     **/
+    public synchronized void getPlacement(Rectangle result) {
+        result.setBounds(placement);
+    }
+
     /**
      * Notify us that our image size has changed.  It can be changed
      * by setting the width or height of our placement.  If this is done,
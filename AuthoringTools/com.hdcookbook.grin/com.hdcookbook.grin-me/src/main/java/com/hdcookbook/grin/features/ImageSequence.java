@@ -64,13 +64,17 @@ import com.hdcookbook.grin.animator.DrawRecord;
 import com.hdcookbook.grin.animator.RenderContext;
 import com.hdcookbook.grin.commands.Command;
 import com.hdcookbook.grin.io.binary.GrinDataInputStream;
+import com.hdcookbook.grin.util.AssetFinder;
 import com.hdcookbook.grin.util.ImageManager;
 import com.hdcookbook.grin.util.ManagedImage;
 import com.hdcookbook.grin.util.Debug;
 import com.hdcookbook.grin.util.SetupClient;
 
 import java.io.IOException;
+import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.Rectangle;
 import java.util.HashMap;
 
@@ -78,6 +82,16 @@ import java.util.HashMap;
  * An image sequence does "cell" animation.  It consists of a number
  * of images that are displayed one after another.  All of the images
  * in a sequence are assumed to be the same size.
+ * <p>
+ * A sequence can also be stored as a key frame plus delta tiles.  The
+ * show compiler divides the frame into a grid of square tiles, and for
+ * each frame, it keeps only the tiles that differ from the frame before.
+ * The mosaics then hold the first frame and the changed tiles, instead of
+ * every frame.  At runtime, the current frame is kept in an offscreen 
+ * buffer that the tiles are copied into, and only the changed tiles are
+ * reported as changed display areas.  This is done when the show file 
+ * asks for it with "delta_tiles", when the sequence has no scaling model,
+ * and when every frame has the same placement.
  *
  *   @author     Bill Foote (http://jovial.com)
  **/
@@ -93,9 +107,22 @@ public class ImageSequence extends Feature implements Node, SetupClient {
         // Integer.MAX_VALUE means "infinite"
     protected Command[] endCommands;
 
+    protected int tileSize = 0;
+        // Size of the delta tiles, or 0 if we don't have them
+    protected Rectangle[][] deltaTiles = null;
+        // For each frame, the tiles that differ from the previous frame,
+        // relative to the frame's placement.  For frame 0, it's the tiles
+        // that differ from the last frame.
+    protected String[][] deltaTileNames = null;
+
     protected ManagedImage[] images;
         // The images in this sequence.  A null image will show up as
         // blank, that is, any previous image will be erased.
+    protected ManagedImage[][] deltaImages = null;
+        // The images of deltaTiles.  When we have deltas, images[0] is 
+        // the key frame, and the other images are null.
+    private ManagedImage[] allImages;
+        // images and deltaImages, for setup
     private boolean setupMode = false;
     private boolean imagesSetup = false;
     private Object setupMonitor = new Object();
@@ -119,6 +146,15 @@ public class ImageSequence extends Feature implements Node, SetupClient {
     private Rectangle currPlacement = null;
     private DrawRecord drawRecord = new DrawRecord();
 
+    private DrawRecord[] tileRecords = null;    // One per tile in the grid
+    private int tileColumns;
+    private int shownFrame = -1;        // Frame of our last display areas
+    private Image buffer = null;        // Holds bufferFrame, when we have
+    private int bufferFrame = -1;       // delta tiles
+    private Rectangle bufferBounds = null;
+    private Rectangle tileArea = null;  // Where the frames go, when tiled
+    private static Color transparent = new Color(0, 0, 0, 0);
+
     public ImageSequence(Show show) {
         super(show);
     }
@@ -139,8 +175,14 @@ public class ImageSequence extends Feature implements Node, SetupClient {
         }
         result.loopCount = loopCount;
         result.images = images;
-        for (int i = 0; i < images.length; i++) {
-            ManagedImage mi = images[i]; 
+        result.tileSize = tileSize;
+        result.deltaTiles = deltaTiles;
+        result.deltaTileNames = deltaTileNames;
+        result.deltaImages = deltaImages;
+        result.allImages = allImages;
+        result.makeTileRecords();
+        for (int i = 0; i < allImages.length; i++) {
+            ManagedImage mi = allImages[i]; 
             if (mi != null) {
                 ImageManager.getImage(mi);
                     // This increments the reference count of this ManagedImage,
@@ -148,7 +190,7 @@ public class ImageSequence extends Feature implements Node, SetupClient {
                     // it will decrement that reference count.
                 mi.prepare();
                     // This is balanced by a call to unprepare() in destroy()
-                if (Debug.ASSERT && mi != images[i]) {
+                if (Debug.ASSERT && mi != allImages[i]) {
                     Debug.assertFail();
                 }
             }
@@ -203,6 +245,14 @@ public class ImageSequence extends Feature implements Node, SetupClient {
         return images;
     }
 
+    /**
+     * Copy the placement of the given frame into result.  The width
+     * and height are known before the frame's image is loaded.
+     **/
+    public void getPlacement(int frame, Rectangle result) {
+        result.setBounds(placements[frame]);
+    }
+
     /**
      * Initialize this feature.  This is called on show initialization.
      * A show will initialize all of its features after it initializes
@@ -223,6 +273,28 @@ public class ImageSequence extends Feature implements Node, SetupClient {
                 images[i] = ImageManager.getImage(fileNames[i]); 
             }
         }
+        if (deltaTiles == null) {
+            allImages = images;
+            return;
+        }
+        deltaImages = new ManagedImage[images.length][];
+        int n = images.length;
+        for (int i = 0; i < deltaImages.length; i++) {
+            String[] names = deltaTileNames[i];
+            deltaImages[i] = new ManagedImage[names.length];
+            for (int j = 0; j < names.length; j++) {
+                deltaImages[i][j] = ImageManager.getImage(names[j]);
+            }
+            n += names.length;
+        }
+        allImages = new ManagedImage[n];
+        System.arraycopy(images, 0, allImages, 0, images.length);
+        n = images.length;
+        for (int i = 0; i < deltaImages.length; i++) {
+            System.arraycopy(deltaImages[i], 0, allImages, n, 
+                             deltaImages[i].length);
+            n += deltaImages[i].length;
+        }
     }
 
     /**
@@ -239,14 +311,14 @@ public class ImageSequence extends Feature implements Node, SetupClient {
         if (Debug.ASSERT && setupMode && !imagesSetup) {
             Debug.assertFail();
         }
-        for (int i = 0; i < images.length; i++) {
-            if (images[i] != null) {
+        for (int i = 0; i < allImages.length; i++) {
+            if (allImages[i] != null) {
                 if (setupMode) {
                     // That is, if this is a cloned feature
-                    images[i].unprepare();
+                    allImages[i].unprepare();
                         // This balances the image.prepare() in createClone().
                 }
-                ImageManager.ungetImage(images[i]);
+                ImageManager.ungetImage(allImages[i]);
             }
         }
     }
@@ -283,6 +355,12 @@ public class ImageSequence extends Feature implements Node, SetupClient {
             lastImage = null;
             currImage = images[getStateHolder().currFrame];
         }
+        shownFrame = -1;
+        if (!mode && buffer != null) {
+            AssetFinder.destroyImageBuffer(buffer);
+            buffer = null;
+            bufferFrame = -1;
+        }
     }
 
     /**
@@ -293,8 +371,8 @@ public class ImageSequence extends Feature implements Node, SetupClient {
             setupMode = mode;
             if (setupMode) {
                 boolean allLoaded = true;
-                for (int i = 0; i < images.length; i++) {
-                    ManagedImage mi = images[i];
+                for (int i = 0; i < allImages.length; i++) {
+                    ManagedImage mi = allImages[i];
                     if (mi != null) {
                         mi.prepare();
                         allLoaded = allLoaded && mi.isLoaded();
@@ -308,8 +386,8 @@ public class ImageSequence extends Feature implements Node, SetupClient {
                     return 1;
                 }
             } else {
-                for (int i = 0; i < images.length; i++) {
-                    ManagedImage mi = images[i];
+                for (int i = 0; i < allImages.length; i++) {
+                    ManagedImage mi = allImages[i];
                     if (mi != null) {
                         mi.unprepare();
                     }
@@ -325,16 +403,24 @@ public class ImageSequence extends Feature implements Node, SetupClient {
      * {@inheritDoc}
      **/
     public void doSomeSetup() {
-        for (int i = 0; i < images.length; i++) {
+        for (int i = 0; i < allImages.length; i++) {
             synchronized(setupMonitor) {
                 if (!setupMode) {
                     return;
                 }
             }
-            ManagedImage mi = images[i];
+            ManagedImage mi = allImages[i];
             if (mi != null) {
                 mi.load(show.component);
             }
+            if (i + 1 < allImages.length 
+                && show.setupManager.shouldYield(this)) 
+            {
+                return;
+                    // More urgent setup work was scheduled.  We still
+                    // need setup, so we'll be called again, and the
+                    // images we loaded will still be loaded.
+            }
         }
         synchronized(setupMonitor) {
             if (!setupMode) {
@@ -443,6 +529,19 @@ public class ImageSequence extends Feature implements Node, SetupClient {
      **/
     public void markDisplayAreasChanged() {
         drawRecord.setChanged();
+        if (tileRecords != null) {
+            for (int i = 0; i < tileRecords.length; i++) {
+                tileRecords[i].setChanged();
+            }
+        }
+    }
+
+    //
+    // True if we draw from delta tiles.  The compiler doesn't make them
+    // for a sequence with a scaling model.
+    //
+    private boolean usesTiles() {
+        return tileRecords != null;
     }
 
     /**
@@ -450,6 +549,10 @@ public class ImageSequence extends Feature implements Node, SetupClient {
      **/
     public void addDisplayAreas(RenderContext context) {
         int frame = getStateHolder().currFrame;
+        if (usesTiles()) {
+            addTileAreas(context, frame);
+            return;
+        }
         currImage = images[frame];
         currPlacement = placements[frame];
         if (currImage != null) {
@@ -486,6 +589,111 @@ public class ImageSequence extends Feature implements Node, SetupClient {
         lastImage = currImage;
     }
 
+    //
+    // Add a display area for each tile in the grid.  Only the tiles that
+    // differ from the frame shown last time are marked as changed.  Like
+    // the whole-image case, a null frame (which has a null placement) 
+    // adds no areas, so that what's under it shows through.
+    //
+    private void addTileAreas(RenderContext context, int frame) {
+        currPlacement = tileArea;
+        if (frame != shownFrame) {
+            if (shownFrame != -1 && frame == nextFrameOf(shownFrame)
+                && placements[shownFrame] != null) 
+            {
+                Rectangle[] tiles = deltaTiles[frame];
+                for (int i = 0; i < tiles.length; i++) {
+                    Rectangle t = tiles[i];
+                    int col = t.x / tileSize;
+                    int row = t.y / tileSize;
+                    tileRecords[row * tileColumns + col].setChanged();
+                }
+            } else {
+                markDisplayAreasChanged();
+            }
+            shownFrame = frame;
+        }
+        if (placements[frame] == null) {
+            return;
+        }
+        int width = currPlacement.width;
+        int height = currPlacement.height;
+        int i = 0;
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                DrawRecord r = tileRecords[i++];
+                r.setArea(currPlacement.x + x, currPlacement.y + y,
+                          Math.min(tileSize, width - x), 
+                          Math.min(tileSize, height - y));
+                context.addArea(r);
+            }
+        }
+    }
+
+    private int nextFrameOf(int frame) {
+        frame++;
+        if (frame == placements.length) {
+            return 0;
+        } else {
+            return frame;
+        }
+    }
+
+    //
+    // Bring our buffer up to date with frame, by copying the delta tiles 
+    // of each frame after the one it holds.  If it's quicker, or if we
+    // don't have a buffer yet, we start over from the key frame.
+    //
+    private void updateBuffer(int frame) {
+        int width = tileArea.width;
+        int height = tileArea.height;
+        if (buffer == null) {
+            buffer = AssetFinder.createCompatibleImageBuffer(show.component,
+                                                             width, height);
+            bufferFrame = -1;
+        }
+        if (bufferFrame == frame) {
+            return;
+        }
+        Graphics2D g = AssetFinder.createGraphicsFromImageBuffer(buffer);
+        g.setComposite(AlphaComposite.Src);
+        int n = placements.length;
+        if (bufferFrame == -1 || (frame - bufferFrame + n) % n > frame) {
+            g.setColor(transparent);
+            g.fillRect(0, 0, width, height);
+            if (images[0] != null) {
+                images[0].drawScaled(g, bufferBounds, show.component);
+            }
+            bufferFrame = 0;
+        }
+        while (bufferFrame != frame) {
+            bufferFrame = nextFrameOf(bufferFrame);
+            Rectangle[] tiles = deltaTiles[bufferFrame];
+            ManagedImage[] tileImages = deltaImages[bufferFrame];
+            for (int i = 0; i < tiles.length; i++) {
+                tileImages[i].draw(g, tiles[i].x, tiles[i].y, show.component);
+            }
+        }
+        g.dispose();
+    }
+
+    private void makeTileRecords() {
+        if (deltaTiles == null) {
+            return;
+        }
+        for (int i = 0; tileArea == null; i++) {
+            tileArea = placements[i];   // Null frames have no placement
+        }
+        int columns = (tileArea.width + tileSize - 1) / tileSize;
+        int rows = (tileArea.height + tileSize - 1) / tileSize;
+        tileColumns = columns;
+        bufferBounds = new Rectangle(0, 0, tileArea.width, tileArea.height);
+        tileRecords = new DrawRecord[columns * rows];
+        for (int i = 0; i < tileRecords.length; i++) {
+            tileRecords[i] = new DrawRecord();
+        }
+    }
+
     /**
      * {@inheritDoc}
      **/
@@ -497,7 +705,13 @@ public class ImageSequence extends Feature implements Node, SetupClient {
     }
 
     private void doPaint(Graphics2D g) {
-        if (currImage != null) {
+        if (usesTiles()) {
+            if (placements[shownFrame] == null) {
+                return;
+            }
+            updateBuffer(shownFrame);
+            g.drawImage(buffer, currPlacement.x, currPlacement.y, null);
+        } else if (currImage != null) {
             if (scalingModel == null) {
                 currImage.drawScaled(g, currPlacement, show.component);
             } else {
@@ -522,6 +736,16 @@ public class ImageSequence extends Feature implements Node, SetupClient {
             this.scalingModel = (InterpolatedModel) in.readFeatureReference();
             this.scaledBounds = new Rectangle();
         }
+        if (in.readBoolean()) {
+            tileSize = in.readInt();
+            deltaTiles = new Rectangle[fileNames.length][];
+            deltaTileNames = new String[fileNames.length][];
+            for (int i = 0; i < fileNames.length; i++) {
+                deltaTiles[i] = in.readSharedRectangleArray();
+                deltaTileNames[i] = in.readStringArray();
+            }
+            makeTileRecords();
+        }
         if (Debug.ASSERT && placements.length != fileNames.length) {
             Debug.assertFail();
         }
@@ -78,8 +78,14 @@ import java.util.HashMap;
  * An InterpolatedModel with no values can function as a timer.  A timer
  * simply has a number of keyframes, and triggers a set of commands after
  * those keyframes.
+ * <p>
+ * When nothing will change until the next keyframe, as with a timer, or
+ * with two keyframes that have the same values, the model goes to sleep
+ * on the show's TimingWheel, and isn't stepped until the frame before
+ * that keyframe.
  *
  * @see Translator
+ * @see TimingWheel
  *
  * @author Bill Foote (http://jovial.com)
  *
@@ -133,6 +139,11 @@ public class InterpolatedModel extends Feature implements Node {
     private int loopsRemaining; // see loopCount
     protected Command[] endCommands;
 
+    boolean isAsleep = false;   // Fields managed by TimingWheel
+    int wakeFrame;
+    InterpolatedModel wheelNext;
+    InterpolatedModel wheelPrev;
+
     /**
      * @param show      The show this feature is attached to.  The value
      *                  can be null, as long as it's set to a real value
@@ -273,6 +284,7 @@ public class InterpolatedModel extends Feature implements Node {
     //
     protected void setActivateMode(boolean mode) {
         isActivated = mode;
+        show.modelWheel.cancel(this);
         if (mode) {
             loopsRemaining = loopCount;
             if (frames.length <= 1) {
@@ -286,6 +298,7 @@ public class InterpolatedModel extends Feature implements Node {
                         currValues[i] = values[i][0];
                     }
                 }
+                sleepIfIdle();
             }
         }
     }
@@ -309,9 +322,10 @@ public class InterpolatedModel extends Feature implements Node {
         if (Debug.ASSERT && !isActivated) {
             Debug.assertFail("InterpolatedModel " + getName()+" not activated");
         }
-        if (currFrame == Integer.MAX_VALUE) {
+        if (isAsleep || currFrame == Integer.MAX_VALUE) {
             return;
         }
+        show.modelWheel.countEvaluated();
         currFrame++;
         int nextIndex  = currIndex + 1;
         int dist = frames[nextIndex] - frames[currIndex];
@@ -363,6 +377,40 @@ public class InterpolatedModel extends Feature implements Node {
                 }
             }
         }
+        sleepIfIdle();
+    }
+
+    //
+    // If the steps from now until the one that reaches the next keyframe
+    // wouldn't change anything, sleep through them.  We're woken up in
+    // time for the frame that reaches the keyframe.
+    //
+    private void sleepIfIdle() {
+        if (currFrame == Integer.MAX_VALUE) {
+            return;
+        }
+        int nextIndex = currIndex + 1;
+        int idle = frames[nextIndex] - currFrame - 1;
+        if (idle < 1) {
+            return;
+        }
+        for (int i = 0; i < currValues.length; i++) {
+            int[] vs = values[i];
+            if (vs != null && (vs[nextIndex] != vs[currIndex] 
+                               || currValues[i] != vs[currIndex])) 
+            {
+                return;
+            }
+        }
+        show.modelWheel.sleep(this, idle + 1);
+    }
+
+    //
+    // Called by TimingWheel when it's time to be stepped again.  The
+    // step we're about to get takes us to the next keyframe.
+    //
+    void wake() {
+        currFrame = frames[currIndex + 1] - 1;
     }
 
     /**
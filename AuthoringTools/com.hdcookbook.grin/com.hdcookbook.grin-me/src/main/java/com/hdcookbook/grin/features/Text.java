@@ -60,14 +60,19 @@ import com.hdcookbook.grin.Feature;
 import com.hdcookbook.grin.Show;
 import com.hdcookbook.grin.animator.DrawRecord;
 import com.hdcookbook.grin.animator.RenderContext;
+import com.hdcookbook.grin.util.AssetFinder;
 import com.hdcookbook.grin.util.Debug;
+import com.hdcookbook.grin.util.ImageManager;
 import com.hdcookbook.grin.util.SetupClient;
 
 import com.hdcookbook.grin.io.binary.GrinDataInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Color;
+import java.awt.Image;
 import java.io.IOException;
 import java.util.HashMap;
 
@@ -75,6 +80,19 @@ import java.util.HashMap;
 /**
  * Display text.  Like all features, the upper-left hand corner of
  * the visible text is given.
+ * <p>
+ * Normally, text is drawn with Graphics.drawString() each time its
+ * area is painted.  If the text is set to be pre-rendered, each line
+ * is instead drawn once, during setup, into an image buffer for each
+ * different color in the text's list of colors, ignoring alpha.  Painting
+ * is then a copy of the buffers for the current color, with the color's
+ * alpha applied by the composite, so a fade never goes back to the font.
+ * This is faster on players where font rasterization is slow, at the cost
+ * of four bytes per pixel of each line, for each different color.
+ * These bytes are counted in ImageManager.getLoadedBytes(), with the
+ * show's images.
+ * Pre-rendered text is drawn in SrcOver mode, so a semi-transparent text
+ * color blends with what's under it, rather than replacing it.
  *
  * @author Bill Foote (http://jovial.com)
  */
@@ -135,6 +153,7 @@ public class Text extends Feature implements Node, SetupClient {
         // # of times to repeat images before sending end commands
         // Integer.MAX_VALUE means "infinite"
     protected Color background;
+    protected boolean preRender;
 
     private boolean isActivated = false;
     private Object setupMonitor = new Object();
@@ -150,6 +169,17 @@ public class Text extends Feature implements Node, SetupClient {
 
     private boolean changed = false;
     private DrawRecord drawRecord = new DrawRecord();
+
+        // The pre-rendered lines, if preRender is set.  These are set
+        // with setupMonitor held, either by the setup thread before we're
+        // activated, or by setText() in the animation thread, so 
+        // paintFrame() reads them without the lock.
+    private boolean linesRendered = false;
+    private Image[][] lineImages;       // [color slot][line], null if empty
+    private int[] lineColorSlots;       // Index into lineImages for colors[i]
+    private Composite[] lineComposites; // Composite for colors[i]
+    private long lineBytes;             // Counted in ImageManager
+    private static Color transparent = new Color(0, 0, 0, 0);
     
     public Text(Show show) {
         super(show);
@@ -184,6 +214,12 @@ public class Text extends Feature implements Node, SetupClient {
         result.loopsRemaining = loopsRemaining;
         result.changed = changed;
         result.needsSetup = needsSetup;
+        result.preRender = preRender;
+        if (preRender && !needsSetup) {
+            synchronized(result.setupMonitor) {
+                result.renderLines();
+            }
+        }
         return result;
             // initializeClone() not needed
     }
@@ -286,12 +322,113 @@ public class Text extends Feature implements Node, SetupClient {
                 // this later
                 if (!needsSetup) {
                     calculateMetrics();
+                    if (linesRendered) {
+                        renderLines();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Is this text pre-rendered into images during setup?
+     **/
+    public boolean getPreRender() {
+        return preRender;
+    }
+
+    //
+    // Draw each line of text into an image buffer, once for each
+    // different opaque color in colors, and count the buffers with the
+    // loaded images.  Called with setupMonitor held.
+    //
+    private void renderLines() {
+        freeLines();
+        int lineHeight = ascent + descent + 1;
+        if (width <= 0 || lineHeight <= 0) {
+            linesRendered = true;
+            return;
+        }
+        Color[] slotColors = new Color[colors.length];
+        int slots = 0;
+        lineColorSlots = new int[colors.length];
+        lineComposites = new Composite[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            int rgb = colors[i].getRGB() | 0xff000000;
+            int slot = 0;
+            while (slot < slots && slotColors[slot].getRGB() != rgb) {
+                slot++;
+            }
+            if (slot == slots) {
+                slotColors[slots++] = new Color(rgb);
+            }
+            lineColorSlots[i] = slot;
+            int alpha = colors[i].getAlpha();
+            if (alpha == 255) {
+                lineComposites[i] = AlphaComposite.SrcOver;
+            } else {
+                lineComposites[i] = AlphaComposite.getInstance(
+                                AlphaComposite.SRC_OVER, alpha / 255f);
+            }
+        }
+        Font font = show.getFont(fontIndex);
+        FontMetrics fm = show.component.getFontMetrics(font);
+        Image[][] images = new Image[slots][strings.length];
+        long bytes = 0;
+        for (int i = 0; i < strings.length; i++) {
+            int w = fm.stringWidth(strings[i]);
+            if (w <= 0) {
+                continue;
+            }
+            if (w > width) {
+                w = width;
+            }
+            for (int slot = 0; slot < slots; slot++) {
+                Image im = AssetFinder.createCompatibleImageBuffer(
+                                        show.component, w, lineHeight);
+                Graphics2D g = AssetFinder.createGraphicsFromImageBuffer(im);
+                g.setComposite(AlphaComposite.Src);
+                g.setColor(transparent);
+                g.fillRect(0, 0, w, lineHeight);
+                g.setFont(font);
+                g.setColor(slotColors[slot]);
+                g.drawString(strings[i], 0, ascent);
+                g.dispose();
+                images[slot][i] = im;
+                bytes += w * lineHeight * 4;
+            }
+        }
+        lineImages = images;
+        lineBytes = bytes;
+        ImageManager.countLoaded(bytes);
+        linesRendered = true;
+    }
+
+    //
+    // Release the pre-rendered lines.  Called with setupMonitor held.
+    //
+    private void freeLines() {
+        Image[][] images = lineImages;
+        lineImages = null;
+        linesRendered = false;
+        if (images == null) {
+            return;
+        }
+        ImageManager.countLoaded(-lineBytes);
+        lineBytes = 0;
+        for (int slot = 0; slot < images.length; slot++) {
+            for (int i = 0; i < images[slot].length; i++) {
+                if (images[slot][i] != null) {
+                    AssetFinder.destroyImageBuffer(images[slot][i]);
                 }
             }
         }
     }
 
     public void destroy() {
+        synchronized(setupMonitor) {
+            freeLines();
+        }
     }
 
     /**
@@ -312,13 +449,19 @@ public class Text extends Feature implements Node, SetupClient {
      * {@inheritDoc}
      **/
     protected int setSetupMode(boolean mode) {
-        if (mode && width == -1) {
+        if (!mode) {
+            synchronized(setupMonitor) {
+                freeLines();
+            }
+            return 0;
+        } else if (width == -1 || preRender) {
                 // Setup reads the font for us, and calculates our width.
                 // If, perchance, we're setup a second time (e.g. because
                 // we went out of setup/activate scope for a time and
                 // came back), there's no reason to re-calculate our
                 // metrics, and the Font instance stays with the show,
-                // so we don't need to schedule setup a second time.
+                // so we don't need to schedule setup a second time,
+                // unless we need to pre-render our lines again.
             needsSetup = true;
             show.setupManager.scheduleSetup(this);
             return 1;
@@ -338,6 +481,9 @@ public class Text extends Feature implements Node, SetupClient {
             if (width == -1) {
                 calculateMetrics();
             }
+            if (preRender && !linesRendered) {
+                renderLines();
+            }
             if (!isSetup()) {
                 return;
             }
@@ -406,6 +552,11 @@ public class Text extends Feature implements Node, SetupClient {
             gr.setColor(background);
             gr.fillRect(alignedX, alignedY, width, height);
         }
+        Image[][] images = lineImages;
+        if (images != null) {
+            paintLines(gr, images[lineColorSlots[colorIndex]]);
+            return;
+        }
         gr.setFont(show.getFont(fontIndex));
         gr.setColor(currColor);
         int y2 = alignedY + ascent;
@@ -415,6 +566,22 @@ public class Text extends Feature implements Node, SetupClient {
         }
     }
 
+    //
+    // Paint our pre-rendered lines in the current color
+    //
+    private void paintLines(Graphics2D gr, Image[] images) {
+        Composite old = gr.getComposite();
+        gr.setComposite(lineComposites[colorIndex]);
+        int y2 = alignedY;
+        for (int i = 0; i < images.length; i++) {
+            if (images[i] != null) {
+                gr.drawImage(images[i], alignedX, y2, null);
+            }
+            y2 += ascent + descent + vspace;
+        }
+        gr.setComposite(old);
+    }
+
     public void readInstanceData(GrinDataInputStream in, int length) 
             throws IOException {
                 
@@ -431,5 +598,6 @@ public class Text extends Feature implements Node, SetupClient {
         }
         loopCount = in.readInt();
         this.background = in.readColor();        
+        this.preRender = in.readBoolean();
     }
 }
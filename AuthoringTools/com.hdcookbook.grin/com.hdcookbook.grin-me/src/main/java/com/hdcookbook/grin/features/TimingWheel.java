@@ -0,0 +1,167 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.features;
+
+import com.hdcookbook.grin.util.Debug;
+
+/**
+ * A timing wheel that lets an InterpolatedModel sleep through frames where
+ * nothing about it changes, such as a timer waiting for its last keyframe,
+ * or a model holding still between two keyframes with the same values.
+ * A sleeping model isn't stepped; the wheel wakes it up on the frame before
+ * its next keyframe, and the model takes it from there.
+ * <p>
+ * Each show has one of these.  It's advanced once per frame by the show,
+ * with the show lock held, and the models add and remove themselves
+ * with the show lock held as well.  Sleeping models are kept in
+ * intrusive lists, one per slot of the wheel, so scheduling a model
+ * doesn't allocate anything.
+ *
+ * @see InterpolatedModel
+ * @see com.hdcookbook.grin.Show#getModelsEvaluated()
+ **/
+public class TimingWheel {
+
+    private final static int SLOTS = 256;       // Must be a power of two
+
+    private InterpolatedModel[] slots = new InterpolatedModel[SLOTS];
+    private int currFrame = 0;
+    private int modelsEvaluated = 0;
+
+    /**
+     * Create a new timing wheel.  This is done by the show.
+     **/
+    public TimingWheel() {
+    }
+
+    /**
+     * Advance to the next frame, waking up any models that are due.
+     * This is called by the show at the start of each frame, before
+     * the features are stepped.
+     **/
+    public void advance() {
+        currFrame++;
+        modelsEvaluated = 0;
+        InterpolatedModel m = slots[currFrame & (SLOTS - 1)];
+        while (m != null) {
+            InterpolatedModel next = m.wheelNext;
+            if (m.wakeFrame == currFrame) {
+                remove(m);
+                m.wake();
+            }
+            m = next;
+        }
+    }
+
+    /**
+     * Get the number of models that were stepped in the current frame,
+     * or in the most recent frame if we're between frames.  Models that
+     * are asleep, or that are stuck at their end, aren't counted.
+     **/
+    public int getModelsEvaluated() {
+        return modelsEvaluated;
+    }
+
+    //
+    // Called by InterpolatedModel each time it does the work of a step
+    //
+    void countEvaluated() {
+        modelsEvaluated++;
+    }
+
+    //
+    // Put m to sleep, so that it's woken up in the given number of
+    // frames.  A model that has been woken up is stepped in the same frame.
+    //
+    void sleep(InterpolatedModel m, int frames) {
+        if (Debug.ASSERT && (m.isAsleep || frames < 1)) {
+            Debug.assertFail();
+        }
+        m.isAsleep = true;
+        m.wakeFrame = currFrame + frames;
+        int slot = m.wakeFrame & (SLOTS - 1);
+        InterpolatedModel head = slots[slot];
+        m.wheelPrev = null;
+        m.wheelNext = head;
+        if (head != null) {
+            head.wheelPrev = m;
+        }
+        slots[slot] = m;
+    }
+
+    //
+    // Take m off the wheel, if it's asleep.
+    //
+    void cancel(InterpolatedModel m) {
+        if (m.isAsleep) {
+            remove(m);
+        }
+    }
+
+    private void remove(InterpolatedModel m) {
+        if (m.wheelPrev == null) {
+            slots[m.wakeFrame & (SLOTS - 1)] = m.wheelNext;
+        } else {
+            m.wheelPrev.wheelNext = m.wheelNext;
+        }
+        if (m.wheelNext != null) {
+            m.wheelNext.wheelPrev = m.wheelPrev;
+        }
+        m.wheelNext = null;
+        m.wheelPrev = null;
+        m.isAsleep = false;
+    }
+}
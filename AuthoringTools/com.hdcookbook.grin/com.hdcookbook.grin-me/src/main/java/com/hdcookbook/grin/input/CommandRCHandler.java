@@ -122,6 +122,13 @@ public class CommandRCHandler extends RCHandler implements Node {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     **/
+    public Command[][] getCommandLists() {
+        return new Command[][] { commands };
+    }
+
     /**
      * {@inheritDoc}
      **/
@@ -58,6 +58,7 @@ package com.hdcookbook.grin.input;
 import com.hdcookbook.grin.Node;
 import com.hdcookbook.grin.Segment;
 import com.hdcookbook.grin.Show;
+import com.hdcookbook.grin.commands.Command;
 
 import java.awt.Rectangle;
 
@@ -154,5 +155,18 @@ public abstract class RCHandler {
      * time.  This can be useful for things like timeouts.
      **/
     abstract public void nextFrame();
+
+    /**
+     * Get the commands this handler can execute.  This is used by code
+     * that looks at where a show can go from a segment, like
+     * com.hdcookbook.grin.SegmentPrefetcher.  The default implementation
+     * returns an empty array; handlers that execute commands override it.
+     *
+     * @return  An array of command lists.  Elements can be null.  The
+     *          caller must not modify the arrays.
+     **/
+    public Command[][] getCommandLists() {
+        return new Command[0][];
+    }
     
 }
@@ -302,6 +302,23 @@ public class VisualRCHandler extends RCHandler implements Node {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     **/
+    public Command[][] getCommandLists() {
+        int ns = selectCommands == null ? 0 : selectCommands.length;
+        int na = activateCommands == null ? 0 : activateCommands.length;
+        Command[][] result = new Command[ns + na + 1][];
+        if (ns > 0) {
+            System.arraycopy(selectCommands, 0, result, 0, ns);
+        }
+        if (na > 0) {
+            System.arraycopy(activateCommands, 0, result, ns, na);
+        }
+        result[ns + na] = timeoutCommands;
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      **/
@@ -61,7 +61,7 @@ package com.hdcookbook.grin.io.binary;
 class Constants {
  
         static final int GRINSCRIPT_IDENTIFIER = 0xc00cb00c;
-        static final int GRINSCRIPT_VERSION = 28;
+        static final int GRINSCRIPT_VERSION = 32;
         
         /**
          * Make sure to change BinaryWriter.recordBuiltInClasses()
@@ -88,6 +88,7 @@ class Constants {
         static final int GUARANTEE_FILL_IDENTIFIER          = 18;
         static final int SET_TARGET_IDENTIFIER              = 19;
         static final int SEGMENT_IDENTIFIER                 = 20;
+        static final int CACHED_LAYER_IDENTIFIER            = 21;
         
         static final byte STRING_CONSTANTS_IDENTIFIER      = (byte) 0xe0;
         static final byte INT_ARRAY_CONSTANTS_IDENTIFIER   = (byte) 0xe1;
@@ -95,6 +96,8 @@ class Constants {
         static final byte RECTANGLE_ARRAY_CONSTANTS_IDENTIFIER = (byte) 0xe3;
         static final byte COMMAND_ARRAY_CONSTANTS_IDENTIFIER = (byte) 0xe4;
         static final byte EXTENSION_CLASSES_IDENTIFIER = (byte) 0xe5;
+        static final byte COLOR_CONSTANTS_IDENTIFIER = (byte) 0xe6;
+        static final byte STRING_ARRAY_CONSTANTS_IDENTIFIER = (byte) 0xe7;
 
         static final byte NULL = (byte) 0xff;
         static final byte NON_NULL = (byte) 0xee;
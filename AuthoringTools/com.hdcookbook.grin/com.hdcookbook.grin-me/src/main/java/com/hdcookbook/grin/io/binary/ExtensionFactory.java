@@ -0,0 +1,107 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.io.binary;
+
+import java.io.IOException;
+
+import com.hdcookbook.grin.GrinXHelper;
+import com.hdcookbook.grin.Node;
+import com.hdcookbook.grin.Show;
+
+/**
+ * An ExtensionFactory creates a show's GrinXHelper subclass and
+ * the instances of its extension features and commands, without
+ * reflection.  The GRIN compiler generates one for each show that
+ * has a java_generated_class, named after that class with "Factory"
+ * appended, or that has an extension_factory setting, which gives 
+ * the factory's name.  An xlet gives an instance of it to 
+ * GrinBinaryReader.setExtensionFactory(), so that no class is looked
+ * up by name.
+ * <p>
+ * If no factory is given, GrinBinaryReader falls back to looking up the
+ * GrinXHelper subclass by name, or if there is none, to instantiating
+ * the extension classes by reflection.
+ *
+ * @see GrinBinaryReader#setExtensionFactory(ExtensionFactory)
+ **/
+public interface ExtensionFactory {
+
+    /**
+     * Create the show's GrinXHelper subclass, that is, the class named
+     * by java_generated_class in the show file.  If one is returned, 
+     * GrinBinaryReader uses its getInstanceOf() to create the show's 
+     * extensions.
+     *
+     * @param show      The show being read
+     *
+     * @return the new instance, or null if the show has no 
+     *         java_generated_class
+     **/
+    public GrinXHelper newShowCommands(Show show);
+
+    /**
+     * Create an instance of an extension feature or command.  This is
+     * used when the show has no java_generated_class.
+     *
+     * @param show      The show being read
+     * @param id        The type identifier the GRIN compiler assigned to
+     *                  the extension's class
+     *
+     * @throws IOException if id isn't the identifier of an extension
+     **/
+    public Node getInstanceOf(Show show, int id) throws IOException;
+
+}
@@ -58,6 +58,7 @@ import java.io.InputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.awt.Color;
 import java.awt.Rectangle;
 import java.util.Hashtable;
 
@@ -82,6 +83,7 @@ import com.hdcookbook.grin.features.Group;
 import com.hdcookbook.grin.features.ImageSequence;
 import com.hdcookbook.grin.features.SetTarget;
 import com.hdcookbook.grin.features.SrcOver;
+import com.hdcookbook.grin.features.CachedLayer;
 import com.hdcookbook.grin.features.Text;
 import com.hdcookbook.grin.features.InterpolatedModel;
 import com.hdcookbook.grin.features.Translator;
@@ -109,6 +111,8 @@ import com.hdcookbook.grin.util.Debug;
  *      IntArrays_info()
  *      Rectangles_info()
  *      Rectangle_Arrays_info()
+ *      Colors_info()
+ *      String_Arrays_info()
  *      ExtensionClasses_info()
  *      Show_Setup_info()
  *      Nodes_declarations()
@@ -133,6 +137,24 @@ import com.hdcookbook.grin.util.Debug;
  *      }
  *  }
  *  
+ *  Colors_info {   // Saves all Color values needed in this binary file,
+ *                  // as RGBA integers.  Entry 0 is null.
+ *      array_length        integer
+ *      for (i = 1; i < array_length; i++) {
+ *          value                           integer
+ *      }
+ *  }
+ *
+ *  String_Arrays_info {   // Saves all String[] values needed in this 
+ *                         // binary file, as indices into StringArray_info.
+ *                         // Entry 0 is null.
+ *      array_length        integer
+ *      for (i = 1; i < array_length; i++) {
+ *          length                          integer
+ *          values                          integer[length]
+ *      }
+ *  }
+ *  
  *  Show_setup_info() {
  *      show_segment_stack_depth           integer
  *      draw_targets                       String[]
@@ -165,23 +187,31 @@ import com.hdcookbook.grin.util.Debug;
 
 public class GrinBinaryReader {
 
-    private Show show;
+    //
+    // The show and its nodes are package-private, so that a reader
+    // that defers reading node contents can subclass us.
+    //
+    Show show;
     private Object[] showInArray;
     
-    private Feature[] featureList;
-    private RCHandler[] rcHandlerList;
-    private Segment[] segmentList;
-    private Command[] commandList;
+    Feature[] featureList;
+    RCHandler[] rcHandlerList;
+    Segment[] segmentList;
+    Command[] commandList;
     Hashtable publicSegments = new Hashtable();
     Hashtable publicFeatures = new Hashtable();
     Hashtable publicRCHandlers = new Hashtable();
     
     private InputStream stream;
+    private String showCommandsClassName = null;
     private Class showCommandsClass = null;
+    private ExtensionFactory extensionFactory = null;
     private String[] stringConstants = null;
     private int[][]  intArrayConstants = null;
     private Rectangle[] rectangleConstants;
     private Rectangle[][] rectangleArrayConstants;
+    private Color[] colorConstants;
+    private String[][] stringArrayConstants;
     private Command[][] commandArrayConstants;
 
     private GrinXHelper showCommands = null;
@@ -229,6 +259,23 @@ public class GrinBinaryReader {
        this(stream);
        this.classLoader = loader;
     }
+
+    /**
+     * Sets the factory used to create the show's GrinXHelper subclass
+     * and its extension features and commands.  This must be called before
+     * readShow().  If it isn't called, the show's GrinXHelper subclass
+     * is looked up by name, and if the show doesn't have one, its 
+     * extension classes are each looked up by name and instantiated by
+     * reflection, which can be slow on a player.
+     *
+     * @param factory   The factory, e.g. an instance of the class the
+     *                  GRIN compiler generated for the show.
+     *
+     * @see ExtensionFactory
+     **/
+    public void setExtensionFactory(ExtensionFactory factory) {
+        this.extensionFactory = factory;
+    }
     /**
      * Returns an instace of feature that corresponds to the index number
      * that this GrinBinaryReader keeps track of.
@@ -335,6 +382,22 @@ public class GrinBinaryReader {
         }
     }
 
+    Color getColorFromReference(int index) throws IOException {
+        if (index < 0 || index >= colorConstants.length) {
+            throw new IOException("bad color reference");
+        } else {
+            return colorConstants[index];
+        }
+    }
+
+    String[] getStringArrayFromReference(int index) throws IOException {
+        if (index < 0 || index >= stringArrayConstants.length) {
+            throw new IOException("bad string array reference");
+        } else {
+            return stringArrayConstants[index];
+        }
+    }
+
     Command[] getCommandArrayFromReference(int index) throws IOException {
         if (index < 0 || index > commandArrayConstants.length) {
             throw new IOException("bad command array reference");
@@ -376,6 +439,8 @@ public class GrinBinaryReader {
         intArrayConstants = readIntArrayConstants(in);
         rectangleConstants = readRectangleConstants(in);
         rectangleArrayConstants = readRectangleArrayConstants(in);
+        colorConstants = readColorConstants(in);
+        stringArrayConstants = readStringArrayConstants(in);
         extensionConstructors = readExtensionConstructors(in);
 
         readShowCommandsClass(in);
@@ -476,6 +541,9 @@ public class GrinBinaryReader {
                 case Constants.SRCOVER_IDENTIFIER:
                     node = new SrcOver(show);
                     break;
+                case Constants.CACHED_LAYER_IDENTIFIER:
+                    node = new CachedLayer(show);
+                    break;
                 case Constants.GUARANTEE_FILL_IDENTIFIER:
                     node = new GuaranteeFill(show);
                     break;
@@ -519,7 +587,11 @@ public class GrinBinaryReader {
     }
 
     private Node instantiateExtension(int typeIdentifier) throws IOException {
-        if (extensionConstructors == null) {
+        if (showCommands != null) {
+            return showCommands.getInstanceOf(show, typeIdentifier);
+        } else if (extensionFactory != null) {
+            return extensionFactory.getInstanceOf(show, typeIdentifier);
+        } else if (extensionConstructors == null) {
             if (showCommands == null) {
                 throw new IOException("Missing GrinXHelper subclass for "
                                       + "instantiating extensions");
@@ -592,6 +664,40 @@ public class GrinBinaryReader {
         return array;
     }
 
+    private Color[] readColorConstants(GrinDataInputStream in) 
+            throws IOException 
+    {
+        checkValue(in.readByte(),
+                Constants.COLOR_CONSTANTS_IDENTIFIER,
+                "Color constants identifier");        
+        int length = in.readInt();
+        Color[] array = new Color[length];
+        array[0] = null;
+        for (int i = 1; i < length; i++) {
+            array[i] = new Color(in.readInt(), true);
+        }
+        return array;
+    }
+
+    private String[][] readStringArrayConstants(GrinDataInputStream in) 
+            throws IOException 
+    {
+        checkValue(in.readByte(),
+                Constants.STRING_ARRAY_CONSTANTS_IDENTIFIER,
+                "String array constants identifier");        
+        int length = in.readInt();
+        String[][] array = new String[length][];
+        array[0] = null;
+        for (int i = 1; i < length; i++) {
+            String[] row = new String[in.readInt()];
+            array[i] = row;
+            for (int j = 0; j < row.length; j++) {
+                row[j] = getStringFromReference(in.readInt());
+            }
+        }
+        return array;
+    }
+
     private Command[][] readCommandArrayConstants(GrinDataInputStream in) 
             throws IOException 
     {
@@ -626,6 +732,9 @@ public class GrinBinaryReader {
         Class[] paramTypes = { Show.class };
         for (int i = 0; i <length; i++) {
             String name = in.readUTF();
+            if (extensionFactory != null) {
+                continue;       // No need to look up the class
+            }
             try {
             Class cl = null;
             if (classLoader == null) {
@@ -649,22 +758,28 @@ public class GrinBinaryReader {
     private void readShowCommandsClass(GrinDataInputStream in)
            throws IOException 
     {
-        String className = in.readString();
-        if (className == null) {
+        showCommandsClassName = in.readString();
+        if (showCommandsClassName == null || extensionFactory != null) {
             return;
         }
         try {
         if (classLoader == null) {
-            showCommandsClass = Class.forName(className);
+            showCommandsClass = Class.forName(showCommandsClassName);
         } else {
-            showCommandsClass = Class.forName(className, true, classLoader);
+            showCommandsClass = Class.forName(showCommandsClassName, 
+                                              true, classLoader);
         }
         } catch (Exception ex) {
             throw new IOException(ex.toString());
         }
     }
 
-    private void readContents(GrinDataInputStream in, Object[] list) 
+    //
+    // Read the contents of the nodes in list, which is one of featureList,
+    // rcHandlerList, segmentList or commandList.  A subclass can override
+    // this to defer reading the contents.
+    //
+    void readContents(GrinDataInputStream in, Object[] list) 
        throws IOException 
     {
         for (int i = 0; i < list.length; i++) {  
@@ -706,8 +821,10 @@ public class GrinBinaryReader {
 
     private GrinXHelper instantiateShowCommandsCmd() 
         throws IOException {    
-        if (showCommandsClass == null) {
+        if (showCommandsClassName == null) {
             return null;
+        } else if (extensionFactory != null) {
+            return extensionFactory.newShowCommands(show);
         }
         GrinXHelper result;
         Class[] paramType = { Show.class };
@@ -96,13 +96,8 @@ public class GrinDataInputStream extends DataInputStream {
     * @throws java.io.IOException if IO error occurs.
     */
    public Color readColor() throws IOException {
-       byte b = readByte();
-       if (b == Constants.NULL) {
-           return null;
-       }
-      
-       int rgba = readInt();
-       return new Color(rgba, true);
+       int index = readCompactIndex();
+       return binaryReader.getColorFromReference(index);
    }
    
    /**
@@ -111,15 +106,15 @@ public class GrinDataInputStream extends DataInputStream {
     * @throws java.io.IOException if IO error occurs.
     */
    public Rectangle readRectangle() throws IOException {
-       byte b = readByte();
-       if (b == Constants.NULL) {
+       int index = readCompactIndex();
+       Rectangle r = binaryReader.getRectangleFromReference(index);
+       if (r == null) {
            return null;
        }
-       double x = readDouble();
-       double y = readDouble();
-       double w = readDouble();
-       double h = readDouble();
-       return new Rectangle((int)x,(int)y,(int)w,(int)h);
+       return new Rectangle(r);
+            // The caller gets its own copy, because it might modify it.
+            // Use readSharedRectangle() for a rectangle that is never
+            // modified.
    }
    
    /**
@@ -191,21 +186,37 @@ public class GrinDataInputStream extends DataInputStream {
    }
 
    /**
-    * Reads in and constructs an array of Strings.
+    * Reads in an array of Strings.  String arrays are shared constants
+    * in the binary file, so the same array might be returned to more
+    * than one caller; it must not be modified.
     * @return An array of Strings reconstructed from the input stream.
     * @throws java.io.IOException if IO error occurs.
     */
    public String[] readStringArray() throws IOException {
-       byte b = readByte();
-       if (b == Constants.NULL) {
-           return null;
-       }
-       
-       String[] array = new String[readInt()];
-       for (int i = 0; i < array.length; i++) {
-           array[i] = readString();
+       int index = readCompactIndex();
+       return binaryReader.getStringArrayFromReference(index);
+   }
+
+   //
+   // Read an index into one of the constant tables, as written by
+   // GrinDataOutputStream.writeCompactIndex().  Index 0 is null.
+   //
+   private int readCompactIndex() throws IOException {
+       int b = readUnsignedByte();
+       if (b == (Constants.NULL & 0xff)) {
+           return 0;
+       } else if (b < 0x80) {
+           return b;
+       } else if (b < 0xc0) {
+           return ((b & 0x3f) << 8) | readUnsignedByte();
+       } else if (b < 0xe0) {
+           return ((b & 0x1f) << 16) | readUnsignedShort();
+       } else if (b < 0xf0) {
+           int hi = ((b & 0x0f) << 24) | (readUnsignedByte() << 16);
+           return hi | readUnsignedShort();
+       } else {
+           return readInt();
        }
-       return array;
    }
    
    /**
@@ -0,0 +1,94 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.io.binary;
+
+/**
+ * A LazyLoader reads the contents of the nodes of a show on demand.
+ * A show that was read by a reader that defers decoding its segments,
+ * features, RC handlers and commands has a LazyLoader, and the show
+ * calls it before it first uses one of these nodes.  Nodes that haven't
+ * been loaded yet have been constructed, but their data members
+ * haven't been populated with the node's data.
+ * <p>
+ * The GRIN runtime on a player always reads a show all at once, with
+ * GrinBinaryReader.  Lazy loading is for JavaSE tools that work with
+ * large shows.
+ *
+ * @see com.hdcookbook.grin.Show#loadNode(Object)
+ **/
+public interface LazyLoader {
+
+    /**
+     * Tell if the given node has been loaded.
+     *
+     * @param node      A Segment, Feature, RCHandler or Command of the show
+     **/
+    public boolean isLoaded(Object node);
+
+    /**
+     * Load the given node, if needed, and all of the features, RC
+     * handlers and commands it refers to.  Segments that are referred to,
+     * e.g. by an activate_segment command, aren't loaded; they're loaded
+     * when they're activated.
+     *
+     * @param node      A Segment, Feature, RCHandler or Command of the show
+     * @param initialize  If true, the segments and features that are
+     *                    loaded are initialized, because the show has
+     *                    already been initialized.
+     **/
+    public void load(Object node, boolean initialize);
+
+}
@@ -428,9 +428,13 @@ public class AssetFinder  {
     }
     
     /**
-     * Load an image from the given path.
+     * Load an image from the given path.  If the path ends with
+     * RawImage.EXTENSION, the image is read as a GRIN raw image, whose
+     * pixels don't need to be decoded.
      *
      * @param path should be an absolute path within asset finder's path.
+     *
+     * @see RawImage
      **/
     public static Image loadImage(String path) {
         if (helper != null) {
@@ -442,6 +446,17 @@ public class AssetFinder  {
 
         Toolkit tk = Toolkit.getDefaultToolkit();
         URL url = getURL(path);
+        if (url != null && path.endsWith(RawImage.EXTENSION)) {
+            try {
+                return RawImage.read(url);
+            } catch (IOException ex) {
+                if (Debug.LEVEL > 0) {
+                    Debug.printStackTrace(ex);
+                }
+                // The toolkit will fail to load it, so the image will be
+                // treated as having an error loading.
+            }
+        }
         return tk.createImage(url);
     }
 
@@ -0,0 +1,230 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A queue of commands and input events, with any number of threads
+ * adding to it, and one thread, the animation thread, taking from it.
+ * It's a ring, so it doesn't generate heap traffic while it holds no more
+ * than its capacity.  If more commands than that are added, the ring 
+ * doubles in size, so that none are lost; input events can instead be
+ * dropped, according to the queue's event policy.
+ * <p>
+ * This implementation is synchronized, so that it can run on PBP.  On
+ * SE, com.hdcookbook.grin.util.SECommandQueue does the same thing with
+ * compare-and-set instead of locks.
+ *
+ * @see com.hdcookbook.grin.Show#setEventPolicy(int)
+ **/
+public class CommandQueue {
+
+    /**
+     * An event policy where events are treated like any other command.
+     * This is the default.
+     **/
+    public final static int KEEP_EVENTS = 0;
+
+    /**
+     * An event policy where an event is dropped if the queue is full.
+     **/
+    public final static int DROP_EVENTS_WHEN_FULL = 1;
+
+    /**
+     * An event policy where an event is dropped if the queue is full,
+     * or if it's the same event as the most recently queued entry that
+     * hasn't been taken yet.  This merges the repeats a held-down remote 
+     * control key generates while the animation thread is busy.
+     **/
+    public final static int MERGE_REPEATED_EVENTS = 2;
+
+    /**
+     * The event policy, one of KEEP_EVENTS, DROP_EVENTS_WHEN_FULL or
+     * MERGE_REPEATED_EVENTS.
+     **/
+    protected int eventPolicy = KEEP_EVENTS;
+
+    /**
+     * The number of events dropped, for debugging and tuning
+     **/
+    protected int eventsDropped = 0;
+
+    private Object[] buffer;
+    private int capacity;
+    private int addPos = 0;
+    private int removePos = 0;
+    private int count = 0;
+
+    /**
+     * Create a queue with the given capacity.  It will hold up to this
+     * many entries without creating any new objects.  Beyond that, the
+     * queue grows, and it doesn't shrink again.
+     **/
+    public CommandQueue(int capacity) {
+        this.capacity = capacity;
+        buffer = new Object[capacity];
+    }
+
+    /**
+     * Constructor for subclasses that keep their own entries.
+     **/
+    protected CommandQueue() {
+    }
+
+    /**
+     * Set the policy for entries added with addEvent().
+     *
+     * @see #KEEP_EVENTS
+     * @see #DROP_EVENTS_WHEN_FULL
+     * @see #MERGE_REPEATED_EVENTS
+     **/
+    public synchronized void setEventPolicy(int policy) {
+        eventPolicy = policy;
+    }
+
+    /**
+     * Get the number of events that have been dropped or merged.
+     **/
+    public synchronized int getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * Add a command.  Commands are never dropped.
+     **/
+    public synchronized void add(Object el) {
+        if (count == buffer.length) {
+            grow();
+        }
+        buffer[addPos] = el;
+        addPos = (addPos + 1) % buffer.length;
+        count++;
+    }
+
+    /**
+     * Add some commands, so that they're next to each other in the queue.
+     **/
+    public synchronized void addAll(Object[] els) {
+        for (int i = 0; i < els.length; i++) {
+            add(els[i]);
+        }
+    }
+
+    /**
+     * Add an input event.  It might be dropped, depending on the event 
+     * policy.
+     *
+     * @return true if the event was added
+     **/
+    public synchronized boolean addEvent(Object el) {
+        if (eventPolicy == MERGE_REPEATED_EVENTS 
+            && count > 0 && buffer[lastPos()] == el)
+        {
+            eventsDropped++;
+            return false;
+        }
+        if (eventPolicy != KEEP_EVENTS && count >= capacity) {
+            eventsDropped++;
+            return false;
+        }
+        add(el);
+        return true;
+    }
+
+    /**
+     * Is the queue empty?  This should only be called by the thread
+     * that takes from the queue.
+     **/
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Take the oldest entry.  This should only be called by the thread
+     * that takes from the queue.
+     *
+     * @throws NoSuchElementException if isEmpty() is true
+     **/
+    public synchronized Object remove() {
+        if (count == 0) {
+            throw new NoSuchElementException();
+        }
+        Object result = buffer[removePos];
+        buffer[removePos] = null;
+        removePos = (removePos + 1) % buffer.length;
+        count--;
+        return result;
+    }
+
+    private int lastPos() {
+        return (addPos + buffer.length - 1) % buffer.length;
+    }
+
+    //
+    // Double the size of the ring, keeping the entries in order.  This
+    // only happens when the animation thread has fallen far behind.
+    //
+    private void grow() {
+        Object[] old = buffer;
+        buffer = new Object[Math.max(1, old.length * 2)];
+        for (int i = 0; i < count; i++) {
+            buffer[i] = old[(removePos + i) % old.length];
+        }
+        removePos = 0;
+        addPos = count;
+    }
+}
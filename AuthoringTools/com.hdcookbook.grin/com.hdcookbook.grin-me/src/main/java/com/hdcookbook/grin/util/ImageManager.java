@@ -71,10 +71,49 @@ import java.util.Hashtable;
  **/
 public class ImageManager {
 
-    private static Hashtable images = new Hashtable();
+    //
+    // The images, by name.  The table is split into stripes by the hash
+    // code of the name, so that threads that get and unget different
+    // images don't contend for one lock.  Each stripe's Hashtable is
+    // also the lock for the reference counts of the images in it.  The
+    // lock order is a stripe's lock, then the lock on a ManagedImage
+    // instance.  A thread holds at most one stripe's lock at a time.
+    //
+    private final static int NUM_STRIPES = 16;         // A power of two
+    private static Hashtable[] stripes = new Hashtable[NUM_STRIPES];
+    static {
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Hashtable();
+        }
+    }
+
     private static Hashtable imageMap = null;   
         // Map of mosaic tile name to MosaicTile
-    private static Object lock = new Object();
+    static Object lock = new Object();
+        // This guards the cache and imageMap.  ManagedFullImage takes out 
+        // this lock in prepare() and unprepare(), but only when its prepare
+        // count goes between 0 and 1.  The lock order is this lock, then 
+        // the lock on a ManagedImage instance.
+
+    //
+    // The cache of images that are loaded, but not prepared.  It's a
+    // doubly-linked list through the ManagedFullImage instances, from the
+    // least recently used to the most recently used.  Mosaics are
+    // ManagedFullImage instances too, so a mosaic is cached as a whole.
+    //
+    private static long cacheBudget = 0;        // In bytes
+    private static long cacheBytes = 0;
+    private static ManagedFullImage cacheOldest = null;
+    private static ManagedFullImage cacheNewest = null;
+    private static int cacheHits = 0;
+    private static int cacheMisses = 0;
+    private static int cacheEvictions = 0;
+
+    private static long loadedBytes = 0;
+    private static Object loadedLock = new Object();
+        // loadedBytes is updated by the image loading thread, and when
+        // an image is flushed, so it gets its own lock.  No other lock
+        // is ever taken while holding it.
 
     private ImageManager() {
     }
@@ -92,26 +131,33 @@ public class ImageManager {
      * @see ManagedImage
      **/
     public static ManagedImage getImage(String name) {
+        Hashtable stripe = getStripe(name);
+        synchronized(stripe) {
+            ManagedImage im = (ManagedImage) stripe.get(name);
+            if (im != null) {
+                im.addReference();
+                return im;
+            }
+        }
+        // We create a new image without holding the stripe's lock, because
+        // creating a ManagedSubImage gets its mosaic, which might be in
+        // a different stripe.
+        MosaicTile t = null;
         synchronized(lock) {
-            ManagedImage im = (ManagedImage) images.get(name);
-            if (im == null) {
-                if (imageMap != null) {
-                    MosaicTile t = (MosaicTile) imageMap.get(name);
-                    if (t != null) {
-                        im = new ManagedSubImage(name, t.mosaicName, 
-                                                 t.placement);
-                    } else if (Debug.LEVEL > 0) {
-                        Debug.println(name + " not found in image map.");
-                    }
-                }
-                if (im == null) {
-                    im = new ManagedFullImage(name);
+            if (imageMap != null) {
+                t = (MosaicTile) imageMap.get(name);
+                if (t == null && Debug.LEVEL > 0) {
+                    Debug.println(name + " not found in image map.");
                 }
-                images.put(name, im);
             }
-            im.addReference();
-            return im;
         }
+        ManagedImage im;
+        if (t != null) {
+            im = new ManagedSubImage(name, t.mosaicName, t.placement);
+        } else {
+            im = new ManagedFullImage(name);
+        }
+        return addImage(stripe, name, im);
     }
 
     /**
@@ -130,17 +176,43 @@ public class ImageManager {
      **/
     public static ManagedImage getImage(URL url) {
         String name = url.toExternalForm();
-        synchronized(lock) {
-            ManagedImage im = (ManagedImage) images.get(name);
+        Hashtable stripe = getStripe(name);
+        synchronized(stripe) {
+            ManagedImage im = (ManagedImage) stripe.get(name);
             if (im == null) {
                 im = new ManagedFullImage(name, url);
-                images.put(name, im);
+                stripe.put(name, im);
             }
             im.addReference();
             return im;
         }
     }
 
+    //
+    // Add a newly created image to its stripe, unless another thread
+    // added one with the same name while we were creating it.  Returns
+    // the image that's in the stripe, with a reference added.
+    //
+    private static ManagedImage 
+    addImage(Hashtable stripe, String name, ManagedImage im) {
+        ManagedImage other;
+        synchronized(stripe) {
+            other = (ManagedImage) stripe.get(name);
+            if (other == null) {
+                stripe.put(name, im);
+                im.addReference();
+                return im;
+            }
+            other.addReference();
+        }
+        im.destroy();   // Lets go of a mosaic, if im is a ManagedSubImage
+        return other;
+    }
+
+    private static Hashtable getStripe(String name) {
+        return stripes[name.hashCode() & (NUM_STRIPES - 1)];
+    }
+
     /**
      * This is like <code>getImage(String)</code>, but for the case where
      * you already have the ManagedImage instance.  It just increments the
@@ -152,7 +224,7 @@ public class ImageManager {
      * @see ManagedImage
      **/
     public static void getImage(ManagedImage im) {
-        synchronized(lock) {
+        synchronized(getStripe(im.getName())) {
             if (!im.isReferenced()) {
                 throw new IllegalStateException();
             }
@@ -168,12 +240,206 @@ public class ImageManager {
      * @see ManagedImage
      **/
     public static void ungetImage(ManagedImage im) {
-        synchronized(lock) {
+        Hashtable stripe = getStripe(im.getName());
+        synchronized(stripe) {
             im.removeReference();
-            if (!im.isReferenced()) {
-                images.remove(im.getName());
-                im.destroy();
+            if (im.isReferenced()) {
+                return;
+            }
+            stripe.remove(im.getName());
+        }
+        // Destroying a ManagedSubImage ungets its mosaic, which might be
+        // in a different stripe, so we do it without our stripe's lock.
+        // If another thread gets an image of the same name in the meantime,
+        // it gets a new instance.
+        im.destroy();
+    }
+
+    /**
+     * Set the number of bytes of memory that may be used to keep images
+     * loaded after they're no longer prepared.  An image that's prepared
+     * again while it's in this cache doesn't need to be loaded again,
+     * which saves reading and decoding it, e.g. when a menu switches
+     * back and forth between segments.  When the cache is over budget,
+     * the least recently used images are flushed.  An image is counted
+     * as four bytes per pixel; an image in a mosaic keeps the whole
+     * mosaic loaded.
+     * <p>
+     * The default budget is 0, which means images are flushed as soon
+     * as they're no longer prepared.
+     *
+     * @param bytes     The budget, in bytes
+     *
+     * @see ManagedImage#unprepare()
+     **/
+    public static void setCacheBudget(long bytes) {
+        synchronized(lock) {
+            cacheBudget = bytes;
+        }
+        trimCache();
+    }
+
+    /**
+     * Get the budget set by setCacheBudget().
+     *
+     * @see #setCacheBudget(long)
+     **/
+    public static long getCacheBudget() {
+        synchronized(lock) {
+            return cacheBudget;
+        }
+    }
+
+    /**
+     * Get the number of bytes used by images that are loaded, but
+     * not prepared.
+     *
+     * @see #setCacheBudget(long)
+     **/
+    public static long getCacheBytes() {
+        synchronized(lock) {
+            return cacheBytes;
+        }
+    }
+
+    /**
+     * Get the number of times an image was prepared while it was in the
+     * cache, so that it didn't need to be loaded.
+     *
+     * @see #setCacheBudget(long)
+     **/
+    public static int getCacheHits() {
+        synchronized(lock) {
+            return cacheHits;
+        }
+    }
+
+    /**
+     * Get the number of times an image was prepared while it wasn't
+     * loaded, so that it needed to be loaded.
+     *
+     * @see #setCacheBudget(long)
+     **/
+    public static int getCacheMisses() {
+        synchronized(lock) {
+            return cacheMisses;
+        }
+    }
+
+    /**
+     * Get the number of images that have been flushed from the cache
+     * because it was over budget.
+     *
+     * @see #setCacheBudget(long)
+     **/
+    public static int getCacheEvictions() {
+        synchronized(lock) {
+            return cacheEvictions;
+        }
+    }
+
+    /**
+     * Get the number of bytes used by all images that are loaded,
+     * whether they're prepared or cached, plus anything recorded with
+     * countLoaded().  An image is counted as four bytes per pixel.
+     * This can be used to keep work that loads images speculatively,
+     * like prefetching the images of segments that might be shown next,
+     * within a memory budget.
+     *
+     * @see com.hdcookbook.grin.SegmentPrefetcher
+     **/
+    public static long getLoadedBytes() {
+        synchronized(loadedLock) {
+            return loadedBytes;
+        }
+    }
+
+    /**
+     * Record that an image of the given size was loaded (bytes > 0) or
+     * unloaded (bytes < 0).  Besides ManagedImage, this is used by
+     * features that keep their own pixels, like a text feature's
+     * pre-rendered lines, so that they count against the same budget.
+     * The caller may hold other locks.
+     *
+     * @see #getLoadedBytes()
+     **/
+    public static void countLoaded(long bytes) {
+        synchronized(loadedLock) {
+            loadedBytes += bytes;
+        }
+    }
+
+    //
+    // Add an image to the cache, as the most recently used.  Returns false
+    // if it doesn't fit in the budget.  Called with lock held.
+    //
+    static boolean addToCache(ManagedFullImage im, int bytes) {
+        if (bytes > cacheBudget) {
+            return false;
+        }
+        im.cacheBytes = bytes;
+        im.cacheNext = null;
+        im.cachePrev = cacheNewest;
+        if (cacheNewest == null) {
+            cacheOldest = im;
+        } else {
+            cacheNewest.cacheNext = im;
+        }
+        cacheNewest = im;
+        cacheBytes += bytes;
+        return true;
+    }
+
+    //
+    // Remove an image from the cache.  Called with lock held.
+    //
+    static void removeFromCache(ManagedFullImage im) {
+        if (im.cachePrev == null) {
+            cacheOldest = im.cacheNext;
+        } else {
+            im.cachePrev.cacheNext = im.cacheNext;
+        }
+        if (im.cacheNext == null) {
+            cacheNewest = im.cachePrev;
+        } else {
+            im.cacheNext.cachePrev = im.cachePrev;
+        }
+        im.cachePrev = null;
+        im.cacheNext = null;
+        cacheBytes -= im.cacheBytes;
+    }
+
+    //
+    // Record a cache hit or miss.  Called with lock held.
+    //
+    static void countPrepare(boolean hit) {
+        if (hit) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+    }
+
+    //
+    // Flush the least recently used images until the cache is within
+    // its budget.  This must be called without holding any locks, because
+    // flushing an image calls Image.flush().
+    //
+    static void trimCache() {
+        for (;;) {
+            ManagedFullImage victim;
+            synchronized(lock) {
+                if (cacheBytes <= cacheBudget || cacheOldest == null) {
+                    return;
+                }
+                victim = cacheOldest;
+                synchronized(victim) {
+                    removeFromCache(victim);
+                    victim.cached = false;
+                }
+                cacheEvictions++;
             }
+            victim.evict();
         }
     }
 
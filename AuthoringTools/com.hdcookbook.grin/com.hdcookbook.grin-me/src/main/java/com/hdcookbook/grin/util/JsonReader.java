@@ -0,0 +1,928 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A pull parser for JSON.  Each call to next() reads one token of
+ * the input, and returns an event that tells what it was.  Numbers
+ * are parsed straight into an int, long or double, and the text of
+ * strings is kept in a buffer that's re-used from token to token, so
+ * a document can be walked without making any objects, apart from
+ * the strings the caller asks for.  Nesting is tracked with an
+ * explicit stack, so there's no limit on the depth of a document,
+ * other than memory.
+ * <p>
+ * The syntax accepted is the same as JsonIO.readJSON(Reader), including
+ * its comments.  A stream may hold more than one top-level value; 
+ * END_DOCUMENT is returned when the input runs out between values.
+ * <p>
+ * The tree API of JsonIO is built on this class.  getValue() gives the
+ * current value as a tree, so a caller can mix the two, e.g. by walking
+ * down to the part of a document it's interested in, and then reading
+ * that part as a tree.
+ *
+ * @see JsonIO
+ * @see JsonWriter
+ **/
+
+public class JsonReader {
+
+    /**
+     * The start of a JSON object.  It will be followed by zero or more
+     * NAME events, each followed by a value, and then END_OBJECT.
+     **/
+    public final static int START_OBJECT = 1;
+
+    /**
+     * The end of a JSON object
+     **/
+    public final static int END_OBJECT = 2;
+
+    /**
+     * The start of a JSON array.  It will be followed by zero or more
+     * values, and then END_ARRAY.
+     **/
+    public final static int START_ARRAY = 3;
+
+    /**
+     * The end of a JSON array
+     **/
+    public final static int END_ARRAY = 4;
+
+    /**
+     * The name of a member of a JSON object.  Its text is available
+     * from getString(), or without allocation from getTextChars().
+     **/
+    public final static int NAME = 5;
+
+    /**
+     * A string value.  Its text is available from getString(), or 
+     * without allocation from getTextChars().
+     **/
+    public final static int STRING = 6;
+
+    /**
+     * A number that fits in an int.  Its value is available from getInt().
+     **/
+    public final static int INT = 7;
+
+    /**
+     * A number that fits in a long, but not an int.  Its value is
+     * available from getLong().
+     **/
+    public final static int LONG = 8;
+
+    /**
+     * A number with a fraction or an exponent, or that's too big for
+     * a long.  Its value is available from getDouble().
+     **/
+    public final static int DOUBLE = 9;
+
+    /**
+     * The value true
+     **/
+    public final static int TRUE = 10;
+
+    /**
+     * The value false
+     **/
+    public final static int FALSE = 11;
+
+    /**
+     * The value null
+     **/
+    public final static int NULL = 12;
+
+    /**
+     * The end of the input, after zero or more complete values
+     **/
+    public final static int END_DOCUMENT = 13;
+
+    //
+    // What the parser expects next
+    //
+    private final static int STATE_TOP = 0;             // top-level value
+    private final static int STATE_ARRAY_START = 1;     // value or ']'
+    private final static int STATE_ARRAY_NEXT = 2;      // ',' or ']'
+    private final static int STATE_OBJECT = 3;          // name or '}'
+    private final static int STATE_MEMBER_VALUE = 4;    // value after ':'
+
+    //
+    // Entries on the nesting stack
+    //
+    private final static byte IN_ARRAY = 1;
+    private final static byte IN_OBJECT = 2;
+
+    //
+    // Powers of ten that are exact as doubles
+    //
+    private final static double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final static int DEFAULT_BUFFER_SIZE = 4096;
+
+    private Reader rdr;                 // null if reading from a char[]
+    private boolean keepPosition;       // see syncReader()
+    private boolean marked = false;
+    private char[] buf;
+    private int pos;
+    private int limit;
+
+    private byte[] stack = new byte[16];
+    private int depth = 0;
+    private int state = STATE_TOP;
+    private int event = 0;
+
+    private char[] text = new char[64]; // string or number text
+    private int textLength;
+    private long longValue;
+    private double doubleValue;
+
+    private Object[] containers;        // see getValue()
+    private String[] keys;
+
+    /**
+     * Create a parser that reads from a Reader.  The parser has its own
+     * buffer, so rdr needn't be buffered, and the parser will read ahead 
+     * of the tokens it has returned.
+     *
+     * @param   rdr     The stream to read from.  A UTF-8 character 
+     *                  encoding is common for JSON streams.
+     **/
+    public JsonReader(Reader rdr) {
+        this(rdr, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    //
+    // If keepPosition is set, the reader is marked each time the buffer
+    // is filled, so syncReader() can leave it just after the last
+    // character the parser used.  rdr.markSupported() must be true.
+    //
+    JsonReader(Reader rdr, int bufferSize, boolean keepPosition) {
+        this.rdr = rdr;
+        this.keepPosition = keepPosition;
+        buf = new char[bufferSize];
+        pos = 0;
+        limit = 0;
+    }
+
+    /**
+     * Create a parser that reads from a char array.  The characters
+     * are parsed in place, without being copied.
+     *
+     * @param   chars   The array holding the JSON text
+     * @param   offset  The index of the first character
+     * @param   length  The number of characters
+     **/
+    public JsonReader(char[] chars, int offset, int length) {
+        buf = chars;
+        pos = offset;
+        limit = offset + length;
+    }
+
+    /**
+     * Read the next token, and give the event that says what it was.
+     *
+     * @return  One of START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY,
+     *          NAME, STRING, INT, LONG, DOUBLE, TRUE, FALSE, NULL or
+     *          END_DOCUMENT.
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.
+     **/
+    public int next() throws IOException {
+        int c = skipWhitespace();
+        switch (state) {
+            case STATE_TOP:
+                if (c == -1) {
+                    event = END_DOCUMENT;
+                    return event;
+                }
+                return readValue(c);
+            case STATE_ARRAY_START:
+                if (c == ']') {
+                    return endContainer(END_ARRAY);
+                }
+                return readValue(c);
+            case STATE_ARRAY_NEXT:
+                if (c == ',') {
+                    return readValue(skipWhitespace());
+                } else if (c == ']') {
+                    return endContainer(END_ARRAY);
+                }
+                throw unexpected(c);
+            case STATE_OBJECT:
+                while (c == ',') {
+                    c = skipWhitespace();
+                }
+                if (c == '}') {
+                    return endContainer(END_OBJECT);
+                } else if (c == '"' || c == '\'') {
+                    readString((char) c);
+                    c = skipWhitespace();
+                    if (c != ':') {
+                        throw unexpected(c);
+                    }
+                    state = STATE_MEMBER_VALUE;
+                    event = NAME;
+                    return event;
+                }
+                throw unexpected(c);
+            default:
+                if (Debug.ASSERT && state != STATE_MEMBER_VALUE) {
+                    Debug.assertFail();
+                }
+                return readValue(c);
+        }
+    }
+
+    /**
+     * Give the event most recently returned by next(), or 0 if next()
+     * hasn't been called.
+     **/
+    public int getEvent() {
+        return event;
+    }
+
+    /**
+     * Give the number of objects and arrays that enclose the current
+     * token.  A START_OBJECT or START_ARRAY event counts as being
+     * inside the container it starts.
+     **/
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Give the text of the current NAME, STRING or number token.  This
+     * makes a new String; see getTextChars() for a way to look at the
+     * text without allocating.
+     *
+     * @throws IOException if the current token has no text
+     **/
+    public String getString() throws IOException {
+        checkText();
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * Give the buffer holding the text of the current NAME, STRING or
+     * number token.  The text runs from index 0 to getTextLength().
+     * The buffer belongs to the parser, and will be overwritten by the
+     * next call to next().
+     *
+     * @throws IOException if the current token has no text
+     **/
+    public char[] getTextChars() throws IOException {
+        checkText();
+        return text;
+    }
+
+    /**
+     * Give the length of the text in getTextChars()
+     **/
+    public int getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * Determine if the text of the current token is equal to s.  This
+     * lets a caller look for a given name without allocating.
+     **/
+    public boolean textEquals(String s) {
+        if (event != NAME && event != STRING) {
+            return false;
+        }
+        if (s.length() != textLength) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (text[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Give the value of the current number token as an int.  A LONG or
+     * DOUBLE value is converted as by a Java cast.
+     *
+     * @throws IOException if the current token isn't a number
+     **/
+    public int getInt() throws IOException {
+        if (event == DOUBLE) {
+            return (int) doubleValue;
+        }
+        checkInteger();
+        return (int) longValue;
+    }
+
+    /**
+     * Give the value of the current number token as a long.  A DOUBLE 
+     * value is converted as by a Java cast.
+     *
+     * @throws IOException if the current token isn't a number
+     **/
+    public long getLong() throws IOException {
+        if (event == DOUBLE) {
+            return (long) doubleValue;
+        }
+        checkInteger();
+        return longValue;
+    }
+
+    /**
+     * Give the value of the current number token as a double.
+     *
+     * @throws IOException if the current token isn't a number
+     **/
+    public double getDouble() throws IOException {
+        if (event == DOUBLE) {
+            return doubleValue;
+        }
+        checkInteger();
+        return longValue;
+    }
+
+    /**
+     * Give the value that starts with the current token, reading to
+     * the end of it if it's an object or an array.  The value has
+     * the Java type described in JsonIO.  After this call, the current
+     * token is the last one of the value.
+     *
+     * @throws  IOException if there is an underlying IO exception, a
+     *                      syntax error, or if the current token 
+     *                      doesn't start a value.
+     *
+     * @see JsonIO
+     **/
+    public Object getValue() throws IOException {
+        if (event != START_OBJECT && event != START_ARRAY) {
+            return getScalar();
+        }
+        if (containers == null) {
+            containers = new Object[16];
+            keys = new String[16];
+        }
+        int top = 0;
+        for (;;) {
+            Object value;
+            if (event == START_OBJECT || event == START_ARRAY) {
+                if (top == containers.length) {
+                    Object[] c = new Object[top * 2];
+                    System.arraycopy(containers, 0, c, 0, top);
+                    containers = c;
+                    String[] k = new String[top * 2];
+                    System.arraycopy(keys, 0, k, 0, top);
+                    keys = k;
+                }
+                if (event == START_OBJECT) {
+                    containers[top++] = new HashMap();
+                } else {
+                    containers[top++] = new ArrayList();
+                }
+                next();
+                continue;
+            } else if (event == NAME) {
+                keys[top - 1] = getString();
+                next();
+                continue;
+            } else if (event == END_OBJECT) {
+                value = containers[--top];
+                containers[top] = null;
+            } else if (event == END_ARRAY) {
+                ArrayList list = (ArrayList) containers[--top];
+                containers[top] = null;
+                value = list.toArray(new Object[list.size()]);
+            } else {
+                value = getScalar();
+            }
+            if (top == 0) {
+                return value;
+            }
+            Object parent = containers[top - 1];
+            if (parent instanceof HashMap) {
+                ((HashMap) parent).put(keys[top - 1], value);
+                keys[top - 1] = null;
+            } else {
+                ((ArrayList) parent).add(value);
+            }
+            next();
+        }
+    }
+
+    /**
+     * Skip the value that starts with the current token, reading to
+     * the end of it if it's an object or an array.  After this call, 
+     * the current token is the last one of the value.
+     *
+     * @throws  IOException if there is an underlying IO exception, or a
+     *                      syntax error.
+     **/
+    public void skipValue() throws IOException {
+        if (event != START_OBJECT && event != START_ARRAY) {
+            return;
+        }
+        int bottom = depth - 1;
+        while (depth > bottom) {
+            next();
+        }
+    }
+
+    //
+    // Position rdr just after the last character used, given that
+    // keepPosition was set.
+    //
+    void syncReader() throws IOException {
+        if (Debug.ASSERT && !keepPosition) {
+            Debug.assertFail();
+        }
+        if (!marked) {
+            return;
+        }
+        rdr.reset();
+        long remaining = pos;
+        while (remaining > 0) {
+            long n = rdr.skip(remaining);
+            if (n <= 0) {
+                throw new IOException("Can't skip to position");
+            }
+            remaining -= n;
+        }
+        pos = 0;
+        limit = 0;
+        marked = false;
+    }
+
+    //
+    // Give the next character, or -1 at EOF
+    //
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    //
+    // Refill the buffer, which must be empty.  Return false at EOF.
+    //
+    private boolean fill() throws IOException {
+        if (rdr == null) {
+            return false;
+        }
+        if (keepPosition) {
+            rdr.mark(buf.length);
+            marked = true;
+        }
+        int n = rdr.read(buf, 0, buf.length);
+        pos = 0;
+        if (n <= 0) {
+            limit = 0;
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    //
+    // Skip whitespace, including comments, and return the next character
+    // after it, or -1 at EOF.
+    //
+    private int skipWhitespace() throws IOException {
+        for (;;) {
+            int c = read();
+            if (c == ' ' || c == '\n' || c == '\t' || c == '\r') {
+                continue;
+            } else if (c == -1) {
+                return c;
+            } else if (c == '/') {
+                c = read();
+                if (c == '/') {
+                    skipToEOLN();
+                } else if (c == '*') {
+                    boolean starSeen = false;
+                    for (;;) {
+                        c = read();
+                        if (c == -1) {
+                            throw new IOException("Unexpected EOF");
+                        } else if (starSeen && c == '/') {
+                            break;
+                        }
+                        starSeen = c == '*';
+                    }
+                } else {
+                    throw new IOException("Syntax error");
+                }
+            } else if (c == '#') {
+                skipToEOLN();
+            } else if (!Character.isWhitespace((char) c)) {
+                return c;
+            }
+        }
+    }
+
+    private void skipToEOLN() throws IOException {
+        for (;;) {
+            int c = read();
+            if (c == -1 || c == '\n' || c == '\r') {
+                return;
+            }
+        }
+    }
+
+    //
+    // Read the value that starts with c, and return its event
+    //
+    private int readValue(int c) throws IOException {
+        if (c == '"' || c == '\'') {
+            readString((char) c);
+            event = STRING;
+        } else if (c == '{') {
+            push(IN_OBJECT);
+            state = STATE_OBJECT;
+            event = START_OBJECT;
+            return event;
+        } else if (c == '[') {
+            push(IN_ARRAY);
+            state = STATE_ARRAY_START;
+            event = START_ARRAY;
+            return event;
+        } else if (c == -1) {
+            throw new IOException("Unexpected EOF");
+        } else {
+            char ch = Character.toLowerCase((char) c);
+            if (ch == 't') {
+                readConstant("rue");
+                event = TRUE;
+            } else if (ch == 'f') {
+                readConstant("alse");
+                event = FALSE;
+            } else if (ch == 'n') {
+                readConstant("ull");
+                event = NULL;
+            } else {
+                event = readNumber(c);
+            }
+        }
+        setStateAfterValue();
+        return event;
+    }
+
+    private int endContainer(int endEvent) {
+        depth--;
+        setStateAfterValue();
+        event = endEvent;
+        return event;
+    }
+
+    private void setStateAfterValue() {
+        if (depth == 0) {
+            state = STATE_TOP;
+        } else if (stack[depth - 1] == IN_ARRAY) {
+            state = STATE_ARRAY_NEXT;
+        } else {
+            state = STATE_OBJECT;
+        }
+    }
+
+    private void push(byte container) {
+        if (depth == stack.length) {
+            byte[] s = new byte[depth * 2];
+            System.arraycopy(stack, 0, s, 0, depth);
+            stack = s;
+        }
+        stack[depth++] = container;
+    }
+
+    private void readConstant(String wanted) throws IOException {
+        for (int i = 0; i < wanted.length(); i++) {
+            int ch = read();
+            if (ch != (int) wanted.charAt(i)) {
+                throw unexpected(ch);
+            }
+        }
+    }
+
+    //
+    // Read a string into text, given that the opening delimiter has
+    // been read.
+    //
+    private void readString(char delimiter) throws IOException {
+        textLength = 0;
+        for (;;) {
+            int start = pos;
+            while (pos < limit) {
+                char ch = buf[pos];
+                if (ch == delimiter || ch == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            int n = pos - start;
+            if (n > 0) {
+                ensureText(n);
+                System.arraycopy(buf, start, text, textLength, n);
+                textLength += n;
+            }
+            if (pos >= limit) {
+                if (!fill()) {
+                    throw new IOException("Unexpected EOF");
+                }
+                continue;
+            }
+            if (buf[pos++] == delimiter) {
+                return;
+            }
+            int c = read();
+            switch (c) {
+                case -1:
+                    throw new IOException("Unexpected EOF");
+                case 'b':
+                    appendText('\b');
+                    break;
+                case 't':
+                    appendText('\t');
+                    break;
+                case 'n':
+                    appendText('\n');
+                    break;
+                case 'f':
+                    appendText('\f');
+                    break;
+                case 'r':
+                    appendText('\r');
+                    break;
+                case 'u':
+                    appendText(parseHex(4));
+                    break;
+                case 'x':
+                    appendText(parseHex(2));
+                    break;
+                default:
+                    appendText((char) c);
+                    break;
+            }
+        }
+    }
+
+    private char parseHex(int digits) throws IOException {
+        int val = 0;
+        for (int i = 0; i < digits; i++) {
+            val *= 16;
+            int ch = read();
+            if (ch >= '0' && ch <= '9') {
+                val += (ch - '0');
+            } else if (ch >= 'A' && ch <= 'F') {
+                val += (ch - 'A' + 10);
+            } else if (ch >= 'a' && ch <= 'f') {
+                val += (ch - 'a' + 10);
+            } else {
+                throw unexpected(ch);
+            }
+        }
+        return (char) val;
+    }
+
+    //
+    // Read a number that starts with c.  Its text is kept, so that a
+    // number that can't be converted exactly with a few multiplications 
+    // can be handed to Double.parseDouble().
+    //
+    private int readNumber(int c) throws IOException {
+        textLength = 0;
+        int first = c;
+        boolean negative = c == '-';
+        if (negative) {
+            appendText('-');
+            c = read();
+        }
+        long value = 0;         // Kept as a negative value, like Long.parseLong
+        long min = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = min / 10;
+        boolean tooLong = false;
+        long mantissa = 0;
+        int mantissaDigits = 0; // Significant digits in mantissa
+        boolean inexact = false;
+        int exp10 = 0;
+        boolean digitSeen = false;
+        boolean isDouble = false;
+        while (c >= '0' && c <= '9') {
+            appendText((char) c);
+            int digit = c - '0';
+            digitSeen = true;
+            if (value < multmin) {
+                tooLong = true;
+            } else {
+                value *= 10;
+                if (value < min + digit) {
+                    tooLong = true;
+                } else {
+                    value -= digit;
+                }
+            }
+            if (mantissaDigits < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    mantissaDigits++;
+                }
+            } else {
+                inexact = true;
+            }
+            c = read();
+        }
+        if (c == '.') {
+            isDouble = true;
+            appendText('.');
+            c = read();
+            while (c >= '0' && c <= '9') {
+                appendText((char) c);
+                digitSeen = true;
+                if (mantissaDigits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        mantissaDigits++;
+                    }
+                    exp10--;
+                } else {
+                    inexact = true;
+                }
+                c = read();
+            }
+        }
+        if (!digitSeen) {
+            throw unexpected(first);
+        }
+        if (c == 'e' || c == 'E') {
+            isDouble = true;
+            appendText('e');
+            c = read();
+            boolean expNegative = false;
+            if (c == '+') {
+                c = read();
+            } else if (c == '-') {
+                appendText('-');
+                expNegative = true;
+                c = read();
+            }
+            if (c < '0' || c > '9') {
+                throw unexpected(c);
+            }
+            int exp = 0;
+            while (c >= '0' && c <= '9') {
+                appendText((char) c);
+                if (exp < 100000) {
+                    exp = exp * 10 + (c - '0');
+                }
+                c = read();
+            }
+            exp10 += expNegative ? -exp : exp;
+        }
+        if (c != -1) {
+            pos--;      // Put back the character after the number
+        }
+        if (!isDouble && !tooLong) {
+            longValue = negative ? value : -value;
+            if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                return INT;
+            } else {
+                return LONG;
+            }
+        }
+        if (!inexact && mantissa < (1L << 53) && exp10 >= -22 && exp10 <= 22) {
+            // Both operands are exact, so the result is correctly rounded
+            double d = mantissa;
+            if (exp10 < 0) {
+                d /= POW10[-exp10];
+            } else {
+                d *= POW10[exp10];
+            }
+            doubleValue = negative ? -d : d;
+        } else {
+            doubleValue = Double.parseDouble(new String(text, 0, textLength));
+        }
+        return DOUBLE;
+    }
+
+    private void appendText(char c) {
+        if (textLength == text.length) {
+            ensureText(1);
+        }
+        text[textLength++] = c;
+    }
+
+    private void ensureText(int n) {
+        if (textLength + n > text.length) {
+            char[] t = new char[Math.max(text.length * 2, textLength + n)];
+            System.arraycopy(text, 0, t, 0, textLength);
+            text = t;
+        }
+    }
+
+    private Object getScalar() throws IOException {
+        switch (event) {
+            case STRING:
+                return new String(text, 0, textLength);
+            case INT:
+                return new Integer((int) longValue);
+            case LONG:
+                return new Long(longValue);
+            case DOUBLE:
+                return new Double(doubleValue);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case NULL:
+                return null;
+            default:
+                throw new IOException("No value at event " + event);
+        }
+    }
+
+    private void checkText() throws IOException {
+        if (event != NAME && event != STRING && event != INT && event != LONG
+            && event != DOUBLE)
+        {
+            throw new IOException("No text at event " + event);
+        }
+    }
+
+    private void checkInteger() throws IOException {
+        if (event != INT && event != LONG) {
+            throw new IOException("No number at event " + event);
+        }
+    }
+
+    private static IOException unexpected(int ch) {
+        String str;
+        if (ch == -1) {
+            str = "EOF";
+        } else {
+            str = "" + ((char) ch);
+        }
+        return new IOException("Syntax error in JSON object:  " + str 
+                               + " unexpected.");
+    }
+}
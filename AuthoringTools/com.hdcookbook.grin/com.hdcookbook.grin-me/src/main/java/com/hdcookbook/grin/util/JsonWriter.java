@@ -0,0 +1,387 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A streaming writer for JSON.  Values are written to the underlying
+ * Writer as they're given, with the commas and colons between them
+ * added automatically.  Numbers other than doubles are formatted without
+ * making any objects.  Nesting is tracked without recursion, so there's
+ * no limit on the depth of a document, other than memory.
+ * <p>
+ * A value can also be written from a tree of Java objects with
+ * writeValue(Object); this is what JsonIO.writeJSON(Writer, Object)
+ * does.
+ * <p>
+ * This class doesn't check that the calls made on it give a well-formed
+ * document, beyond a few assertions.
+ *
+ * @see JsonIO
+ * @see JsonReader
+ **/
+
+public class JsonWriter {
+
+    private final static char[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', 
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private Writer out;
+    private int depth = 0;
+    private boolean needComma = false;
+    private char[] scratch = new char[20];      // Long.MIN_VALUE's length
+
+    private Object[] frames;    // Object[] or Iterator; see writeValue()
+    private int[] indices;
+
+    /**
+     * Create a writer that writes to out.
+     *
+     * @param   out     The stream to write to.  A buffered writer is
+     *                  recommended; a UTF-8 character encoding is common
+     *                  for JSON streams. 
+     **/
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Start writing an object.  It should be followed by calls to
+     * name() and a value for each member, and then endObject().
+     **/
+    public void beginObject() throws IOException {
+        writeSeparator();
+        out.write('{');
+        depth++;
+        needComma = false;
+    }
+
+    /**
+     * Finish writing an object.
+     **/
+    public void endObject() throws IOException {
+        end('}');
+    }
+
+    /**
+     * Start writing an array.  It should be followed by its values,
+     * and then endArray().
+     **/
+    public void beginArray() throws IOException {
+        writeSeparator();
+        out.write('[');
+        depth++;
+        needComma = false;
+    }
+
+    /**
+     * Finish writing an array.
+     **/
+    public void endArray() throws IOException {
+        end(']');
+    }
+
+    /**
+     * Write the name of a member of an object.  It should be followed
+     * by the member's value.
+     **/
+    public void name(String name) throws IOException {
+        if (Debug.ASSERT && depth == 0) {
+            Debug.assertFail("Name outside of an object");
+        }
+        writeSeparator();
+        writeString(name);
+        out.write(':');
+        needComma = false;
+    }
+
+    /**
+     * Write a string value.  If value is null, the JSON value null is
+     * written.
+     **/
+    public void value(String value) throws IOException {
+        writeSeparator();
+        if (value == null) {
+            out.write("null");
+        } else {
+            writeString(value);
+        }
+        needComma = true;
+    }
+
+    /**
+     * Write an int value.
+     **/
+    public void value(int value) throws IOException {
+        value((long) value);
+    }
+
+    /**
+     * Write a long value.
+     **/
+    public void value(long value) throws IOException {
+        writeSeparator();
+        int i = scratch.length;
+        long v = value > 0 ? -value : value;   // Negative, for Long.MIN_VALUE
+        do {
+            scratch[--i] = (char) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) {
+            scratch[--i] = '-';
+        }
+        out.write(scratch, i, scratch.length - i);
+        needComma = true;
+    }
+
+    /**
+     * Write a double value.  Unlike the other numeric types, this
+     * allocates a String for the formatted value.
+     **/
+    public void value(double value) throws IOException {
+        writeSeparator();
+        out.write(String.valueOf(value));
+        needComma = true;
+    }
+
+    /**
+     * Write a boolean value.
+     **/
+    public void value(boolean value) throws IOException {
+        writeSeparator();
+        out.write(value ? "true" : "false");
+        needComma = true;
+    }
+
+    /**
+     * Write the value null.
+     **/
+    public void nullValue() throws IOException {
+        writeSeparator();
+        out.write("null");
+        needComma = true;
+    }
+
+    /**
+     * Write a value from a tree of Java objects.  The argument must 
+     * correspond to the JSON type as described in JsonIO, one of
+     * Map, Object[], String, Integer, Long, Float, Double, Boolean or null.
+     * Other Number types are written with toString().
+     *
+     * @throws  IOException if there is an underlying IO exception, or if value
+     *                      contains an invalid type.
+     *
+     * @see JsonIO
+     **/
+    public void writeValue(Object value) throws IOException {
+        if (frames == null) {
+            frames = new Object[16];
+            indices = new int[16];
+        }
+        int top = 0;
+        for (;;) {
+            if (value instanceof Object[] || value instanceof Map) {
+                if (top == frames.length) {
+                    Object[] f = new Object[top * 2];
+                    System.arraycopy(frames, 0, f, 0, top);
+                    frames = f;
+                    int[] ind = new int[top * 2];
+                    System.arraycopy(indices, 0, ind, 0, top);
+                    indices = ind;
+                }
+                if (value instanceof Object[]) {
+                    beginArray();
+                    frames[top] = value;
+                    indices[top] = 0;
+                } else {
+                    beginObject();
+                    frames[top] = ((Map) value).entrySet().iterator();
+                }
+                top++;
+            } else {
+                writeScalar(value);
+            }
+            //
+            // Find the next value to write, closing any containers that
+            // are finished.
+            //
+            for (;;) {
+                if (top == 0) {
+                    return;
+                }
+                Object frame = frames[top - 1];
+                if (frame instanceof Object[]) {
+                    Object[] arr = (Object[]) frame;
+                    int i = indices[top - 1];
+                    if (i < arr.length) {
+                        indices[top - 1] = i + 1;
+                        value = arr[i];
+                        break;
+                    }
+                    endArray();
+                } else {
+                    Iterator it = (Iterator) frame;
+                    if (it.hasNext()) {
+                        Map.Entry ent = (Map.Entry) it.next();
+                        Object key = ent.getKey();
+                        if (!(key instanceof String)) {
+                            throw new IOException("Invalid key " + key);
+                        }
+                        name((String) key);
+                        value = ent.getValue();
+                        break;
+                    }
+                    endObject();
+                }
+                frames[--top] = null;
+            }
+        }
+    }
+
+    /**
+     * Flush the underlying Writer.
+     **/
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeScalar(Object value) throws IOException {
+        if (value == null) {
+            nullValue();
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writeSeparator();
+            out.write(value.toString());
+            needComma = true;
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else {
+            throw new IOException("Invalid type " + value.getClass() + " for " 
+                                  + value);
+        }
+    }
+
+    private void end(char closer) throws IOException {
+        if (Debug.ASSERT && depth == 0) {
+            Debug.assertFail("End without a beginning");
+        }
+        out.write(closer);
+        depth--;
+        needComma = true;
+    }
+
+    private void writeSeparator() throws IOException {
+        if (needComma && depth > 0) {
+            out.write(',');
+        }
+    }
+
+    //
+    // Write s as a quoted string.  Runs of characters that don't need
+    // escaping are written in one call.
+    //
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 32 && c <= 126 && c != '"' && c != '\\') {
+                continue;
+            }
+            if (i > start) {
+                out.write(s, start, i - start);
+            }
+            start = i + 1;
+            if (c == '"') {
+                out.write("\\\"");
+            } else if (c == '\\') {
+                out.write("\\\\");
+            } else if (c == '\b') {
+                out.write("\\b");
+            } else if (c == '\f') {
+                out.write("\\f");
+            } else if (c == '\n') {
+                out.write("\\n");
+            } else if (c == '\r') {
+                out.write("\\r");
+            } else if (c == '\t') {
+                out.write("\\t");
+            } else {
+                scratch[0] = '\\';
+                scratch[1] = 'u';
+                scratch[2] = HEX_DIGITS[(c >> 12) & 0xf];
+                scratch[3] = HEX_DIGITS[(c >> 8) & 0xf];
+                scratch[4] = HEX_DIGITS[(c >> 4) & 0xf];
+                scratch[5] = HEX_DIGITS[c & 0xf];
+                out.write(scratch, 0, 6);
+            }
+        }
+        if (start < len) {
+            out.write(s, start, len - start);
+        }
+        out.write('"');
+    }
+}
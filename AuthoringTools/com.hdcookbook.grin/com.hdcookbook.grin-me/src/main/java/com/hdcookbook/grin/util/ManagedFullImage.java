@@ -62,6 +62,7 @@ import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.image.ImageObserver;
 import java.net.URL;
+import java.util.ArrayList;
 
 /**
  * A managed image that's loaded from its own image file (and not
@@ -82,6 +83,13 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
     private int height = 0;
         // If there's an error loading, width and height are left at 0
     private boolean flushing = false;
+    boolean cached = false;     // Accessed by ImageManager, see CACHED below
+    ManagedFullImage cachePrev = null;  // Managed by ImageManager
+    ManagedFullImage cacheNext = null;  // Managed by ImageManager
+    int cacheBytes = 0;                 // Managed by ImageManager
+    private ArrayList listeners = null;
+        // Pairs of ImageLoadListener and the ManagedImage to report to it,
+        // which is us or a ManagedSubImage in us.  null if there are none.
 
     /////////////////////////////////
     //    STATE MODEL              //
@@ -141,6 +149,23 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
     //      loaded = ? (usually false)
     //      flushing = true
     //
+    //  CACHED:
+    //      numPrepares = 0
+    //      image != null
+    //      loaded = true
+    //      flushing = false
+    //      cached = true
+    //
+    // In all other states, cached is false.  An image goes from LOADED to
+    // CACHED instead of FLUSHING when the last prepare is undone, if it
+    // fits in ImageManager's cache budget.  It goes back to LOADED if 
+    // it's prepared again, or it's flushed when ImageManager evicts it.
+    // The cached flag and ImageManager's list of cached images are only
+    // changed with ImageManager.lock held, as well as our lock.  That only
+    // happens when numPrepares goes between 0 and 1, so prepare() and
+    // unprepare() only take out ImageManager.lock then; other changes to
+    // numPrepares just need our lock.
+    //
     // The FLUSHING state is a solution to what should probably be considered
     // a bug in PBP.  Under certain circumstances, a call to Image.flush()
     // blocks, while a callback _in_ _a_ _different_ _thread_ (presumably
@@ -199,11 +224,31 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
     /**
      * {@inheritDoc}
      **/
-    public synchronized void prepare() {
+    public void prepare() {
             // See ManagedImage's main class documentation under
             //  "ManagedImage contract - image loading and unloading".
-        numPrepares++;
-        // This might move us from UNLOADED to READY TO LOAD
+        synchronized(this) {
+            if (numPrepares > 0) {
+                numPrepares++;  // We can't be CACHED, so this is all
+                return;
+            }
+        }
+        synchronized(ImageManager.lock) {
+            synchronized(this) {
+                numPrepares++;
+                if (numPrepares == 1) {
+                    if (cached) {
+                        // From CACHED to LOADED
+                        ImageManager.removeFromCache(this);
+                        cached = false;
+                        ImageManager.countPrepare(true);
+                    } else if (!loaded) {
+                        ImageManager.countPrepare(false);
+                    }
+                }
+                // This might move us from UNLOADED to READY TO LOAD
+            }
+        }
     }
 
     /**
@@ -302,6 +347,55 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
         comp.prepareImage(image, this);
     }
 
+    /**
+     * {@inheritDoc}
+     **/
+    public void startLoading(Component comp, ImageLoadListener listener) {
+        startLoading(comp, listener, this);
+    }
+
+    //
+    // Start loading, and tell listener when we're done, passing it
+    // reportAs.  Called by ManagedSubImage with itself as reportAs.
+    //
+    void startLoading(Component comp, ImageLoadListener listener,
+                      ManagedImage reportAs)
+    {
+        synchronized(this) {
+            if (!loaded && numPrepares > 0) {
+                if (listeners == null) {
+                    listeners = new ArrayList();
+                }
+                listeners.add(listener);
+                listeners.add(reportAs);
+                startLoading(comp);
+                    // If we lose interest while this is waiting for a 
+                    // flush, or before the image is loaded, unload() 
+                    // tells the listener.
+                return;
+            }
+        }
+        listener.imageLoaded(reportAs);
+    }
+
+    //
+    // Tell the listeners waiting for us that loading is over.  Our caller
+    // doesn't hold our lock.
+    //
+    private void notifyListeners() {
+        ArrayList l;
+        synchronized(this) {
+            l = listeners;
+            listeners = null;
+        }
+        if (l != null) {
+            for (int i = 0; i < l.size(); i += 2) {
+                ImageLoadListener listener = (ImageLoadListener) l.get(i);
+                listener.imageLoaded((ManagedImage) l.get(i+1));
+            }
+        }
+    }
+
     //
     // Implementation of the ImageObserver method.  This gets called by the
     // system on the image loading thread.
@@ -343,6 +437,7 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
                 this.width = width;
                 this.height = height;
                 notifyAll();
+                ImageManager.countLoaded(width * height * 4);
                 // Fall through to notifyLoaded
             } else {
                 return true;
@@ -353,6 +448,7 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
         // we are outside of the synchronized block.  Our thread might
         // be holding locks, however.
         AssetFinder.notifyLoaded(this);
+        notifyListeners();
 
         return false;
     }
@@ -363,15 +459,56 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
     public void unprepare() {
             // See ManagedImage's main class documentation under
             //  "ManagedImage contract - image loading and unloading".
+        synchronized(this) {
+            if (numPrepares > 1) {
+                numPrepares--;  // We stay prepared, so this is all
+                return;
+            }
+        }
+        synchronized(ImageManager.lock) {
+            synchronized(this) {
+                numPrepares--;
+                if (numPrepares > 0) {
+                    // If we're in READY TO LOAD, LOADING, LOADED, or
+                    // perhaps FLUSHING
+                    return;
+                }
+                if (loaded && !flushing && width > 0
+                    && ImageManager.addToCache(this, width * height * 4)) 
+                {
+                    cached = true;
+                    // We're now CACHED, instead of FLUSHING.
+                }
+            }
+        }
+        if (cached) {
+            // Reading cached without the lock is OK; if it changed, 
+            // trimming the cache is harmless.
+            ImageManager.trimCache();
+        } else {
+            unload();
+        }
+    }
+
+    //
+    // Called by ImageManager when we're evicted from its cache.  We might
+    // have been prepared since then, or even cached again.
+    //
+    void evict() {
+        unload();
+    }
+
+    //
+    // Flush our image if we're no longer prepared, and we're not cached.
+    // Our caller doesn't hold any locks.
+    //
+    private void unload() {
         int w = 0;
         int h = 0;
         boolean notify = false;
         Image flush = null;
         synchronized(this) {
-            numPrepares--;
-            if (numPrepares > 0) {
-                // If we're in READY TO LOAD, LOADING, LOADED, or
-                // perhaps FLUSHING
+            if (numPrepares > 0 || cached) {
                 return;
             } else {
                 // Now we want to be in UNLOADED, but we're going to have
@@ -411,8 +548,10 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
         // non-local locks.
         //
         if (notify) {
+            ImageManager.countLoaded(-(w * h * 4));
             AssetFinder.notifyUnloaded(this, w, h);
         }
+        notifyListeners();      // If we were still loading
     }
 
     /**
@@ -451,6 +590,18 @@ public class ManagedFullImage extends ManagedImage implements ImageObserver {
     }
 
     void destroy() {
+        synchronized(ImageManager.lock) {
+            synchronized(this) {
+                if (cached) {
+                    ImageManager.removeFromCache(this);
+                    ImageManager.countLoaded(-(width * height * 4));
+                    cached = false;
+                    loaded = false;
+                        // Being in the cache isn't a sign of a buggy 
+                        // application, so we don't warn about it below.
+                }
+            }
+        }
         if (Debug.LEVEL > 0 && loaded) {
             Debug.println("Warning:  Destroying loaded image " + this + ".");
             Debug.println("          unprepare() should always be called before ungetImage().");
@@ -119,13 +119,18 @@ import java.awt.Rectangle;
  * </pre>
  * When an image is in the prepared state, callling one of the load methods
  * (<code>load()</code> or <code>startLoading()</code>) is necessary to
- * make the actual image loading happen.
+ * make the actual image loading happen.  <code>load()</code> blocks until
+ * the image is loaded; a client that loads many images at once can
+ * instead give <code>startLoading()</code> an 
+ * <code>ImageLoadListener</code> to be told when each image is done.
  * <p>
  * Eventually, when the client no longer wants the image to be loaded, 
  * it must call <code>unprepare()</code>.  In other words, each call to
  * <code>prepare()</code> must eventually be balanced by a call to
  * <code>unprepare()</code>.  When that final call to <code>unprepare()</code>
  * is received, the image is unloaded (by calling <code>Image.flush()</code>).
+ * If <code>ImageManager</code> has a cache budget, the image is kept loaded
+ * instead, until it's prepared again or the cache needs the memory.
  * <p>
  * The GRIN features <code>fixed_image</code> and <code>image_sequence</code>
  * <code>prepare()</code> their images when the feature is in the active
@@ -271,6 +276,28 @@ abstract public class ManagedImage {
      **/
     abstract public void startLoading(Component  comp);
 
+    /**
+     * Start loading an image, and tell the given listener when loading
+     * is over.  This is like <code>startLoading(Component)</code>, except
+     * that the client is called back instead of having to block in
+     * <code>load(Component)</code> or poll <code>isLoaded()</code>.  If
+     * the image is already loaded, or if it isn't prepared, the listener
+     * is called right away.  Many images can be loaded this way at once,
+     * without a thread for each.
+     * <p>
+     * The default implementation calls <code>load(Component)</code>, 
+     * and then tells the listener.  Subclasses that can load without
+     * blocking should override this.
+     *
+     * @see ImageLoadListener
+     * @see #startLoading(Component)
+     * @see ManagedImage
+     **/
+    public void startLoading(Component comp, ImageLoadListener listener) {
+        load(comp);
+        listener.imageLoaded(this);
+    }
+
     /** 
      * Undo a prepare.  We do reference counting; when the number of
      * active prepares hits zero, and the "sticky" count reaches zero,
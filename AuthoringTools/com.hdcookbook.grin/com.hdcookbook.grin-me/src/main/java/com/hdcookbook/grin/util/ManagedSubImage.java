@@ -139,6 +139,13 @@ public class ManagedSubImage extends ManagedImage {
         mosaic.startLoading(comp);
     }
 
+    /**
+     * {@inheritDoc}
+     **/
+    public void startLoading(Component comp, ImageLoadListener listener) {
+        mosaic.startLoading(comp, listener, this);
+    }
+
     /**
      * {@inheritDoc}
      **/
@@ -54,9 +54,8 @@
  */
 package com.hdcookbook.grin.util;
 
-import java.io.StringWriter;
-import java.io.PrintWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -81,6 +80,24 @@ import java.io.UnsupportedEncodingException;
  * declared as constants in this class; beyond that, it's up to the developer
  * to manage the namespace of thread IDs.
  * <p>
+ * Timers don't send anything themselves.  Each Java thread that uses a
+ * timer gets a ring of fixed-size records, which it fills in without
+ * taking a lock, and a background thread sends the records in batches
+ * every few tens of milliseconds.  This keeps the profiler from
+ * disturbing the timing it measures very much.  The records are sent to
+ * the PC profiler as UDP packets, or written to a stream that the PC
+ * profiler can read later.  If a thread makes records faster than they
+ * can be sent, the extras are dropped and counted.  The PC profiler
+ * reports that count, along with the time each timer call takes, and the
+ * time spent sending.  A timer must be stopped by the same Java thread
+ * that started it.
+ * <p>
+ * Timestamps are taken on the device.  PBP doesn't have a clock finer
+ * than System.currentTimeMillis(), so by default, that's what's used.
+ * If the platform has a better clock, you can make a subclass of Profile
+ * that overrides helperNanoTime(), and bind it with setHelper(); on
+ * desktop java, com.hdcookbook.grin.util.SEProfile does this.
+ * <p>
  * Usage:
  * <pre>
  *     private static byte[] PROFILE_TIMER_1;
@@ -112,10 +129,35 @@ public class Profile {
     public final static byte TIMER_START = 0;
     public final static byte TIMER_STOP = 1;
     public final static byte MESSAGE = 2;
-    private static DatagramSocket socket = null;
-    private static DatagramPacket packet;
-    private static byte[] stopBuf = new byte[5];
-    private static int token = 0;
+
+    /**
+     * The first byte of a packet holding a batch of profile records.
+     **/
+    public final static byte BATCH = 3;
+
+    /**
+     * A batch entry giving the name of a timer.
+     **/
+    public final static byte TIMER_NAME = 4;
+
+    /**
+     * A batch entry giving statistics about the profiler's own overhead.
+     **/
+    public final static byte OVERHEAD = 5;
+
+    private static Profile helper = new Profile();
+    private static volatile ProfileFlusher flusher = null;
+    private static ThreadLocal threadRing = new ThreadLocal();
+    private static ProfileRing rings = null;
+    private static int numRings = 0;
+    private static int droppedByGoneRings = 0;
+    private static int tokenStart = 0;
+    private static byte[][] timers = new byte[16][];
+    private static int numTimers = 0;
+    private static byte[] profileFlush;
+    private static byte[] profileCalibrate;
+
+    private final static int CALIBRATION_CALLS = 10000;
 
     /**
      * Constant for the thread ID of the GRIN animation thread.
@@ -129,7 +171,47 @@ public class Profile {
      */
     public final static byte TID_SETUP = (byte) 0xfe;
 
-    private Profile() {
+    /**
+     * Constant for the thread ID of the profiler's own thread, which
+     * times how long it takes to send profile records.
+     * @see #startTimer(byte[], byte)
+     */
+    public final static byte TID_PROFILER = (byte) 0xfd;
+
+    static {
+        if (Debug.PROFILE) {
+            profileFlush = makeProfileTimer("Profile flush");
+            profileCalibrate = makeProfileTimer("Profile calibration");
+        }
+    }
+
+    /**
+     * See setHelper()
+     **/
+    protected Profile() {
+    }
+
+    /**
+     * An xlet can make an instance of a subclass of Profile, and
+     * connect it to us by calling this method.  The helper gives
+     * the time used to stamp profile records.
+     *
+     * @see #helperNanoTime()
+     **/
+    public static void setHelper(Profile helperArg) {
+        helper = helperArg;
+    }
+
+    /**
+     * Give the current time in nanoseconds, for timestamping profile
+     * records.  Only differences between times matter.  The default
+     * implementation uses System.currentTimeMillis(), since that's
+     * the best clock PBP has.
+     *
+     * @see #setHelper(Profile)
+     **/
+    protected long helperNanoTime() {
+        return System.currentTimeMillis() * 1000000L;
     }
 
     /**
@@ -153,32 +235,78 @@ public class Profile {
         try {
             // get the inet address from the string
             addr = InetAddress.getByName(host);
-            socket = new DatagramSocket();
-            packet = new DatagramPacket(stopBuf, stopBuf.length,
-                                        addr, port);
+            DatagramSocket socket = new DatagramSocket();
+            DatagramPacket packet = new DatagramPacket(new byte[0], 0,
+                                                       addr, port);
+            start(new ProfileFlusher(socket, packet));
         } catch (IOException e) {
             if (Debug.LEVEL > 0) {
                 Debug.printStackTrace(e);
-                socket = null;
             }
         }
     }
 
+    /**
+     * Initializes this class to write profiling data to a stream, e.g.
+     * a file in local storage.  The PC profiler can read a file of this
+     * data with its -log option.  The stream is closed by
+     * doneProfiling().  This is a NOP if Debug.PROFILE is false.
+     *
+     * @param out  The stream to write to.  It needn't be buffered,
+     *             since it's written in large blocks.
+     **/
+    public static void initProfiler(OutputStream out) {
+        if (!Debug.PROFILE) {
+            return;
+        }
+        start(new ProfileFlusher(out));
+    }
+
+    private static void start(ProfileFlusher f) {
+        doneProfiling();
+        flusher = f;
+        f.droppedBefore = getRecordsDropped();
+        f.callNanos = calibrate();
+        f.start();
+    }
+
+    //
+    // Measure how long a timer start or stop takes, on this thread's
+    // ring.  The flusher isn't running yet, so it's safe for us to
+    // throw away the records by moving head.
+    //
+    private static int calibrate() {
+        ProfileRing r = getRing();
+        long start = helper.helperNanoTime();
+        for (int i = 0; i < CALIBRATION_CALLS; i++) {
+            int tk = startTimer(profileCalibrate, TID_PROFILER);
+            stopTimer(tk);
+            if (r.tail - r.head > ProfileRing.SIZE / 2) {
+                r.head = r.tail;
+            }
+        }
+        long elapsed = helper.helperNanoTime() - start;
+        r.head = r.tail;
+        return (int) (elapsed / (2 * CALIBRATION_CALLS));
+    }
+
     /**
      * Initialize the starting point of counting for tokens.  This usually
      * isn't needed, but it makes it possible for one xlet's tokens to
      * start from where a previous xlet's ended.  This lets you use the
-     * profiler to do things like time xlet startup time.
+     * profiler to do things like time xlet startup time.  Tokens are
+     * counted separately for each thread, so this only affects threads
+     * that haven't used the profiler yet.
      **/
-    public static void initTokenStart(int tokenStart) {
+    public static synchronized void initTokenStart(int tokenStart) {
         if (!Debug.PROFILE) {
             return;
         }
-        if (Debug.ASSERT && tokenStart < token) {
+        if (Debug.ASSERT && tokenStart < Profile.tokenStart) {
             Debug.assertFail("Illegal token start value " + tokenStart
-                             + " < " + token);
+                             + " < " + Profile.tokenStart);
         }
-        token = tokenStart;
+        Profile.tokenStart = tokenStart;
     }
 
     /**
@@ -198,7 +326,7 @@ public class Profile {
      * @param description of the task that is being profiled.
      * @return A UTF-8 encoded byte array representing the description.
      */
-    public static byte[] makeProfileTimer(String description) {
+    public static synchronized byte[] makeProfileTimer(String description) {
         if (!Debug.PROFILE) {
             return null;
         }
@@ -212,6 +340,17 @@ public class Profile {
          System.arraycopy(utf8Buf, 0,
                          retBuf, 6, utf8Buf.length);
          utf8Buf = null;
+         if (numTimers >= timers.length) {
+             byte[][] a = new byte[timers.length * 2][];
+             System.arraycopy(timers, 0, a, 0, numTimers);
+             timers = a;
+         }
+         int timer = numTimers++;
+         timers[timer] = retBuf;
+         retBuf[0] = (byte) ((timer >> 24) & 0xff);
+         retBuf[1] = (byte) ((timer >> 16) & 0xff);
+         retBuf[2] = (byte) ((timer >> 8) & 0xff);
+         retBuf[3] = (byte) (timer & 0xff);
          return retBuf;
     }
 
@@ -260,20 +399,32 @@ public class Profile {
     }
 
     /**
-     * Indicates profiling is over, releases the network resources.
+     * Indicates profiling is over.  This sends any records that haven't
+     * been sent yet, and releases the network resources, or closes
+     * the stream.
      */
-    public static synchronized void doneProfiling() {
+    public static void doneProfiling() {
         if (!Debug.PROFILE) {
             return;
         }
-        if (socket != null) {
-            socket.close();
+        ProfileFlusher f;
+        synchronized(Profile.class) {
+            f = flusher;
+            flusher = null;
+        }
+        if (f != null) {
+            f.shutdown();
+            try {
+                f.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
         }
-        socket = null;
     }
 
     /**
-     * Signals starting the timer on the remote computer.
+     * Starts a timer.  This just adds a record to the calling thread's
+     * ring; it's sent later.
      *
      * @param startBuf  Buffer holding the description of the 
      *                  block of code that is time.  This byte array
@@ -288,56 +439,41 @@ public class Profile {
      * @see #makeProfileTimer(String)
      * @see Profile
      */
-    public static synchronized int startTimer(byte[] startBuf, byte threadID) {
+    public static int startTimer(byte[] startBuf, byte threadID) {
         if (!Debug.PROFILE) {
             return 0;
         }
-        token++;
-        DatagramSocket sock = socket;
-        if (sock != null) {
-            startBuf[0] = (byte) TIMER_START;
-            startBuf[1] = (byte) ((token >> 24) & 0xff);
-            startBuf[2] = (byte) ((token >> 16) & 0xff);
-            startBuf[3] = (byte) ((token >> 8) & 0xff);
-            startBuf[4] = (byte) (token & 0xff);
-            startBuf[5] = threadID;
-            try {
-                packet.setData(startBuf);
-                sock.send(packet);
-            } catch (IOException e) {
-                Debug.printStackTrace(e);
-            }
+        if (flusher == null) {
+            return 0;
         }
-        return token;
+        ProfileRing r = getRing();
+        int tk = r.nextToken();
+        r.add(TIMER_START, tk, threadID, getTimer(startBuf),
+              helper.helperNanoTime());
+        return tk;
     }
 
     /**
-     * Signals stopping the timer on the remote computer.
+     * Stops a timer.  This must be called on the same thread that
+     * started it.
      *
      * @param tk Token for the task that is done.
      */
-    public synchronized static void stopTimer(int tk) {
+    public static void stopTimer(int tk) {
         if (!Debug.PROFILE) {
             return;
         }
-        DatagramSocket sock = socket;
-        if (sock != null) {
-            stopBuf[0] = (byte) TIMER_STOP;
-            stopBuf[1] = (byte) ((tk >> 24) & 0xff);
-            stopBuf[2] = (byte) ((tk >> 16) & 0xff);
-            stopBuf[3] = (byte) ((tk >> 8) & 0xff);
-            stopBuf[4] = (byte) (tk & 0xff);
-            try{
-                packet.setData(stopBuf);
-                sock.send(packet);
-            } catch (IOException e) {
-                Debug.printStackTrace(e);
-            }
+        long now = helper.helperNanoTime();
+        if (flusher == null) {
+            return;
         }
+        getRing().add(TIMER_STOP, tk, (byte) 0, 0, now);
     }
 
     /**
-     * Send a message packet
+     * Send a message packet.  Unlike timer records, this is sent
+     * right away, since the caller can change the buffer as soon as
+     * we return.
      *
      * @param buf       Buffer holding the message.
      *                  This byte array
@@ -346,19 +482,107 @@ public class Profile {
      * @see #makeMessage(String)
      * @see Profile
      */
-    public static synchronized void sendMessage(byte[] buf) {
+    public static void sendMessage(byte[] buf) {
         if (!Debug.PROFILE) {
             return;
         }
-        DatagramSocket sock = socket;
-        if (sock != null) {
+        long now = helper.helperNanoTime();
+        ProfileFlusher f = flusher;
+        if (f != null) {
             buf[0] = (byte) MESSAGE;
-            try {
-                packet.setData(buf);
-                sock.send(packet);
-            } catch (IOException e) {
-                Debug.printStackTrace(e);
+            f.sendMessage(buf, now);
+        }
+    }
+
+    //
+    // Get the number makeProfileTimer() put at the start of startBuf
+    //
+    private static int getTimer(byte[] startBuf) {
+        return ((startBuf[0] & 0xff) << 24) | ((startBuf[1] & 0xff) << 16)
+               | ((startBuf[2] & 0xff) << 8) | (startBuf[3] & 0xff);
+    }
+
+    //
+    // Get the calling thread's ring, making it if needed.
+    //
+    private static ProfileRing getRing() {
+        ProfileRing r = (ProfileRing) threadRing.get();
+        if (r == null) {
+            r = makeRing();
+        }
+        return r;
+    }
+
+    private static synchronized ProfileRing makeRing() {
+        ProfileRing r = new ProfileRing(Thread.currentThread(),
+                                        (numRings++ & 0xff) << 24,
+                                        tokenStart);
+        r.next = rings;
+        rings = r;
+        threadRing.set(r);
+        return r;
+    }
+
+    //
+    // Called by the flusher.  Rings are only added at the head of the
+    // list, and only the flusher removes them, so it can walk the list
+    // without holding our lock.
+    //
+    static synchronized ProfileRing getRings() {
+        return rings;
+    }
+
+    //
+    // Called by the flusher, to forget the rings of threads that have
+    // died, once they're empty.
+    //
+    static synchronized void removeIdleRings() {
+        ProfileRing prev = null;
+        for (ProfileRing r = rings; r != null; r = r.next) {
+            if (r.head == r.tail && !r.owner.isAlive()) {
+                droppedByGoneRings += r.dropped;
+                if (prev == null) {
+                    rings = r.next;
+                } else {
+                    prev.next = r.next;
+                }
+            } else {
+                prev = r;
             }
         }
     }
+
+    static synchronized int getRecordsDropped() {
+        int n = droppedByGoneRings;
+        for (ProfileRing r = rings; r != null; r = r.next) {
+            n += r.dropped;
+        }
+        return n;
+    }
+
+    static synchronized byte[] getTimerName(int timer) {
+        return timers[timer];
+    }
+
+    /**
+     * Give the current time in nanoseconds, from the helper's clock.
+     * This works whether or not Debug.PROFILE is set; the animation
+     * engines use it for their frame metrics.
+     *
+     * @see #setHelper(Profile)
+     * @see com.hdcookbook.grin.animator.FrameMetrics
+     **/
+    public static long nanoTime() {
+        return helper.helperNanoTime();
+    }
+
+    //
+    // Called by the flusher, to record how long a flush took
+    //
+    static void recordFlush(long start, long end) {
+        ProfileRing r = getRing();
+        int tk = r.nextToken();
+        r.add(TIMER_START, tk, TID_PROFILER, getTimer(profileFlush), start);
+        r.add(TIMER_STOP, tk, (byte) 0, 0, end);
+    }
 }
@@ -0,0 +1,323 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+/**
+ * The thread that takes timing records out of Profile's rings, and sends
+ * them in batches, either as UDP datagrams to the PC profiler, or to a
+ * stream, like a file the PC profiler can read later.  Each batch is
+ * the byte Profile.BATCH followed by entries, each starting with one of
+ * these kinds:
+ * <pre>
+ *     TIMER_NAME   int timer, byte length, UTF-8 name
+ *     TIMER_START  int token, byte threadID, int timer, long time
+ *     TIMER_STOP   int token, long time
+ *     MESSAGE      long time, short length, message
+ *     OVERHEAD     int ns per profile call, int records sent,
+ *                  int records dropped, int flushes, long ns flushing
+ * </pre>
+ * Numbers are big-endian, and times are in ns.  On a stream, each batch
+ * is preceded by its length, as a two-byte number.
+ * <p>
+ * A timer's name is sent before the first record that uses it.  Over
+ * UDP, packets can be lost, so the names are sent again every
+ * NAME_REPEAT batches.
+ *
+ * @see Profile
+ **/
+class ProfileFlusher extends Thread {
+
+    final static int DATAGRAM_SIZE = 1400;      // Fits in an ethernet frame
+    final static int STREAM_BATCH_SIZE = 8192;
+    final static int INTERVAL = 50;             // ms between flushes
+    final static int NAME_REPEAT = 64;
+
+    private DatagramSocket socket;
+    private DatagramPacket packet;
+    private OutputStream out;
+    private byte[] buf;
+    private int len;
+    private byte[] messageBuf = new byte[64];
+    private boolean[] named = new boolean[16];
+    private int batches = 0;
+    private boolean stopped = false;
+
+    int callNanos;              // Set by Profile before we're started
+    int droppedBefore;          // Ditto, dropped in earlier runs
+    private int records = 0;
+    private int flushes = 0;
+    private long flushNanos = 0;
+
+    ProfileFlusher(DatagramSocket socket, DatagramPacket packet) {
+        this(DATAGRAM_SIZE);
+        this.socket = socket;
+        this.packet = packet;
+    }
+
+    ProfileFlusher(OutputStream out) {
+        this(STREAM_BATCH_SIZE);
+        this.out = out;
+    }
+
+    private ProfileFlusher(int batchSize) {
+        super("GRIN profile flusher");
+        setDaemon(true);
+        buf = new byte[batchSize];
+        buf[0] = Profile.BATCH;
+        len = 1;
+    }
+
+    //
+    // Stop the thread, after it's done one last flush.
+    //
+    synchronized void shutdown() {
+        stopped = true;
+        notifyAll();
+    }
+
+    public void run() {
+        for (;;) {
+            boolean last;
+            synchronized(this) {
+                if (!stopped) {
+                    try {
+                        wait(INTERVAL);
+                    } catch (InterruptedException ex) {
+                        stopped = true;
+                    }
+                }
+                last = stopped;
+            }
+            long start = Profile.nanoTime();
+            int n = flush();
+            if (n > 0) {
+                long end = Profile.nanoTime();
+                flushes++;
+                flushNanos += end - start;
+                Profile.recordFlush(start, end);
+                    // That lands in our own ring, so it goes out with
+                    // the next flush.
+            }
+            if (last) {
+                close();
+                return;
+            }
+        }
+    }
+
+    //
+    // Send everything that's in the rings, and return the number of
+    // records sent.
+    //
+    private int flush() {
+        int n = 0;
+        for (ProfileRing r = Profile.getRings(); r != null; r = r.next) {
+            int h = r.head;
+            int t = r.tail;
+            while (h != t) {
+                addRecord(r, h & ProfileRing.MASK);
+                h++;
+                n++;
+            }
+            r.head = h;
+        }
+        Profile.removeIdleRings();
+        if (n > 0) {
+            records += n;
+            reserve(25);
+            buf[len++] = Profile.OVERHEAD;
+            putInt(callNanos);
+            putInt(records);
+            putInt(Profile.getRecordsDropped() - droppedBefore);
+            putInt(flushes);
+            putLong(flushNanos);
+            sendBatch();
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException ex) {
+                    Debug.printStackTrace(ex);
+                }
+            }
+        }
+        return n;
+    }
+
+    private void addRecord(ProfileRing r, int i) {
+        byte kind = r.kinds[i];
+        if (kind == Profile.TIMER_START) {
+            int timer = r.timers[i];
+            if (timer >= named.length || !named[timer]) {
+                addName(timer);
+            }
+            reserve(18);
+            buf[len++] = kind;
+            putInt(r.tokens[i]);
+            buf[len++] = r.threadIDs[i];
+            putInt(timer);
+        } else {
+            reserve(13);
+            buf[len++] = kind;
+            putInt(r.tokens[i]);
+        }
+        putLong(r.times[i]);
+    }
+
+    private void addName(int timer) {
+        if (timer >= named.length) {
+            boolean[] a = new boolean[Math.max(timer + 1, named.length * 2)];
+            System.arraycopy(named, 0, a, 0, named.length);
+            named = a;
+        }
+        byte[] name = Profile.getTimerName(timer);
+        int n = Math.min(name.length - 6, 255);
+        reserve(6 + n);
+        buf[len++] = Profile.TIMER_NAME;
+        putInt(timer);
+        buf[len++] = (byte) n;
+        System.arraycopy(name, 6, buf, len, n);
+        len += n;
+        named[timer] = true;
+    }
+
+    //
+    // Make room for an entry of n bytes, by sending the batch if needed.
+    //
+    private void reserve(int n) {
+        if (len + n > buf.length) {
+            sendBatch();
+        }
+    }
+
+    private void putInt(int v) {
+        buf[len++] = (byte) (v >> 24);
+        buf[len++] = (byte) (v >> 16);
+        buf[len++] = (byte) (v >> 8);
+        buf[len++] = (byte) v;
+    }
+
+    private void putLong(long v) {
+        putInt((int) (v >> 32));
+        putInt((int) v);
+    }
+
+    private void sendBatch() {
+        if (len > 1) {
+            send(buf, len);
+            len = 1;
+            batches++;
+            if (socket != null && batches % NAME_REPEAT == 0) {
+                for (int i = 0; i < named.length; i++) {
+                    named[i] = false;
+                }
+            }
+        }
+    }
+
+    //
+    // Send a debug message right away.  Messages are rare, and the caller
+    // can change buf as soon as we return, so there's no point in
+    // putting them in a ring.
+    //
+    synchronized void sendMessage(byte[] msg, long time) {
+        int n = msg.length - 1;
+        if (messageBuf.length < n + 12) {
+            messageBuf = new byte[n + 12];
+        }
+        byte[] b = messageBuf;
+        b[0] = Profile.BATCH;
+        b[1] = Profile.MESSAGE;
+        for (int i = 0; i < 8; i++) {
+            b[2 + i] = (byte) (time >> (56 - 8 * i));
+        }
+        b[10] = (byte) (n >> 8);
+        b[11] = (byte) n;
+        System.arraycopy(msg, 1, b, 12, n);
+        send(b, n + 12);
+    }
+
+    private synchronized void send(byte[] b, int n) {
+        try {
+            if (socket != null) {
+                packet.setData(b, 0, n);
+                socket.send(packet);
+            } else {
+                out.write(n >> 8);
+                out.write(n);
+                out.write(b, 0, n);
+            }
+        } catch (IOException ex) {
+            Debug.printStackTrace(ex);
+        }
+    }
+
+    private synchronized void close() {
+        if (socket != null) {
+            socket.close();
+        } else {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                Debug.printStackTrace(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+/**
+ * A ring of fixed-size timing records made by one thread, for Profile.
+ * Only the thread that owns a ring adds to it, and only the
+ * ProfileFlusher thread takes from it, so neither needs a lock:  The
+ * owner fills in a record and then advances tail, and the flusher
+ * copies records out and then advances head.  When the ring is full,
+ * new records are dropped and counted, so the owner never waits.
+ *
+ * @see Profile
+ **/
+class ProfileRing {
+
+    final static int SIZE = 1024;       // Must be a power of two
+    final static int MASK = SIZE - 1;
+
+    final byte[] kinds = new byte[SIZE];
+    final byte[] threadIDs = new byte[SIZE];
+    final int[] tokens = new int[SIZE];
+    final int[] timers = new int[SIZE];
+    final long[] times = new long[SIZE];
+
+    final Thread owner;
+    final int tokenBase;        // Ring number, in the top byte
+    int tokenCount;             // Only touched by owner
+    int dropped;                // Only written by owner
+    volatile int head = 0;      // Next record to take; written by flusher
+    volatile int tail = 0;      // Next record to fill; written by owner
+    ProfileRing next;           // In Profile's list of rings
+
+    ProfileRing(Thread owner, int tokenBase, int tokenStart) {
+        this.owner = owner;
+        this.tokenBase = tokenBase;
+        this.tokenCount = tokenStart;
+    }
+
+    //
+    // Called by the owner to give the token for a new timer
+    //
+    int nextToken() {
+        return tokenBase | (tokenCount++ & 0xffffff);
+    }
+
+    //
+    // Called by the owner to add a record.  For a timer stop, threadID
+    // and timer are ignored.
+    //
+    void add(byte kind, int token, byte threadID, int timer, long time) {
+        int t = tail;
+        if (t - head >= SIZE) {
+            dropped++;
+            return;
+        }
+        int i = t & MASK;
+        kinds[i] = kind;
+        tokens[i] = token;
+        threadIDs[i] = threadID;
+        timers[i] = timer;
+        times[i] = time;
+        tail = t + 1;
+    }
+}
@@ -0,0 +1,277 @@
+
+/*  
+ * Copyright (c) 2007, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+
+package com.hdcookbook.grin.util;
+
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MemoryImageSource;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Support for GRIN raw images.  A raw image holds pixels that are
+ * already decoded, so that loading it doesn't need a PNG decoder.  This
+ * can make loading images much faster on a player, at the cost of a
+ * bigger file.  The GRIN compiler can write mosaics as raw images;
+ * AssetFinder.loadImage() recognizes them by their file extension.
+ * <p>
+ * A raw image file has a tiny header, followed by the pixels:
+ * <pre>
+ *     int      MAGIC
+ *     byte     VERSION
+ *     byte     format          FORMAT_ARGB or FORMAT_INDEXED
+ *     byte     compression     COMPRESSION_NONE or COMPRESSION_RLE
+ *     byte     0
+ *     int      width
+ *     int      height
+ *     int      palette size    0 for FORMAT_ARGB
+ *     int[]    palette         ARGB colors
+ *     int      data length     in bytes
+ *     byte[]   data
+ * </pre>
+ * The pixels are in rows from top to bottom.  For FORMAT_ARGB, each pixel
+ * is an int in the default RGB color model (not premultiplied); for
+ * FORMAT_INDEXED, each pixel is a byte index into the palette.  With
+ * COMPRESSION_RLE, the pixels are run-length encoded:  A signed control
+ * byte n from 0 to 127 is followed by n+1 pixels, and a control byte
+ * n from -1 to -127 is followed by one pixel that's repeated 1-n times.
+ *
+ *   @see AssetFinder#loadImage(String)
+ **/
+public class RawImage {
+
+    /**
+     * The file extension of a raw image.
+     **/
+    public final static String EXTENSION = ".grinimg";
+
+    public final static int MAGIC = 0x4752494d;         // "GRIM"
+    public final static int VERSION = 1;
+
+    public final static int FORMAT_ARGB = 0;
+    public final static int FORMAT_INDEXED = 1;
+
+    public final static int COMPRESSION_NONE = 0;
+    public final static int COMPRESSION_RLE = 1;
+
+    private RawImage() {
+    }
+
+    /**
+     * Read a raw image, and make an Image of it.  The pixels are decoded
+     * here, so the image is ready as soon as the toolkit has made it.
+     *
+     * @throws IOException if the image can't be read, or it isn't a 
+     *                     valid raw image
+     **/
+    public static Image read(URL url) throws IOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                        new BufferedInputStream(url.openStream()));
+            return read(in);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    private static Image read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a raw image");
+        }
+        int version = in.readUnsignedByte();
+        int format = in.readUnsignedByte();
+        int compression = in.readUnsignedByte();
+        in.readUnsignedByte();
+        if (version != VERSION 
+            || (format != FORMAT_ARGB && format != FORMAT_INDEXED)
+            || (compression != COMPRESSION_NONE 
+                && compression != COMPRESSION_RLE)) 
+        {
+            throw new IOException("Unsupported raw image");
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        int paletteSize = in.readInt();
+        if (width < 0 || height < 0 || paletteSize < 0 || paletteSize > 256) {
+            throw new IOException("Bad raw image header");
+        }
+        int[] palette = new int[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = in.readInt();
+        }
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        int numPixels = width * height;
+
+        MemoryImageSource source;
+        if (format == FORMAT_ARGB) {
+            int[] pixels = new int[numPixels];
+            if (compression == COMPRESSION_NONE) {
+                if (data.length != numPixels * 4) {
+                    throw new IOException("Bad raw image data");
+                }
+                for (int i = 0, j = 0; i < numPixels; i++, j += 4) {
+                    pixels[i] = (data[j] << 24) 
+                                | ((data[j+1] & 0xff) << 16)
+                                | ((data[j+2] & 0xff) << 8)
+                                | (data[j+3] & 0xff);
+                }
+            } else {
+                decodeRLE(data, pixels);
+            }
+            source = new MemoryImageSource(width, height, 
+                                           ColorModel.getRGBdefault(),
+                                           pixels, 0, width);
+        } else {
+            byte[] pixels;
+            if (compression == COMPRESSION_NONE) {
+                if (data.length != numPixels) {
+                    throw new IOException("Bad raw image data");
+                }
+                pixels = data;
+            } else {
+                pixels = new byte[numPixels];
+                decodeRLE(data, pixels);
+            }
+            byte[] r = new byte[paletteSize];
+            byte[] g = new byte[paletteSize];
+            byte[] b = new byte[paletteSize];
+            byte[] a = new byte[paletteSize];
+            for (int i = 0; i < paletteSize; i++) {
+                a[i] = (byte) (palette[i] >> 24);
+                r[i] = (byte) (palette[i] >> 16);
+                g[i] = (byte) (palette[i] >> 8);
+                b[i] = (byte) palette[i];
+            }
+            ColorModel cm = new IndexColorModel(8, paletteSize, r, g, b, a);
+            source = new MemoryImageSource(width, height, cm, pixels, 0, width);
+        }
+        return Toolkit.getDefaultToolkit().createImage(source);
+    }
+
+    //
+    // Decode run-length encoded int pixels
+    //
+    private static void decodeRLE(byte[] data, int[] pixels) 
+            throws IOException
+    {
+        int pos = 0;
+        int out = 0;
+        try {
+            while (out < pixels.length) {
+                int n = data[pos++];
+                if (n >= 0) {
+                    for (n++; n > 0; n--) {
+                        pixels[out++] = (data[pos] << 24) 
+                                        | ((data[pos+1] & 0xff) << 16)
+                                        | ((data[pos+2] & 0xff) << 8)
+                                        | (data[pos+3] & 0xff);
+                        pos += 4;
+                    }
+                } else {
+                    int p = (data[pos] << 24) 
+                            | ((data[pos+1] & 0xff) << 16)
+                            | ((data[pos+2] & 0xff) << 8)
+                            | (data[pos+3] & 0xff);
+                    pos += 4;
+                    for (n = 1 - n; n > 0; n--) {
+                        pixels[out++] = p;
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Bad raw image data");
+        }
+    }
+
+    //
+    // Decode run-length encoded byte pixels
+    //
+    private static void decodeRLE(byte[] data, byte[] pixels) 
+            throws IOException
+    {
+        int pos = 0;
+        int out = 0;
+        try {
+            while (out < pixels.length) {
+                int n = data[pos++];
+                if (n >= 0) {
+                    n++;
+                    System.arraycopy(data, pos, pixels, out, n);
+                    pos += n;
+                    out += n;
+                } else {
+                    byte p = data[pos++];
+                    for (n = 1 - n; n > 0; n--) {
+                        pixels[out++] = p;
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Bad raw image data");
+                // Also thrown by System.arraycopy()
+        }
+    }
+}
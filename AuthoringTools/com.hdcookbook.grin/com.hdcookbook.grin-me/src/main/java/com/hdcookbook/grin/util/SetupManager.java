@@ -52,13 +52,9 @@
  *             A copy of the license(s) governing this code is located
  *             at https://hdcookbook.dev.java.net/misc/license.html
  */
-
-
 package com.hdcookbook.grin.util;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
 
 /**
  * A SetupManager manages a low-priority thread that's used to set up
@@ -67,19 +63,64 @@ import java.util.Iterator;
  * other features (that are already set up) animate or are otherwise
  * active.
  * <p>
- * At present, all setup work is serialized into one thread, but a
- * future extension might allow for concurrent execution of setup
- * activity (e.g. for a dual-core system or suchlike).
+ * Clients are set up in order of priority, and in the order they were
+ * scheduled within a priority.  Features that are needed by the segment
+ * being shown come first, then features in a segment's setup clause,
+ * then features that are only being prefetched.  A client that's
+ * unsetup before its setup work started is taken off the queue.
+ * <p>
+ * By default, all setup work is serialized into one thread, which is
+ * shared by all of the SetupManager instances that are running.  On a
+ * desktop, more threads can be used by calling setMaxWorkers().
  *
  *   @author     Bill Foote (http://jovial.com)
  **/
 public class SetupManager implements Runnable {
 
-    private SetupClient[] settingUp;
-    int first;       // index into setting up.  Wraps.
-    int lastPlusOne; // index into setting up.  Wraps.
+    /**
+     * The priority of setup work for features that are in the active
+     * clause of the segment that's being shown.
+     **/
+    public final static int PRIORITY_VISIBLE = 0;
+
+    /**
+     * The priority of setup work for features that are in the setup
+     * clause of a segment, and are therefore likely to be needed next.
+     **/
+    public final static int PRIORITY_NEXT = 1;
+
+    /**
+     * The priority of setup work for features that are set up 
+     * speculatively, before any segment needs them.
+     **/
+    public final static int PRIORITY_PREFETCH = 2;
+
+    //
+    // The clients waiting to be set up, in the order they were scheduled.
+    // Each client is either waiting here, or it's in busy because a
+    // worker thread is setting it up, or it's in neither.
+    //
+    private SetupClient[] queue;
+    private int[] queuePriority;
+    private long[] queueTime;   // When the client was first scheduled
+    private int queueSize;
+
+    private SetupClient[] busy; // Clients being set up by a worker.
+    private int[] busyPriority; // These grow if there are more workers
+    private long[] busyTime;    // than there were when we were made.
+
+    private int currentPriority = PRIORITY_VISIBLE;
+
+    private int maxQueueDepth;
+    private int numCompleted;
+    private int numCancelled;
+    private long totalLatency;
+    private long maxLatency;
+
     private static Object monitor = new Object();
     private static SetupManager worker = null;
+    private static int maxWorkers = 1;
+    private int numThreads;     // Only used in the worker
     private ArrayList managers;
         // ArrayList<SetupManager>, contains all running managers managed
         // by a given thread.  This is null for most SetupManager instances,
@@ -104,9 +145,13 @@ public class SetupManager implements Runnable {
      **/
     public SetupManager(int numFeatures) {
         managers = null;
-        settingUp = new SetupClient[numFeatures + 1];
-        first = 0;
-        lastPlusOne = 0;
+        queue = new SetupClient[numFeatures];
+        queuePriority = new int[numFeatures];
+        queueTime = new long[numFeatures];
+        queueSize = 0;
+        busy = new SetupClient[maxWorkers];
+        busyPriority = new int[maxWorkers];
+        busyTime = new long[maxWorkers];
     }
 
     //
@@ -125,6 +170,30 @@ public class SetupManager implements Runnable {
             // be 1 or 2, and should never be large.
     }
 
+    /**
+     * Set the maximum number of worker threads that do setup work for
+     * all SetupManager instances.  The default is one, which is best for
+     * a player, where setup work is mostly bound by disc I/O.  On a
+     * desktop, e.g. in GrinView, more threads let large images decode
+     * concurrently.  This can be called at any time.  If managers are
+     * running, threads are started, or they exit when they finish the
+     * setup work they're doing.
+     *
+     * @param n The number of threads, which must be at least one.
+     **/
+    public static void setMaxWorkers(int n) {
+        synchronized(monitor) {
+            if (Debug.ASSERT && n < 1) {
+                Debug.assertFail();
+            }
+            maxWorkers = n;
+            if (worker != null && worker.managers.size() > 0) {
+                worker.startThreads();
+            }
+            monitor.notifyAll();
+        }
+    }
+
     /**
      * Start providing service from this SetupManager.  This must be
      * balanced by a call to stop().
@@ -135,20 +204,35 @@ public class SetupManager implements Runnable {
         synchronized(monitor) {
             if (worker == null) {
                 worker = new SetupManager();
-                Thread t = new Thread(worker, "SetupManager");
-                t.setDaemon(true);
-                t.setPriority(3);
-                t.start();
             }
             if (Debug.ASSERT && worker.managers.indexOf(this) != -1) {
                 // Called start() twice on the same SetupManager
                 Debug.assertFail();
             }
             worker.managers.add(this);
+            worker.startThreads();
             monitor.notifyAll();
         }
     }
 
+    //
+    // Start worker threads, up to maxWorkers.  This is only called on 
+    // the worker, with the monitor held.
+    //
+    private void startThreads() {
+        while (numThreads < maxWorkers) {
+            numThreads++;
+            String name = "SetupManager";
+            if (numThreads > 1) {
+                name = name + " " + numThreads;
+            }
+            Thread t = new Thread(this, name);
+            t.setDaemon(true);
+            t.setPriority(3);
+            t.start();
+        }
+    }
+
     /**
      * Stop providing service from this SetupManager.  Once stopped, a
      * manager cannot be re-started.
@@ -172,80 +256,267 @@ public class SetupManager implements Runnable {
         }
     }
 
+    /**
+     * Set the priority that's given to clients that are scheduled by
+     * scheduleSetup(SetupClient).  A segment sets this when it sets
+     * up its features, so that the features that need to be shown first
+     * are set up first.
+     *
+     * @param priority  One of the PRIORITY_ constants.
+     * @return the old priority, so that it can be restored.
+     **/
+    public int setCurrentPriority(int priority) {
+        synchronized(monitor) {
+            int old = currentPriority;
+            currentPriority = priority;
+            return old;
+        }
+    }
+
+    /**
+     * Schedule setup work for the given client, with the priority
+     * set by setCurrentPriority().
+     *
+     * @see #setCurrentPriority(int)
+     **/
     public void scheduleSetup(SetupClient f) {
         synchronized(monitor) {
-            int nextLastPlusOne = next(lastPlusOne);
-            if (first == nextLastPlusOne) {
-                //
-                // This is a little complicated to explain...  settingUp
-                // is intentionally one bigger than the maximum number of
-                // clients we can possibly have.  However, there's an
-                // outside possibility that a feature might call scheduleSetup()
-                // a second time, before the first setup is done -- this might
-                // happen if the feature goes out of setting up state, and
-                // back into it, before it gets a chance to set up.
-                //
-                // Normally, this is harmless - there would just be two
-                // entries on settingUp, and the thread would get to them
-                // in order.  The contract of SetupClient says to just
-                // return if no setup is required, so the second time it's
-                // called would be a NOP.  However, it's just
-                // possible that the duplicate entries on settingUp might
-                // cause us to fill up the array.
-                //
-                // In this rare case, we need to purge the array of
-                // duplicates.  Since it's rare, we go ahead and
-                // create heap traffic by using a HashSet.
-                HashSet set = new HashSet();
-                for (int i = first; i != lastPlusOne; i = next(i)) {
-                    set.add(settingUp[i]);
-                }
-                set.add(f);
-                if (Debug.ASSERT && set.size() >= settingUp.length) {
-                    // If this happens, settingUp is too small, but it
-                    // can't be, because it's one bigger than the total
-                    // number of features.
-                    Debug.assertFail();
-                }
-                first = 0;
-                lastPlusOne = 0;
-                for (Iterator it = set.iterator(); it.hasNext(); ) {
-                    settingUp[lastPlusOne] = (SetupClient) it.next();
-                    lastPlusOne++;
+            scheduleSetup(f, currentPriority);
+        }
+    }
+
+    /**
+     * Schedule setup work for the given client.  If it's already
+     * scheduled, it keeps its place, but it's given the higher of
+     * the two priorities.
+     *
+     * @param priority  One of the PRIORITY_ constants.
+     **/
+    public void scheduleSetup(SetupClient f, int priority) {
+        synchronized(monitor) {
+            //
+            // A feature might call scheduleSetup() a second time before
+            // the first setup is done -- this might happen if the feature
+            // goes out of setting up state, and back into it, before it
+            // gets a chance to set up.  If a worker is setting it up now,
+            // the worker will put it back on the queue if it still needs
+            // setup when it's done.
+            //
+            for (int i = 0; i < busy.length; i++) {
+                if (busy[i] == f) {
+                    if (priority < busyPriority[i]) {
+                        busyPriority[i] = priority;
+                    }
+                    return;
                 }
-                for (int i = lastPlusOne; i < settingUp.length; i++) {
-                    settingUp[i] = null;
+            }
+            int i = indexOf(f);
+            if (i >= 0) {
+                if (priority < queuePriority[i]) {
+                    queuePriority[i] = priority;
                 }
-            } else {
-                // Otherwise, we've got room in settingUp, so we just
-                // append
-                settingUp[lastPlusOne] = f;
-                lastPlusOne = nextLastPlusOne;
+                return;
             }
+            append(f, priority, System.currentTimeMillis());
             monitor.notifyAll();
         }
     }
 
-    private int next(int i) {
-        i++;
-        if (i >= settingUp.length) {
-            return 0;
-        } else {
-            return i;
+    /**
+     * Cancel the setup of a client that no longer needs it, if the 
+     * setup work hasn't started yet.  This is called when a feature is
+     * unsetup.  If a worker is already setting up the client, the
+     * SetupClient contract covers it:  The client finds that it no longer
+     * needs setup.
+     **/
+    public void cancelSetup(SetupClient f) {
+        synchronized(monitor) {
+            int i = indexOf(f);
+            if (i >= 0) {
+                remove(i);
+                numCancelled++;
+            }
         }
     }
 
-    private boolean hasWork() {
-        return first != lastPlusOne;
+    /**
+     * Tell a client that's being set up whether it should stop its work
+     * early, because more urgent work was scheduled.  A client that does
+     * a lot of work in doSomeSetup(), like an image sequence with lots
+     * of images, can call this between units of work.  If it returns true,
+     * the client should return from doSomeSetup() while still needing
+     * more setup; it will be called again after the more urgent work is
+     * done.
+     **/
+    public boolean shouldYield(SetupClient f) {
+        synchronized(monitor) {
+            for (int i = 0; i < busy.length; i++) {
+                if (busy[i] == f) {
+                    int p = busyPriority[i];
+                    for (int j = 0; j < queueSize; j++) {
+                        if (queuePriority[j] < p) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            }
+            return false;
+        }
     }
-    
-    private void doWork() {
-        SetupClient work;
+
+    /**
+     * Get the number of clients that are waiting to be set up.
+     **/
+    public int getQueueDepth() {
         synchronized(monitor) {
-            if (!hasWork()) {
-                return;
+            return queueSize;
+        }
+    }
+
+    /**
+     * Get the largest number of clients that have been waiting to be
+     * set up at one time.
+     **/
+    public int getMaxQueueDepth() {
+        synchronized(monitor) {
+            return maxQueueDepth;
+        }
+    }
+
+    /**
+     * Get the number of clients that finished their setup.
+     **/
+    public int getNumCompleted() {
+        synchronized(monitor) {
+            return numCompleted;
+        }
+    }
+
+    /**
+     * Get the number of clients whose setup was cancelled before
+     * it started.
+     **/
+    public int getNumCancelled() {
+        synchronized(monitor) {
+            return numCancelled;
+        }
+    }
+
+    /**
+     * Get the average time from when a client was scheduled until its
+     * setup was complete, in milliseconds.
+     **/
+    public long getAverageLatency() {
+        synchronized(monitor) {
+            if (numCompleted == 0) {
+                return 0;
             }
-            work = settingUp[first];
+            return totalLatency / numCompleted;
+        }
+    }
+
+    /**
+     * Get the longest time from when a client was scheduled until its
+     * setup was complete, in milliseconds.
+     **/
+    public long getMaxLatency() {
+        synchronized(monitor) {
+            return maxLatency;
+        }
+    }
+
+    //
+    // The following methods must be called with the monitor held.
+    //
+
+    private int indexOf(SetupClient f) {
+        for (int i = 0; i < queueSize; i++) {
+            if (queue[i] == f) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void append(SetupClient f, int priority, long time) {
+        if (queueSize >= queue.length) {
+            // This can't happen, because each client is on the queue
+            // at most once, and the queue is as big as the number of
+            // clients.
+            if (Debug.ASSERT) {
+                Debug.assertFail();
+            }
+            return;
+        }
+        queue[queueSize] = f;
+        queuePriority[queueSize] = priority;
+        queueTime[queueSize] = time;
+        queueSize++;
+        if (queueSize > maxQueueDepth) {
+            maxQueueDepth = queueSize;
+        }
+    }
+
+    private void remove(int i) {
+        int n = queueSize - i - 1;
+        if (n > 0) {
+            System.arraycopy(queue, i+1, queue, i, n);
+            System.arraycopy(queuePriority, i+1, queuePriority, i, n);
+            System.arraycopy(queueTime, i+1, queueTime, i, n);
+        }
+        queueSize--;
+        queue[queueSize] = null;
+    }
+
+    //
+    // Find the next client to set up:  The first one with the most
+    // urgent priority.  Returns -1 if there's none.
+    //
+    private int nextIndex() {
+        int result = -1;
+        for (int i = 0; i < queueSize; i++) {
+            if (result == -1 || queuePriority[i] < queuePriority[result]) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    //
+    // Take the client at index i off the queue, and mark it as being
+    // set up by a worker.  Returns the slot in busy.  If every slot
+    // is taken, maxWorkers was raised after we were made, so the
+    // busy arrays grow.
+    //
+    private int take(int i) {
+        int b = 0;
+        while (b < busy.length && busy[b] != null) {
+            b++;
+        }
+        if (b == busy.length) {
+            int n = Math.max(busy.length + 1, maxWorkers);
+            SetupClient[] newBusy = new SetupClient[n];
+            int[] newPriority = new int[n];
+            long[] newTime = new long[n];
+            System.arraycopy(busy, 0, newBusy, 0, b);
+            System.arraycopy(busyPriority, 0, newPriority, 0, b);
+            System.arraycopy(busyTime, 0, newTime, 0, b);
+            busy = newBusy;
+            busyPriority = newPriority;
+            busyTime = newTime;
+        }
+        busy[b] = queue[i];
+        busyPriority[b] = queuePriority[i];
+        busyTime[b] = queueTime[i];
+        remove(i);
+        return b;
+    }
+
+    private void doWork(int slot) {
+        SetupClient work;
+        synchronized(monitor) {
+            work = busy[slot];
         }
         if (work.needsMoreSetup()) {
             int tok;
@@ -257,66 +528,93 @@ public class SetupManager implements Runnable {
                 Profile.stopTimer(tok);
             }
             // The check of needsMoreSetup() above isn't strictly necessary,
-            // but it is possible that it's false (due to the settingUp
-            // array being purged of duplicates).  That's admittedly rare,
-            // but calling doSomeSetup() unnecessarily reduces the value
-            // of an optimization in Show.  It's also counter-intuitive
+            // but it is possible that it's false (because the client
+            // was unsetup after it was taken off the queue).  Calling
+            // doSomeSetup() unnecessarily reduces the value of an 
+            // optimization in Show.  It's also counter-intuitive
             // that doSomeSetup() could be called even if needsMoreSetup()
             // returns false, so doing the test makes it so that can't
             // happen (unless, of course, another thread changes the
             // state of the feature in the intervening time...  but
             // that _is_ something a developer should expect to need
             // to cope with).
-        }
-        synchronized(monitor) {
-            if (hasWork() && !settingUp[first].needsMoreSetup()) {
-                // There's a slight chance that settingUp changed out from
-                // under us, but even if it did, this logic is safe.  At
-                // worst, the client we just set up is somewhere else in
-                // settingUp, and will therefore be quickly eliminated when
-                // we get to it in the future.
-                settingUp[first] = null;
-                first = next(first);
+            synchronized(monitor) {
+                busy[slot] = null;
+                if (work.needsMoreSetup()) {
+                    // It yielded, or it was unsetup and set up again
+                    // while we were working on it.
+                    append(work, busyPriority[slot], busyTime[slot]);
+                    monitor.notifyAll();
+                } else {
+                    long latency = System.currentTimeMillis() 
+                                        - busyTime[slot];
+                    numCompleted++;
+                    totalLatency += latency;
+                    if (latency > maxLatency) {
+                        maxLatency = latency;
+                    }
+                }
+            }
+        } else {
+            synchronized(monitor) {
+                busy[slot] = null;
+                if (work.needsMoreSetup()) {
+                    // It was set up again after we checked
+                    append(work, busyPriority[slot], busyTime[slot]);
+                    monitor.notifyAll();
+                }
             }
         }
     }
 
     /**
-     * This isn't really public; it's only called by our worker thread.
+     * This isn't really public; it's only called by our worker threads.
      **/
     public void run() {
         if (Debug.LEVEL > 0) {
             Debug.println("Setup thread starts.");
         }
-        SetupManager found = null;
         for (;;) {
+            SetupManager found = null;
+            int slot = -1;
             synchronized(monitor) {
-                if (managers.size() == 0) {
-                    if (Debug.ASSERT && worker != this) {
-                        Debug.assertFail();
+                if (managers.size() == 0 || numThreads > maxWorkers) {
+                    numThreads--;
+                    if (numThreads == 0) {
+                        if (Debug.ASSERT && worker != this) {
+                            Debug.assertFail();
+                        }
+                        worker = null;
                     }
-                    worker = null;
                     break;      // exits thread
                 }
-                if (found != null && !found.hasWork()) {
-                    found = null;
-                }
-                for (int i = 0; found == null && i < managers.size(); i++)  {
+                int index = -1;
+                for (int i = 0; i < managers.size(); i++)  {
                     SetupManager m = (SetupManager) managers.get(i);
-                    if (m.hasWork()) {
+                    int mi = m.nextIndex();
+                    if (mi != -1 && (found == null 
+                           || m.queuePriority[mi] < found.queuePriority[index]))
+                    {
                         found = m;
+                        index = mi;
                     }
                 }
                 if (found == null) {
                     try {
                         monitor.wait();
                     } catch (InterruptedException ex) {
+                        numThreads--;
+                        if (numThreads == 0) {
+                            worker = null;
+                        }
                         break;          // bail out of thread
                     }
+                } else {
+                    slot = found.take(index);
                 }
             }
             if (found != null) {
-                found.doWork();
+                found.doWork(slot);
             }
         }
         if (Debug.LEVEL > 0) {
@@ -324,5 +622,3 @@ public class SetupManager implements Runnable {
         }
     }
 }
-
-
@@ -0,0 +1,73 @@
+package com.hdcookbook.grin.animator;
+
+/**
+ * This file has a stand-alone test that checks that an animation
+ * engine's frame metrics count the frames, draw targets and pixels it
+ * painted, and the frames it dropped or skipped, and that counting them
+ * doesn't allocate anything.  It drives FramePoolTest's engine one frame
+ * at a time.  The times are only checked to be non-negative, since with
+ * the default clock they're whole milliseconds.  Failure is indicated
+ * by a RuntimeException.
+ **/
+
+public class FrameMetricsTest {
+
+    private final static int WIDTH = FramePoolTest.WIDTH;
+    private final static int HEIGHT = FramePoolTest.HEIGHT;
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    public void testCounts() throws Exception {
+        FramePoolTest.TestEngine engine = new FramePoolTest.TestEngine();
+        engine.initClients(new AnimationClient[] {
+            new FramePoolTest.TestClient("T1"), 
+            new FramePoolTest.TestClient("T2")
+        });
+        engine.frame();
+        FrameMetrics before = new FrameMetrics();
+        FrameMetrics after = new FrameMetrics();
+        FrameMetrics diff = new FrameMetrics();
+        engine.getFrameMetrics(before);
+        check(before.framesPainted == 1, 
+              "Painted " + before.framesPainted + " frames");
+        for (int i = 0; i < 30; i++) {
+            engine.frame();
+            engine.getFrameMetrics(after);
+            check(after.lastDrawTargets > 0 
+                  && after.lastDrawTargets <= after.lastPixelsPainted,
+                  "Frame " + i + " had " + after.lastDrawTargets 
+                  + " targets with " + after.lastPixelsPainted + " pixels");
+            check(after.lastPixelsPainted <= WIDTH * HEIGHT,
+                  "Frame " + i + " painted " + after.lastPixelsPainted 
+                  + " pixels");
+        }
+        FramePoolTest.AllocationMeter meter 
+                = FramePoolTest.AllocationMeter.make();
+        long start = meter == null ? 0 : meter.getBytes();
+        engine.unshownFrame(true);
+        engine.unshownFrame(false);
+        engine.unshownFrame(false);
+        engine.getFrameMetrics(after);
+        if (meter != null) {
+            long bytes = meter.since(start);
+            check(bytes < 16, "Metrics allocated " + bytes + " bytes");
+        }
+        diff.setDifference(after, before);
+        check(diff.framesPainted == 30, 
+              "Painted " + diff.framesPainted + " frames");
+        check(diff.framesSkipped == 1, 
+              "Skipped " + diff.framesSkipped + " frames");
+        check(diff.framesDropped == 2, 
+              "Dropped " + diff.framesDropped + " frames");
+        check(diff.drawTargets >= 30 && diff.pixelsPainted >= 30 * 20 * 20,
+              "Painted " + diff.pixelsPainted + " pixels in " 
+              + diff.drawTargets + " targets");
+        check(diff.modelNanos >= 0 && diff.paintNanos >= 0
+              && diff.displayAreasNanos >= 0 && diff.finishedFrameNanos >= 0,
+              "Negative time in " + diff);
+    }
+}
@@ -0,0 +1,277 @@
+package com.hdcookbook.grin.animator;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Method;
+import java.util.Hashtable;
+
+/**
+ * This file has a stand-alone test that checks that the animation
+ * framework doesn't allocate anything in steady-state animation, and
+ * that resetting the clients re-uses its pooled objects.  It drives a
+ * ClockBasedEngine one frame at a time.  Allocation is measured with the
+ * HotSpot com.sun.management.ThreadMXBean, found by reflection since this 
+ * code is compiled against PBP; on a VM without it, the allocation
+ * checks are skipped.  The engine, client and meter are also used by
+ * FrameMetricsTest.  Failure is indicated by a RuntimeException.
+ **/
+
+public class FramePoolTest {
+
+    final static int WIDTH = 320;
+    final static int HEIGHT = 240;
+
+    //
+    // Measures the bytes allocated by the current thread
+    //
+    static class AllocationMeter {
+
+        private Object bean;
+        private Method getBytes;
+        private Object[] args;
+        private long overhead;
+
+        AllocationMeter() throws Exception {
+            Class mf = Class.forName("java.lang.management.ManagementFactory");
+            bean = mf.getMethod("getThreadMXBean", new Class[0])
+                     .invoke(null, new Object[0]);
+            Class tb = Class.forName("com.sun.management.ThreadMXBean");
+            getBytes = tb.getMethod("getThreadAllocatedBytes", 
+                                    new Class[] { Long.TYPE });
+            Object id = Thread.class.getMethod("getId", new Class[0])
+                            .invoke(Thread.currentThread(), new Object[0]);
+            args = new Object[] { id };
+            for (int i = 0; i < 10000; i++) {
+                getBytes();     // Warm up the reflective call
+            }
+            long start = getBytes();
+            overhead = getBytes() - start;
+        }
+
+        //
+        // Return a meter, or null if the VM can't measure allocation
+        //
+        static AllocationMeter make() {
+            try {
+                return new AllocationMeter();
+            } catch (Exception ex) {
+                System.out.println("Can't measure allocation:  " + ex);
+                return null;
+            }
+        }
+
+        long getBytes() throws Exception {
+            return ((Long) getBytes.invoke(bean, args)).longValue();
+        }
+
+        //
+        // Give the bytes allocated since start, not counting the cost
+        // of measuring.
+        //
+        long since(long start) throws Exception {
+            return getBytes() - start - overhead;
+        }
+
+        long getOverhead() {
+            return overhead;
+        }
+    }
+
+    //
+    // An engine that paints into a BufferedImage, and that lets us
+    // call the animation loop's methods directly.
+    //
+    static class TestEngine extends ClockBasedEngine {
+
+        private BufferedImage buffer
+                = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        private Graphics2D bufferG = buffer.createGraphics();
+        private Component component = new Component() { };
+        AllocationMeter meter;  // If set, measures paintBytes
+        long paintBytes = 0;
+
+        public void initContainer(Container container, Rectangle bounds) {
+        }
+
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        public Component getComponent() {
+            return component;
+        }
+
+        protected void clearArea(int x, int y, int width, int height) {
+            bufferG.setColor(transparent);
+            bufferG.fillRect(x, y, width, height);
+        }
+
+        protected boolean needsFullRedrawInAnimationLoop() {
+            return false;
+        }
+
+        protected void callPaintTargets() throws InterruptedException {
+            if (meter == null) {
+                paintTargets(bufferG);
+            } else {
+                try {
+                    long start = meter.getBytes();
+                    paintTargets(bufferG);
+                    paintBytes += meter.since(start);
+                } catch (InterruptedException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex.toString());
+                }
+            }
+        }
+
+        protected void finishedFrame() {
+        }
+
+        protected void terminatingEraseScreen() {
+        }
+
+        void frame() throws InterruptedException {
+            checkNewClients();
+            advanceModel();
+            showFrame();
+        }
+
+        void unshownFrame(boolean requested) throws InterruptedException {
+            advanceModel();
+            countUnshownFrame(requested);
+        }
+    }
+
+    //
+    // A client with a box that moves every frame, and a box that's only
+    // shown every third frame, so that both the draw and the erase paths
+    // of RenderContextBase are exercised.
+    //
+    static class TestClient implements AnimationClient {
+
+        private String target;
+        private int targetNum;
+        private int frame = 0;
+        private DrawRecord moving = new DrawRecord();
+        private DrawRecord blinking = new DrawRecord();
+
+        TestClient(String target) {
+            this.target = target;
+        }
+
+        public void initialize(Component component) {
+        }
+
+        public void destroy() {
+        }
+
+        public void nextFrame() {
+            frame++;
+        }
+
+        public void setCaughtUp() {
+        }
+
+        public void addDisplayAreas(RenderContext context) {
+            int old = context.setTarget(targetNum);
+            moving.setArea(frame % (WIDTH - 20), 10, 20, 20);
+            moving.setSemiTransparent();
+            context.addArea(moving);
+            if (frame % 3 == 0) {
+                blinking.setArea(100, 100 + targetNum * 30, 20, 20);
+                context.addArea(blinking);
+            }
+            context.setTarget(old);
+        }
+
+        public void paintFrame(Graphics2D gr) {
+        }
+
+        public void paintDone() {
+        }
+
+        public String[] getDrawTargets() {
+            return new String[] { target };
+        }
+
+        public void mapDrawTargets(Hashtable targets) {
+            targetNum = ((Integer) targets.get(target)).intValue();
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    //
+    // Measure what whole frames allocate.  Painting goes through the 
+    // platform's Graphics2D, which allocates, e.g. when the clip is set.
+    // That's out of our control, so the bytes allocated within 
+    // paintTargets() are measured separately, and only reported.
+    // Everything else in a frame must allocate nothing.
+    //
+    public void testSteadyState() throws Exception {
+        AllocationMeter meter = AllocationMeter.make();
+        if (meter == null) {
+            return;
+        }
+        TestEngine engine = new TestEngine();
+        engine.initClients(new AnimationClient[] {
+            new TestClient("T1"), new TestClient("T2")
+        });
+        for (int i = 0; i < 20000; i++) {
+            engine.frame();     // Let the JIT settle down
+        }
+        int frames = 1000;
+        engine.meter = meter;
+        long start = meter.getBytes();
+        for (int i = 0; i < frames; i++) {
+            engine.frame();
+        }
+        long bytes = meter.since(start);
+        bytes -= engine.paintBytes + 2 * meter.getOverhead() * frames;
+            // The meter calls in callPaintTargets() allocate too
+        check(bytes < frames,   // Any allocation would be 16 bytes or more
+              frames + " frames allocated " + bytes 
+              + " bytes outside of paintTargets()");
+        System.out.println("Painting into a BufferedImage allocated "
+                           + (engine.paintBytes / frames) + " bytes per frame.");
+    }
+
+    public void testResetClients() throws Exception {
+        TestEngine engine = new TestEngine();
+        engine.initClients(new AnimationClient[] {
+            new TestClient("T1"), new TestClient("T2")
+        });
+        engine.frame();
+        int allocations = engine.getAllocations();
+
+        // Same number of targets:  The pooled objects are re-used
+        engine.resetAnimationClients(new AnimationClient[] {
+            new TestClient("T3"), new TestClient("T4")
+        });
+        engine.frame();         // The reset takes effect here
+        check(engine.getAllocations() == allocations,
+              "Resetting clients grew the pool by "
+              + (engine.getAllocations() - allocations) + " objects");
+
+        // More targets:  The pool grows
+        engine.resetAnimationClients(new AnimationClient[] {
+            new TestClient("T1"), new TestClient("T2"), new TestClient("T3")
+        });
+        engine.frame();
+        check(engine.getAllocations() > allocations, 
+              "Adding a target didn't grow the pool");
+    }
+}
@@ -0,0 +1,74 @@
+package com.hdcookbook.grin.animator;
+
+import java.awt.Rectangle;
+
+/**
+ * This file has a stand-alone test that checks that LayerRenderContext
+ * notices when the drawing it collects changes, and only then.  Failure
+ * is indicated by a RuntimeException.
+ **/
+
+public class LayerRenderContextTest {
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static boolean frame(LayerRenderContext context,
+                                 DrawRecord[] records)
+    {
+        context.startFrame();
+        for (int i = 0; i < records.length; i++) {
+            context.addArea(records[i]);
+        }
+        return context.finishFrame();
+    }
+
+    public void testChanges() {
+        LayerRenderContext context = new LayerRenderContext();
+        DrawRecord a = new DrawRecord();
+        DrawRecord b = new DrawRecord();
+        a.setArea(10, 10, 20, 20);
+        b.setArea(50, 40, 10, 10);
+        DrawRecord[] both = new DrawRecord[] { a, b };
+
+        check(frame(context, both), "First frame not changed");
+        Rectangle r = context.getBounds();
+        check(r.x == 10 && r.y == 10 && r.width == 50 && r.height == 40,
+              "Bounds are " + r);
+        check(!frame(context, both), "Still frame changed");
+
+        b.setChanged();
+        check(frame(context, both), "setChanged() not noticed");
+        check(!frame(context, both), "Changed flag not cleared");
+
+        a.setArea(11, 10, 20, 20);
+        check(frame(context, both), "Move not noticed");
+
+        check(frame(context, new DrawRecord[] { a }), "Removal not noticed");
+        check(frame(context, new DrawRecord[] { b, a }), "Order not noticed");
+        check(!frame(context, new DrawRecord[] { b, a }), "Still frame changed");
+
+        context.reset();
+        check(frame(context, new DrawRecord[] { b, a }), "Reset not noticed");
+
+        check(frame(context, new DrawRecord[0]), "Emptying not noticed");
+        check(!frame(context, new DrawRecord[0]), "Empty frame changed");
+        check(context.getBounds().width == 0, "Empty bounds not empty");
+    }
+
+    public void testGrow() {
+        LayerRenderContext context = new LayerRenderContext();
+        DrawRecord[] records = new DrawRecord[20];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new DrawRecord();
+            records[i].setArea(i, i, 1, 1);
+        }
+        check(frame(context, records), "First frame not changed");
+        check(!frame(context, records), "Still frame changed");
+        Rectangle r = context.getBounds();
+        check(r.width == 20 && r.height == 20, "Bounds are " + r);
+    }
+}
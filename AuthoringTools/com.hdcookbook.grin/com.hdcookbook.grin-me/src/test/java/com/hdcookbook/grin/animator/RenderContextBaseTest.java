@@ -0,0 +1,197 @@
+package com.hdcookbook.grin.animator;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+/**
+ * This file has a stand-alone test of the two algorithms RenderContextBase
+ * uses to collapse draw targets, COLLAPSE_PAIRWISE and COLLAPSE_SWEEP.
+ * Both are run on fixed sets of rectangles, and on a set made from a
+ * seeded Random.  Each result must cover every input rectangle, and if
+ * targets can't overlap, no two targets of a result may intersect.  The
+ * results for the fixed sets are pinned, so a change in what either
+ * algorithm produces, including where the two differ, shows up here.
+ * Failure is indicated by a RuntimeException.
+ **/
+
+public class RenderContextBaseTest {
+
+    private final static int PAIRWISE = AnimationEngine.COLLAPSE_PAIRWISE;
+    private final static int SWEEP = AnimationEngine.COLLAPSE_SWEEP;
+
+    private final static int[][][] SETS = {
+        // Two boxes close together, and one far away
+        { { 10, 10, 20, 20 }, { 40, 10, 20, 20 }, { 300, 200, 20, 20 } },
+        // A row of boxes that combine one after another
+        { { 0, 0, 10, 10 }, { 15, 0, 10, 10 }, { 30, 0, 10, 10 },
+          { 100, 100, 10, 10 }, { 12, 40, 30, 5 } },
+        // Overlapping boxes that wouldn't combine on cost alone
+        { { 0, 0, 50, 50 }, { 40, 40, 50, 50 }, { 200, 0, 10, 200 },
+          { 150, 190, 60, 20 } },
+        // A grid where the merge order changes the result
+        { { 0, 0, 30, 30 }, { 35, 5, 30, 30 }, { 70, 0, 30, 30 },
+          { 0, 60, 30, 30 }, { 70, 60, 30, 30 }, { 200, 200, 5, 5 },
+          { 208, 200, 5, 5 } },
+    };
+
+    private final static int[] THRESHOLDS = { 0, 200, 1000, 385*385 };
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    //
+    // Collapse the given rectangles, each { x, y, width, height }, and
+    // return the resulting draw targets.
+    //
+    private static Rectangle[] collapse(int[][] rects, int algorithm,
+                                        boolean canOverlap, int threshold)
+    {
+        RenderContextBase context
+                = new RenderContextBase(new FramePool(), rects.length);
+        for (int i = 0; i < rects.length; i++) {
+            int[] r = rects[i];
+            context.drawTargets[i].setBounds(r[0], r[1], r[2], r[3]);
+        }
+        context.setCollapseAlgorithm(algorithm);
+        context.setTargetsCanOverlap(canOverlap);
+        context.setCollapseThreshold(threshold);
+        context.collapseTargets();
+        Rectangle[] result = new Rectangle[context.numDrawTargets];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Rectangle(context.drawTargets[i]);
+        }
+        return result;
+    }
+
+    private static String toString(Rectangle[] rects) {
+        StringBuffer b = new StringBuffer();
+        for (int i = 0; i < rects.length; i++) {
+            Rectangle r = rects[i];
+            b.append(" { " + r.x + ", " + r.y + ", " + r.width + ", "
+                     + r.height + " }");
+        }
+        return b.toString();
+    }
+
+    private static void checkInvariants(int[][] rects, int algorithm,
+                                        boolean canOverlap, int threshold)
+    {
+        Rectangle[] result = collapse(rects, algorithm, canOverlap, threshold);
+        String name = (algorithm == SWEEP ? "sweep" : "pairwise")
+                      + (canOverlap ? " with overlap" : "")
+                      + ", threshold " + threshold + ":";
+        check(result.length >= 1 && result.length <= rects.length,
+              name + " gave " + result.length + " targets for "
+              + rects.length);
+        for (int i = 0; i < rects.length; i++) {
+            int[] r = rects[i];
+            Rectangle in = new Rectangle(r[0], r[1], r[2], r[3]);
+            boolean covered = false;
+            for (int j = 0; j < result.length; j++) {
+                if (result[j].contains(in)) {
+                    covered = true;
+                }
+            }
+            check(covered, name + " lost " + in + " in" + toString(result));
+        }
+        for (int i = 0; i < result.length; i++) {
+            check(!RenderContextBase.isEmpty(result[i]),
+                  name + " gave an empty target in" + toString(result));
+            for (int j = i + 1; j < result.length && !canOverlap; j++) {
+                check(!result[i].intersects(result[j]),
+                      name + " gave overlapping targets in"
+                      + toString(result));
+            }
+        }
+    }
+
+    //
+    // Check that collapsing gives the expected targets, in any order
+    //
+    private static void checkResult(int[][] rects, int algorithm,
+                                    boolean canOverlap, int threshold,
+                                    int[][] expected)
+    {
+        Rectangle[] result = collapse(rects, algorithm, canOverlap, threshold);
+        boolean ok = result.length == expected.length;
+        for (int i = 0; ok && i < expected.length; i++) {
+            int[] e = expected[i];
+            Rectangle r = new Rectangle(e[0], e[1], e[2], e[3]);
+            boolean found = false;
+            for (int j = 0; j < result.length; j++) {
+                if (r.equals(result[j])) {
+                    found = true;
+                }
+            }
+            ok = found;
+        }
+        check(ok, (algorithm == SWEEP ? "sweep" : "pairwise")
+                  + " gave" + toString(result));
+    }
+
+    public void testInvariants() {
+        Random random = new Random(42);
+        int[][] scattered = new int[40][];
+        for (int i = 0; i < scattered.length; i++) {
+            scattered[i] = new int[] { random.nextInt(1800),
+                                       random.nextInt(1000),
+                                       1 + random.nextInt(120),
+                                       1 + random.nextInt(80) };
+        }
+        for (int t = 0; t < THRESHOLDS.length; t++) {
+            for (int overlap = 0; overlap < 2; overlap++) {
+                boolean canOverlap = overlap == 1;
+                for (int s = 0; s < SETS.length; s++) {
+                    checkInvariants(SETS[s], PAIRWISE, canOverlap,
+                                    THRESHOLDS[t]);
+                    checkInvariants(SETS[s], SWEEP, canOverlap,
+                                    THRESHOLDS[t]);
+                }
+                checkInvariants(scattered, PAIRWISE, canOverlap,
+                                THRESHOLDS[t]);
+                checkInvariants(scattered, SWEEP, canOverlap, THRESHOLDS[t]);
+            }
+        }
+    }
+
+    public void testSameResults() {
+        // Where the two algorithms agree
+        int[][] expected = { { 10, 10, 50, 20 }, { 300, 200, 20, 20 } };
+        checkResult(SETS[0], PAIRWISE, false, 1000, expected);
+        checkResult(SETS[0], SWEEP, false, 1000, expected);
+
+        expected = new int[][] { { 0, 0, 40, 10 }, { 12, 40, 30, 5 },
+                                 { 100, 100, 10, 10 } };
+        checkResult(SETS[1], PAIRWISE, false, 200, expected);
+        checkResult(SETS[1], SWEEP, false, 200, expected);
+
+        // Overlapping targets are combined only if they can't overlap
+        expected = new int[][] { { 0, 0, 90, 90 }, { 150, 0, 60, 210 } };
+        checkResult(SETS[2], PAIRWISE, false, 200, expected);
+        checkResult(SETS[2], SWEEP, false, 200, expected);
+        checkResult(SETS[2], PAIRWISE, true, 200, SETS[2]);
+        checkResult(SETS[2], SWEEP, true, 200, SETS[2]);
+
+        expected = new int[][] { { 0, 0, 30, 30 }, { 35, 5, 30, 30 },
+                                 { 70, 0, 30, 30 }, { 0, 60, 30, 30 },
+                                 { 70, 60, 30, 30 }, { 200, 200, 13, 5 } };
+        checkResult(SETS[3], PAIRWISE, false, 200, expected);
+        checkResult(SETS[3], SWEEP, false, 200, expected);
+    }
+
+    public void testDifferentResults() {
+        // The sweep looks at the targets in x order, so it combines the
+        // two left boxes first, where pairwise combines the top row first.
+        // Both results are valid; here pairwise paints 5365 pixels, and
+        // the sweep 5940.
+        checkResult(SETS[3], PAIRWISE, false, 1000, new int[][] {
+            { 0, 0, 100, 35 }, { 0, 60, 30, 30 }, { 70, 60, 30, 30 },
+            { 200, 200, 13, 5 } });
+        checkResult(SETS[3], SWEEP, false, 1000, new int[][] {
+            { 0, 0, 30, 90 }, { 35, 0, 65, 35 }, { 70, 60, 30, 30 },
+            { 200, 200, 13, 5 } });
+    }
+}
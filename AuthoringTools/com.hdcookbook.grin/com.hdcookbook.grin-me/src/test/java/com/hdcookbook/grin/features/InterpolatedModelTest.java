@@ -0,0 +1,173 @@
+package com.hdcookbook.grin.features;
+
+import com.hdcookbook.grin.Show;
+
+/**
+ * This file has a stand-alone test that checks that an InterpolatedModel
+ * that sleeps on its show's TimingWheel gives the same values, frame for
+ * frame, as stepping it on every frame does, and that it's stepped fewer
+ * times.  Failure is indicated by a RuntimeException.
+ **/
+
+public class InterpolatedModelTest {
+
+    //
+    // Steps a model the way InterpolatedModel did before it could sleep,
+    // so we have something to compare against.
+    //
+    private static class Reference {
+
+        private int[] frames;
+        private int[][] values;
+        private int[] currValues;
+        private int repeatFrame;
+        private int repeatIndex;
+        private int loopCount;
+        private int loopsRemaining;
+        private int currFrame = 0;
+        private int currIndex = 0;
+
+        Reference(InterpolatedModel m) {
+            frames = m.frames;
+            values = m.values;
+            currValues = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                currValues[i] = values[i][0];
+            }
+            repeatFrame = m.repeatFrame;
+            loopCount = m.loopCount;
+            loopsRemaining = loopCount;
+            if (repeatFrame == Integer.MAX_VALUE) {
+                repeatIndex = Integer.MAX_VALUE;
+            } else {
+                repeatIndex = 0;
+                while (repeatFrame - 1 >= frames[repeatIndex + 1]) {
+                    repeatIndex++;
+                }
+            }
+        }
+
+        void nextFrame() {
+            if (currFrame == Integer.MAX_VALUE) {
+                return;
+            }
+            currFrame++;
+            int nextIndex = currIndex + 1;
+            int dist = frames[nextIndex] - frames[currIndex];
+            int distNext = frames[nextIndex] - currFrame;
+            int distLast = currFrame - frames[currIndex];
+            for (int i = 0; i < currValues.length; i++) {
+                int[] vs = values[i];
+                currValues[i] = (vs[nextIndex] * distLast
+                                  + vs[currIndex] * distNext) / dist;
+            }
+            if (distNext <= 0) {
+                currIndex = nextIndex;
+                if (currIndex + 1 >= frames.length) {
+                    if (loopCount != Integer.MAX_VALUE) {
+                        loopsRemaining--;
+                    }
+                    if (loopsRemaining > 0) {
+                        if (repeatFrame == Integer.MAX_VALUE) {
+                            currFrame = 0;
+                            currIndex = 0;
+                        } else {
+                            currFrame = repeatFrame - 1;
+                            currIndex = repeatIndex;
+                        }
+                    } else {
+                        loopsRemaining = loopCount;
+                        currFrame = repeatFrame;
+                        if (currFrame != Integer.MAX_VALUE) {
+                            currFrame--;
+                        }
+                        currIndex = repeatIndex;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static InterpolatedModel makeModel(Show show, int[] frames,
+                                               int[][] values,
+                                               int repeatFrame,
+                                               int loopCount)
+    {
+        InterpolatedModel m = new InterpolatedModel(show);
+        m.frames = frames;
+        m.values = values;
+        m.currValues = new int[values.length];
+        m.repeatFrame = repeatFrame;
+        m.loopCount = loopCount;
+        m.initialize();
+        return m;
+    }
+
+    //
+    // Step model and a reference copy for the given number of frames,
+    // and return the number of times model was stepped.
+    //
+    private static int compare(Show show, InterpolatedModel model,
+                               int numFrames)
+    {
+        Reference ref = new Reference(model);
+        model.setActivateMode(true);
+        int evaluated = 0;
+        for (int f = 1; f <= numFrames; f++) {
+            show.modelWheel.advance();
+            model.nextFrame();
+            ref.nextFrame();
+            evaluated += show.modelWheel.getModelsEvaluated();
+            for (int i = 0; i < ref.currValues.length; i++) {
+                check(model.getField(i) == ref.currValues[i],
+                      "Frame " + f + " field " + i + " was "
+                      + model.getField(i) + ", expected "
+                      + ref.currValues[i]);
+            }
+        }
+        model.setActivateMode(false);
+        return evaluated;
+    }
+
+    public void testHoldsAndRamps() {
+        Show show = new Show(null);
+        int[] frames = { 0, 10, 20, 25, 40 };
+        int[][] values = {
+            { 0, 0, 100, 100, 100 },
+            { 7, 7, 7, 7, 7 }
+        };
+        InterpolatedModel m = makeModel(show, frames, values,
+                                        15, Integer.MAX_VALUE);
+        int evaluated = compare(show, m, 200);
+        check(evaluated < 100, "Evaluated " + evaluated + " times");
+        check(!m.isAsleep, "Still asleep after deactivation");
+
+        m = makeModel(show, frames, values, Integer.MAX_VALUE, 3);
+        compare(show, m, 200);
+    }
+
+    public void testTimer() {
+        Show show = new Show(null);
+        int[] frames = { 0, 240 };
+        InterpolatedModel m = makeModel(show, frames, new int[0][],
+                                        Integer.MAX_VALUE, Integer.MAX_VALUE);
+        int evaluated = compare(show, m, 1000);
+        check(evaluated == 4, "Timer evaluated " + evaluated + " times");
+    }
+
+    public void testReactivate() {
+        Show show = new Show(null);
+        int[] frames = { 0, 30, 60 };
+        int[][] values = { { 5, 5, 9 } };
+        InterpolatedModel m = makeModel(show, frames, values,
+                                        Integer.MAX_VALUE, Integer.MAX_VALUE);
+        compare(show, m, 10);   // Deactivates m while it's asleep
+        compare(show, m, 100);
+    }
+}
@@ -0,0 +1,130 @@
+package com.hdcookbook.grin.util;
+
+/**
+ * This file has a stand-alone test that checks that
+ * com.hdcookbook.grin.util.CommandQueue keeps commands in order, even
+ * when it grows past its capacity, and that it drops and merges input 
+ * events according to its event policy.  Failure is indicated by a RuntimeException.
+ **/
+
+public class CommandQueueTest {
+
+    //
+    // Adds numbered entries, so that the consumer can check that each
+    // producer's entries come out in order, and that none are lost.
+    //
+    private static class Producer extends Thread {
+
+        private CommandQueue queue;
+        private int id;
+        private int count;
+
+        Producer(CommandQueue queue, int id, int count) {
+            this.queue = queue;
+            this.id = id;
+            this.count = count;
+        }
+
+        public void run() {
+            for (int i = 0; i < count; i++) {
+                queue.add(new int[] { id, i });
+            }
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static String drain(CommandQueue q) {
+        StringBuffer sb = new StringBuffer();
+        while (!q.isEmpty()) {
+            sb.append(q.remove());
+        }
+        return sb.toString();
+    }
+
+    public void testOverflow() {
+        CommandQueue q = new CommandQueue(4);
+        q.add("a");
+        q.add("b");
+        q.addAll(new Object[] { "c", "d", "e" });
+        q.add("f");
+        check("a".equals(q.remove()), "Wrong head");
+        q.add("g");
+        check("bcdefg".equals(drain(q)), "Out of order");
+        check(q.isEmpty(), "Not empty");
+    }
+
+    //
+    // A queue that's far behind has to grow many times; each add must
+    // still be cheap.
+    //
+    public void testGrowth() {
+        CommandQueue q = new CommandQueue(4);
+        int count = 100000;
+        Integer[] els = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            els[i] = new Integer(i);
+        }
+        q.add(els[0]);
+        q.remove();             // So that the ring wraps when it grows
+        for (int i = 0; i < count; i++) {
+            q.add(els[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            check(q.remove() == els[i], "Entry " + i + " out of order");
+        }
+        check(q.isEmpty(), "Not empty");
+    }
+
+    public void testEventPolicies() {
+        CommandQueue q = new CommandQueue(4);
+        check(q.addEvent("x") && q.addEvent("x"), "Event dropped");
+        q.setEventPolicy(CommandQueue.MERGE_REPEATED_EVENTS);
+        check(!q.addEvent("x"), "Repeat not merged");
+        check(q.addEvent("y") && q.addEvent("x"), "Event merged");
+        check(!q.addEvent("z"), "Event added to a full queue");
+        q.add("cmd");
+        check("xxyxcmd".equals(drain(q)), "Wrong entries");
+        check(q.addEvent("x"), "Event merged with a removed one");
+
+        q.setEventPolicy(CommandQueue.DROP_EVENTS_WHEN_FULL);
+        check(q.addEvent("x"), "Repeat merged");
+        check(q.getEventsDropped() == 2,
+              "Dropped " + q.getEventsDropped() + " events");
+    }
+
+    public void testProducers() throws InterruptedException {
+        int producers = 4;
+        int count = 2000;
+        CommandQueue q = new CommandQueue(16);
+        Producer[] threads = new Producer[producers];
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Producer(q, i, count);
+            threads[i].start();
+        }
+        int[] next = new int[producers];
+        int received = 0;
+        long end = System.currentTimeMillis() + 10000;
+        while (received < producers * count) {
+            check(System.currentTimeMillis() < end,
+                  "Timed out after " + received);
+            if (q.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+            int[] el = (int[]) q.remove();
+            check(el[1] == next[el[0]],
+                  "Producer " + el[0] + " entry " + el[1] + " out of order");
+            next[el[0]]++;
+            received++;
+        }
+        for (int i = 0; i < producers; i++) {
+            threads[i].join();
+        }
+        check(q.isEmpty(), "Extra entries");
+    }
+}
@@ -0,0 +1,219 @@
+package com.hdcookbook.grin.util;
+
+import java.awt.Component;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.imageio.ImageIO;
+
+/**
+ * This file has a stand-alone test that checks ImageManager's cache of
+ * images that are loaded, but no longer prepared, loading with an
+ * ImageLoadListener, preparing an image that's already prepared, and
+ * getting images from many threads at once.
+ * It writes a few images to a temporary directory, and prepares and
+ * unprepares them.  Failure is indicated by a RuntimeException.
+ **/
+
+public class ImageManagerTest {
+
+    private Component component = new Component() { };
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static File makeImages(int n, int width, int height)
+            throws Exception
+    {
+        File dir = File.createTempFile("images", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        for (int i = 0; i < n; i++) {
+            BufferedImage im = new BufferedImage(width, height,
+                                                 BufferedImage.TYPE_INT_ARGB);
+            File f = new File(dir, "img" + i + ".png");
+            ImageIO.write(im, "png", f);
+            f.deleteOnExit();
+        }
+        return dir;
+    }
+
+    private void use(ManagedImage im) {
+        im.prepare();
+        im.load(component);
+        check(im.isLoaded(), im + " not loaded");
+        im.unprepare();
+    }
+
+    public void testCache() throws Exception {
+        File dir = makeImages(3, 10, 10);
+        AssetFinder.setSearchPath(null, new File[] { dir });
+        ManagedImage[] images = new ManagedImage[3];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = ImageManager.getImage("img" + i + ".png");
+        }
+        int hits = ImageManager.getCacheHits();
+        int misses = ImageManager.getCacheMisses();
+        int evictions = ImageManager.getCacheEvictions();
+        long loaded = ImageManager.getLoadedBytes();
+
+        // Room for two of the three images
+        ImageManager.setCacheBudget(2 * 10 * 10 * 4);
+        try {
+            use(images[0]);
+            use(images[1]);
+            check(ImageManager.getCacheBytes() == 800,
+                  "Cache holds " + ImageManager.getCacheBytes() + " bytes");
+            check(ImageManager.getLoadedBytes() == loaded + 800,
+                  (ImageManager.getLoadedBytes() - loaded) + " bytes loaded");
+            check(images[0].isLoaded(), "First image flushed");
+            use(images[0]);     // A hit, and now the most recently used
+            check(ImageManager.getCacheHits() == hits + 1,
+                  (ImageManager.getCacheHits() - hits) + " hits");
+            use(images[2]);     // Pushes out images[1]
+            check(ImageManager.getCacheEvictions() == evictions + 1,
+                  (ImageManager.getCacheEvictions() - evictions)
+                  + " evictions");
+            check(!images[1].isLoaded(), "LRU image not flushed");
+            check(images[0].isLoaded() && images[2].isLoaded(),
+                  "Recently used image flushed");
+            check(ImageManager.getCacheMisses() == misses + 3,
+                  (ImageManager.getCacheMisses() - misses) + " misses");
+        } finally {
+            ImageManager.setCacheBudget(0);
+        }
+        check(ImageManager.getCacheBytes() == 0,
+              "Cache holds " + ImageManager.getCacheBytes() + " bytes");
+        check(ImageManager.getLoadedBytes() == loaded,
+              (ImageManager.getLoadedBytes() - loaded) + " bytes loaded");
+        for (int i = 0; i < images.length; i++) {
+            check(!images[i].isLoaded(), images[i] + " still loaded");
+            ImageManager.ungetImage(images[i]);
+        }
+    }
+
+    public void testDisabled() throws Exception {
+        File dir = makeImages(1, 10, 10);
+        AssetFinder.setSearchPath(null, new File[] { dir });
+        ManagedImage im = ImageManager.getImage("img0.png");
+        use(im);
+        check(!im.isLoaded(), "Image cached without a budget");
+        check(ImageManager.getCacheBytes() == 0,
+              "Cache holds " + ImageManager.getCacheBytes() + " bytes");
+        ImageManager.ungetImage(im);
+    }
+
+    public void testListener() throws Exception {
+        File dir = makeImages(4, 10, 10);
+        AssetFinder.setSearchPath(null, new File[] { dir });
+        ManagedImage[] images = new ManagedImage[4];
+        final int[] done = new int[1];
+        ImageLoadListener listener = new ImageLoadListener() {
+            public void imageLoaded(ManagedImage image) {
+                synchronized(done) {
+                    done[0]++;
+                    done.notifyAll();
+                }
+            }
+        };
+        for (int i = 0; i < images.length; i++) {
+            images[i] = ImageManager.getImage("img" + i + ".png");
+            images[i].prepare();
+            images[i].startLoading(component, listener);
+        }
+        long end = System.currentTimeMillis() + 10000;
+        synchronized(done) {
+            while (done[0] < images.length) {
+                long left = end - System.currentTimeMillis();
+                check(left > 0, "Timed out with " + done[0] + " loaded");
+                done.wait(left);
+            }
+        }
+        for (int i = 0; i < images.length; i++) {
+            check(images[i].isLoaded(), images[i] + " not loaded");
+            images[i].startLoading(component, listener);   // Called now
+            images[i].unprepare();
+            ImageManager.ungetImage(images[i]);
+        }
+        check(done[0] == 2 * images.length, done[0] + " callbacks");
+    }
+
+    //
+    // Only the first prepare and the last unprepare touch the cache, so 
+    // only they need ImageManager.lock.  Check that the others finish
+    // while another thread holds it.
+    //
+    public void testNestedPrepare() throws Exception {
+        File dir = makeImages(1, 10, 10);
+        AssetFinder.setSearchPath(null, new File[] { dir });
+        final ManagedImage im = ImageManager.getImage("img0.png");
+        im.prepare();
+        Thread t = new Thread() {
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    im.prepare();
+                    im.unprepare();
+                }
+            }
+        };
+        synchronized(ImageManager.lock) {
+            t.start();
+            t.join(10000);
+            check(!t.isAlive(), "Nested prepare waited for ImageManager.lock");
+        }
+        im.load(component);
+        check(im.isLoaded(), im + " not loaded");
+        im.unprepare();
+        check(!im.isLoaded(), im + " still loaded");
+        ImageManager.ungetImage(im);
+    }
+
+    public void testConcurrentGet() throws Exception {
+        File dir = makeImages(8, 1, 1);
+        AssetFinder.setSearchPath(null, new File[] { dir });
+        final ManagedImage[][] got = new ManagedImage[8][8];
+        final RuntimeException[] failure = new RuntimeException[1];
+        Thread[] threads = new Thread[got.length];
+        for (int t = 0; t < threads.length; t++) {
+            final ManagedImage[] mine = got[t];
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int n = 0; n < 200; n++) {
+                            for (int i = 0; i < mine.length; i++) {
+                                ManagedImage im = ImageManager.getImage(
+                                                        "img" + i + ".png");
+                                ImageManager.ungetImage(im);
+                            }
+                        }
+                        for (int i = 0; i < mine.length; i++) {
+                            mine[i] = ImageManager.getImage("img" + i + ".png");
+                        }
+                    } catch (RuntimeException ex) {
+                        failure[0] = ex;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (int i = 0; i < got[0].length; i++) {
+            for (int t = 1; t < got.length; t++) {
+                check(got[t][i] == got[0][i], "Two instances of " + got[0][i]);
+            }
+        }
+        for (int t = 0; t < got.length; t++) {
+            for (int i = 0; i < got[t].length; i++) {
+                ImageManager.ungetImage(got[t][i]);
+            }
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package com.hdcookbook.grin.util;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Random;
 
 /**
  * This file has a stand-alone test that tests the
- * com.hdcookbook.grin.util.JsonIO class.  When run as a main
+ * com.hdcookbook.grin.util.JsonIO class, and the JsonReader and
+ * JsonWriter classes it's built on.  It also measures their throughput
+ * on documents of a few megabytes.  When run as a main
  * program, success is indicated with a message on stdout and an
  * exit value of 0, failure with a message and an exit code of 1.
  **/
@@ -159,4 +164,233 @@ public class JsonIOTest {
         compare(root, javaValues, "");
     }
 
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    public void testPullParser() throws Exception {
+        char[] doc = ("{ 'menu' : [ 1, 3000000000, 2.5, \"a\\tb\" ], "
+                      + "'skip' : { 'x' : [ [], {} ] }, "
+                      + "'end' : true } 7").toCharArray();
+        JsonReader jr = new JsonReader(doc, 0, doc.length);
+        check(jr.next() == JsonReader.START_OBJECT, "No object");
+        check(jr.next() == JsonReader.NAME && jr.textEquals("menu"), 
+              "No menu");
+        check(jr.next() == JsonReader.START_ARRAY && jr.getDepth() == 2,
+              "No array");
+        check(jr.next() == JsonReader.INT && jr.getInt() == 1, "No int");
+        check(jr.next() == JsonReader.LONG && jr.getLong() == 3000000000L,
+              "No long");
+        check(jr.next() == JsonReader.DOUBLE && jr.getDouble() == 2.5,
+              "No double");
+        check(jr.next() == JsonReader.STRING && jr.textEquals("a\tb")
+              && jr.getTextLength() == 3, "No string");
+        check(jr.next() == JsonReader.END_ARRAY && jr.getDepth() == 1,
+              "No end of array");
+        check(jr.next() == JsonReader.NAME && jr.textEquals("skip"), 
+              "No skip");
+        check(jr.next() == JsonReader.START_OBJECT, "No object to skip");
+        jr.skipValue();
+        check(jr.getEvent() == JsonReader.END_OBJECT && jr.getDepth() == 1,
+              "Skipped to the wrong place");
+        check(jr.next() == JsonReader.NAME && "end".equals(jr.getString()),
+              "No end");
+        check(jr.next() == JsonReader.TRUE, "No true");
+        check(jr.next() == JsonReader.END_OBJECT && jr.getDepth() == 0,
+              "No end of object");
+        check(jr.next() == JsonReader.INT && jr.getInt() == 7,
+              "No second value");
+        check(jr.next() == JsonReader.END_DOCUMENT, "No end of document");
+
+        String[] bad = { "[1,]", "[1 2]", "{'a' 1}", "[tru]", "-", "[1" };
+        for (int i = 0; i < bad.length; i++) {
+            try {
+                JsonIO.readJSON(new StringReader(bad[i]));
+                check(false, "Accepted " + bad[i]);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    //
+    // readJSON() must leave its reader just after the value it read,
+    // so several values can be read from one stream.
+    //
+    public void testPosition() throws Exception {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 2000; i++) {
+            sb.append(i);
+            sb.append(i % 2 == 0 ? "\n" : " [\"x\", {\"y\": 1.5}]\n");
+        }
+        BufferedReader rdr 
+            = new BufferedReader(new StringReader(sb.toString()), 100);
+        for (int i = 0; i < 2000; i++) {
+            Object o = JsonIO.readJSON(rdr);
+            check(new Integer(i).equals(o), "Read " + o + " for " + i);
+            if (i % 2 == 1) {
+                Object[] arr = (Object[]) JsonIO.readJSON(rdr);
+                check(arr.length == 2 && "x".equals(arr[0]), "Bad array");
+            }
+        }
+        check(rdr.readLine().equals(""), "Not at end of line");
+        check(rdr.read() == -1, "Not at EOF");
+    }
+
+    public void testDeepNesting() throws Exception {
+        int depth = 200000;
+        StringWriter sw = new StringWriter();
+        JsonWriter jw = new JsonWriter(sw);
+        for (int i = 0; i < depth; i++) {
+            jw.beginArray();
+            jw.value(i);
+        }
+        for (int i = 0; i < depth; i++) {
+            jw.endArray();
+        }
+        Object root = JsonIO.readJSON(new StringReader(sw.toString()));
+        StringWriter sw2 = new StringWriter();
+        JsonIO.writeJSON(sw2, root);
+        check(sw.toString().equals(sw2.toString()), "Nested arrays differ");
+    }
+
+    public void testNumbers() throws Exception {
+        Random r = new Random(42);
+        StringWriter sw = new StringWriter();
+        JsonWriter jw = new JsonWriter(sw);
+        int count = 20000;
+        double[] values = new double[count];
+        jw.beginArray();
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    values[i] = r.nextDouble();
+                    break;
+                case 1:
+                    values[i] = (r.nextInt() % 100000) / 100.0;
+                    break;
+                case 2:
+                    values[i] = Double.longBitsToDouble(r.nextLong());
+                    break;
+                default:
+                    values[i] = r.nextGaussian() * 1e6;
+                    break;
+            }
+            if (Double.isNaN(values[i]) || Double.isInfinite(values[i])) {
+                values[i] = i;
+            }
+            jw.value(values[i]);
+        }
+        jw.value(Long.MIN_VALUE);
+        jw.value(Integer.MIN_VALUE);
+        jw.endArray();
+        char[] doc = sw.toString().toCharArray();
+        JsonReader jr = new JsonReader(doc, 0, doc.length);
+        jr.next();
+        for (int i = 0; i < count; i++) {
+            jr.next();
+            check(jr.getDouble() == values[i], 
+                  "Read " + jr.getString() + " as " + jr.getDouble());
+        }
+        check(jr.next() == JsonReader.LONG && jr.getLong() == Long.MIN_VALUE,
+              "Bad Long.MIN_VALUE");
+        check(jr.next() == JsonReader.INT 
+              && jr.getInt() == Integer.MIN_VALUE, "Bad Integer.MIN_VALUE");
+    }
+
+    //
+    // Write a document like a large set of menu data, with about the
+    // given number of characters.
+    //
+    private static String makeDocument(int size) throws IOException {
+        StringWriter sw = new StringWriter(size + 1000);
+        JsonWriter jw = new JsonWriter(sw);
+        jw.beginArray();
+        for (int i = 0; sw.getBuffer().length() < size; i++) {
+            jw.beginObject();
+            jw.name("id");
+            jw.value(i);
+            jw.name("title");
+            jw.value("Chapter " + i + ": \"Title\"\tand \u00e9");
+            jw.name("position");
+            jw.beginArray();
+            jw.value(i % 1920);
+            jw.value(i % 1080);
+            jw.endArray();
+            jw.name("scale");
+            jw.value(i * 0.125);
+            jw.name("start");
+            jw.value(90000L * i);
+            jw.name("enabled");
+            jw.value(i % 3 != 0);
+            jw.name("image");
+            jw.nullValue();
+            jw.endObject();
+        }
+        jw.endArray();
+        return sw.toString();
+    }
+
+    private static String rate(long chars, long ms) {
+        return (chars * 1000 / Math.max(ms, 1) / 1024) + " K chars/sec";
+    }
+
+    public void testThroughput() throws Exception {
+        int size = 4 * 1024 * 1024;
+        long start = System.currentTimeMillis();
+        String doc = makeDocument(size);
+        long writeMs = System.currentTimeMillis() - start;
+        char[] chars = doc.toCharArray();
+
+        int rounds = 3;
+        long idSum = 0;
+        int objects = 0;
+        start = System.currentTimeMillis();
+        for (int round = 0; round < rounds; round++) {
+            JsonReader jr = new JsonReader(chars, 0, chars.length);
+            for (;;) {
+                int ev = jr.next();
+                if (ev == JsonReader.END_DOCUMENT) {
+                    break;
+                } else if (ev == JsonReader.NAME && jr.textEquals("id")) {
+                    jr.next();
+                    idSum += jr.getInt();
+                    objects++;
+                }
+            }
+        }
+        long pullMs = System.currentTimeMillis() - start;
+        objects /= rounds;
+        idSum /= rounds;
+        check(idSum == ((long) objects) * (objects - 1) / 2, 
+              "Wrong sum of ids:  " + idSum);
+
+        Object root = null;
+        start = System.currentTimeMillis();
+        for (int round = 0; round < rounds; round++) {
+            root = JsonIO.readJSON(new BufferedReader(new StringReader(doc)));
+        }
+        long treeMs = System.currentTimeMillis() - start;
+        check(((Object[]) root).length == objects, "Wrong number of objects");
+
+        StringWriter sw = new StringWriter(doc.length());
+        start = System.currentTimeMillis();
+        JsonIO.writeJSON(sw, root);
+        long treeWriteMs = System.currentTimeMillis() - start;
+        check(sw.getBuffer().length() == doc.length(), 
+              "Tree written as " + sw.getBuffer().length() + " chars, not "
+              + doc.length());
+
+        System.out.println("JSON document of " + doc.length() + " chars, " 
+                           + objects + " objects:");
+        System.out.println("    JsonWriter:          " 
+                           + rate(doc.length(), writeMs));
+        System.out.println("    JsonReader events:   " 
+                           + rate(doc.length() * rounds, pullMs));
+        System.out.println("    JsonIO.readJSON:     " 
+                           + rate(doc.length() * rounds, treeMs));
+        System.out.println("    JsonIO.writeJSON:    " 
+                           + rate(doc.length(), treeWriteMs));
+    }
 }
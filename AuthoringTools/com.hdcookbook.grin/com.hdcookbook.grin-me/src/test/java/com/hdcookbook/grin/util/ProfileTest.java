@@ -0,0 +1,124 @@
+package com.hdcookbook.grin.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Hashtable;
+
+/**
+ * This file has a stand-alone test that checks that the profile records
+ * made on several threads come out of com.hdcookbook.grin.util.Profile's
+ * stream transport intact, with each timer named, and each start matched
+ * by a stop.  Failure is indicated by a RuntimeException.
+ **/
+
+public class ProfileTest {
+
+    private static byte[] timerA = Profile.makeProfileTimer("timer A");
+    private static byte[] timerB = Profile.makeProfileTimer("timer B");
+
+    //
+    // Nests timer B inside timer A, a given number of times
+    //
+    private static class Worker extends Thread {
+
+        private byte threadID;
+        private int count;
+
+        Worker(byte threadID, int count) {
+            this.threadID = threadID;
+            this.count = count;
+        }
+
+        public void run() {
+            for (int i = 0; i < count; i++) {
+                int a = Profile.startTimer(timerA, threadID);
+                int b = Profile.startTimer(timerB, threadID);
+                Profile.stopTimer(b);
+                Profile.stopTimer(a);
+                if (i % 100 == 99) {
+                    try {
+                        Thread.sleep(ProfileFlusher.INTERVAL);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static int getInt(byte[] buf, int i) {
+        return ((0xff & buf[i]) << 24) | ((0xff & buf[i + 1]) << 16)
+               | ((0xff & buf[i + 2]) << 8) | (0xff & buf[i + 3]);
+    }
+
+    public void testStream() throws Exception {
+        int workers = 3;
+        int count = 300;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Profile.initProfiler(out);
+        Worker[] threads = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            threads[i] = new Worker((byte) i, count);
+            threads[i].start();
+        }
+        for (int i = 0; i < workers; i++) {
+            threads[i].join();
+        }
+        Profile.doneProfiling();
+        check(Profile.startTimer(timerA, (byte) 0) == 0,
+              "Timer started after doneProfiling()");
+
+        byte[] buf = out.toByteArray();
+        Hashtable names = new Hashtable();
+        Hashtable started = new Hashtable();
+        int[] starts = new int[workers];
+        int dropped = -1;
+        int pos = 0;
+        while (pos < buf.length) {
+            int end = pos + 2 + (((0xff & buf[pos]) << 8) | (0xff & buf[pos + 1]));
+            pos += 2;
+            check(buf[pos++] == Profile.BATCH, "Not a batch");
+            while (pos < end) {
+                byte kind = buf[pos++];
+                if (kind == Profile.TIMER_NAME) {
+                    int n = 0xff & buf[pos + 4];
+                    names.put(new Integer(getInt(buf, pos)),
+                              new String(buf, pos + 5, n, "UTF-8"));
+                    pos += 5 + n;
+                } else if (kind == Profile.TIMER_START) {
+                    Integer timer = new Integer(getInt(buf, pos + 5));
+                    check(names.get(timer) != null, "Timer not named");
+                    Object old = started.put(new Integer(getInt(buf, pos)),
+                                             names.get(timer));
+                    check(old == null, "Token reused");
+                    int tid = 0xff & buf[pos + 4];
+                    if (tid < workers) {
+                        starts[tid]++;
+                    }
+                    pos += 17;
+                } else if (kind == Profile.TIMER_STOP) {
+                    Object name = started.remove(new Integer(getInt(buf, pos)));
+                    check(name != null, "Stop without a start");
+                    pos += 12;
+                } else if (kind == Profile.OVERHEAD) {
+                    dropped = getInt(buf, pos + 8);
+                    pos += 24;
+                } else {
+                    check(false, "Unexpected entry " + kind);
+                }
+            }
+            check(pos == end, "Entry overruns its batch");
+        }
+        check(started.size() == 0, started.size() + " timers not stopped");
+        check(dropped == 0, "Dropped " + dropped + " records");
+        for (int i = 0; i < workers; i++) {
+            check(starts[i] == 2 * count,
+                  "Thread " + i + " started " + starts[i] + " timers");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.hdcookbook.grin.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * This file has a stand-alone test that reads GRIN raw images in each
+ * format, and checks their pixels.  Failure is indicated by a
+ * RuntimeException.
+ **/
+
+public class RawImageTest {
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static File write(int format, int compression, int width,
+                              int height, int[] palette, byte[] data)
+            throws IOException
+    {
+        File f = File.createTempFile("test", RawImage.EXTENSION);
+        f.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+        out.writeInt(RawImage.MAGIC);
+        out.writeByte(RawImage.VERSION);
+        out.writeByte(format);
+        out.writeByte(compression);
+        out.writeByte(0);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(palette.length);
+        for (int i = 0; i < palette.length; i++) {
+            out.writeInt(palette[i]);
+        }
+        out.writeInt(data.length);
+        out.write(data);
+        out.close();
+        return f;
+    }
+
+    private static void checkPixels(File f, int[] expected, int width) 
+            throws IOException
+    {
+        Image im = RawImage.read(f.toURL());
+        int height = expected.length / width;
+        BufferedImage buf = new BufferedImage(width, height,
+                                              BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = buf.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        check(g.drawImage(im, 0, 0, null), "Image not ready");
+        g.dispose();
+        for (int i = 0; i < expected.length; i++) {
+            int p = buf.getRGB(i % width, i / width);
+            check(p == expected[i], "Pixel " + i + " is " 
+                  + Integer.toHexString(p) + ", not " 
+                  + Integer.toHexString(expected[i]));
+        }
+    }
+
+    public void testIndexedRLE() throws Exception {
+        int[] palette = { 0xffff0000, 0xff00ff00, 0x00000000 };
+        byte[] data = {
+            -3, 0,              // 4 x red
+            1, 1, 2,            // green, transparent
+            -1, 1               // 2 x green
+        };
+        File f = write(RawImage.FORMAT_INDEXED, RawImage.COMPRESSION_RLE,
+                       4, 2, palette, data);
+        checkPixels(f, new int[] { 0xffff0000, 0xffff0000, 0xffff0000, 
+                                   0xffff0000, 0xff00ff00, 0x00000000,
+                                   0xff00ff00, 0xff00ff00 }, 4);
+    }
+
+    public void testARGB() throws Exception {
+        int[] pixels = { 0xff123456, 0xff654321, 0xff000000, 0xffffffff };
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (int i = 0; i < pixels.length; i++) {
+            dos.writeInt(pixels[i]);
+        }
+        File f = write(RawImage.FORMAT_ARGB, RawImage.COMPRESSION_NONE,
+                       2, 2, new int[0], bos.toByteArray());
+        checkPixels(f, pixels, 2);
+    }
+
+    public void testBadData() throws Exception {
+        File f = write(RawImage.FORMAT_INDEXED, RawImage.COMPRESSION_RLE,
+                       4, 4, new int[] { 0 }, new byte[] { -3, 0 });
+        try {
+            RawImage.read(f.toURL());
+        } catch (IOException expected) {
+            return;
+        }
+        throw new RuntimeException("Short image data accepted");
+    }
+}
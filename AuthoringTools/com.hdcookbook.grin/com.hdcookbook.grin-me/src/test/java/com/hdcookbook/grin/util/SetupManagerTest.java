@@ -0,0 +1,224 @@
+package com.hdcookbook.grin.util;
+
+import java.util.ArrayList;
+
+/**
+ * This file has a stand-alone test that checks the order in which
+ * com.hdcookbook.grin.util.SetupManager sets up its clients, that
+ * cancelled clients aren't set up, and that more than one worker thread
+ * can set up clients at once.  Failure is indicated by a RuntimeException.
+ **/
+
+public class SetupManagerTest {
+
+    //
+    // A client that records when it's set up.  It can be made to wait
+    // in doSomeSetup(), so that the queue can be filled while the
+    // setup thread is busy; waitUntilStarted() tells us when a thread
+    // is waiting there.  A client with more than one unit of work yields
+    // to more urgent work between units.
+    //
+    private static class TestClient implements SetupClient {
+
+        private String name;
+        private ArrayList log;
+        private SetupManager manager;
+        private int unitsLeft;
+        private boolean blocked = false;
+        private boolean started = false;
+
+        TestClient(String name, ArrayList log, SetupManager manager,
+                   int units)
+        {
+            this.name = name;
+            this.log = log;
+            this.manager = manager;
+            this.unitsLeft = units;
+        }
+
+        synchronized void block() {
+            blocked = true;
+        }
+
+        synchronized void unblock() {
+            blocked = false;
+            notifyAll();
+        }
+
+        synchronized void waitUntilStarted() throws InterruptedException {
+            long end = System.currentTimeMillis() + 10000;
+            while (!started) {
+                long left = end - System.currentTimeMillis();
+                check(left > 0, name + " was never set up");
+                wait(left);
+            }
+        }
+
+        public void doSomeSetup() {
+            synchronized(this) {
+                started = true;
+                notifyAll();
+                while (blocked) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+            for (;;) {
+                synchronized(this) {
+                    if (unitsLeft <= 0) {
+                        return;
+                    }
+                    unitsLeft--;
+                }
+                synchronized(log) {
+                    log.add(name);
+                    log.notifyAll();
+                }
+                if (manager.shouldYield(this)) {
+                    return;
+                }
+            }
+        }
+
+        public synchronized boolean needsMoreSetup() {
+            return unitsLeft > 0;
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static void waitForLog(ArrayList log, int size)
+            throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000;
+        synchronized(log) {
+            while (log.size() < size) {
+                long left = end - System.currentTimeMillis();
+                check(left > 0, "Timed out with " + log);
+                log.wait(left);
+            }
+        }
+    }
+
+    public void testPriorities() throws Exception {
+        ArrayList log = new ArrayList();
+        SetupManager manager = new SetupManager(6);
+        TestClient gate = new TestClient("gate", log, manager, 1);
+        TestClient prefetch = new TestClient("prefetch", log, manager, 1);
+        TestClient next = new TestClient("next", log, manager, 1);
+        TestClient visible1 = new TestClient("visible1", log, manager, 1);
+        TestClient visible2 = new TestClient("visible2", log, manager, 1);
+        TestClient cancelled = new TestClient("cancelled", log, manager, 1);
+        TestClient last = new TestClient("last", log, manager, 1);
+        gate.block();
+        manager.start();
+        try {
+            manager.scheduleSetup(gate, SetupManager.PRIORITY_VISIBLE);
+            gate.waitUntilStarted();
+            long scheduled = System.currentTimeMillis();
+            manager.scheduleSetup(prefetch, SetupManager.PRIORITY_PREFETCH);
+            manager.scheduleSetup(cancelled, SetupManager.PRIORITY_NEXT);
+            manager.scheduleSetup(next, SetupManager.PRIORITY_NEXT);
+            manager.scheduleSetup(visible1, SetupManager.PRIORITY_VISIBLE);
+            int old = manager.setCurrentPriority(
+                                SetupManager.PRIORITY_VISIBLE);
+            manager.scheduleSetup(visible2);
+            manager.setCurrentPriority(old);
+            manager.cancelSetup(cancelled);
+            manager.scheduleSetup(last, SetupManager.PRIORITY_PREFETCH);
+            check(manager.getQueueDepth() == 5,
+                  "Queue depth " + manager.getQueueDepth());
+            long waited = System.currentTimeMillis() - scheduled;
+            gate.unblock();
+
+            // The one worker takes last off the queue only after it's
+            // done with the others.
+            waitForLog(log, 6);
+            String expected =
+                "[gate, visible1, visible2, next, prefetch, last]";
+            check(expected.equals(log.toString()), "Order was " + log);
+            int completed = manager.getNumCompleted();
+            check(completed == 5 || completed == 6,     // last might be done
+                  "Completed " + completed);
+            check(manager.getNumCancelled() == 1,
+                  "Cancelled " + manager.getNumCancelled());
+            check(manager.getMaxQueueDepth() == 5,
+                  "Max queue depth " + manager.getMaxQueueDepth());
+            check(manager.getMaxLatency() >= waited,
+                  "Max latency " + manager.getMaxLatency());
+        } finally {
+            manager.stop();
+        }
+    }
+
+    public void testYield() throws Exception {
+        ArrayList log = new ArrayList();
+        SetupManager manager = new SetupManager(2);
+        TestClient big = new TestClient("big", log, manager, 3);
+        TestClient urgent = new TestClient("urgent", log, manager, 1);
+        big.block();
+        manager.start();
+        try {
+            manager.scheduleSetup(big, SetupManager.PRIORITY_PREFETCH);
+            big.waitUntilStarted();
+            manager.scheduleSetup(urgent, SetupManager.PRIORITY_VISIBLE);
+            big.unblock();
+            waitForLog(log, 4);
+            check("[big, urgent, big, big]".equals(log.toString()),
+                  "Order was " + log);
+        } finally {
+            manager.stop();
+        }
+    }
+
+    //
+    // The number of workers is raised after the manager is made, as
+    // GrinView does.  Each worker gets stuck on a client of its own, and
+    // then the rest of the work waits on the queue.
+    //
+    public void testWorkers() throws Exception {
+        int workers = 3;
+        ArrayList log = new ArrayList();
+        SetupManager manager = new SetupManager(workers + 1);
+        TestClient[] blocked = new TestClient[workers];
+        for (int i = 0; i < workers; i++) {
+            blocked[i] = new TestClient("blocked" + i, log, manager, 1);
+            blocked[i].block();
+        }
+        TestClient waiting = new TestClient("waiting", log, manager, 1);
+        SetupManager.setMaxWorkers(workers);
+        manager.start();
+        try {
+            for (int i = 0; i < workers; i++) {
+                manager.scheduleSetup(blocked[i], 
+                                      SetupManager.PRIORITY_VISIBLE);
+            }
+            for (int i = 0; i < workers; i++) {
+                blocked[i].waitUntilStarted();
+            }
+            manager.scheduleSetup(waiting, SetupManager.PRIORITY_VISIBLE);
+            check(manager.getQueueDepth() == 1,
+                  "Queue depth " + manager.getQueueDepth());
+            blocked[1].unblock();
+            waiting.waitUntilStarted();
+            for (int i = 0; i < workers; i++) {
+                blocked[i].unblock();
+            }
+            waitForLog(log, workers + 1);
+            check(log.indexOf("blocked1") < log.indexOf("waiting"),
+                  "Order was " + log);
+            check(manager.getQueueDepth() == 0,
+                  "Queue depth " + manager.getQueueDepth());
+        } finally {
+            SetupManager.setMaxWorkers(1);
+            manager.stop();
+        }
+    }
+}
@@ -81,6 +81,7 @@ import com.hdcookbook.grin.features.SETimer;
 import com.hdcookbook.grin.features.SETranslatorModel;
 import com.hdcookbook.grin.features.SESetTarget;
 import com.hdcookbook.grin.features.SESrcOver;
+import com.hdcookbook.grin.features.SECachedLayer;
 import com.hdcookbook.grin.features.SEText;
 import com.hdcookbook.grin.features.SETranslator;
 import com.hdcookbook.grin.input.SECommandRCHandler;
@@ -106,6 +107,7 @@ public abstract class AbstractSEShowVisitor implements SEShowVisitor {
     public void visitImageSequence(SEImageSequence feature) {}
     public void visitSetTarget(SESetTarget feature) {}
     public void visitSrcOver(SESrcOver feature) {}
+    public void visitCachedLayer(SECachedLayer feature) {}
     public void visitText(SEText feature) {}
     public void visitTranslator(SETranslator feature){}
     public void visitInterpolatedModel(SEInterpolatedModel feature) {}
@@ -62,6 +62,51 @@ package com.hdcookbook.grin;
  */
 
 public class MosaicSpec {    
+
+    /**
+     * Value for packing that selects first-fit packing.  Each image is
+     * put at the first place, scanning left to right and then top to
+     * bottom, where it doesn't overlap an image that's already placed.
+     * This is the default.
+     **/
+    public final static int PACKING_FIRST_FIT = 0;
+
+    /**
+     * Value for packing that selects MaxRects packing.  The free space
+     * is tracked as a list of maximal free rectangles, and each image
+     * goes in the free rectangle that leaves the shortest leftover side
+     * ("best short side fit").
+     **/
+    public final static int PACKING_MAXRECTS = 1;
+
+    /**
+     * Value for packing that selects skyline packing.  The top edge of
+     * the placed images is tracked as a skyline, and each image goes
+     * where its bottom edge will be highest up (bottom-left rule).
+     **/
+    public final static int PACKING_SKYLINE = 2;
+
+    /**
+     * Value for packing that selects guillotine packing.  The free space
+     * is tracked as a set of disjoint rectangles, and each image goes in
+     * the smallest one that fits; the remainder is split in two along
+     * the shorter leftover axis.
+     **/
+    public final static int PACKING_GUILLOTINE = 3;
+
+    /**
+     * Value for packing that tries all of the packing algorithms, and
+     * keeps the one that gives the smallest mosaic.
+     **/
+    public final static int PACKING_BEST = 4;
+
+    /**
+     * The names of the packing algorithms, as used in a mosaics file,
+     * indexed by the PACKING_ constants.
+     **/
+    public final static String[] PACKING_NAMES = {
+        "first_fit", "maxrects", "skyline", "guillotine", "best"
+    };
     
     public String name;
     public int minWidth = 128;
@@ -70,6 +115,12 @@ public class MosaicSpec {
     public int maxPixels = 4963776;
     public int numWidths = 65;
 
+    /**
+     * The algorithm used to pack images into the mosaic.  This is one of
+     * the PACKING_ constants.
+     **/
+    public int packing = PACKING_FIRST_FIT;
+
     /**
      * If set true, this mosaic will accept all images used in shows
      * that aren't part of another mosaic.
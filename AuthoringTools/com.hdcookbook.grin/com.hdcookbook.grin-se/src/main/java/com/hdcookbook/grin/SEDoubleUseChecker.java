@@ -69,6 +69,7 @@ import com.hdcookbook.grin.features.SEImageSequence;
 import com.hdcookbook.grin.features.SEInterpolatedModel;
 import com.hdcookbook.grin.features.SESetTarget;
 import com.hdcookbook.grin.features.SESrcOver;
+import com.hdcookbook.grin.features.SECachedLayer;
 import com.hdcookbook.grin.features.SEText;
 import com.hdcookbook.grin.features.SETranslator;
 import java.io.IOException;
@@ -230,6 +231,11 @@ public class SEDoubleUseChecker extends AbstractSEShowVisitor {
         SEShow.acceptFeature(this, feature.getPart());
     }
 
+    public void visitCachedLayer(SECachedLayer feature) {
+        addActive(feature);
+        SEShow.acceptFeature(this, feature.getPart());
+    }
+
     public void visitText(SEText feature) {
         addActive(feature);
     }
@@ -60,6 +60,8 @@ import com.hdcookbook.grin.features.Group;
 import com.hdcookbook.grin.features.Modifier;
 import com.hdcookbook.grin.input.RCHandler;
 import com.hdcookbook.grin.io.builders.BackgroundSpec;
+import com.hdcookbook.grin.util.CommandQueue;
+import com.hdcookbook.grin.util.SECommandQueue;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -93,6 +95,7 @@ public class SEShow extends Show {
     private boolean noShowFile = false;
 
     private String binaryGrinFileName = null;   // null means "use default"
+    private String extensionFactoryName = null; // null means "use default"
     private boolean isBinary = false;   
         // This is set to true if this SEShow is created from a binary file.
 
@@ -109,6 +112,16 @@ public class SEShow extends Show {
         super(director);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * On SE, we use a queue that doesn't take out locks.
+     **/
+    @Override
+    protected CommandQueue makeCommandQueue() {
+        return new SECommandQueue(64);
+    }
+
     /** 
      * Set a flag to indicate that this show file was read from a binary
      * file.  The double-use checker won't be run on such a show file.
@@ -343,6 +356,35 @@ public class SEShow extends Show {
         return binaryGrinFileName;
     }
 
+    /**
+     * Sets the name of the ExtensionFactory class that the GRIN compiler
+     * should generate, if you want to override the default.  This lets
+     * a show without a java_generated_class have a factory.
+     *
+     * @param className  The fully-qualified class name
+     *
+     * @see com.hdcookbook.grin.io.binary.ExtensionFactory
+     **/
+    public void setExtensionFactoryName(String className) {
+        extensionFactoryName = className;
+    }
+
+    /**
+     * Gets the name of the ExtensionFactory class that the GRIN compiler
+     * should generate.  By default, it's the java_generated_class name
+     * with "Factory" appended.
+     *
+     * @return the class name, or null if no factory should be generated
+     *
+     * @see com.hdcookbook.grin.io.binary.ExtensionFactory
+     **/
+    public String getExtensionFactoryName() {
+        if (extensionFactoryName != null) {
+            return extensionFactoryName;
+        }
+        return getShowCommands().getFactoryClassName();
+    }
+
     /**
      * Called by the ShowParser when a new mosaic or mosaic_hint is found.
      *
@@ -137,6 +137,22 @@ public class SEShowCommands  {
     public String getClassName() {
         return className;
     }
+
+    /**
+     * Get the name of the ExtensionFactory that's generated along with
+     * the show class.  It's the show class name with "Factory" appended.
+     *
+     * @return the factory class name, or null if the show class name 
+     *         isn't set.
+     *
+     * @see com.hdcookbook.grin.io.binary.ExtensionFactory
+     */
+    public String getFactoryClassName() {
+        if (className == null) {
+            return null;
+        }
+        return className + "Factory";
+    }
     
     public SEShowCommand addNewCommand() {
         SEShowCommand cmd = new SEShowCommand(show, this, commands.size());
@@ -64,6 +64,8 @@ import java.io.IOException;
 public class GrinCompiler {
 
     private boolean headless = false;
+    private int threads = 1;
+    private boolean rawImages = false;
     
     public GrinCompiler() {
     }
@@ -72,6 +74,26 @@ public class GrinCompiler {
         headless = v;
     }
 
+    /**
+     * Set the number of threads used to make image mosaics.  The
+     * default is 1; 0 means one thread per available processor.
+     *
+     * @see com.hdcookbook.grin.mosaic.MosaicMaker#setThreads(int)
+     **/
+    public void setThreads(int v) {
+        threads = v;
+    }
+
+    /**
+     * Set whether image mosaics are written as GRIN raw images instead
+     * of PNG images.  The default is false.
+     *
+     * @see com.hdcookbook.grin.mosaic.MosaicMaker#setRawImages(boolean)
+     **/
+    public void setRawImages(boolean v) {
+        rawImages = v;
+    }
+
     /**
      * Applies optimization to a given SEShow.
      * Currently this converts all images into larger image mosaics.
@@ -89,6 +111,8 @@ public class GrinCompiler {
                                 + " not found.");
         }
         MosaicMaker mm = new MosaicMaker(shows, f, headless);
+        mm.setThreads(threads);
+        mm.setRawImages(rawImages);
         mm.init();
         mm.makeMosaics();        
         mm.destroy();
@@ -168,15 +168,63 @@ public class SEImageSequence extends ImageSequence
         this.placements = placements;
     }
 
+    public Rectangle[] getPlacements() {
+        return placements;
+    }
+
     public InterpolatedModel getScalingModel() {
         return scalingModel;
     }
+
+    /**
+     * Ask for this sequence to be stored as a key frame plus delta tiles
+     * of the given size when the show's mosaics are made.  
+     *
+     * @param tileSize  The width and height of a tile, or 0 to store
+     *                  every frame
+     *
+     * @see com.hdcookbook.grin.mosaic.MosaicMaker
+     **/
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Set the delta tiles of this sequence.  This is called by the
+     * mosaic maker, once it has compared the frames.
+     *
+     * @param tiles     For each frame, the tiles that differ from the 
+     *                  previous frame, relative to the frame's placement,
+     *                  or null to store every frame
+     * @param names     The image name of each tile
+     **/
+    public void setDeltaTiles(Rectangle[][] tiles, String[][] names) {
+        this.deltaTiles = tiles;
+        this.deltaTileNames = names;
+    }
+
+    public Rectangle[][] getDeltaTiles() {
+        return deltaTiles;
+    }
+
+    public String[][] getDeltaTileNames() {
+        return deltaTileNames;
+    }
     
     public void writeInstanceData(GrinDataOutputStream out) throws IOException 
     {
        out.writeSuperClassData(this);
        out.writeSharedRectangleArray(placements);
-       out.writeStringArray(getFileNames());
+       String[] names = getFileNames();
+       if (deltaTiles != null) {
+           names = new String[names.length];
+           names[0] = fileNames[0];     // Only the key frame is kept whole
+       }
+       out.writeStringArray(names);
        out.writeBoolean(getRepeat());
        out.writeBoolean(model != null);
        if (model != null) {
@@ -188,6 +236,14 @@ public class SEImageSequence extends ImageSequence
        if (scalingModel != null) {
            out.writeFeatureReference(scalingModel);
        }  
+       out.writeBoolean(deltaTiles != null);
+       if (deltaTiles != null) {
+           out.writeInt(tileSize);
+           for (int i = 0; i < deltaTiles.length; i++) {
+               out.writeSharedRectangleArray(deltaTiles[i]);
+               out.writeStringArray(deltaTileNames[i]);
+           }
+       }
     }
 
     public String getRuntimeClassName() {
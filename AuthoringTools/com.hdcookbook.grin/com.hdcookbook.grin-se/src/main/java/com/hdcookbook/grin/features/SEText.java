@@ -129,6 +129,14 @@ public class SEText extends Text implements SENode, SEScalableNode {
     public void setBackground(Color background) {
         this.background = background;
     }    
+
+    /**
+     * Set whether this text is drawn into images during setup, instead
+     * of with drawString() each time it's painted.
+     **/
+    public void setPreRender(boolean preRender) {
+        this.preRender = preRender;
+    }
    
     public int getXArg() {
         return xArg;
@@ -170,6 +178,7 @@ public class SEText extends Text implements SENode, SEScalableNode {
        }
        out.writeInt(loopCount);
        out.writeColor(getBackground());                 
+       out.writeBoolean(preRender);
     }
 
     public String getRuntimeClassName() {
@@ -121,6 +121,7 @@ public class ShowBuilder {
 
     private String[] stickyImages = null;
     private String binaryGrinFileName = null;
+    private String extensionFactoryName = null;
 
     private ExtensionParser extensionParser;
     private SEGroup   showTopGroup      = null;
@@ -301,6 +302,13 @@ public class ShowBuilder {
         this.binaryGrinFileName = fileName;
     }
 
+    /**
+     * Called when an "extension_factory_setting" clause is encountered.
+     **/
+    public void setExtensionFactoryName(String className) {
+        this.extensionFactoryName = className;
+    }
+
     /**
      * Called when a "sticky images" clause is enocuntered.
      **/
@@ -441,6 +449,9 @@ public class ShowBuilder {
         if (binaryGrinFileName != null) {
             show.setBinaryGrinFileName(binaryGrinFileName);
         }
+        if (extensionFactoryName != null) {
+            show.setExtensionFactoryName(extensionFactoryName);
+        }
         for (DeferredBuilder builder : deferredBuilders) {
             builder.finishBuilding(show);
         }
@@ -54,6 +54,7 @@
 
 package com.hdcookbook.grin.io.binary;
 
+import java.awt.Color;
 import java.awt.Rectangle;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
@@ -87,6 +88,7 @@ import com.hdcookbook.grin.features.GuaranteeFill;
 import com.hdcookbook.grin.features.ImageSequence;
 import com.hdcookbook.grin.features.SetTarget;
 import com.hdcookbook.grin.features.SrcOver;
+import com.hdcookbook.grin.features.CachedLayer;
 import com.hdcookbook.grin.features.Text;
 import com.hdcookbook.grin.features.InterpolatedModel;
 import com.hdcookbook.grin.features.Translator;
@@ -122,6 +124,11 @@ import static com.hdcookbook.grin.io.binary.Constants.*;
  *      version_number                     integer
  *      StringArray_info()
  *      IntArrays_info()
+ *      Rectangles_info()
+ *      Rectangle_Arrays_info()
+ *      Colors_info()
+ *      String_Arrays_info()
+ *      ExtensionClasses_info()
  *      Show_Setup_info()
  *      Nodes_declarations()
  *      Nodes_contents()
@@ -145,6 +152,24 @@ import static com.hdcookbook.grin.io.binary.Constants.*;
  *      }
  *  }
  *  
+ *  Colors_info {   // Saves all Color values needed in this binary file,
+ *                  // as RGBA integers.  Entry 0 is null.
+ *      array_length        integer
+ *      for (i = 1; i < array_length; i++) {
+ *          value                           integer
+ *      }
+ *  }
+ *
+ *  String_Arrays_info {   // Saves all String[] values needed in this 
+ *                         // binary file, as indices into StringArray_info.
+ *                         // Entry 0 is null.
+ *      array_length        integer
+ *      for (i = 1; i < array_length; i++) {
+ *          length                          integer
+ *          values                          integer[length]
+ *      }
+ *  }
+ *  
  *  Show_setup_info() {
  *      show_segment_stack_depth           integer
  *      draw_targets                       String[]
@@ -216,6 +241,16 @@ public class GrinBinaryWriter {
     // List of shared rectangle arrays
     //
     private IndexedSet<ObjectArray<Rectangle>> sharedRectangleArrays;
+
+    //
+    // List of shared colors
+    //
+    private IndexedSet<Color> sharedColors;
+
+    //
+    // List of shared string arrays
+    //
+    private IndexedSet<ObjectArray<String>> sharedStringArrays;
     
     /**
      * List of class names, both built-ins and extensions.
@@ -277,6 +312,8 @@ public class GrinBinaryWriter {
         sharedRectangles = new IndexedSet();
         sharedRectangleArrays = new IndexedSet();
         sharedCommandArrays = new IndexedSet();
+        sharedColors = new IndexedSet();
+        sharedStringArrays = new IndexedSet();
 
             // For the constant data types, we make entry 0 be null.
             // This saves having an "is null" flag on every other element.
@@ -285,6 +322,8 @@ public class GrinBinaryWriter {
         sharedRectangles.getIndex(null);
         sharedRectangleArrays.getIndex(new ObjectArray<Rectangle>(null));
         sharedCommandArrays.getIndex(new ObjectArray<Command>(null));
+        sharedColors.getIndex(null);
+        sharedStringArrays.getIndex(new ObjectArray<String>(null));
     }
     
     /**
@@ -387,6 +426,19 @@ public class GrinBinaryWriter {
                         new ObjectArray<Rectangle>(array));
     }
 
+    int getColorIndex(Color c) {
+        return sharedColors.getIndex(c);
+    }
+
+    int getStringArrayIndex(String[] array) {
+        if (array != null) {
+            for (int i = 0; i < array.length; i++) {
+                getStringIndex(array[i]);
+            }
+        }
+        return sharedStringArrays.getIndex(new ObjectArray<String>(array));
+    }
+
     int getCommandArrayIndex(Command[] array) throws IOException {
         Command[] copy = null;
         if (array != null) {
@@ -515,6 +567,10 @@ public class GrinBinaryWriter {
         writeRectangleArrayConstants(dos, (ObjectArray<Rectangle>[]) 
                                     sharedRectangleArrays.toArray(
                                         ObjectArray.class));
+        writeColorConstants(dos, (Color[]) sharedColors.toArray(Color.class));
+        writeStringArrayConstants(dos, (ObjectArray<String>[])
+                                    sharedStringArrays.toArray(
+                                        ObjectArray.class));
         writeExtensionClassNames(dos);
 
         dos.writeString(seShowCommands.getClassName());
@@ -570,6 +626,7 @@ public class GrinBinaryWriter {
         registerBuiltInClass(GUARANTEE_FILL_IDENTIFIER, GuaranteeFill.class.getName()); 
         registerBuiltInClass(SET_TARGET_IDENTIFIER, SetTarget.class.getName());
         registerBuiltInClass(SEGMENT_IDENTIFIER, Segment.class.getName());
+        registerBuiltInClass(CACHED_LAYER_IDENTIFIER, CachedLayer.class.getName());
     }
 
     private void registerBuiltInClass(int identifier, String className) 
@@ -610,7 +667,8 @@ public class GrinBinaryWriter {
         for (int i = extensionIndex; i < list.length; i++) {
             System.err.println("              " + list[i]);
         }
-        System.err.println("          Be sure your obfuscator is set to preserve these class names.");
+        System.err.println("          Be sure your obfuscator is set to preserve these class names,");
+        System.err.println("          or give the xlet's GrinBinaryReader an ExtensionFactory.");
         System.err.println();
 
         for (int i = extensionIndex; i < list.length; i++) {
@@ -743,6 +801,37 @@ public class GrinBinaryWriter {
         }       
     }
 
+    private void writeColorConstants(DataOutputStream out, Color[] list)
+        throws IOException 
+    {
+        out.writeByte(COLOR_CONSTANTS_IDENTIFIER);     
+        out.writeInt(list.length);
+        assert list[0] == null;
+        for (int i = 1; i < list.length; i++) {
+            Color c = list[i];
+            assert c != null;
+            out.writeInt(c.getRGB());
+                // That method really gets RGBA
+        }       
+    }
+
+    private void writeStringArrayConstants
+                (DataOutputStream out, ObjectArray<String>[] list) 
+        throws IOException 
+    {
+        out.writeByte(STRING_ARRAY_CONSTANTS_IDENTIFIER);     
+        out.writeInt(list.length);
+        assert list[0].array == null;
+        for (int i = 1; i < list.length; i++) {
+            String[] array = list[i].array;
+            assert array != null;
+            out.writeInt(array.length);
+            for (int j = 0; j < array.length; j++) {
+                out.writeInt(getStringIndex(array[j]));
+            }
+        }       
+    }
+
     private void writeCommandArrayConstants
                 (DataOutputStream out, ObjectArray<Command>[] list) 
         throws IOException 
@@ -781,6 +870,78 @@ public class GrinBinaryWriter {
        w.close();
    }
    
+   /**
+    * Writes out an auto-generated ExtensionFactory for the show, which
+    * lets GrinBinaryReader instantiate the show's command class and its
+    * extension classes without reflection.  The factory is generated if 
+    * the show has a java_generated_class, or an extension_factory setting.
+    * If the show has a java_generated_class, that class's getInstanceOf()
+    * already creates the extensions, so the factory uses it.
+    *
+    * @see com.hdcookbook.grin.io.binary.ExtensionFactory
+    * @see SEShow#getExtensionFactoryName()
+    */
+   public void writeExtensionFactoryClass(SEShow show, File file)
+           throws IOException 
+   {
+       SEShowCommands cmds = show.getShowCommands();
+       String className = show.getExtensionFactoryName();
+       if (className == null) {
+           file.delete();  // Just in case an old version was there
+           return;
+       }
+       String commandsName = cmds.getClassName();
+       int dot = className.lastIndexOf('.');
+       StringBuffer generated = new StringBuffer();
+       if (dot >= 0) {
+           generated.append("package " + className.substring(0, dot) 
+                            + ";\n\n");
+       }
+       generated.append("/**\n");
+       if (commandsName == null) {
+           generated.append(" * Creates the instances of the show's "
+                            + "extension classes.\n");
+       } else {
+           generated.append(" * Creates the instances of " + commandsName 
+                            + " and the\n");
+           generated.append(" * show's extension classes.\n");
+       }
+       generated.append(" * Generated by the GRIN compiler, do not edit.\n");
+       generated.append(" */\n");
+       generated.append("public class " + className.substring(dot + 1) 
+                        + " implements " + ExtensionFactory.class.getName()
+                        + " {\n\n");
+       String helperName = GrinXHelper.class.getName();
+       if (commandsName == null) {
+           generated.append("    public " + helperName
+                       + " newShowCommands(com.hdcookbook.grin.Show show) {\n");
+           generated.append("        return null;\n");
+           generated.append("    }\n\n");
+           generated.append(generateExtensionCode());
+       } else {
+               // The commands class has the switch statement already
+           generated.append("    private " + helperName + " commands;\n\n");
+           generated.append("    public " + helperName
+                       + " newShowCommands(com.hdcookbook.grin.Show show) {\n");
+           generated.append("        commands = new " + commandsName 
+                            + "(show);\n");
+           generated.append("        return commands;\n");
+           generated.append("    }\n\n");
+           generated.append("    public " + Node.class.getName() 
+                        + " getInstanceOf(com.hdcookbook.grin.Show show, "
+                        + "int id) throws java.io.IOException {\n");
+           generated.append("        if (commands == null) {\n");
+           generated.append("            newShowCommands(show);\n");
+           generated.append("        }\n");
+           generated.append("        return commands.getInstanceOf(show, id);\n");
+           generated.append("    }\n");
+       }
+       generated.append("}\n");
+       FileWriter w = new FileWriter(file);
+       w.write(generated.toString());
+       w.close();
+   }
+   
    private String generateExtensionCode() {     
 
        // Generate the switch statement used to parse the node type in
@@ -106,13 +106,7 @@ public class GrinDataOutputStream extends DataOutputStream {
     * @throws java.io.IOException if IO error occurs.
     */
    public void writeColor(Color color) throws IOException {
-       if (color == null) {
-           writeByte(Constants.NULL);
-       } else {
-           writeByte(Constants.NON_NULL);
-           writeInt(color.getRGB());
-                // That method really gets RGBA
-       }    
+       writeCompactIndex(binaryWriter.getColorIndex(color));
    }
    
    /**
@@ -121,15 +115,7 @@ public class GrinDataOutputStream extends DataOutputStream {
     * @throws java.io.IOException if IO error occurs.
     */
    public void writeRectangle(Rectangle rect) throws IOException {
-       if (rect == null) {
-           writeByte(Constants.NULL);
-       } else {
-           writeByte(Constants.NON_NULL);   
-           writeDouble(rect.getX());
-           writeDouble(rect.getY());
-           writeDouble(rect.getWidth());
-           writeDouble(rect.getHeight());
-       }
+       writeCompactIndex(binaryWriter.getRectangleIndex(rect));
    }
    
    /**
@@ -205,14 +191,35 @@ public class GrinDataOutputStream extends DataOutputStream {
     * @throws java.io.IOException if IO error occurs.
     */
    public void writeStringArray(String[] array) throws IOException {
-       if (array == null) {
-           writeNull();
+       writeCompactIndex(binaryWriter.getStringArrayIndex(array));
+   }
+
+   //
+   // Write an index into one of the constant tables, where index 0 is 
+   // null.  Null is written as the one-byte Constants.NULL marker, and 
+   // other indices take one byte if they're under 0x80, two under 0x4000,
+   // three under 0x200000, four under 0x10000000, and five otherwise.
+   // The first byte is never Constants.NULL for a non-null index.
+   // GrinDataInputStream.readCompactIndex() reads it back.
+   //
+   private void writeCompactIndex(int index) throws IOException {
+       if (index == 0) {
+           writeByte(Constants.NULL);
+       } else if (index < 0x80) {
+           writeByte(index);
+       } else if (index < 0x4000) {
+           writeByte(0x80 | (index >> 8));
+           writeByte(index);
+       } else if (index < 0x200000) {
+           writeByte(0xc0 | (index >> 16));
+           writeShort(index);
+       } else if (index < 0x10000000) {
+           writeByte(0xe0 | (index >> 24));
+           writeByte(index >> 16);
+           writeShort(index);
        } else {
-           writeNonNull();
-           writeInt(array.length);
-           for (int i = 0; i < array.length; i++) {
-              writeString(array[i]);
-           }
+           writeByte(0xf0);
+           writeInt(index);
        }
    }
 
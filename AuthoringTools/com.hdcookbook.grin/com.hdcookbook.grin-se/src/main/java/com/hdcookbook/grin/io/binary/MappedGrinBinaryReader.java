@@ -0,0 +1,462 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.io.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.hdcookbook.grin.Feature;
+import com.hdcookbook.grin.Node;
+import com.hdcookbook.grin.Segment;
+import com.hdcookbook.grin.Show;
+import com.hdcookbook.grin.commands.Command;
+import com.hdcookbook.grin.input.RCHandler;
+import com.hdcookbook.grin.util.Debug;
+
+/**
+ * A reader for binary show files that maps the file into memory, and
+ * only reads the contents of a show's nodes when they're needed.  This
+ * is meant for JavaSE tools that work with large shows, like grinview
+ * or a tool that validates a show; the GRIN runtime on a player
+ * uses GrinBinaryReader.
+ * <p>
+ * Reading a show only constructs the show's nodes and builds an index
+ * of where each node's contents are in the file.  The names of the
+ * public segments, features and RC handlers are read, too, so that
+ * they can be looked up.  The contents of a segment, and of the features,
+ * RC handlers and commands it refers to, are read when the segment is
+ * first activated.  A public feature, RC handler or named command is
+ * read when it's looked up in the show.  Tools that walk the scene
+ * graph call Show.loadNode(Object), or loadAll().
+ * <p>
+ * This relies on the contents of each segment, feature and RC handler
+ * starting with the data read by GrinDataInputStream.readSuperClassData(),
+ * as is recommended by the Node interface.
+ *
+ * @see com.hdcookbook.grin.Show#loadNode(Object)
+ **/
+public class MappedGrinBinaryReader extends GrinBinaryReader 
+                                    implements LazyLoader 
+{
+    private ByteBuffer buffer;
+
+    //
+    // The index of node contents.  Nodes are numbered in the order
+    // features, RC handlers, segments, commands, and within those in
+    // the order of the show's arrays.
+    //
+    private IdentityHashMap<Object, Integer> nodeNumbers
+                = new IdentityHashMap<Object, Integer>();
+    private List<Object> nodes = new ArrayList<Object>();
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    private boolean[] read = new boolean[64];   // Contents have been read
+    private boolean[] loaded = new boolean[64]; // ... and initialized
+    private int numLoaded = 0;
+
+    //
+    // Non-null while we're loading nodes.  Nodes that are referred to
+    // by a node we read are added to the end.
+    //
+    private LinkedList<Object> toLoad = null;
+
+    /**
+     * Constructs a MappedGrinBinaryReader for the given file.
+     *
+     * @param file      A .grin file
+     * @throws IOException if the file can't be mapped
+     **/
+    public MappedGrinBinaryReader(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Constructs a MappedGrinBinaryReader for the given file.
+     *
+     * @param file      A .grin file
+     * @param loader    An ClassLoader to use for finding needed classes to 
+     *                  construct the Show object, or null.
+     * @throws IOException if the file can't be mapped
+     *
+     * @see GrinBinaryReader#GrinBinaryReader(InputStream, ClassLoader)
+     **/
+    public MappedGrinBinaryReader(File file, ClassLoader loader) 
+            throws IOException 
+    {
+        this(map(file), loader);
+    }
+
+    private MappedGrinBinaryReader(ByteBuffer buffer, ClassLoader loader) {
+        super(new ByteBufferInputStream(buffer), loader);
+        this.buffer = buffer;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+                               channel.size());
+                // The mapping stays valid after the channel is closed.
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reconstructs the Show object passed in as argument.  The contents
+     * of the show's nodes are read as they're needed.
+     *
+     * @param show      An empty Show object to reconstruct.
+     * @throws IOException if binary data parsing fails.
+     */
+    public void readShow(Show show) throws IOException {
+        long start = 0;
+        if (Debug.LEVEL > 0) {
+            start = System.currentTimeMillis();
+        }
+        super.readShow(show);
+        show.setLazyLoader(this);
+        if (Debug.LEVEL > 0) {
+            Debug.println("Indexed " + nodes.size() + " nodes of show in "
+                          + (System.currentTimeMillis() - start) + " ms.");
+        }
+    }
+
+    /**
+     * Read the contents of every node of the show that hasn't been read
+     * yet.  This is for tools that need to look at the whole show.
+     **/
+    public void loadAll() {
+        for (int i = 0; i < nodes.size(); i++) {
+            show.loadNode(nodes.get(i));
+        }
+    }
+
+    /**
+     * Get the number of nodes in the show
+     **/
+    public synchronized int getNumNodes() {
+        return nodes.size();
+    }
+
+    /**
+     * Get the number of nodes whose contents have been read
+     **/
+    public synchronized int getNumLoaded() {
+        return numLoaded;
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    public synchronized boolean isLoaded(Object node) {
+        Integer num = nodeNumbers.get(node);
+        return num == null || loaded[num.intValue()];
+            // Nodes that aren't in the file, like the commands a show
+            // makes for itself, don't need loading.
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The nodes are read with our lock held, but they're initialized
+     * without it, since initializing a feature can take a while, e.g. 
+     * to look up its images.  The show calls this with the show lock 
+     * held, so another thread can't load the same nodes meanwhile.  The 
+     * nodes only count as loaded once they've been initialized.
+     **/
+    public void load(Object node, boolean initialize) {
+        ArrayList<Integer> newNodes = new ArrayList<Integer>();
+        ArrayList<Integer> newSegments = new ArrayList<Integer>();
+        ArrayList<Integer> newFeatures = new ArrayList<Integer>();
+        synchronized(this) {
+            if (isLoaded(node)) {
+                return;
+            }
+            toLoad = new LinkedList<Object>();
+            toLoad.add(node);
+            try {
+                while (!toLoad.isEmpty()) {
+                    Object n = toLoad.removeFirst();
+                    Integer num = nodeNumbers.get(n);
+                    if (num == null || read[num.intValue()]) {
+                        continue;
+                    }
+                    read[num.intValue()] = true;
+                    newNodes.add(num);
+                    readNode(n, num.intValue());
+                    if (n instanceof Segment) {
+                        newSegments.add(num);
+                    } else if (n instanceof Feature) {
+                        newFeatures.add(num);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("Error reading " + node + ":  " 
+                                           + ex, ex);
+            } finally {
+                toLoad = null;
+            }
+        }
+        try {
+            if (initialize) {
+                // Same order as Show.initialize()
+                Collections.sort(newSegments);
+                Collections.sort(newFeatures);
+                for (Integer num : newSegments) {
+                    ((Segment) nodes.get(num.intValue())).initialize();
+                }
+                for (Integer num : newFeatures) {
+                    ((Feature) nodes.get(num.intValue())).initialize();
+                }
+            }
+        } finally {
+            synchronized(this) {
+                for (Integer num : newNodes) {
+                    loaded[num.intValue()] = true;
+                }
+                numLoaded += newNodes.size();
+            }
+        }
+    }
+
+    private void readNode(Object node, int num) throws IOException {
+        ByteBuffer b = buffer.duplicate();
+        b.limit(offsets[num] + lengths[num]);
+        b.position(offsets[num]);
+        GrinDataInputStream in 
+            = new GrinDataInputStream(new ByteBufferInputStream(b), this);
+        ((Node) node).readInstanceData(in, lengths[num]);
+        if (Debug.ASSERT && b.hasRemaining()) {
+            Debug.assertFail("Expected " + lengths[num] + " bytes for " 
+                             + node + ", " + b.remaining() + " left over");
+        }
+    }
+
+    //
+    // Instead of reading the contents of the nodes, just record where
+    // they are.
+    //
+    void readContents(GrinDataInputStream in, Object[] list) 
+       throws IOException 
+    {
+        for (int i = 0; i < list.length; i++) {  
+            Object node = list[i];
+            if (node != null) {
+                int length = in.readInt();
+                int offset = buffer.position();
+                    // GrinDataInputStream doesn't buffer, so this is
+                    // where the node's contents start.
+                addNode(node, offset, length);
+                if (length > 0 && !(node instanceof Command)) {
+                    readName(node);
+                }
+                buffer.position(offset + length);
+            }
+        }
+    }
+
+    private void addNode(Object node, int offset, int length) {
+        int num = nodes.size();
+        if (num == offsets.length) {
+            int[] o = new int[num * 2];
+            System.arraycopy(offsets, 0, o, 0, num);
+            offsets = o;
+            int[] l = new int[num * 2];
+            System.arraycopy(lengths, 0, l, 0, num);
+            lengths = l;
+            boolean[] r = new boolean[num * 2];
+            System.arraycopy(read, 0, r, 0, num);
+            read = r;
+            boolean[] b = new boolean[num * 2];
+            System.arraycopy(loaded, 0, b, 0, num);
+            loaded = b;
+        }
+        offsets[num] = offset;
+        lengths[num] = length;
+        nodes.add(node);
+        nodeNumbers.put(node, new Integer(num));
+    }
+
+    //
+    // Read the start of what GrinDataInputStream.readSuperClassData() 
+    // reads, so the node can be looked up by name before it's loaded.
+    //
+    private void readName(Object node) throws IOException {
+        boolean isPublic = buffer.get() != 0;
+        if (!isPublic && !debuggable) {
+            return;
+        }
+        String name = getStringFromReference(buffer.getInt());
+        if (node instanceof Feature) {
+            ((Feature) node).setName(name);
+            if (isPublic) {
+                publicFeatures.put(name, node);
+            }
+        } else if (node instanceof RCHandler) {
+            ((RCHandler) node).setName(name);
+            if (isPublic) {
+                publicRCHandlers.put(name, node);
+            }
+        } else if (node instanceof Segment) {
+            ((Segment) node).setName(name);
+            if (isPublic) {
+                publicSegments.put(name, node);
+            }
+        }
+    }
+
+    //
+    // The references a node makes while it's being read are how we
+    // find the nodes that need to be loaded with it.  References to
+    // segments aren't followed.
+    //
+
+    private void reference(Object node) {
+        if (toLoad != null && node != null) {
+            toLoad.add(node);
+        }
+    }
+
+    Feature getFeatureFromIndex(int index) throws IOException {
+        Feature f = super.getFeatureFromIndex(index);
+        reference(f);
+        return f;
+    }
+
+    RCHandler getRCHandlerFromIndex(int index) throws IOException {
+        RCHandler h = super.getRCHandlerFromIndex(index);
+        reference(h);
+        return h;
+    }
+
+    Command getCommandFromIndex(int index) throws IOException {
+        Command c = super.getCommandFromIndex(index);
+        reference(c);
+        return c;
+    }
+
+    Command[] getCommandArrayFromReference(int index) throws IOException {
+        Command[] commands = super.getCommandArrayFromReference(index);
+        if (commands != null) {
+            for (int i = 0; i < commands.length; i++) {
+                reference(commands[i]);
+            }
+        }
+        return commands;
+    }
+
+    Command[] getCommandArrayFromIndex(int index) throws IOException  {
+        Command[] commands = super.getCommandArrayFromIndex(index);
+        if (commands != null) {
+            for (int i = 0; i < commands.length; i++) {
+                reference(commands[i]);
+            }
+        }
+        return commands;
+    }
+
+    //
+    // An InputStream that reads from a ByteBuffer.
+    //
+    private static class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = Math.min(len, buffer.remaining());
+            if (n == 0) {
+                return -1;
+            }
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
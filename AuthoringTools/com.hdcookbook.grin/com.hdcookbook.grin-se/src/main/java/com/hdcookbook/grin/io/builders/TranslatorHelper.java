@@ -85,6 +85,7 @@ import com.hdcookbook.grin.features.SEImageSequence;
 import com.hdcookbook.grin.features.SEMenuAssembly;
 import com.hdcookbook.grin.features.SESetTarget;
 import com.hdcookbook.grin.features.SESrcOver;
+import com.hdcookbook.grin.features.SECachedLayer;
 import com.hdcookbook.grin.features.SEText;
 import com.hdcookbook.grin.features.SETranslator;
 import com.hdcookbook.grin.input.SECommandRCHandler;
@@ -199,6 +200,9 @@ public class TranslatorHelper implements DeferredBuilder {
             public void visitSrcOver(SESrcOver feature) {
                 SEShow.acceptFeature(this, feature.getPart());
             }
+            public void visitCachedLayer(SECachedLayer feature) {
+                SEShow.acceptFeature(this, feature.getPart());
+            }
             public void visitText(SEText feature) {
                 // Do nothing, because a text feature doesn't know its
                 // upper-left hand corner without font metrics; we'd really
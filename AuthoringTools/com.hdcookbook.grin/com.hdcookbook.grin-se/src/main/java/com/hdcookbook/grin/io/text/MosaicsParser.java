@@ -122,6 +122,18 @@ public class MosaicsParser {
         builder.finishBuilding();
     }
 
+    private int parsePacking() throws IOException {
+        String tok = lexer.getString();
+        for (int i = 0; i < MosaicSpec.PACKING_NAMES.length; i++) {
+            if (MosaicSpec.PACKING_NAMES[i].equals(tok)) {
+                return i;
+            }
+        }
+        lexer.reportError("Packing algorithm expected, \"" + tok 
+                          + "\" seen.");
+        return -1;      // not reached
+    }
+
     private void parseMosaic() throws IOException {
         String fileName = lexer.getString();
         MosaicSpec spec = null;
@@ -146,6 +158,8 @@ public class MosaicsParser {
                 spec.minWidth = lexer.getInt();
             } else if ("num_widths".equals(tok)) {
                 spec.numWidths = lexer.getInt();
+            } else if ("packing".equals(tok)) {
+                spec.packing = parsePacking();
             } else if ("take_all_images".equals(tok)) {
                 spec.takeAllImages = lexer.getBoolean();
             } else if ("image_files".equals(tok)) {
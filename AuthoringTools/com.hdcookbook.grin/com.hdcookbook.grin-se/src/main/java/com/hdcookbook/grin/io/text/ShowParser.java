@@ -87,6 +87,7 @@ import com.hdcookbook.grin.features.SEImageSequence;
 import com.hdcookbook.grin.features.SEMenuAssembly;
 import com.hdcookbook.grin.features.SESetTarget;
 import com.hdcookbook.grin.features.SESrcOver;
+import com.hdcookbook.grin.features.SECachedLayer;
 import com.hdcookbook.grin.features.SEText;
 import com.hdcookbook.grin.features.SETranslator;
 import com.hdcookbook.grin.features.SETranslatorModel;
@@ -292,6 +293,8 @@ public class ShowParser {
                 parseStickyImages();
             } else if ("binary_grin_file".equals(tok)) {
                 parseBinaryGrinFile();
+            } else if ("extension_factory".equals(tok)) {
+                parseExtensionFactory();
             } else if ("grinview_background".equals(tok)) {
                 parseGrinviewBackground();
             } else {
@@ -433,6 +436,12 @@ public class ShowParser {
         builder.setBinaryGrinFileName(fileName);
     }
 
+    private void parseExtensionFactory() throws IOException {
+        String className = lexer.getString();
+        parseExpected(";");
+        builder.setExtensionFactoryName(className);
+    }
+
     private void parseGrinviewBackground() throws IOException {
         ArrayList<BackgroundSpec> specs = new ArrayList<BackgroundSpec>();
         parseExpected("{");
@@ -546,6 +555,8 @@ public class ShowParser {
             return parseClipped(hasName, lineStart);
         } else if ("src_over".equals(tok)) {
             return parseSrcOver(hasName, lineStart);
+        } else if ("cached_layer".equals(tok)) {
+            return parseCachedLayer(hasName, lineStart);
         } else if ("fade".equals(tok)) {
             return parseFade(hasName, lineStart);
         } else if ("timer".equals(tok)) {
@@ -672,6 +683,14 @@ public class ShowParser {
             scalingModel = lexer.getString();
             tok = lexer.getString();
         }
+        int tileSize = 0;
+        if ("delta_tiles".equals(tok)) {
+            tileSize = lexer.getInt();
+            if (tileSize <= 0) {
+                lexer.reportError("delta_tiles must be positive");
+            }
+            tok = lexer.getString();
+        }
         String model = null;
         Command[] endCommands = emptyCommandArray;
         int loopCount = 1;
@@ -696,6 +715,7 @@ public class ShowParser {
                 = new SEImageSequence(show, name, placement, fileName, 
                                       middle,  extension, repeat, loopCount,
                                       endCommands);
+        f.setTileSize(tileSize);
         builder.addFeature(name, line, f);
         if (model != null) {
             final String mod = model;
@@ -1007,6 +1027,18 @@ public class ShowParser {
         return so;
     }
 
+    private Feature parseCachedLayer(boolean hasName, int line) 
+            throws IOException 
+    {
+        String name = parseFeatureName(hasName);
+        SubFeature part = parseSubFeature(lexer.getString());
+        parseExpected(";");
+        SECachedLayer cl = new SECachedLayer(show, name);
+        builder.addFeature(name, line, cl);
+        resolveModifier(cl, part);
+        return cl;
+    }
+
     private void resolveModifier(final Modifier m, final SubFeature part) {
         ForwardReference fw = new ForwardReference(lexer) {
             public void resolve() throws IOException {
@@ -1701,6 +1733,11 @@ public class ShowParser {
             background = parseColor();
             tok = lexer.getString();
         }
+        boolean preRender = false;
+        if ("pre_render".equals(tok)) {
+            preRender = true;
+            tok = lexer.getString();
+        }
         if (!(";".equals(tok))) {
            lexer.reportError("\";\" expected, \"" + tok + "\" seen");
         }
@@ -1713,6 +1750,7 @@ public class ShowParser {
         }
         SEText text = new SEText(show, name, x, y, alignment, textStrings, 
                                  vspace, fontIndex, cols, loopCount,background);
+        text.setPreRender(preRender);
         builder.addFeature(name, line, text);
         return text;
     }
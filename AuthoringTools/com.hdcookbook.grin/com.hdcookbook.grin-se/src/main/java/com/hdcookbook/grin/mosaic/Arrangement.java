@@ -55,19 +55,25 @@
 
 package com.hdcookbook.grin.mosaic;
 
+import com.hdcookbook.grin.MosaicSpec;
+
 import java.awt.Rectangle;
 
 /**
  * Represents an arrangement of mosaic parts within a mosaic.
  * A Mosaic is compiled by creating several arrangements at different
  * widths, and picking the best one.  
+ * <p>
+ * This class packs the parts first-fit.  Subclasses override 
+ * arrangeWithin(int) to provide other packing algorithms; see
+ * MosaicSpec.packing.
  *
  *   @author     Bill Foote (http://jovial.com)
  **/
 class Arrangement {
 
-    private int maxHeight;
-    private Rectangle[] pos;    // The positon of each part
+    int maxHeight;
+    Rectangle[] pos;            // The positon of each part
     private int widthUsed = 0;
     private int heightUsed = 0;
     private int pixelsUsed;     // Integer.MAX_VALUE means "impossible"
@@ -81,6 +87,48 @@ class Arrangement {
         }
     }
 
+    //
+    // Make a copy of other, for use on a different thread.
+    //
+    Arrangement(Arrangement other) {
+        this.maxHeight = other.maxHeight;
+        pos = new Rectangle[other.pos.length];
+        for (int i = 0; i < pos.length; i++) {
+            pos[i] = new Rectangle(other.pos[i]);
+        }
+    }
+
+    //
+    // Create an arrangement that packs parts with the given packing
+    // algorithm.  packing is one of the MosaicSpec.PACKING_ constants,
+    // other than PACKING_BEST.
+    //
+    static Arrangement newArrangement(int packing, int maxHeight, 
+                                      MosaicPart[] parts) 
+    {
+        Arrangement a = new Arrangement(maxHeight, parts);
+        switch (packing) {
+            case MosaicSpec.PACKING_FIRST_FIT:
+                return a;
+            case MosaicSpec.PACKING_MAXRECTS:
+                return new MaxRectsArrangement(a);
+            case MosaicSpec.PACKING_SKYLINE:
+                return new SkylineArrangement(a);
+            case MosaicSpec.PACKING_GUILLOTINE:
+                return new GuillotineArrangement(a);
+            default:
+                throw new IllegalArgumentException("packing " + packing);
+        }
+    }
+
+    //
+    // Make a copy of this arrangement, for use on a different thread.
+    // Subclasses override this.
+    //
+    Arrangement copy() {
+        return new Arrangement(this);
+    }
+
     void arrangeWithin(int maxWidth) {
         for (placed = 0; placed < pos.length; placed++) {
             Rectangle curr = pos[placed];
@@ -117,6 +165,21 @@ class Arrangement {
                 return;
             }
         }
+        calculateUsed();
+    }
+
+    //
+    // Called by arrangeWithin() when no arrangement is possible.
+    //
+    void setImpossible() {
+        pixelsUsed = Integer.MAX_VALUE;
+    }
+
+    //
+    // Called by arrangeWithin() when all of the parts have been placed.
+    // This calculates the extent of the arrangement.
+    //
+    void calculateUsed() {
         widthUsed = 0;
         heightUsed = 0;
         for (Rectangle r : pos) {
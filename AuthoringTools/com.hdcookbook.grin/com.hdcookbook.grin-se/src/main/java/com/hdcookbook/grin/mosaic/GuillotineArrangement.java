@@ -0,0 +1,150 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.mosaic;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * An arrangement that packs parts with the guillotine algorithm.  The
+ * free space is kept as a list of disjoint rectangles.  Each part goes
+ * into the free rectangle where it makes the mosaic grow the least
+ * in height; among those, the smallest one that fits is chosen ("best
+ * area fit").  The rest of that free rectangle is then cut in two with
+ * a single straight cut, along the shorter leftover axis.
+ *
+ * @see com.hdcookbook.grin.MosaicSpec#PACKING_GUILLOTINE
+ **/
+class GuillotineArrangement extends Arrangement {
+
+    private ArrayList<Rectangle> free = new ArrayList<Rectangle>();
+
+    GuillotineArrangement(Arrangement other) {
+        super(other);
+    }
+
+    Arrangement copy() {
+        return new GuillotineArrangement(this);
+    }
+
+    void arrangeWithin(int maxWidth) {
+        free.clear();
+        free.add(new Rectangle(0, 0, maxWidth, maxHeight));
+        int height = 0;         // Height used so far
+        for (Rectangle curr : pos) {
+            int bestIndex = -1;
+            int bestGrowth = Integer.MAX_VALUE;
+            long bestArea = Long.MAX_VALUE;
+            for (int i = 0; i < free.size(); i++) {
+                Rectangle f = free.get(i);
+                if (f.width < curr.width || f.height < curr.height) {
+                    continue;
+                }
+                int growth = Math.max(0, f.y + curr.height - height);
+                long area = ((long) f.width) * f.height;
+                if (growth < bestGrowth 
+                    || (growth == bestGrowth && area < bestArea)) 
+                {
+                    bestIndex = i;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            if (bestIndex == -1) {
+                setImpossible();
+                return;
+            }
+            Rectangle f = free.get(bestIndex);
+            curr.x = f.x;
+            curr.y = f.y;
+            if (curr.y + curr.height > height) {
+                height = curr.y + curr.height;
+            }
+            split(bestIndex, curr);
+        }
+        calculateUsed();
+    }
+
+    //
+    // Replace the free rectangle at index, whose upper-left corner
+    // is now occupied by r, with the two rectangles left over.
+    // If there's less room left to the right of r than below it,
+    // the right piece is only as tall as r, and the bottom piece gets
+    // the full width; otherwise, it's the other way around.
+    //
+    private void split(int index, Rectangle r) {
+        Rectangle f = free.get(index);
+        int dw = f.width - r.width;
+        int dh = f.height - r.height;
+        Rectangle right;
+        Rectangle bottom;
+        if (dw < dh) {
+            right = new Rectangle(r.x + r.width, f.y, dw, r.height);
+            bottom = new Rectangle(f.x, r.y + r.height, f.width, dh);
+        } else {
+            right = new Rectangle(r.x + r.width, f.y, dw, f.height);
+            bottom = new Rectangle(f.x, r.y + r.height, r.width, dh);
+        }
+        free.set(index, free.get(free.size() - 1));
+        free.remove(free.size() - 1);
+        if (!right.isEmpty()) {
+            free.add(right);
+        }
+        if (!bottom.isEmpty()) {
+            free.add(bottom);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.mosaic;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * An arrangement that packs parts with the MaxRects algorithm.  The
+ * free space is kept as a list of maximal free rectangles, which can
+ * overlap each other.  Each part goes into the free rectangle where
+ * it makes the mosaic grow the least in height; among those, the one
+ * that leaves the shortest leftover side is chosen ("best short side
+ * fit").
+ *
+ * @see com.hdcookbook.grin.MosaicSpec#PACKING_MAXRECTS
+ **/
+class MaxRectsArrangement extends Arrangement {
+
+    private ArrayList<Rectangle> free = new ArrayList<Rectangle>();
+
+    MaxRectsArrangement(Arrangement other) {
+        super(other);
+    }
+
+    Arrangement copy() {
+        return new MaxRectsArrangement(this);
+    }
+
+    void arrangeWithin(int maxWidth) {
+        free.clear();
+        free.add(new Rectangle(0, 0, maxWidth, maxHeight));
+        int height = 0;         // Height used so far
+        for (Rectangle curr : pos) {
+            Rectangle best = null;
+            int bestGrowth = Integer.MAX_VALUE;
+            int bestShort = Integer.MAX_VALUE;
+            int bestLong = Integer.MAX_VALUE;
+            for (int i = 0; i < free.size(); i++) {
+                Rectangle f = free.get(i);
+                if (f.width < curr.width || f.height < curr.height) {
+                    continue;
+                }
+                int growth = Math.max(0, f.y + curr.height - height);
+                int dw = f.width - curr.width;
+                int dh = f.height - curr.height;
+                int shortSide = Math.min(dw, dh);
+                int longSide = Math.max(dw, dh);
+                if (growth < bestGrowth
+                    || (growth == bestGrowth && shortSide < bestShort)
+                    || (growth == bestGrowth && shortSide == bestShort
+                        && longSide < bestLong))
+                {
+                    best = f;
+                    bestGrowth = growth;
+                    bestShort = shortSide;
+                    bestLong = longSide;
+                }
+            }
+            if (best == null) {
+                setImpossible();
+                return;
+            }
+            curr.x = best.x;
+            curr.y = best.y;
+            if (curr.y + curr.height > height) {
+                height = curr.y + curr.height;
+            }
+            splitFree(curr);
+        }
+        calculateUsed();
+    }
+
+    //
+    // Remove the area of the newly placed rectangle r from the free list.
+    // Every free rectangle that overlaps r is replaced by up to four
+    // maximal rectangles around r, and then any free rectangle that's
+    // inside another is removed.
+    //
+    private void splitFree(Rectangle r) {
+        int num = free.size();
+        int rx2 = r.x + r.width;
+        int ry2 = r.y + r.height;
+        for (int i = 0; i < num; ) {
+            Rectangle f = free.get(i);
+            if (!f.intersects(r)) {
+                i++;
+                continue;
+            }
+            int fx2 = f.x + f.width;
+            int fy2 = f.y + f.height;
+            if (r.x > f.x) {
+                free.add(new Rectangle(f.x, f.y, r.x - f.x, f.height));
+            }
+            if (rx2 < fx2) {
+                free.add(new Rectangle(rx2, f.y, fx2 - rx2, f.height));
+            }
+            if (r.y > f.y) {
+                free.add(new Rectangle(f.x, f.y, f.width, r.y - f.y));
+            }
+            if (ry2 < fy2) {
+                free.add(new Rectangle(f.x, ry2, f.width, fy2 - ry2));
+            }
+            // Move the last of the old rectangles into slot i
+            num--;
+            free.set(i, free.get(num));
+            free.set(num, free.get(free.size() - 1));
+            free.remove(free.size() - 1);
+        }
+        pruneFree(num);
+    }
+
+    //
+    // Remove free rectangles that are contained in another.  The old
+    // rectangles, at [0..firstNew-1], don't contain each other, so we
+    // only need to check the new ones against everything else.
+    //
+    private void pruneFree(int firstNew) {
+        for (int i = firstNew; i < free.size(); i++) {
+            Rectangle n = free.get(i);
+            for (int j = 0; j < free.size(); j++) {
+                if (j == i) {
+                    continue;
+                }
+                Rectangle o = free.get(j);
+                if (o.contains(n)) {
+                    free.remove(i);
+                    i--;
+                    break;
+                } else if (n.contains(o)) {
+                    free.remove(j);
+                    if (j < i) {
+                        i--;
+                    }
+                    j--;
+                }
+            }
+        }
+    }
+}
@@ -58,6 +58,8 @@ package com.hdcookbook.grin.mosaic;
 import com.hdcookbook.grin.MosaicSpec;
 import com.hdcookbook.grin.util.Debug;
 import com.hdcookbook.grin.util.ManagedImage;
+import com.hdcookbook.grin.util.RawImage;
+import com.hdcookbook.grin.util.RawImageWriter;
 
 import java.awt.AlphaComposite;
 import java.awt.Color;
@@ -71,6 +73,10 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
 
 /**
@@ -90,16 +96,31 @@ public class Mosaic {
     private int minWidth;
     private int numWidths;
     private int maxPixels;      
+    private int packing;
+    private String name;
     private String outputName;
+    private boolean rawImage = false;   // See setRawImage()
 
     private int position;
     private int currPixels = Integer.MAX_VALUE; // # pixels occupied
     private int currWidth = 0;
     private int currHeight = 0;
+    private int currPacking = -1;       // Packing used for best so far
+
+    private int[] packingPixels;
+        // The smallest number of pixels achieved by each packing 
+        // algorithm that was tried, indexed by MosaicSpec.PACKING_*.
+        // Integer.MAX_VALUE if not tried, or if nothing fit.
 
     private BufferedImage buffer;
     private Graphics2D graphics;        // into buffer
 
+    private ArrayList<Future<Arrangement>> pending = null;
+        // Arrangements being computed by an executor, in the
+        // order of the candidate widths.  See startCompile().
+    private int pendingWidths;  // Number of widths for each packing
+    private boolean fromCache = false;  // See useCache()
+
     /** 
      * Create a new mosaic, with the given parameters
      **/
@@ -109,7 +130,13 @@ public class Mosaic {
         minWidth = spec.minWidth;
         numWidths = spec.numWidths;
         maxPixels = spec.maxPixels;
-        outputName = spec.name;
+        packing = spec.packing;
+        name = spec.name;
+        outputName = name;
+        packingPixels = new int[MosaicSpec.PACKING_BEST];
+        for (int i = 0; i < packingPixels.length; i++) {
+            packingPixels[i] = Integer.MAX_VALUE;
+        }
     }
 
     public int getHeightUsed() {
@@ -138,7 +165,267 @@ public class Mosaic {
     public boolean compile(Component progressComponent) {
         this.progressComponent = progressComponent;
         parts = partsList.toArray(new MosaicPart[partsList.size()]);
-        Arrangement arrangement = new Arrangement(maxHeight, parts);
+        int[] widths = getCandidateWidths();
+        for (int p : getPackings()) {
+            Arrangement arrangement 
+                = Arrangement.newArrangement(p, maxHeight, parts);
+            for (int width : widths) {
+                arrangement.arrangeWithin(width);
+                considerArrangement(p, arrangement);
+            }
+        }
+        return currPixels > 0;
+    }
+
+    /**
+     * Compile this mosaic into an optimal arrangement, trying the
+     * candidate widths (and packing algorithms) in parallel on the 
+     * given executor.  The
+     * arrangements are compared in the same order as compile(Component)
+     * compares them, so the result is identical to a serial compile.
+     *
+     * @param executor  The executor to use, or null to compile serially
+     *
+     * @return true if this mosaic is used for images, false if it's empty
+     *
+     * @throws IOException if the compilation is interrupted
+     **/
+    public boolean compile(Component progressComponent, 
+                           ExecutorService executor) 
+            throws IOException
+    {
+        if (executor == null) {
+            return compile(progressComponent);
+        }
+        startCompile(progressComponent, executor);
+        return finishCompile();
+    }
+
+    //
+    // Submit one task per candidate width to executor.  This returns
+    // without waiting, so that MosaicMaker can start the compilation of
+    // all of its mosaics before it waits for any of them.  Each task
+    // gets its own Arrangement, since an Arrangement is modified by
+    // arrangeWithin().  The parts' sizes are copied here, on the calling
+    // thread, because finishCompile() moves the parts while other tasks
+    // might still be running.
+    //
+    void startCompile(Component progressComponent, ExecutorService executor) {
+        this.progressComponent = progressComponent;
+        parts = partsList.toArray(new MosaicPart[partsList.size()]);
+        int[] widths = getCandidateWidths();
+        pending = new ArrayList<Future<Arrangement>>();
+        pendingWidths = widths.length;
+        for (int p : getPackings()) {
+            final Arrangement template 
+                = Arrangement.newArrangement(p, maxHeight, parts);
+            for (final int width : widths) {
+                pending.add(executor.submit(new Callable<Arrangement>() {
+                    public Arrangement call() {
+                        Arrangement a = template.copy();
+                        a.arrangeWithin(width);
+                        return a;
+                    }
+                }));
+            }
+        }
+    }
+
+    //
+    // Wait for the tasks submitted by startCompile(), and pick the
+    // best arrangement.  Ties go to the first packing algorithm tried,
+    // and then to the narrowest width, just like in compile(Component).
+    //
+    boolean finishCompile() throws IOException {
+        try {
+            int[] packings = getPackings();
+            for (int i = 0; i < pending.size(); i++) {
+                Arrangement arrangement = pending.get(i).get();
+                considerArrangement(packings[i / pendingWidths], arrangement);
+            }
+        } catch (InterruptedException ex) {
+            cancelCompile();
+            Thread.currentThread().interrupt();
+            throw new IOException("Mosaic compilation interrupted");
+        } catch (ExecutionException ex) {
+            cancelCompile();
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            IOException ioe = new IOException("Error compiling mosaic " 
+                                              + outputName);
+            ioe.initCause(cause);
+            throw ioe;
+        }
+        pending = null;
+        return currPixels > 0;
+    }
+
+    //
+    // Cancel any tasks still outstanding from startCompile().
+    //
+    void cancelCompile() {
+        if (pending != null) {
+            for (Future<Arrangement> f : pending) {
+                f.cancel(true);
+            }
+            pending = null;
+        }
+    }
+
+    //
+    // Look for this mosaic's arrangement in cache.  If it's there, this
+    // mosaic is compiled, and true is returned.  This must be called
+    // after all the parts have been put into this mosaic.
+    //
+    boolean useCache(MosaicCache cache, Component progressComponent) 
+            throws IOException 
+    {
+        this.progressComponent = progressComponent;
+        parts = partsList.toArray(new MosaicPart[partsList.size()]);
+        String value = cache.get(this);
+        if (value == null) {
+            return false;
+        }
+        String[] tok = value.split(" ");
+        if (tok.length != 4 + 2 * parts.length) {
+            return false;
+        }
+        synchronized(parts) {
+            currWidth = Integer.parseInt(tok[0]);
+            currHeight = Integer.parseInt(tok[1]);
+            currPixels = Integer.parseInt(tok[2]);
+            currPacking = Integer.parseInt(tok[3]);
+            for (int i = 0; i < parts.length; i++) {
+                parts[i].setPosition(Integer.parseInt(tok[4 + 2 * i]),
+                                     Integer.parseInt(tok[5 + 2 * i]));
+            }
+        }
+        fromCache = true;
+        return true;
+    }
+
+    //
+    // Put our compiled arrangement into cache.
+    //
+    void putInCache(MosaicCache cache) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(currWidth).append(' ').append(currHeight).append(' ');
+        sb.append(currPixels).append(' ').append(currPacking);
+        for (MosaicPart part : parts) {
+            Rectangle r = part.getPlacement();
+            sb.append(' ').append(r.x).append(' ').append(r.y);
+        }
+        cache.put(this, sb.toString());
+    }
+
+    //
+    // True if our arrangement came from a MosaicCache.
+    //
+    boolean isFromCache() {
+        return fromCache;
+    }
+
+    //
+    // Get a description of everything that determines our arrangement,
+    // except for the contents of the images.  See MosaicCache.
+    //
+    String getCacheDescription() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(outputName).append('\n');
+        sb.append(maxWidth).append(' ').append(maxHeight).append(' ');
+        sb.append(minWidth).append(' ').append(numWidths).append(' ');
+        sb.append(maxPixels).append(' ').append(packing).append('\n');
+        for (MosaicPart part : parts) {
+            Rectangle r = part.getPlacement();
+            sb.append(part.getName()).append(' ');
+            sb.append(r.width).append(' ').append(r.height).append('\n');
+        }
+        return sb.toString();
+    }
+
+    //
+    // Record the result of arranging with packing algorithm p, and make
+    // it the current arrangement if it's the best so far.
+    //
+    private void considerArrangement(int p, Arrangement arrangement) {
+        int pixels = arrangement.getPixelsUsed();
+        if (pixels < packingPixels[p]) {
+            packingPixels[p] = pixels;
+        }
+        if (pixels < currPixels) {
+            currPacking = p;
+            setBestArrangement(arrangement);
+        }
+    }
+
+    //
+    // Get the packing algorithms to try, in order.
+    //
+    private int[] getPackings() {
+        if (packing == MosaicSpec.PACKING_BEST) {
+            int[] result = new int[MosaicSpec.PACKING_BEST];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = i;
+            }
+            return result;
+        } else {
+            return new int[] { packing };
+        }
+    }
+
+    /**
+     * Get the packing algorithm used for the compiled arrangement,
+     * one of the MosaicSpec.PACKING_ constants, or -1 if the mosaic
+     * hasn't been compiled or no arrangement was possible.
+     **/
+    public int getPackingUsed() {
+        return currPacking;
+    }
+
+    /**
+     * Get the fraction of the pixels of the compiled mosaic that are
+     * occupied by images, from 0 to 1.
+     **/
+    public double getUtilization() {
+        return utilization(currPixels);
+    }
+
+    /**
+     * Get the fraction of the pixels that are occupied by images in
+     * the best arrangement found with the given packing algorithm.
+     * This is 0 if the algorithm wasn't tried, or if it couldn't fit
+     * the images.
+     *
+     * @param packing   One of the MosaicSpec.PACKING_ constants, other
+     *                  than PACKING_BEST
+     **/
+    public double getUtilization(int packing) {
+        return utilization(packingPixels[packing]);
+    }
+
+    private double utilization(int pixels) {
+        if (pixels == Integer.MAX_VALUE || pixels == 0 || parts == null) {
+            return 0.0;
+        }
+        long used = 0;
+        for (MosaicPart part : parts) {
+            Rectangle r = part.getPlacement();
+            used += ((long) r.width) * r.height;
+        }
+        return ((double) used) / pixels;
+    }
+
+    //
+    // Get the widths to try, in increasing order, without duplicates.
+    // The width increases geometrically from minWidth to maxWidth.
+    //
+    private int[] getCandidateWidths() {
+        int[] widths = new int[numWidths];
+        int num = 0;
         int lastWidth = -1;
         double widthFactor = Math.log(((double) maxWidth) / minWidth);
         for (int i = 0; i < numWidths; i++) {
@@ -155,13 +442,11 @@ public class Mosaic {
                 continue;       // Don't try same width twice
             }
             lastWidth = width;
-            arrangement.arrangeWithin(width);
-            int pixels = arrangement.getPixelsUsed();
-            if (pixels < currPixels) {
-                setBestArrangement(arrangement);
-            }
+            widths[num++] = width;
         }
-        return currPixels > 0;
+        int[] result = new int[num];
+        System.arraycopy(widths, 0, result, 0, num);
+        return result;
     }
 
     //
@@ -225,6 +510,31 @@ public class Mosaic {
         return outputName;
     }
 
+    /**
+     * Make this mosaic be written as a GRIN raw image, instead of a PNG
+     * image.  A raw image is bigger, but it loads without needing to be
+     * decoded.  The output name becomes the mosaic's name, without any
+     * ".png" extension, followed by RawImage.EXTENSION.  This must be
+     * called before the mosaic is compiled.
+     *
+     * @see com.hdcookbook.grin.util.RawImage
+     **/
+    public void setRawImage(boolean rawImage) {
+        if (rawImage == this.rawImage) {
+            return;
+        }
+        this.rawImage = rawImage;
+        if (rawImage) {
+            String base = name;
+            if (base.toLowerCase().endsWith(".png")) {
+                base = base.substring(0, base.length() - 4);
+            }
+            outputName = base + RawImage.EXTENSION;
+        } else {
+            outputName = name;
+        }
+    }
+
     /**
      * Set our position within the binary list of mosaics that's
      * written out for GRIN to consult at runtime.
@@ -242,7 +552,8 @@ public class Mosaic {
     }
 
     /**
-     * Write out our image buffer as a PNG image.
+     * Write out our image buffer as a PNG image, or as a raw image if
+     * setRawImage(true) was called.
      **/
     public void writeMosaicImage(File out) throws IOException {
         if (currPixels == Integer.MAX_VALUE) {
@@ -264,6 +575,10 @@ public class Mosaic {
             Rectangle r = part.getPlacement();
             part.getImage().drawScaled(graphics, r, null);
         }
+        if (rawImage) {
+            new RawImageWriter().write(buffer, out);
+            return;
+        }
         boolean ok = ImageIO.write(buffer, "PNG", out);
         if (!ok) {
             throw new IOException("No writer found");
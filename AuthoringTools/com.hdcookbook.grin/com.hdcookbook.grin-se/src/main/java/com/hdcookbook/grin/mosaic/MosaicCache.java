@@ -0,0 +1,211 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.mosaic;
+
+import com.hdcookbook.grin.util.AssetFinder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * A cache of mosaic arrangements, kept in a file between builds.  Each
+ * arrangement is stored under a digest of everything that goes into
+ * making the mosaic:  the mosaic's parameters, the names and sizes
+ * of its parts in order, and the contents of each part's image file.
+ * When MosaicMaker is given a cache, a mosaic whose digest hasn't
+ * changed gets its arrangement from the cache, and its image file
+ * isn't re-written.
+ *
+ * @see MosaicMaker#setCache(MosaicCache)
+ **/
+public class MosaicCache {
+
+    private File file;
+    private Properties entries = new Properties();
+    private Properties used = new Properties();
+    private HashMap<Mosaic, String> keys = new HashMap<Mosaic, String>();
+
+    /**
+     * Create a cache that's kept in the given file.  If the file
+     * exists, the cache is read from it.
+     **/
+    public MosaicCache(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                entries.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Write this cache back out to its file.  Only the entries that were
+     * used or added since this cache was created are written, so 
+     * arrangements of mosaics that no longer exist are dropped.
+     **/
+    public void save() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            used.store(out, "GRIN mosaic arrangements");
+        } finally {
+            out.close();
+        }
+    }
+
+    //
+    // Get the cached arrangement of m, or null if there isn't one.
+    //
+    String get(Mosaic m) throws IOException {
+        String key = m.getOutputName() + "." + getKey(m);
+        String value = entries.getProperty(key);
+        if (value != null) {
+            used.setProperty(key, value);
+        }
+        return value;
+    }
+
+    //
+    // Remember the current arrangement of m.
+    //
+    void put(Mosaic m, String arrangement) throws IOException {
+        used.setProperty(m.getOutputName() + "." + getKey(m), arrangement);
+    }
+
+    private String getKey(Mosaic m) throws IOException {
+        String key = keys.get(m);
+        if (key == null) {
+            key = computeKey(m);
+            keys.put(m, key);
+        }
+        return key;
+    }
+
+    private String computeKey(Mosaic m) throws IOException {
+        MessageDigest md = newDigest();
+        md.update(m.getCacheDescription().getBytes("UTF-8"));
+        for (MosaicPart part : m.parts) {
+            md.update(digest(part.getName()).getBytes("UTF-8"));
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Get a digest of the contents of an asset, as a hex string.  The
+     * asset is found with AssetFinder.tryURL(String).  If it doesn't
+     * exist, "none" is returned.
+     **/
+    public static String digest(String assetPath) throws IOException {
+        URL u = AssetFinder.tryURL(assetPath);
+        if (u == null) {
+            return "none";
+        }
+        MessageDigest md = newDigest();
+        InputStream in = new BufferedInputStream(u.openStream());
+        try {
+            byte[] buf = new byte[8192];
+            for (;;) {
+                int n = in.read(buf);
+                if (n < 0) {
+                    break;
+                }
+                md.update(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Get a new MessageDigest of the kind used for cache keys.
+     **/
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);     // Every JRE has SHA-1
+        }
+    }
+
+    /**
+     * Convert the result of MessageDigest.digest() to a hex string.
+     **/
+    public static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -66,6 +66,7 @@ import com.hdcookbook.grin.io.ShowBuilder;
 import com.hdcookbook.grin.io.text.GenericExtensionParser;
 import com.hdcookbook.grin.util.ManagedImage;
 import com.hdcookbook.grin.util.HeadlessManagedImage;
+import com.hdcookbook.grin.util.ImageDecodePipeline;
 import com.hdcookbook.grin.util.AssetFinder;
 
 import java.awt.AlphaComposite;
@@ -82,14 +83,19 @@ import java.io.File;
 import java.io.DataOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Iterator;
 import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.imageio.ImageIO;
 
 
@@ -101,7 +107,13 @@ import javax.imageio.ImageIO;
  * packaging images as a mosaic, the startup time of an xlet can
  * be dramatically improved, since many image decoders have
  * a substantial fixed latency that doesn't vary much with image size.
+ * <p>
+ * An image sequence that asks for delta tiles is stored as its first
+ * frame plus, for each frame, the tiles of a grid that differ from the
+ * frame before.  Tiles with the same pixels are only stored once.  
+ * Frames that aren't used by anything else are left out of the mosaics.
  *
+ * @see com.hdcookbook.grin.features.ImageSequence
  *   @author     Bill Foote (http://jovial.com)
  **/
  public class MosaicMaker {
@@ -131,6 +143,18 @@ import javax.imageio.ImageIO;
     private Frame mosaicFrame = null;
     private HashMap<ManagedImage, HeadlessManagedImage>
         headlessImageMap = new HashMap<ManagedImage, HeadlessManagedImage>();
+    private ArrayList<HeadlessManagedImage> imagesToLoad
+                = new ArrayList<HeadlessManagedImage>();
+        // Headless images are loaded all at once, in parallel
+    private ImageDecodePipeline.ProgressListener progressListener = null;
+    private int threads = 1;
+    private boolean rawImages = false;
+    private MosaicCache cache = null;
+    private ArrayList<File> outputFiles = new ArrayList<File>();
+    private ArrayList<SEImageSequence> deltaSequences 
+                = new ArrayList<SEImageSequence>();
+    private HashSet<String> wholeImages = new HashSet<String>();
+        // Images that are used whole, and so must be in a mosaic
 
     /**
      * Create a mosaic maker
@@ -150,6 +174,71 @@ import javax.imageio.ImageIO;
         }
     }
 
+    /**
+     * Set the number of threads used to compile the mosaics.  With
+     * more than one thread, the images are decoded in parallel when
+     * running headless, and all of the candidate widths of all of the
+     * mosaics are arranged in parallel.  The result is the same as with
+     * one thread.  The default is 1.
+     *
+     * @param threads   The number of threads, or 0 to use one per
+     *                  available processor
+     **/
+    public void setThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads < 0");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Set a listener that's told as images are decoded, when running
+     * headless.
+     *
+     * @param listener  The listener, or null.
+     *
+     * @see ImageDecodePipeline#setProgressListener(ImageDecodePipeline.ProgressListener)
+     **/
+    public void setProgressListener(ImageDecodePipeline.ProgressListener 
+                                                listener) 
+    {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Set whether the mosaics are written as GRIN raw images, which load
+     * without being decoded, instead of as PNG images.  The default is
+     * false.  Writing a show's mosaics both ways makes it possible to
+     * measure how much PNG decoding costs on a player.
+     *
+     * @see Mosaic#setRawImage(boolean)
+     * @see com.hdcookbook.grin.util.RawImage
+     **/
+    public void setRawImages(boolean rawImages) {
+        this.rawImages = rawImages;
+    }
+
+    /**
+     * Set a cache of mosaic arrangements to use.  A mosaic that has the
+     * same parts and images as an arrangement in the cache is not 
+     * re-arranged, and if its image file is still there, it is not
+     * re-written.  The caller is responsible for calling 
+     * MosaicCache.save() after makeMosaics().
+     *
+     * @param cache     The cache, or null not to use one.
+     **/
+    public void setCache(MosaicCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Get the files written by makeMosaics(), that is, the mosaic images
+     * and images.map.  Mosaic images that were up to date are included.
+     **/
+    public List<File> getOutputFiles() {
+        return outputFiles;
+    }
+
     public void init() throws IOException {
         ShowBuilder builder = new ShowBuilder();
         builder.setExtensionParser(new GenericExtensionParser());
@@ -240,10 +329,13 @@ import javax.imageio.ImageIO;
             }
             hmi = new HeadlessManagedImage(mi.getName());
             headlessImageMap.put(mi, hmi);
+            hmi.prepare();
+            imagesToLoad.add(hmi);      // Loaded by loadImages()
             mi = hmi;
-        } 
-        mi.prepare();
-        mi.load(mosaicFrame);
+        } else {
+            mi.prepare();
+            mi.load(mosaicFrame);
+        }
         ImageRecord rec = new ImageRecord();
         rec.image = mi;
         rec.maxWidth = size.width;
@@ -254,6 +346,201 @@ import javax.imageio.ImageIO;
         }
     }
 
+    //
+    // Load the headless images that were added, in parallel if we have
+    // more than one thread.
+    //
+    private void loadImages() throws IOException {
+        ImageDecodePipeline pipeline = new ImageDecodePipeline(threads);
+        pipeline.setProgressListener(progressListener);
+        pipeline.load(imagesToLoad);
+        imagesToLoad.clear();
+    }
+
+    //
+    // Give each sequence that asked for delta tiles its tiles, and put
+    // the tiles in the place of the frames they replace.
+    //
+    private void makeDeltaTiles() throws IOException {
+        if (deltaSequences.isEmpty()) {
+            return;
+        }
+        HashMap<String, ImageRecord> tiles 
+                = new HashMap<String, ImageRecord>();
+        HashSet<String> replaced = new HashSet<String>();
+        for (SEImageSequence is : deltaSequences) {
+            ManagedImage[] ims = is.getImages();
+            if (makeDeltaTiles(is, tiles)) {
+                for (int i = 1; i < ims.length; i++) {
+                    if (ims[i] != null) {
+                        replaced.add(ims[i].getName());
+                    }
+                }
+            } else {
+                is.setDeltaTiles(null, null);
+                for (int i = 0; i < ims.length; i++) {
+                    if (ims[i] != null) {
+                        wholeImages.add(ims[i].getName());
+                    }
+                }
+            }
+        }
+        Iterator<ImageRecord> it = images.iterator();
+        while (it.hasNext()) {
+            String name = it.next().image.getName();
+            if (replaced.contains(name) && !wholeImages.contains(name)) {
+                it.remove();
+                imageToMosaic.remove(name);
+            }
+        }
+        images.addAll(tiles.values());
+    }
+
+    //
+    // Compare each frame of is to the one before it, a tile at a time.
+    // For frame 0, the one before is the last frame, since the sequence
+    // might loop.  New tiles are added to tiles, which is keyed by name.
+    // Only three frames of pixels are kept in memory at once.
+    //
+    private boolean makeDeltaTiles(SEImageSequence is, 
+                                   HashMap<String, ImageRecord> tiles) 
+            throws IOException
+    {
+        ManagedImage[] ims = is.getImages();
+        Rectangle[] placements = is.getPlacements();
+        Rectangle area = null;
+        for (int i = 0; i < placements.length && area == null; i++) {
+            area = placements[i];       // Null frames have no placement
+        }
+        if (area == null) {
+            return false;
+        }
+        for (int i = 0; i < ims.length; i++) {
+            if (placements[i] != null && !placements[i].equals(area)) {
+                System.out.println("Warning:  " + is + " has frames in "
+                        + "different places, so delta_tiles can't be used.");
+                return false;
+            }
+            if (ims[i] != null && imagesToSkip.contains(ims[i].getName())) {
+                System.out.println("Warning:  " + is + " has frames that "
+                        + "aren't in a mosaic, so delta_tiles can't be used.");
+                return false;
+            }
+        }
+        int tileSize = is.getTileSize();
+        int width = area.width;
+        int height = area.height;
+        String mosaic = null;
+        if (ims[0] != null) {
+            mosaic = imageToMosaic.get(ims[0].getName());
+        }
+        int n = ims.length;
+        Rectangle[][] deltaTiles = new Rectangle[n][];
+        String[][] deltaNames = new String[n][];
+        int[] first = getPixels(ims[0], width, height);
+        int[] prev = first;
+        int numTiles = 0;
+        int tilePixels = 0;
+        for (int i = 1; i <= n; i++) {
+            int frame = i % n;
+            int[] curr = (frame == 0) ? first 
+                                      : getPixels(ims[frame], width, height);
+            ArrayList<Rectangle> rects = new ArrayList<Rectangle>();
+            ArrayList<String> names = new ArrayList<String>();
+            for (int y = 0; y < height; y += tileSize) {
+                for (int x = 0; x < width; x += tileSize) {
+                    int w = Math.min(tileSize, width - x);
+                    int h = Math.min(tileSize, height - y);
+                    if (sameTile(prev, curr, width, x, y, w, h)) {
+                        continue;
+                    }
+                    int[] pixels = new int[w * h];
+                    for (int row = 0; row < h; row++) {
+                        System.arraycopy(curr, (y + row) * width + x,
+                                         pixels, row * w, w);
+                    }
+                    String name = getTileName(w, h, pixels);
+                    if (!tiles.containsKey(name)) {
+                        BufferedImage bi = new BufferedImage(w, h, 
+                                                BufferedImage.TYPE_INT_ARGB);
+                        bi.setRGB(0, 0, w, h, pixels, 0, w);
+                        ImageRecord rec = new ImageRecord();
+                        rec.image = new HeadlessManagedImage(name, bi);
+                        rec.maxWidth = w;
+                        rec.maxHeight = h;
+                        tiles.put(name, rec);
+                        if (mosaic != null && !imageToMosaic.containsKey(name)) 
+                        {
+                            imageToMosaic.put(name, mosaic);
+                        }
+                    }
+                    rects.add(new Rectangle(x, y, w, h));
+                    names.add(name);
+                    numTiles++;
+                    tilePixels += w * h;
+                }
+            }
+            deltaTiles[frame] = rects.toArray(new Rectangle[rects.size()]);
+            deltaNames[frame] = names.toArray(new String[names.size()]);
+            prev = curr;
+        }
+        is.setDeltaTiles(deltaTiles, deltaNames);
+        System.out.printf("    %s:  %d frames, %d changed tiles, "
+                          + "%.1f%% of the frame pixels\n",
+                          is, n, numTiles, 
+                          100.0 * tilePixels / ((double) width * height * n));
+        return true;
+    }
+
+    //
+    // Get the pixels of a frame, drawn the way ImageSequence draws it.
+    // A null frame is blank.
+    //
+    private int[] getPixels(ManagedImage mi, int width, int height) {
+        BufferedImage bi = new BufferedImage(width, height, 
+                                             BufferedImage.TYPE_INT_ARGB);
+        if (mi != null) {
+            HeadlessManagedImage hmi = headlessImageMap.get(mi);
+            if (hmi != null) {
+                mi = hmi;
+            }
+            Graphics2D g = bi.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            mi.drawScaled(g, new Rectangle(0, 0, width, height), mosaicFrame);
+            g.dispose();
+        }
+        return bi.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    private static boolean sameTile(int[] a, int[] b, int width, 
+                                    int x, int y, int w, int h) 
+    {
+        for (int row = y; row < y + h; row++) {
+            int start = row * width + x;
+            for (int i = start; i < start + w; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    //
+    // Tiles are named by a digest of their pixels, so tiles that look
+    // the same are only stored once, and a changed tile changes the
+    // mosaic's cache key.
+    //
+    private static String getTileName(int w, int h, int[] pixels) {
+        ByteBuffer buf = ByteBuffer.allocate(8 + pixels.length * 4);
+        buf.putInt(w);
+        buf.putInt(h);
+        buf.asIntBuffer().put(pixels);
+        MessageDigest md = MosaicCache.newDigest();
+        md.update(buf.array());
+        return "delta_tile_" + MosaicCache.toHex(md.digest());
+    }
+
     private void addAllToMosaics() throws IOException {
         // Sort by maximum dimension, since the maximum dimension of a
         // rectangle constrains the placement of subsequent rectangles
@@ -320,13 +607,22 @@ import javax.imageio.ImageIO;
                 if (f instanceof SEFixedImage) {
                     SEFixedImage fi = (SEFixedImage) f;
                     addImage(fi.getImage(), fi.getImageSize());
+                    wholeImages.add(fi.getImage().getName());
                 } else if (f instanceof SEImageSequence) {
                     SEImageSequence is = (SEImageSequence) f;
                     ManagedImage[] ims = is.getImages();
                     Dimension[] sizes = is.getImageSizes();
+                    boolean deltas = is.getTileSize() > 0 
+                                     && is.getScalingModel() == null;
+                    if (deltas) {
+                        deltaSequences.add(is);
+                    }
                     for (int k = 0; k < ims.length; k++) {
                         if (ims[k] != null) {
-                            addImage(ims[k], sizes[i]);
+                            addImage(ims[k], sizes[k]);
+                            if (k == 0 || !deltas) {
+                                wholeImages.add(ims[k].getName());
+                            }
                         }
                     }
                 } else if (f instanceof FixedImage) {
@@ -338,6 +634,8 @@ import javax.imageio.ImageIO;
                 }
             }
         }
+        loadImages();
+        makeDeltaTiles();
         if (frameG != null) {
             frameG.setColor(Color.black);
             frameG.fillRect(0, 0, mosaicFrame.getWidth(), 
@@ -345,14 +643,44 @@ import javax.imageio.ImageIO;
         }
         addAllToMosaics();
         LinkedList<Mosaic> mosaics = new LinkedList<Mosaic>();
-        for (Map.Entry<String, Mosaic> special : nameToMosaic.entrySet()) {
-            Mosaic m = special.getValue();
-            if (compile(m)) {
-                mosaics.add(m);
-            } else {
-                System.out.println("Warning:  None of the images in mosaic \"" 
-                        + special.getKey()
-                        + "\" were used in show.  Discarding empty mosaic.");
+        int n = threads;
+        if (n == 0) {
+            n = Runtime.getRuntime().availableProcessors();
+        }
+        for (Mosaic m : nameToMosaic.values()) {
+            m.setRawImage(rawImages);
+        }
+        if (cache != null) {
+            for (Mosaic m : nameToMosaic.values()) {
+                m.useCache(cache, mosaicFrame);
+            }
+        }
+        ExecutorService executor = null;
+        if (n > 1) {
+            executor = Executors.newFixedThreadPool(n);
+            for (Mosaic m : nameToMosaic.values()) {
+                if (!m.isFromCache()) {
+                    m.startCompile(mosaicFrame, executor);
+                }
+            }
+        }
+        try {
+            for (Map.Entry<String, Mosaic> special : nameToMosaic.entrySet()) {
+                Mosaic m = special.getValue();
+                if (compile(m, executor)) {
+                    mosaics.add(m);
+                } else {
+                    System.out.println("Warning:  None of the images in mosaic \"" 
+                            + special.getKey()
+                            + "\" were used in show.  Discarding empty mosaic.");
+                }
+            }
+        } finally {
+            if (executor != null) {
+                for (Mosaic m : nameToMosaic.values()) {
+                    m.cancelCompile();
+                }
+                executor.shutdownNow();
             }
         }
         for (Map.Entry<String, String> unused : imageToMosaic.entrySet()) {
@@ -368,14 +696,26 @@ import javax.imageio.ImageIO;
                                   new FileOutputStream(mapFile)));
         mapOS.writeInt(mosaics.size());
         int totalPixels = 0;
+        double usedPixels = 0.0;
         Iterator<Mosaic> mit = mosaics.iterator();
         for (int i = 0; mit.hasNext(); i++) {
             Mosaic m = mit.next();
             m.setPosition(i);
             File out = new File(outputDir, m.getOutputName());
-            m.writeMosaicImage(out);
-            totalPixels += m.getWidthUsed() * m.getHeightUsed();
-            System.out.println("    Wrote " + out);
+            outputFiles.add(out);
+            if (m.isFromCache() && out.exists()) {
+                System.out.println("    " + out + " is up to date.");
+            } else {
+                m.writeMosaicImage(out);
+                System.out.println("    Wrote " + out);
+                if (cache != null) {
+                    m.putInCache(cache);
+                }
+            }
+            int pixels = m.getWidthUsed() * m.getHeightUsed();
+            totalPixels += pixels;
+            usedPixels += m.getUtilization() * pixels;
+            reportUtilization(m);
             mapOS.writeUTF(m.getOutputName());
         }
 
@@ -392,14 +732,57 @@ import javax.imageio.ImageIO;
             mapOS.writeInt(pl.height);
         }
         mapOS.close();
+        outputFiles.add(mapFile);
         System.out.println("Wrote " + mapFile);
         System.out.printf("Mosaics occupy a total of %,d pixels.\n",
                            totalPixels);
+        if (totalPixels > 0) {
+            System.out.printf("Images fill %.1f%% of the mosaic pixels.\n",
+                              100.0 * usedPixels / totalPixels);
+        }
     }
 
-    private boolean compile(Mosaic m) {
+    //
+    // Print the size of m, and how much of it is used.  If more than one
+    // packing algorithm was tried, the best result of each is shown too.
+    //
+    private void reportUtilization(Mosaic m) {
+        System.out.printf("        %d x %d, %.1f%% used, %s packing\n",
+                          m.getWidthUsed(), m.getHeightUsed(), 
+                          100.0 * m.getUtilization(),
+                          MosaicSpec.PACKING_NAMES[m.getPackingUsed()]);
+        StringBuilder sb = new StringBuilder();
+        int tried = 0;
+        for (int p = 0; p < MosaicSpec.PACKING_BEST; p++) {
+            double u = m.getUtilization(p);
+            if (u > 0.0) {
+                tried++;
+                sb.append(String.format("  %s %.1f%%", 
+                                        MosaicSpec.PACKING_NAMES[p], 100.0 * u));
+            }
+        }
+        if (tried > 1) {
+            System.out.println("        Tried:" + sb);
+        }
+    }
+
+    //
+    // Compile m.  If its arrangement came from the cache, there's nothing
+    // to do.  Otherwise, if executor is non-null, m.startCompile() has 
+    // already been called, so we just wait for the result.
+    //
+    private boolean compile(Mosaic m, ExecutorService executor) 
+            throws IOException
+    {
         currentMosaic = m;
-        boolean result = m.compile(mosaicFrame);
+        boolean result;
+        if (m.isFromCache()) {
+            result = m.getCurrPixels() > 0;
+        } else if (executor == null) {
+            result = m.compile(mosaicFrame);
+        } else {
+            result = m.finishCompile();
+        }
         return result;
     }
 }
@@ -0,0 +1,186 @@
+
+/*  
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.mosaic;
+
+import java.awt.Rectangle;
+
+/**
+ * An arrangement that packs parts with the skyline algorithm.  The
+ * top edge of the parts placed so far is kept as a "skyline" of
+ * horizontal segments.  Each part is put on the skyline where its
+ * bottom edge ends up highest (that is, with the smallest y value),
+ * and furthest to the left among those (the bottom-left rule, turned
+ * upside down to match image coordinates).  Space under a part that
+ * hangs over a lower segment is lost.
+ *
+ * @see com.hdcookbook.grin.MosaicSpec#PACKING_SKYLINE
+ **/
+class SkylineArrangement extends Arrangement {
+
+    // The skyline segments, ordered by x.  Segment i covers
+    // [segX[i], segX[i]+segW[i]) at height segY[i].  Each placed
+    // part adds at most one segment, so pos.length+1 is enough.
+    private int[] segX;
+    private int[] segY;
+    private int[] segW;
+    private int numSegs;
+
+    SkylineArrangement(Arrangement other) {
+        super(other);
+        segX = new int[pos.length + 1];
+        segY = new int[pos.length + 1];
+        segW = new int[pos.length + 1];
+    }
+
+    Arrangement copy() {
+        return new SkylineArrangement(this);
+    }
+
+    void arrangeWithin(int maxWidth) {
+        segX[0] = 0;
+        segY[0] = 0;
+        segW[0] = maxWidth;
+        numSegs = 1;
+        for (Rectangle curr : pos) {
+            int bestIndex = -1;
+            int bestBottom = Integer.MAX_VALUE;
+            int bestY = 0;
+            for (int i = 0; i < numSegs; i++) {
+                if (segX[i] + curr.width > maxWidth) {
+                    break;      // Later segments are further right
+                }
+                int y = fitAt(i, curr.width);
+                int bottom = y + curr.height;
+                if (bottom <= maxHeight && bottom < bestBottom) {
+                    bestIndex = i;
+                    bestBottom = bottom;
+                    bestY = y;
+                }
+            }
+            if (bestIndex == -1) {
+                setImpossible();
+                return;
+            }
+            curr.x = segX[bestIndex];
+            curr.y = bestY;
+            addSegment(bestIndex, curr.x, bestBottom, curr.width);
+        }
+        calculateUsed();
+    }
+
+    //
+    // Return the y position a part of the given width would have if
+    // its left edge were at the start of segment i.  The caller makes 
+    // sure it doesn't go past the right edge.
+    //
+    private int fitAt(int i, int width) {
+        int y = 0;
+        int left = width;
+        while (left > 0) {
+            if (segY[i] > y) {
+                y = segY[i];
+            }
+            left -= segW[i];
+            i++;
+        }
+        return y;
+    }
+
+    //
+    // Put a new segment at index, which is where the left edge of
+    // the new segment lines up with an old one.  The segments it
+    // covers are shortened or removed, and then neighbors at the same
+    // height are merged.
+    //
+    private void addSegment(int index, int x, int y, int width) {
+        System.arraycopy(segX, index, segX, index + 1, numSegs - index);
+        System.arraycopy(segY, index, segY, index + 1, numSegs - index);
+        System.arraycopy(segW, index, segW, index + 1, numSegs - index);
+        numSegs++;
+        segX[index] = x;
+        segY[index] = y;
+        segW[index] = width;
+
+        int right = x + width;
+        int i = index + 1;
+        while (i < numSegs && segX[i] < right) {
+            int overlap = right - segX[i];
+            if (overlap >= segW[i]) {
+                removeSegment(i);
+            } else {
+                segX[i] += overlap;
+                segW[i] -= overlap;
+                break;
+            }
+        }
+
+        for (i = 0; i < numSegs - 1; ) {
+            if (segY[i] == segY[i + 1]) {
+                segW[i] += segW[i + 1];
+                removeSegment(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void removeSegment(int i) {
+        numSegs--;
+        System.arraycopy(segX, i + 1, segX, i, numSegs - i);
+        System.arraycopy(segY, i + 1, segY, i, numSegs - i);
+        System.arraycopy(segW, i + 1, segW, i, numSegs - i);
+    }
+}
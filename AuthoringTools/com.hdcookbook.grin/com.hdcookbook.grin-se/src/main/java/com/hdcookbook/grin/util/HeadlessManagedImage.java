@@ -99,6 +99,21 @@ public class HeadlessManagedImage extends ManagedImage {
         }
     }
 
+    /**
+     * Create a HeadlessManagedImage instance for an image that was made
+     * in memory, rather than read from an asset.  It stays loaded, so it
+     * doesn't need to be prepared.  The compiler uses this for image
+     * sequence delta tiles.
+     **/
+    public HeadlessManagedImage(String name, BufferedImage image) {
+        this.name = name;
+        this.image = image;
+        this.loaded = true;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.numPrepares = 1;
+    }
+
     public String getName() {
         return name;
     }
@@ -205,6 +220,37 @@ public class HeadlessManagedImage extends ManagedImage {
         notifyAll();
     }
 
+    //
+    // Get the URL our image is read from.  Used by ImageDecodePipeline.
+    //
+    URL getURL() {
+        return url;
+    }
+
+    //
+    // Returns true if we're prepared, and nobody has started loading us.
+    // Used by ImageDecodePipeline.
+    //
+    synchronized boolean needsLoading() {
+        return image == null && !loaded && numPrepares > 0;
+    }
+
+    //
+    // Called by ImageDecodePipeline with our decoded image.  This puts us
+    // in the same state as startLoading() would, unless someone else
+    // loaded us, or we're no longer prepared.
+    //
+    synchronized void setDecodedImage(BufferedImage decoded) {
+        if (image != null || loaded || numPrepares <= 0) {
+            return;
+        }
+        image = decoded;
+        loaded = true;
+        width = image.getWidth();
+        height = image.getHeight();
+        notifyAll();
+    }
+
     /** 
      * {@inheritDoc}
      **/
@@ -0,0 +1,249 @@
+
+/*  
+ * Copyright (c) 2010, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * This class loads a set of HeadlessManagedImage instances in parallel.
+ * Decoding a PNG takes much longer than reading it, so a tool that
+ * loads a lot of images, like MosaicMaker, spends most of its time
+ * decoding one image at a time.  This pipeline reads the image files
+ * on the calling thread, decodes them on a pool of worker threads, and
+ * hands each decoded image to its HeadlessManagedImage, which is then
+ * loaded just as though load() had been called on it.
+ * <p>
+ * The number of images that have been read but not yet decoded is
+ * bounded by twice the number of threads, so that reading doesn't get
+ * far ahead of decoding and fill up memory with compressed images.
+ *
+ * @see com.hdcookbook.grin.mosaic.MosaicMaker
+ **/
+public class ImageDecodePipeline {
+
+    /**
+     * A listener that's told as images are decoded, e.g. to show
+     * progress in a tool's UI.  Calls to it are not made concurrently,
+     * but they're made from the pipeline's worker threads.
+     **/
+    public interface ProgressListener {
+
+        /**
+         * Called after an image has been decoded and loaded.
+         *
+         * @param image     The image that was loaded
+         * @param done      The number of images loaded so far
+         * @param total     The number of images being loaded
+         **/
+        public void imageDecoded(HeadlessManagedImage image, int done, 
+                                 int total);
+    }
+
+    private int threads;
+    private ProgressListener listener = null;
+    private int done;
+
+    /**
+     * Create a new pipeline.
+     *
+     * @param threads   The number of threads that decode images, or 0 to
+     *                  use one per available processor.
+     **/
+    public ImageDecodePipeline(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads < 0");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Set the listener that's told as images are decoded.
+     *
+     * @param listener  The listener, or null
+     **/
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Load the given images, and return when all of them are loaded.
+     * Each image must have been prepared.  Images that are already loaded,
+     * or that another thread is loading, are skipped.
+     *
+     * @throws IOException if an image can't be read or decoded.
+     **/
+    public void load(List<HeadlessManagedImage> images) throws IOException {
+        int n = threads;
+        if (n == 0) {
+            n = Runtime.getRuntime().availableProcessors();
+        }
+        final int total = images.size();
+        synchronized(this) {
+            done = 0;
+        }
+        if (n <= 1) {
+            for (HeadlessManagedImage im : images) {
+                im.load(null);
+                reportProgress(im, total);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        final Semaphore inFlight = new Semaphore(2 * n);
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        try {
+            for (final HeadlessManagedImage im : images) {
+                if (!im.needsLoading()) {
+                    reportProgress(im, total);
+                    continue;
+                }
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                final byte[] data = read(im.getURL());
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws IOException {
+                        try {
+                            im.setDecodedImage(decode(im, data));
+                            reportProgress(im, total);
+                            return null;
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause.toString());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private synchronized void reportProgress(HeadlessManagedImage im, 
+                                             int total) 
+    {
+        done++;
+        if (listener != null) {
+            listener.imageDecoded(im, done, total);
+        }
+    }
+
+    private static byte[] read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[16 * 1024];
+            for (;;) {
+                int len = in.read(buf);
+                if (len < 0) {
+                    return out.toByteArray();
+                }
+                out.write(buf, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static BufferedImage decode(HeadlessManagedImage im, byte[] data)
+            throws IOException
+    {
+        // A memory cache, because ImageIO.read(InputStream) caches in a
+        // temporary file by default.  ImageIO closes the stream.
+        BufferedImage result = ImageIO.read(new MemoryCacheImageInputStream(
+                                        new ByteArrayInputStream(data)));
+        if (result == null) {
+            throw new IOException("Can't decode image " + im.getName());
+        }
+        return result;
+    }
+}
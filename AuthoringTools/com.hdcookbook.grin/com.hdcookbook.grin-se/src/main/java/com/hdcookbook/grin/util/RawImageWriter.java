@@ -0,0 +1,212 @@
+
+/*  
+ * Copyright (c) 2010, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Writes GRIN raw images, whose pixels don't need to be decoded when
+ * they're loaded.  An image with no more than 256 distinct colors is
+ * written with a palette, and any other image as ARGB pixels.
+ *
+ * @see RawImage
+ **/
+public class RawImageWriter {
+
+    private boolean compress = true;
+
+    /**
+     * Create a new writer.
+     **/
+    public RawImageWriter() {
+    }
+
+    /**
+     * Set whether or not the pixels are run-length encoded.  This makes
+     * images with large areas of one color much smaller, and costs little
+     * when loading.  The default is true.
+     **/
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Write the given image as a raw image.
+     **/
+    public void write(BufferedImage image, File out) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        int[] palette = makePalette(pixels);
+        int format;
+        byte[] data;
+        if (palette != null) {
+            format = RawImage.FORMAT_INDEXED;
+            HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+            for (int i = 0; i < palette.length; i++) {
+                index.put(palette[i], i);
+            }
+            byte[] indices = new byte[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                indices[i] = (byte) index.get(pixels[i]).intValue();
+            }
+            data = compress ? encodeRLE(indices, 1) : indices;
+        } else {
+            format = RawImage.FORMAT_ARGB;
+            palette = new int[0];
+            byte[] bytes = new byte[pixels.length * 4];
+            for (int i = 0; i < pixels.length; i++) {
+                int p = pixels[i];
+                bytes[4*i] = (byte) (p >> 24);
+                bytes[4*i+1] = (byte) (p >> 16);
+                bytes[4*i+2] = (byte) (p >> 8);
+                bytes[4*i+3] = (byte) p;
+            }
+            data = compress ? encodeRLE(bytes, 4) : bytes;
+        }
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                                        new FileOutputStream(out)));
+        try {
+            dos.writeInt(RawImage.MAGIC);
+            dos.writeByte(RawImage.VERSION);
+            dos.writeByte(format);
+            dos.writeByte(compress ? RawImage.COMPRESSION_RLE 
+                                   : RawImage.COMPRESSION_NONE);
+            dos.writeByte(0);
+            dos.writeInt(width);
+            dos.writeInt(height);
+            dos.writeInt(palette.length);
+            for (int color : palette) {
+                dos.writeInt(color);
+            }
+            dos.writeInt(data.length);
+            dos.write(data);
+        } finally {
+            dos.close();
+        }
+    }
+
+    //
+    // Return the distinct colors of pixels, in the order they first
+    // appear, or null if there are more than 256.
+    //
+    private static int[] makePalette(int[] pixels) {
+        HashMap<Integer, Integer> seen = new HashMap<Integer, Integer>();
+        int[] palette = new int[256];
+        for (int p : pixels) {
+            if (!seen.containsKey(p)) {
+                if (seen.size() == palette.length) {
+                    return null;
+                }
+                palette[seen.size()] = p;
+                seen.put(p, p);
+            }
+        }
+        int[] result = new int[seen.size()];
+        System.arraycopy(palette, 0, result, 0, result.length);
+        return result;
+    }
+
+    //
+    // Run-length encode elements of the given size.  See RawImage for 
+    // the encoding.
+    //
+    private static byte[] encodeRLE(byte[] data, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int num = data.length / size;
+        int i = 0;
+        while (i < num) {
+            int run = 1;
+            while (i + run < num && run < 128 && same(data, i, i+run, size)) {
+                run++;
+            }
+            if (run > 1) {
+                out.write(1 - run);
+                out.write(data, i * size, size);
+                i += run;
+            } else {
+                // A literal run lasts until the next repeat, or 128 elements
+                int lit = 1;
+                while (i + lit < num && lit < 128 
+                       && !(i + lit + 1 < num 
+                            && same(data, i+lit, i+lit+1, size))) 
+                {
+                    lit++;
+                }
+                out.write(lit - 1);
+                out.write(data, i * size, lit * size);
+                i += lit;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean same(byte[] data, int a, int b, int size) {
+        for (int j = 0; j < size; j++) {
+            if (data[a*size + j] != data[b*size + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
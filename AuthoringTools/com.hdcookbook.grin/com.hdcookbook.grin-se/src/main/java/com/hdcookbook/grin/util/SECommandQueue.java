@@ -0,0 +1,252 @@
+
+/*  
+ * Copyright (c) 2010, Sun Microsystems, Inc.
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ *  Note:  In order to comply with the binary form redistribution 
+ *         requirement in the above license, the licensee may include 
+ *         a URL reference to a copy of the required copyright notice, 
+ *         the list of conditions and the disclaimer in a human readable 
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a 
+ *         Blu-ray disc containing the binary form of the code or could 
+ *         be put in a JAR file that is broadcast via a digital television 
+ *         broadcast medium.  In any event, you must include in any end 
+ *         user licenses governing any code that includes the code subject 
+ *         to the above license (in source and/or binary form) a disclaimer 
+ *         that is at least as protective of Sun as the disclaimers in the 
+ *         above license.
+ * 
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at 
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ * 
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+package com.hdcookbook.grin.util;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A CommandQueue that uses compare-and-set rather than locks, so that
+ * threads adding commands and input events don't contend with each
+ * other or with the animation thread.  It's a bounded ring, where each 
+ * slot has a sequence number that says whether it's free, or holds the
+ * entry for a given position.  A producer claims a position by
+ * advancing the tail, fills in the slot, and then publishes it by
+ * setting the sequence number.  The consumer takes positions in order.
+ * <p>
+ * When the ring is full, commands go into an overflow CommandQueue, 
+ * which is locked and grows as needed, and once there's anything in it,
+ * new commands go there too until it's drained, so commands stay in 
+ * order.  Like the growing of CommandQueue, this only happens when the 
+ * animation thread has fallen far behind.
+ *
+ * @see com.hdcookbook.grin.SEShow
+ **/
+public class SECommandQueue extends CommandQueue {
+
+    private final int mask;
+    private final AtomicReferenceArray<Object> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;     // Only written by the consumer
+    private final AtomicInteger overflowSize = new AtomicInteger();
+    private final CommandQueue overflow;
+    private final AtomicInteger dropped = new AtomicInteger();
+    private volatile int policy = KEEP_EVENTS;
+
+    /**
+     * Create a queue.
+     *
+     * @param capacity  The number of entries the ring holds.  This is
+     *                  rounded up to a power of two.
+     **/
+    public SECommandQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new AtomicReferenceArray<Object>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        overflow = new CommandQueue(size);
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public void setEventPolicy(int policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public int getEventsDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public void add(Object el) {
+        if (overflowSize.get() > 0 || !offer(el, 1, null)) {
+            addOverflow(el);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public void addAll(Object[] els) {
+        if (els.length == 0) {
+            return;
+        }
+        if (overflowSize.get() > 0 || !offer(null, els.length, els)) {
+            synchronized(overflow) {
+                overflow.addAll(els);
+                overflowSize.addAndGet(els.length);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public boolean addEvent(Object el) {
+        int policy = this.policy;
+        if (policy == MERGE_REPEATED_EVENTS) {
+            long last = tail.get() - 1;
+            if (last >= head && slots.get((int) last & mask) == el) {
+                // If it was taken since we looked at head, then we're
+                // merging with an event that just got taken, which is OK.
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        if (policy == KEEP_EVENTS) {
+            add(el);
+            return true;
+        }
+        if (overflowSize.get() > 0 || !offer(el, 1, null)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    //
+    // Claim n consecutive positions and fill them with el, or with els 
+    // if n > 1.  Returns false if there isn't room.
+    //
+    private boolean offer(Object el, int n, Object[] els) {
+        if (n > mask + 1) {
+            return false;
+        }
+        for (;;) {
+            long t = tail.get();
+            long last = t + n - 1;
+            long seq = sequences.get((int) last & mask);
+            if (seq == last) {
+                // The consumer frees slots in order, so if the last one 
+                // we need is free, they all are.
+                if (tail.compareAndSet(t, t + n)) {
+                    for (int i = 0; i < n; i++) {
+                        long pos = t + i;
+                        int slot = (int) pos & mask;
+                        slots.set(slot, (els == null) ? el : els[i]);
+                        sequences.set(slot, pos + 1);
+                    }
+                    return true;
+                }
+            } else if (seq < last) {
+                return false;           // Full
+            }
+            // Otherwise another producer got there first, so try again
+        }
+    }
+
+    private void addOverflow(Object el) {
+        synchronized(overflow) {
+            overflow.add(el);
+            overflowSize.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public boolean isEmpty() {
+        long h = head;
+        return sequences.get((int) h & mask) != h + 1 
+               && overflowSize.get() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     **/
+    @Override
+    public Object remove() {
+        long h = head;
+        int slot = (int) h & mask;
+        if (sequences.get(slot) == h + 1) {
+            Object result = slots.get(slot);
+            slots.set(slot, null);
+            head = h + 1;
+            sequences.set(slot, h + mask + 1);
+            return result;
+        }
+        synchronized(overflow) {
+            if (overflowSize.get() == 0) {
+                throw new NoSuchElementException();
+            }
+            Object result = overflow.remove();
+            overflowSize.decrementAndGet();
+            return result;
+        }
+    }
+}
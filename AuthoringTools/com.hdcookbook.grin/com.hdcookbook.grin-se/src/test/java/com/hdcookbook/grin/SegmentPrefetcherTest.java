@@ -0,0 +1,159 @@
+package com.hdcookbook.grin;
+
+import com.hdcookbook.grin.commands.Command;
+import com.hdcookbook.grin.commands.SEActivateSegmentCommand;
+import com.hdcookbook.grin.features.SEFixedImage;
+import com.hdcookbook.grin.features.SEGroup;
+import com.hdcookbook.grin.input.RCHandler;
+import com.hdcookbook.grin.util.SetupClient;
+import com.hdcookbook.grin.util.SetupManager;
+
+import java.awt.Rectangle;
+import java.util.Hashtable;
+
+/**
+ * This file has a stand-alone test of SegmentPrefetcher's budget.  It
+ * builds a show that's a chain of segments, each with a fixed image
+ * whose file doesn't exist.  The show's setup manager isn't started,
+ * so no image is ever loaded; this checks that the budget is charged
+ * before the images are loaded, and not after.  It also checks that
+ * when a prefetched segment is activated, the images in its features'
+ * subgraphs are set up at the priority of the current segment.
+ * Failure is indicated by a RuntimeException.
+ **/
+
+public class SegmentPrefetcherTest {
+
+    private final static long IMAGE_BYTES = 100 * 100 * 4;
+
+    private SEShow show;
+    private SESegment[] segments;
+    private SEFixedImage[] images;
+    private Hashtable priorities;
+        // Maps SetupClient to the most urgent priority it was given
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    //
+    // Make a show of segments that activate each other in a chain.
+    // Segment i shows the image fileNames[i], which is 100x100.  If
+    // grouped is set, the image is inside a group.
+    //
+    private void makeShow(String[] fileNames, boolean grouped)
+            throws Exception
+    {
+        show = new SEShow(null);
+        priorities = new Hashtable();
+        show.setupManager = new SetupManager(fileNames.length) {
+            public void scheduleSetup(SetupClient f, int priority) {
+                Integer old = (Integer) priorities.get(f);
+                if (old == null || priority < old.intValue()) {
+                    priorities.put(f, new Integer(priority));
+                }
+                super.scheduleSetup(f, priority);
+            }
+        };
+        segments = new SESegment[fileNames.length];
+        images = new SEFixedImage[fileNames.length];
+        for (int i = fileNames.length - 1; i >= 0; i--) {
+            SEFixedImage image = new SEFixedImage(show);
+            image.setFileName(fileNames[i]);
+            image.setPlacement(new Rectangle(0, 0, 100, 100));
+            image.initialize();
+            images[i] = image;
+            Feature shown = image;
+            if (grouped) {
+                SEGroup group = new SEGroup(show);
+                group.setup(new Feature[] { image });
+                shown = group;
+            }
+            Command[] next = new Command[0];
+            if (i + 1 < fileNames.length) {
+                SEActivateSegmentCommand c
+                    = new SEActivateSegmentCommand(show, false, false);
+                c.setup(segments[i + 1]);
+                next = new Command[] { c };
+            }
+            segments[i] = new SESegment("S" + i, new Feature[] { shown },
+                                        new Feature[0], new RCHandler[0],
+                                        new Command[0], false, next);
+        }
+    }
+
+    private SegmentPrefetcher prefetch(int depth, long budget) {
+        SegmentPrefetcher p = new SegmentPrefetcher(depth, budget);
+        show.setSegmentPrefetcher(p);
+        synchronized(show) {
+            p.segmentActivated(segments[0]);
+        }
+        return p;
+    }
+
+    public void testBudget() throws Exception {
+        makeShow(new String[] { "p0.png", "p1.png", "p2.png", "p3.png",
+                                "p4.png" }, false);
+        SegmentPrefetcher p = prefetch(4, Long.MAX_VALUE);
+        check(p.getNumPrefetchedSegments() == 4,
+              "Prefetched " + p.getNumPrefetchedSegments() + " segments");
+        check(p.getChargedBytes() == 5 * IMAGE_BYTES,
+              "Charged " + p.getChargedBytes() + " bytes");
+
+        // Room for the current segment and two more
+        p = prefetch(4, 3 * IMAGE_BYTES + 1);
+        check(p.getNumPrefetchedSegments() == 2,
+              "Prefetched " + p.getNumPrefetchedSegments() + " segments");
+        check(p.getChargedBytes() == 3 * IMAGE_BYTES,
+              "Charged " + p.getChargedBytes() + " bytes");
+        check(segments[2].getActiveFeatures()[0].isSetup()
+              && !segments[3].getActiveFeatures()[0].isSetup(),
+              "Wrong segments were set up");
+
+        // The current segment is over the budget by itself
+        p = prefetch(4, IMAGE_BYTES / 2);
+        check(p.getNumPrefetchedSegments() == 0,
+              "Prefetched " + p.getNumPrefetchedSegments() + " segments");
+        check(!segments[1].getActiveFeatures()[0].isSetup(),
+              "Segment 1 is still set up");
+        show.setSegmentPrefetcher(null);
+    }
+
+    public void testSharedImages() throws Exception {
+        makeShow(new String[] { "q0.png", "q1.png", "q0.png", "q1.png",
+                                "q2.png" }, false);
+        SegmentPrefetcher p = prefetch(4, 2 * IMAGE_BYTES);
+        check(p.getNumPrefetchedSegments() == 3,
+              "Prefetched " + p.getNumPrefetchedSegments() + " segments");
+        check(p.getChargedBytes() == 2 * IMAGE_BYTES,
+              "Charged " + p.getChargedBytes() + " bytes");
+        show.setSegmentPrefetcher(null);
+    }
+
+    public void testPromoteGroup() throws Exception {
+        makeShow(new String[] { "r0.png", "r1.png", "r2.png" }, true);
+        SegmentPrefetcher p = prefetch(1, Long.MAX_VALUE);
+        check(p.getNumPrefetchedSegments() == 1,
+              "Prefetched " + p.getNumPrefetchedSegments() + " segments");
+        Integer priority = (Integer) priorities.get(images[1]);
+        check(priority != null
+              && priority.intValue() == SetupManager.PRIORITY_PREFETCH,
+              "Image 1 was scheduled at priority " + priority);
+
+        // Segment 1 is activated before its image is loaded
+        check(images[1].needsMoreSetup(), "Image 1 is already set up");
+        synchronized(show) {
+            p.segmentActivated(segments[1]);
+        }
+        priority = (Integer) priorities.get(images[1]);
+        check(priority.intValue() == SetupManager.PRIORITY_VISIBLE,
+              "Image 1 was promoted to priority " + priority);
+        priority = (Integer) priorities.get(images[2]);
+        check(priority != null
+              && priority.intValue() == SetupManager.PRIORITY_PREFETCH,
+              "Image 2 was scheduled at priority " + priority);
+        show.setSegmentPrefetcher(null);
+    }
+}
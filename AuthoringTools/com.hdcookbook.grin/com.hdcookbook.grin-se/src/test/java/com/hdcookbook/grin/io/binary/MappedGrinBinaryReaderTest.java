@@ -0,0 +1,238 @@
+package com.hdcookbook.grin.io.binary;
+
+import com.hdcookbook.grin.SEShow;
+import com.hdcookbook.grin.Show;
+import com.hdcookbook.grin.io.ShowBuilder;
+import com.hdcookbook.grin.io.text.ShowParser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+
+/**
+ * This file has a stand-alone test that checks that a show read with
+ * MappedGrinBinaryReader is the same as the show read with
+ * GrinBinaryReader.  It converts a sample show to a binary file, and
+ * reads it eagerly, lazily with loadAll(), and lazily with each node
+ * loaded only when the comparison reaches it.  The shows are compared
+ * field by field.  Failure is indicated by a RuntimeException.
+ **/
+
+public class MappedGrinBinaryReaderTest {
+
+    private final static String SHOW =
+          "show\n"
+        + "setting draw_targets { T:Default T:Second } ;\n"
+        + "exports\n"
+        + "    segments { S_initialize }\n"
+        + "    features { F_menu }\n"
+        + "    handlers { H_keys }\n"
+        + ";\n"
+        + "feature box F_box ( 10 10 109 109 ) fill { 255 0 0 255 } ;\n"
+        + "feature box F_outline ( 0 0 19 19 ) outline 2 { 0 0 255 255 } ;\n"
+        + "feature text F_text 100 100 { \"one\" \"two\" } vspace 4\n"
+        + "        SansSerif plain 20 { { 255 255 255 255 } } ;\n"
+        + "feature group F_group { F_box F_text } ;\n"
+        + "feature translation F_moves.Coords {\n"
+        + "         0 0 0 linear-relative\n"
+        + "        12 40 20 linear-relative\n"
+        + "    } repeat 0 ;\n"
+        + "feature translator F_moves.T F_moves.Coords { F_outline } ;\n"
+        + "feature group F_moves { F_moves.Coords F_moves.T } ;\n"
+        + "feature set_target F_moves_target F_moves T:Second ;\n"
+        + "feature assembly F_menu {\n"
+        + "        one  F_group\n"
+        + "        two  F_moves_target\n"
+        + "} ;\n"
+        + "feature timer F_timer 30 { segment_done ; } ;\n"
+        + "feature box F_unused ( 0 0 4 4 ) fill { 0 255 0 255 } ;\n"
+        + "rc_handler visual H_menu\n"
+        + "        grid { { one two } }\n"
+        + "        assembly F_menu\n"
+        + "        select { one one two two }\n"
+        + "        activate { one one { activate_segment S_done ; } \n"
+        + "                   two two { segment_done ; } } ;\n"
+        + "rc_handler key_pressed H_keys { 1 red } execute {\n"
+        + "        set_visual_rc H_menu state two activated ;\n"
+        + "    } ;\n"
+        + "segment S_initialize\n"
+        + "    setup { F_menu F_timer }\n"
+        + "    next { activate_segment S_menu ; }\n"
+        + ";\n"
+        + "segment S_menu\n"
+        + "    active { F_menu F_timer }\n"
+        + "    setup { F_menu F_timer }\n"
+        + "    rc_handlers { H_menu H_keys }\n"
+        + "    next { activate_segment S_done ; }\n"
+        + ";\n"
+        + "segment S_done\n"
+        + "    active { F_box }\n"
+        + ";\n"
+        + "end_show\n";
+
+    private File file;
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    public MappedGrinBinaryReaderTest() throws Exception {
+        SEShow show = new SEShow(null);
+        ShowParser p = new ShowParser(new StringReader(SHOW), "sample", show,
+                                      new ShowBuilder());
+        p.parse();
+        file = File.createTempFile("sample", ".grin");
+        file.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                                new FileOutputStream(file)));
+        try {
+            new GrinBinaryWriter(show, true).writeShow(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Show readEagerly() throws Exception {
+        Show show = new Show(null);
+        InputStream in = new FileInputStream(file);
+        try {
+            new GrinBinaryReader(in).readShow(show);
+        } finally {
+            in.close();
+        }
+        return show;
+    }
+
+    private MappedGrinBinaryReader readLazily(Show show) throws Exception {
+        MappedGrinBinaryReader reader = new MappedGrinBinaryReader(file);
+        reader.readShow(show);
+        check(reader.getNumLoaded() < reader.getNumNodes(),
+              "All " + reader.getNumNodes() + " nodes were read up front");
+        return reader;
+    }
+
+    public void testLoadAll() throws Exception {
+        Show eager = readEagerly();
+        Show lazy = new Show(null);
+        MappedGrinBinaryReader reader = readLazily(lazy);
+        reader.loadAll();
+        check(reader.getNumLoaded() == reader.getNumNodes(),
+              "Loaded " + reader.getNumLoaded() + " of "
+              + reader.getNumNodes() + " nodes");
+        new Comparison(eager, lazy, false).compareShows();
+    }
+
+    public void testLoadNode() throws Exception {
+        Show eager = readEagerly();
+        Show lazy = new Show(null);
+        MappedGrinBinaryReader reader = readLazily(lazy);
+        new Comparison(eager, lazy, true).compareShows();
+        check(reader.getNumLoaded() == reader.getNumNodes(),
+              "Loaded " + reader.getNumLoaded() + " of "
+              + reader.getNumNodes() + " nodes");
+    }
+
+    //
+    // Compares two shows, field by field.  Each object of the first show
+    // must correspond to exactly one object of the second show.  If
+    // loadNodes is set, each object of the second show is loaded just
+    // before its fields are compared, the way the show loads a node
+    // when it's first used.
+    //
+    private static class Comparison {
+
+        private Show a;
+        private Show b;
+        private boolean loadNodes;
+        private IdentityHashMap<Object, Object> seen
+                = new IdentityHashMap<Object, Object>();
+
+        Comparison(Show a, Show b, boolean loadNodes) {
+            this.a = a;
+            this.b = b;
+            this.loadNodes = loadNodes;
+            seen.put(a, b);
+        }
+
+        void compareShows() throws Exception {
+            String[] fields = { "segments", "features", "rcHandlers",
+                                "publicSegments", "publicFeatures",
+                                "publicRCHandlers", "publicNamedCommands" };
+            for (int i = 0; i < fields.length; i++) {
+                Field f = Show.class.getDeclaredField(fields[i]);
+                f.setAccessible(true);
+                compare(f.get(a), f.get(b), "show." + fields[i]);
+            }
+        }
+
+        private void compare(Object x, Object y, String path)
+                throws Exception
+        {
+            if (x == null || y == null) {
+                check(x == y, path + " is null in only one show");
+                return;
+            }
+            check(x.getClass() == y.getClass(),
+                  path + " is a " + x.getClass().getName() + " and a "
+                  + y.getClass().getName());
+            Object old = seen.get(x);
+            if (old != null) {
+                check(old == y, path + " is a different object");
+                return;
+            }
+            Class cl = x.getClass();
+            if (cl == Object.class) {
+                seen.put(x, y);         // A lock
+            } else if (cl.isArray()) {
+                seen.put(x, y);
+                int len = Array.getLength(x);
+                check(len == Array.getLength(y), path + " has length " + len
+                      + " and " + Array.getLength(y));
+                for (int i = 0; i < len; i++) {
+                    compare(Array.get(x, i), Array.get(y, i),
+                            path + "[" + i + "]");
+                }
+            } else if (x instanceof Hashtable) {
+                seen.put(x, y);
+                Hashtable hx = (Hashtable) x;
+                Hashtable hy = (Hashtable) y;
+                check(hx.size() == hy.size(), path + " has size " + hx.size()
+                      + " and " + hy.size());
+                for (Enumeration e = hx.keys(); e.hasMoreElements(); ) {
+                    Object key = e.nextElement();
+                    compare(hx.get(key), hy.get(key), path + "." + key);
+                }
+            } else if (cl.getName().startsWith("com.hdcookbook.")) {
+                seen.put(x, y);
+                if (loadNodes) {
+                    b.loadNode(y);
+                }
+                for (; cl != Object.class; cl = cl.getSuperclass()) {
+                    Field[] fields = cl.getDeclaredFields();
+                    for (int i = 0; i < fields.length; i++) {
+                        Field f = fields[i];
+                        if (Modifier.isStatic(f.getModifiers())) {
+                            continue;
+                        }
+                        f.setAccessible(true);
+                        compare(f.get(x), f.get(y), path + "." + f.getName());
+                    }
+                }
+            } else {
+                check(x.equals(y), path + " is " + x + " and " + y);
+            }
+        }
+    }
+}
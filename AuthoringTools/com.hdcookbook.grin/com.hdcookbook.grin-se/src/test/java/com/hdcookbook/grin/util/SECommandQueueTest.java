@@ -0,0 +1,129 @@
+package com.hdcookbook.grin.util;
+
+/**
+ * This file has a stand-alone test that checks that
+ * com.hdcookbook.grin.util.SECommandQueue keeps each producer's commands
+ * in order and addAll() entries together, with several producers racing
+ * for the ring and its overflow, and that it drops and merges input 
+ * events according to its event policy.  Failure is indicated by a 
+ * RuntimeException.
+ **/
+
+public class SECommandQueueTest {
+
+    //
+    // Adds numbered entries, alternating between add() and a pair of
+    // entries with addAll(), so that the consumer can check the order,
+    // and that the pairs stay together.
+    //
+    private static class Producer extends Thread {
+
+        private CommandQueue queue;
+        private int id;
+        private int count;
+
+        Producer(CommandQueue queue, int id, int count) {
+            this.queue = queue;
+            this.id = id;
+            this.count = count;
+        }
+
+        public void run() {
+            int i = 0;
+            while (i < count) {
+                if (i % 3 == 0 || i + 1 == count) {
+                    queue.add(new int[] { id, i });
+                    i++;
+                } else {
+                    queue.addAll(new Object[] { 
+                        new int[] { id, i }, new int[] { id, i + 1 }
+                    });
+                    i += 2;
+                }
+            }
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static String drain(CommandQueue q) {
+        StringBuilder sb = new StringBuilder();
+        while (!q.isEmpty()) {
+            sb.append(q.remove());
+        }
+        return sb.toString();
+    }
+
+    public void testOverflow() {
+        CommandQueue q = new SECommandQueue(4);
+        q.add("a");
+        q.add("b");
+        q.addAll(new Object[] { "c", "d", "e" });
+        q.add("f");
+        check("a".equals(q.remove()), "Wrong head");
+        q.add("g");
+        check("bcdefg".equals(drain(q)), "Out of order");
+        check(q.isEmpty(), "Not empty");
+    }
+
+    public void testEventPolicies() {
+        CommandQueue q = new SECommandQueue(4);
+        check(q.addEvent("x") && q.addEvent("x"), "Event dropped");
+        q.setEventPolicy(CommandQueue.MERGE_REPEATED_EVENTS);
+        check(!q.addEvent("x"), "Repeat not merged");
+        check(q.addEvent("y") && q.addEvent("x"), "Event merged");
+        check(!q.addEvent("z"), "Event added to a full queue");
+        q.add("cmd");
+        check("xxyxcmd".equals(drain(q)), "Wrong entries");
+        check(q.addEvent("x"), "Event merged with a removed one");
+
+        q.setEventPolicy(CommandQueue.DROP_EVENTS_WHEN_FULL);
+        check(q.addEvent("x"), "Repeat merged");
+        check(q.getEventsDropped() == 2,
+              "Dropped " + q.getEventsDropped() + " events");
+    }
+
+    public void testProducers() throws InterruptedException {
+        int producers = 4;
+        int count = 5000;
+        CommandQueue q = new SECommandQueue(16);
+        Producer[] threads = new Producer[producers];
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Producer(q, i, count);
+            threads[i].start();
+        }
+        int[] next = new int[producers];
+        int received = 0;
+        int[] pairOf = null;    // The first of a pair, if we're in one
+        long end = System.currentTimeMillis() + 10000;
+        while (received < producers * count) {
+            check(System.currentTimeMillis() < end,
+                  "Timed out after " + received);
+            if (q.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+            int[] el = (int[]) q.remove();
+            check(el[1] == next[el[0]],
+                  "Producer " + el[0] + " entry " + el[1] + " out of order");
+            if (pairOf != null) {
+                check(el[0] == pairOf[0], 
+                      "Producer " + pairOf[0] + " entry " + pairOf[1]
+                      + " separated from the next one");
+                pairOf = null;
+            } else if (el[1] % 3 == 1 && el[1] + 1 < count) {
+                pairOf = el;
+            }
+            next[el[0]]++;
+            received++;
+        }
+        for (int i = 0; i < producers; i++) {
+            threads[i].join();
+        }
+        check(q.isEmpty(), "Extra entries");
+    }
+}
@@ -68,6 +68,8 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.io.IOException;
 import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
@@ -112,7 +114,7 @@ public class PCProfiler extends Thread {
     //
     public void run() {
 
-        byte[] buffer = new byte[512];
+        byte[] buffer = new byte[2048];     // Batches fit in an ethernet frame
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
         System.gc();
         System.out.println("Ready to receive...");
@@ -176,6 +178,8 @@ public class PCProfiler extends Thread {
         System.out.println();
         System.out.println("You can also launch the program with a data file as an argument.");
         System.out.println("This will bring up the GUI on that dataset.");
+        System.out.println("With \"-log <file>\", it reads a file written with");
+        System.out.println("Profile.initProfiler(OutputStream), and dumps it as for d.");
         System.out.println();
     }
 
@@ -218,13 +222,26 @@ public class PCProfiler extends Thread {
     // The dump data command from the keyboard
     private void dumpData(BufferedReader in) {
         packets.setDone();
+        PacketList list = packets;
+        packets = null;         // Allows GC, unless there's a follower
+        dumpPackets(list, in);
+    }
+
+    //
+    // Write the data in packets to profile.dat, and run the GUI on it
+    //
+    private static void dumpPackets(PacketList packets, BufferedReader in) {
         System.out.println();
         System.out.println("Dumping information derived from " 
                            + packets.getLength() + " packets.");
+        String overhead = packets.getOverhead();
+        if (overhead != null) {
+            System.out.println(overhead);
+        }
 
         ProfilingRun run = new ProfilingRun();
         run.init(packets);
-        packets = null;         // Allows GC, unless there's a follower
+        packets = null;         // Allows GC
         run.writeData("profile.dat");
         System.out.println("    Wrote data to profile.dat");
         ResultsGui gui = new ResultsGui();
@@ -248,7 +265,46 @@ public class PCProfiler extends Thread {
         System.exit(0);
     }
 
+    //
+    // Reading a file written by an xlet with Profile.initProfiler(OutputStream).
+    // It's a sequence of batches, each preceded by its two-byte length.
+    //
+    private static void readLogFile(String fileName) throws IOException {
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(fileName)));
+        PacketList list = new PacketList(2000000);
+        byte[] buf = new byte[65536];
+        try {
+            for (;;) {
+                int len = dis.read();
+                if (len == -1) {
+                    break;
+                }
+                len = (len << 8) | dis.readUnsignedByte();
+                dis.readFully(buf, 0, len);
+                list.add(buf, 0, len, 0L);
+            }
+        } catch (EOFException ex) {
+            System.out.println("Log file " + fileName + " is truncated.");
+        } finally {
+            dis.close();
+        }
+        list.setDone();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        dumpPackets(list, in);
+        System.exit(0);
+    }
+
     public static void main(String args[]) {
+        if (args.length > 1 && "-log".equals(args[0])) {
+            System.out.println("Reading profile log from " + args[1]);
+            try {
+                readLogFile(args[1]);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            return;
+        }
         if (args.length > 0) {
             System.out.println("Reading data file from " + args[0]);
             try {
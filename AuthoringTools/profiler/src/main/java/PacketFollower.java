@@ -69,12 +69,11 @@ public class PacketFollower extends Thread {
     PacketList packets;
     private boolean running = false;
 
-    private Packet[] startPackets;      // Indexed by ID
+    private HashMap<Integer, Packet> startPackets 
+            = new HashMap<Integer, Packet>();
 
     public PacketFollower(PacketList packets) {
         this.packets = packets;
-        startPackets = new Packet[packets.getCapacity() / 2];
-            // No more than half of the packets can be start packets
     }
 
     public synchronized void toggleRunning() {
@@ -98,12 +97,10 @@ public class PacketFollower extends Thread {
                     }
                 }
             }
-            if (p.id < 0 || p.id >= startPackets.length) {
-                System.out.println("Illegal packet id " + p.id);
-            } else if (p.type == Profile.TIMER_START) {
-                startPackets[p.id] = p;
+            if (p.type == Profile.TIMER_START) {
+                startPackets.put(p.id, p);
             } else if (p.type == Profile.TIMER_STOP) {
-                Packet start = startPackets[p.id];
+                Packet start = startPackets.remove(p.id);
                 if (start == null) {
                     System.out.println("Missing start packet for " + p.id);
                 } else {
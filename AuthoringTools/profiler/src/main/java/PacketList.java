@@ -59,6 +59,7 @@
 import java.util.HashMap;
 import java.util.Map;
 import java.net.DatagramPacket;
+import java.nio.charset.Charset;
 
 import com.hdcookbook.grin.util.Profile;
 
@@ -72,6 +73,17 @@ public class PacketList {
     private int length;
     private boolean done = false;
     MessageKey tmpKey = new MessageKey();
+    private HashMap<Integer, MessageKey> timerNames 
+            = new HashMap<Integer, MessageKey>();
+
+    // The profiler's overhead on the device, from the last batch
+    private int callNanos;
+    private int recordsSent;
+    private int recordsDropped;
+    private int flushes;
+    private long flushNanos;
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
 
     public PacketList(int capacity) {
         //
@@ -104,17 +116,28 @@ public class PacketList {
         return done;
     }
 
-    public synchronized void add(DatagramPacket packet, long timestamp) {
+    public void add(DatagramPacket packet, long timestamp) {
+        add(packet.getData(), packet.getOffset(), packet.getLength(),
+            timestamp);
+    }
+
+    /**
+     * Add the packet in buf.  If it's a batch of records, their
+     * timestamps come from the device, and timestamp is ignored.
+     **/
+    public synchronized void add(byte[] buf, int i, int len, long timestamp) {
         if (done || length >= packets.length) {
             return;
         }
-        byte[] buf = packet.getData();
-        int i = packet.getOffset();
-        int len = packet.getLength();
         if (len < 1) {
             return;
         }
+        int end = i + len;
         byte type = buf[i++];
+        if (type == Profile.BATCH) {
+            addBatch(buf, i, end);
+            return;
+        }
         if (type == Profile.MESSAGE) {
             Packet p = packets[length++];
             p.type = type;
@@ -129,13 +152,8 @@ public class PacketList {
         if (len < 5) {
             return;
         }
-        int id = 0xff & (int) buf[i++];
-        id <<= 8;
-        id += 0xff & (int) buf[i++];
-        id <<= 8;
-        id += 0xff & (int) buf[i++];
-        id <<= 8;
-        id += 0xff & (int) buf[i++];
+        int id = getInt(buf, i);
+        i += 4;
         byte threadID = (byte) 0;
         MessageKey message = null;
         if (type == Profile.TIMER_START) {
@@ -143,12 +161,7 @@ public class PacketList {
                 return;
             }
             threadID = buf[i++];
-            tmpKey.set(buf, i, len - i);
-            message = messages.get(tmpKey);
-            if (message == null) {
-                message = tmpKey.makeCopy();
-                messages.put(message, message);
-            }
+            message = canonicalize(buf, i, end - i);
         } else if (type == Profile.TIMER_STOP) {
             // do nothing
         } else {
@@ -163,6 +176,123 @@ public class PacketList {
         notifyAll();    // In case a follower is waiting on get()
     }
 
+    //
+    // Decode the entries of a batch, as described in
+    // com.hdcookbook.grin.util.ProfileFlusher.  A truncated entry ends
+    // the batch.
+    //
+    private void addBatch(byte[] buf, int i, int end) {
+        while (i < end && length < packets.length) {
+            byte kind = buf[i++];
+            if (kind == Profile.TIMER_NAME) {
+                if (end - i < 5 || end - i < 5 + (0xff & buf[i + 4])) {
+                    break;
+                }
+                int timer = getInt(buf, i);
+                int n = 0xff & buf[i + 4];
+                timerNames.put(timer, canonicalize(buf, i + 5, n));
+                i += 5 + n;
+            } else if (kind == Profile.TIMER_START) {
+                if (end - i < 17) {
+                    break;
+                }
+                Packet p = packets[length++];
+                p.type = kind;
+                p.id = getInt(buf, i);
+                p.threadID = buf[i + 4];
+                int timer = getInt(buf, i + 5);
+                p.message = timerNames.get(timer);
+                if (p.message == null) {
+                    // Its name was in a lost packet
+                    byte[] name = ("timer " + timer).getBytes(UTF_8);
+                    p.message = canonicalize(name, 0, name.length);
+                }
+                p.timestamp = getLong(buf, i + 9);
+                i += 17;
+            } else if (kind == Profile.TIMER_STOP) {
+                if (end - i < 12) {
+                    break;
+                }
+                Packet p = packets[length++];
+                p.type = kind;
+                p.id = getInt(buf, i);
+                p.threadID = (byte) 0;
+                p.message = null;
+                p.timestamp = getLong(buf, i + 4);
+                i += 12;
+            } else if (kind == Profile.MESSAGE) {
+                if (end - i < 10) {
+                    break;
+                }
+                int n = ((0xff & buf[i + 8]) << 8) | (0xff & buf[i + 9]);
+                if (end - i < 10 + n) {
+                    break;
+                }
+                Packet p = packets[length++];
+                p.type = kind;
+                p.timestamp = getLong(buf, i);
+                p.debugMessage = new byte[n];
+                System.arraycopy(buf, i + 10, p.debugMessage, 0, n);
+                i += 10 + n;
+            } else if (kind == Profile.OVERHEAD) {
+                if (end - i < 24) {
+                    break;
+                }
+                callNanos = getInt(buf, i);
+                recordsSent = getInt(buf, i + 4);
+                recordsDropped = getInt(buf, i + 8);
+                flushes = getInt(buf, i + 12);
+                flushNanos = getLong(buf, i + 16);
+                i += 24;
+            } else {
+                break;
+            }
+        }
+        notifyAll();    // In case a follower is waiting on get()
+    }
+
+    private MessageKey canonicalize(byte[] buf, int start, int len) {
+        tmpKey.set(buf, start, len);
+        MessageKey message = messages.get(tmpKey);
+        if (message == null) {
+            message = tmpKey.makeCopy();
+            messages.put(message, message);
+        }
+        return message;
+    }
+
+    private static int getInt(byte[] buf, int i) {
+        return ((0xff & buf[i]) << 24) | ((0xff & buf[i + 1]) << 16)
+               | ((0xff & buf[i + 2]) << 8) | (0xff & buf[i + 3]);
+    }
+
+    private static long getLong(byte[] buf, int i) {
+        return (((long) getInt(buf, i)) << 32)
+               | (0xffffffffL & getInt(buf, i + 4));
+    }
+
+    /**
+     * Give a description of the profiler's overhead on the device, from
+     * the statistics it sends with each batch.  Returns null if we haven't
+     * received any.
+     **/
+    public synchronized String getOverhead() {
+        if (flushes == 0 && recordsSent == 0) {
+            return null;
+        }
+        StringBuffer sb = new StringBuffer();
+        sb.append("Profiler overhead on the device:\n");
+        sb.append("    " + callNanos + " ns per timer start or stop\n");
+        sb.append("    " + recordsSent + " records sent, "
+                  + recordsDropped + " dropped because a ring was full\n");
+        sb.append("    " + flushes + " flushes, taking "
+                  + (flushNanos / 1000) + " us in all");
+        if (flushes > 0) {
+            sb.append(", " + (flushNanos / flushes / 1000) + " us each");
+        }
+        return sb.toString();
+    }
+
     /**
      * Get the ith packet received (counting from 0).  If this
      * packet hasn't yet arrived, block until it does.  Return null
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2009, Sun Microsystems, Inc.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of Sun Microsystems nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  Note:  In order to comply with the binary form redistribution
+ *         requirement in the above license, the licensee may include
+ *         a URL reference to a copy of the required copyright notice,
+ *         the list of conditions and the disclaimer in a human readable
+ *         file with the binary form of the code that is subject to the
+ *         above license.  For example, such file could be put on a
+ *         Blu-ray disc containing the binary form of the code or could
+ *         be put in a JAR file that is broadcast via a digital television
+ *         broadcast medium.  In any event, you must include in any end
+ *         user licenses governing any code that includes the code subject
+ *         to the above license (in source and/or binary form) a disclaimer
+ *         that is at least as protective of Sun as the disclaimers in the
+ *         above license.
+ *
+ *         A copy of the required copyright notice, the list of conditions and
+ *         the disclaimer will be maintained at
+ *         https://hdcookbook.dev.java.net/misc/license.html .
+ *         Thus, licensees may comply with the binary form redistribution
+ *         requirement with a text file that contains the following text:
+ *
+ *             A copy of the license(s) governing this code is located
+ *             at https://hdcookbook.dev.java.net/misc/license.html
+ */
+
+
+/**
+ * A text report on the timings of a profiling run.  It gives:
+ * <ul>
+ *    <li>The 50th, 95th and 99th percentile and maximum duration of each
+ *        timer, over all threads, and for each thread ID.
+ *    <li>The stacks of nested timers.  These are inferred from how the
+ *        timers on each thread ID nest, and each stack gives the time
+ *        spent in its innermost timer itself, that is, not in timers
+ *        nested within it.  A timer that overlaps another without
+ *        nesting in it, e.g. from another Java thread that uses the same
+ *        thread ID, is shown as a stack of its own.
+ *    <li>A histogram of frame times, taken as the time between successive
+ *        starts of a timer that runs once a frame, in 1 ms buckets.  By
+ *        default, that's the animation engines' advanceModel timers.
+ * </ul>
+ * The stacks can also be written in the "folded" format that flame graph
+ * tools read, with one stack per line, and the time in ns.
+ * <p>
+ * This can be run from the command line on a saved profile, without a
+ * display:
+ * <pre>
+ *     java -cp profiler.jar ProfileReport [-frame timer] [-folded file] profile.dat
+ * </pre>
+ */
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ProfileReport {
+
+    /**
+     * The default frame timer.  The animation engines start a timer
+     * with a name starting with this once a frame.
+     **/
+    public final static String DEFAULT_FRAME_TIMER = "advanceModel(";
+
+    private final static int HISTOGRAM_BUCKETS = 100;   // 1 ms each
+    private final static int HISTOGRAM_WIDTH = 50;      // Characters
+
+    private ProfileTiming[] timings;
+    private String frameTimer = DEFAULT_FRAME_TIMER;
+    private TreeMap<String, long[]> stacks = null;
+        // Folded stack to { count, ns }
+
+    //
+    // A timer on the stack of open timers, while we work out the nesting
+    //
+    private static class StackEntry {
+        ProfileTiming timing;
+        long end;
+        String stack;
+        long childTime = 0;
+    }
+
+    public ProfileReport(ProfileTiming[] timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Set the timer used to measure frame times.  Each timer whose name
+     * starts with prefix gets its own histogram.
+     **/
+    public void setFrameTimer(String prefix) {
+        frameTimer = prefix;
+    }
+
+    /**
+     * Print the report.
+     **/
+    public void print(PrintStream out) {
+        out.println();
+        out.println("    PERCENTILES");
+        out.println();
+        printPercentiles(out);
+        out.println();
+        out.println("    TIMER STACKS (self time)");
+        out.println();
+        printStacks(out);
+        out.println();
+        out.println("    FRAME TIMES");
+        out.println();
+        printFrameTimes(out);
+        out.println();
+    }
+
+    /**
+     * Write the stacks of nested timers in the folded format used by
+     * flame graph tools, like "thread 255;outer;inner 1234".
+     **/
+    public void writeFolded(String fileName) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(fileName), "UTF-8"));
+        try {
+            for (Map.Entry<String, long[]> e : getStacks().entrySet()) {
+                w.write(e.getKey() + " " + e.getValue()[1] + "\n");
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    private void printPercentiles(PrintStream out) {
+        TreeMap<String, ArrayList<ProfileTiming>> byTimer
+                = new TreeMap<String, ArrayList<ProfileTiming>>();
+        TreeMap<Integer, TreeMap<String, ArrayList<ProfileTiming>>> byThread
+                = new TreeMap<Integer, TreeMap<String, ArrayList<ProfileTiming>>>();
+        for (ProfileTiming t : timings) {
+            add(byTimer, t.message, t);
+            TreeMap<String, ArrayList<ProfileTiming>> m = byThread.get(t.threadID);
+            if (m == null) {
+                m = new TreeMap<String, ArrayList<ProfileTiming>>();
+                byThread.put(t.threadID, m);
+            }
+            add(m, t.message, t);
+        }
+        String header = String.format("%-7s %7s %10s %10s %10s %10s  %s",
+                                      "thread", "count", "p50 ms", "p95 ms",
+                                      "p99 ms", "max ms", "timer");
+        out.println(header);
+        for (Map.Entry<String, ArrayList<ProfileTiming>> e 
+                : byTimer.entrySet()) 
+        {
+            printRow(out, "all", e.getKey(), e.getValue());
+        }
+        out.println();
+        out.println(header);
+        for (Map.Entry<Integer, TreeMap<String, ArrayList<ProfileTiming>>> te 
+                : byThread.entrySet()) 
+        {
+            for (Map.Entry<String, ArrayList<ProfileTiming>> e 
+                    : te.getValue().entrySet()) 
+            {
+                printRow(out, "" + te.getKey(), e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static void add(TreeMap<String, ArrayList<ProfileTiming>> m,
+                            String key, ProfileTiming t) 
+    {
+        ArrayList<ProfileTiming> list = m.get(key);
+        if (list == null) {
+            list = new ArrayList<ProfileTiming>();
+            m.put(key, list);
+        }
+        list.add(t);
+    }
+
+    private static void printRow(PrintStream out, String thread, String timer,
+                                 ArrayList<ProfileTiming> list)
+    {
+        long[] d = new long[list.size()];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = list.get(i).duration;
+        }
+        Arrays.sort(d);
+        out.println(String.format("%-7s %7d %10s %10s %10s %10s  %s",
+                                  thread, d.length,
+                                  formatMs(percentile(d, 50)),
+                                  formatMs(percentile(d, 95)),
+                                  formatMs(percentile(d, 99)),
+                                  formatMs(d[d.length - 1]), timer));
+    }
+
+    //
+    // The nearest-rank percentile of sorted, which must not be empty
+    //
+    static long percentile(long[] sorted, int pct) {
+        int rank = (int) (((long) sorted.length * pct + 99) / 100);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static String formatMs(long ns) {
+        return String.format("%.3f", ns / 1000000.0);
+    }
+
+    private void printStacks(PrintStream out) {
+        ArrayList<Map.Entry<String, long[]>> list
+                = new ArrayList<Map.Entry<String, long[]>>(getStacks().entrySet());
+        java.util.Collections.sort(list, 
+            new Comparator<Map.Entry<String, long[]>>() {
+                public int compare(Map.Entry<String, long[]> a, 
+                                   Map.Entry<String, long[]> b) 
+                {
+                    long d = b.getValue()[1] - a.getValue()[1];
+                    return d < 0 ? -1 : (d > 0 ? 1 : 0);
+                }
+            });
+        out.println(String.format("%7s %12s  %s", "count", "total ms", "stack"));
+        for (Map.Entry<String, long[]> e : list) {
+            out.println(String.format("%7d %12s  %s", e.getValue()[0],
+                                      formatMs(e.getValue()[1]), e.getKey()));
+        }
+    }
+
+    //
+    // Work out the nesting of timers on each thread ID, and the
+    // self time of each stack.
+    //
+    private TreeMap<String, long[]> getStacks() {
+        if (stacks != null) {
+            return stacks;
+        }
+        stacks = new TreeMap<String, long[]>();
+        TreeMap<Integer, ArrayList<ProfileTiming>> byThread
+                = new TreeMap<Integer, ArrayList<ProfileTiming>>();
+        for (ProfileTiming t : timings) {
+            ArrayList<ProfileTiming> list = byThread.get(t.threadID);
+            if (list == null) {
+                list = new ArrayList<ProfileTiming>();
+                byThread.put(t.threadID, list);
+            }
+            list.add(t);
+        }
+        Comparator<ProfileTiming> byStart = new Comparator<ProfileTiming>() {
+            public int compare(ProfileTiming a, ProfileTiming b) {
+                if (a.startTime != b.startTime) {
+                    return a.startTime < b.startTime ? -1 : 1;
+                }
+                // The outer of two timers that start together is the longer
+                if (a.duration != b.duration) {
+                    return a.duration > b.duration ? -1 : 1;
+                }
+                return 0;
+            }
+        };
+        for (Map.Entry<Integer, ArrayList<ProfileTiming>> e 
+                : byThread.entrySet()) 
+        {
+            String root = "thread " + e.getKey();
+            ArrayList<ProfileTiming> list = e.getValue();
+            java.util.Collections.sort(list, byStart);
+            ArrayList<StackEntry> open = new ArrayList<StackEntry>();
+            for (ProfileTiming t : list) {
+                long end = t.startTime + t.duration;
+                while (!open.isEmpty()) {
+                    StackEntry top = open.get(open.size() - 1);
+                    if (t.startTime < top.end) {
+                        break;
+                    }
+                    open.remove(open.size() - 1);
+                    addStack(top.stack, top.timing.duration - top.childTime);
+                }
+                StackEntry parent = null;
+                if (!open.isEmpty()) {
+                    parent = open.get(open.size() - 1);
+                }
+                String name = t.message.replace(';', ':');
+                if (parent != null && end > parent.end) {
+                    // Overlaps parent, but doesn't nest in it
+                    addStack(root + ";" + name, t.duration);
+                    continue;
+                }
+                StackEntry s = new StackEntry();
+                s.timing = t;
+                s.end = end;
+                if (parent == null) {
+                    s.stack = root + ";" + name;
+                } else {
+                    s.stack = parent.stack + ";" + name;
+                    parent.childTime += t.duration;
+                }
+                open.add(s);
+            }
+            for (int i = open.size() - 1; i >= 0; i--) {
+                StackEntry s = open.get(i);
+                addStack(s.stack, s.timing.duration - s.childTime);
+            }
+        }
+        return stacks;
+    }
+
+    private void addStack(String stack, long selfTime) {
+        long[] v = stacks.get(stack);
+        if (v == null) {
+            v = new long[2];
+            stacks.put(stack, v);
+        }
+        v[0]++;
+        v[1] += Math.max(selfTime, 0);
+    }
+
+    private void printFrameTimes(PrintStream out) {
+        TreeMap<String, ArrayList<Long>> starts 
+                = new TreeMap<String, ArrayList<Long>>();
+        for (ProfileTiming t : timings) {
+            if (t.message.startsWith(frameTimer)) {
+                ArrayList<Long> list = starts.get(t.message);
+                if (list == null) {
+                    list = new ArrayList<Long>();
+                    starts.put(t.message, list);
+                }
+                list.add(t.startTime);
+            }
+        }
+        if (starts.isEmpty()) {
+            out.println("No timer starts with \"" + frameTimer 
+                        + "\".  Use -frame to give the once-a-frame timer.");
+            return;
+        }
+        for (Map.Entry<String, ArrayList<Long>> e : starts.entrySet()) {
+            ArrayList<Long> list = e.getValue();
+            if (list.size() < 2) {
+                continue;
+            }
+            long[] s = new long[list.size()];
+            for (int i = 0; i < s.length; i++) {
+                s[i] = list.get(i);
+            }
+            Arrays.sort(s);
+            long[] frames = new long[s.length - 1];
+            int[] buckets = new int[HISTOGRAM_BUCKETS + 1];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = s[i + 1] - s[i];
+                int b = (int) Math.min(frames[i] / 1000000, HISTOGRAM_BUCKETS);
+                buckets[b]++;
+            }
+            Arrays.sort(frames);
+            out.println(e.getKey() + ":  " + frames.length + " frames, p50 " 
+                        + formatMs(percentile(frames, 50)) + " ms, p95 "
+                        + formatMs(percentile(frames, 95)) + " ms, p99 "
+                        + formatMs(percentile(frames, 99)) + " ms, max "
+                        + formatMs(frames[frames.length - 1]) + " ms");
+            int most = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                most = Math.max(most, buckets[i]);
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] == 0) {
+                    continue;
+                }
+                String range;
+                if (i == HISTOGRAM_BUCKETS) {
+                    range = String.format(">= %d ms", i);
+                } else {
+                    range = String.format("%3d-%d ms", i, i + 1);
+                }
+                StringBuffer bar = new StringBuffer();
+                int n = (int) ((long) buckets[i] * HISTOGRAM_WIDTH + most - 1) / most;
+                for (int j = 0; j < n; j++) {
+                    bar.append('#');
+                }
+                out.println(String.format("    %-10s %7d  %s", range, buckets[i], bar));
+            }
+            out.println();
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage:  java -cp profiler.jar ProfileReport [options] profile.dat");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("    -frame <timer>   Measure frame times from timers starting with <timer>");
+        System.out.println("                     (default \"" + DEFAULT_FRAME_TIMER + "\")");
+        System.out.println("    -folded <file>   Write timer stacks for a flame graph to <file>");
+        System.out.println();
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        String frameTimer = DEFAULT_FRAME_TIMER;
+        String foldedFile = null;
+        int argNo = 0;
+        while (argNo < args.length - 1) {
+            if ("-frame".equals(args[argNo])) {
+                frameTimer = args[argNo + 1];
+                argNo += 2;
+            } else if ("-folded".equals(args[argNo])) {
+                foldedFile = args[argNo + 1];
+                argNo += 2;
+            } else {
+                break;
+            }
+        }
+        if (argNo != args.length - 1) {
+            usage();
+        }
+        ProfilingRun run = new ProfilingRun();
+        try {
+            run.initFromFile(args[argNo]);
+            ProfileReport report = new ProfileReport(run.timings);
+            report.setFrameTimer(frameTimer);
+            report.print(System.out);
+            if (foldedFile != null) {
+                report.writeFolded(foldedFile);
+                System.out.println("Wrote timer stacks to " + foldedFile);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -91,28 +91,15 @@ public class ProfilingRun {
             throw new IllegalStateException();
         }
         int numMessages = 0;
-        int maxID = 0;
-        int minID = Integer.MAX_VALUE;
         for (int i = 0; i < packets.getLength(); i++) {
             Packet p = packets.get(i);
-            if (p == null) {
-                continue;
-            }
-            if (p.type == Profile.MESSAGE) {
+            if (p != null && p.type == Profile.MESSAGE) {
                 numMessages++;
-                continue;
             }
-            if (p.id > maxID) {
-                maxID = p.id;
-            }
-            if (p.id < minID) {
-                minID = p.id;
-            }
-        }
-        if (minID > maxID) {
-            minID = maxID;
         }
-        Packet[] startPackets = new Packet[maxID - minID + 1];
+        HashMap<Integer, Packet> startPackets = new HashMap<Integer, Packet>();
+            // Tokens from the device's rings have the ring number in their
+            // top byte, so they're too spread out for an array.
         debugMessages = new Packet[numMessages];
         numMessages = 0;
         for (int i = 0; i < packets.getLength(); i++) {
@@ -121,7 +108,7 @@ public class ProfilingRun {
                 continue;
             }
             if (p.type == Profile.TIMER_START) {
-                startPackets[p.id - minID] = p;
+                startPackets.put(p.id, p);
                 if (p.timestamp < earliestTimestamp) {
                     earliestTimestamp = p.timestamp;
                 }
@@ -139,7 +126,7 @@ public class ProfilingRun {
                 continue;
             }
             if (p.type == Profile.TIMER_STOP) {
-                Packet start = startPackets[p.id - minID];
+                Packet start = startPackets.get(p.id);
                 if (start == null) {
                     System.out.println("Missing start packet for " + p.id);
                 } else {
@@ -158,7 +145,7 @@ public class ProfilingRun {
             if (p.type == Profile.TIMER_START) {
                 // nothing
             } else if (p.type == Profile.TIMER_STOP) {
-                Packet start = startPackets[p.id - minID];
+                Packet start = startPackets.get(p.id);
                 if (start == null) {
                     // nothing
                 } else {
@@ -91,6 +91,7 @@ public class ResultsGui extends Frame {
     private Font debugMessageFont = new Font("SansSerif", Font.BOLD, 16);
     private int lastMessageShown = -1;
     private File defaultDirectory = new File(".");
+    private ProfileReport report;
 
 
     private static Color[] colors = { Color.blue, Color.cyan, Color.green, Color.magenta,
@@ -105,6 +106,7 @@ public class ResultsGui extends Frame {
     public void init(ProfilingRun run) {
         debugMessages = run.debugMessages;
         earliestTimestamp = run.earliestTimestamp;
+        report = new ProfileReport(run.timings);
         HashMap<String, Integer> msgIndex = new HashMap<String, Integer>();
         for (int i = 0; i < run.timings.length; i++) {
             ProfileTiming t = run.timings[i];
@@ -170,6 +172,8 @@ public class ResultsGui extends Frame {
         System.out.println("    p <num>    Print debug message <num>");
         System.out.println("    s          Save snapshot of screen as .png");
         System.out.println("    t          Print text report to stdout");
+        System.out.println("    x          Print percentiles, timer stacks and frame times");
+        System.out.println("    f <file>   Write timer stacks for a flame graph to <file>");
         System.out.println("    q          Quit");
         System.out.println("  <eof>        Same as q");
         System.out.println();
@@ -358,7 +362,8 @@ public class ResultsGui extends Frame {
             if (s == null) {
                 System.exit(0);
             }
-            s=s.trim().toLowerCase();
+            String line = s.trim();
+            s = line.toLowerCase();
             if ("q".equals(s)) {
                 System.exit(0);
             } else if ("l".equals(s)) {
@@ -375,6 +380,10 @@ public class ResultsGui extends Frame {
                 snapshot();
             } else if ("t".equals(s)) {
                 printTextReport();
+            } else if ("x".equals(s)) {
+                report.print(System.out);
+            } else if (s.startsWith("f ")) {
+                writeFolded(line.substring(1).trim());
             } else {
                 System.out.println("??" + ((char) 7));
             }
@@ -408,6 +417,15 @@ public class ResultsGui extends Frame {
         System.out.println();
     }
 
+    private void writeFolded(String fileName) {
+        try {
+            report.writeFolded(fileName);
+            System.out.println("Wrote timer stacks to " + fileName);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
     private static String formatTime(long ns) {
         float ms = ns / 1000000f;
         return "" + ms + "ms";